@@ -61,6 +61,8 @@ public class Global {
     public static final char CHAR_AT        = '@';
     public static final char CHAR_EOF       = '\0';
     public static final char CHAR_SUB       = '-';
+    public static final char CHAR_SEMICOLON = ';';
+    public static final char CHAR_AND       = '&';
 
     public static final byte BYTE_EQUAL         = 61;           // '='
     public static final byte BYTE_SLASH         = 92;           // "\\"
@@ -82,6 +84,10 @@ public class Global {
     public static final byte BYTE_AT            = 64;           // '@'
     public static final byte BYTE_EOF           = 0;            // '\0'
     public static final byte BYTE_SUB           = 45;            // '-'
+    public static final byte BYTE_SEMICOLON     = 59;           // ';'
+    public static final byte BYTE_AND           = 38;           // '&'
+    public static final byte BYTE_PLUS          = 43;           // '+'
+    public static final byte BYTE_PERCENT       = 37;           // '%'
 
     public static final String EMPTY_STRING = "";
 
@@ -0,0 +1,173 @@
+package org.voovan.tools.bucket;
+
+/**
+ * GCRA 限流表
+ *      每个键只保存 64 位的哈希值和理论到达时间(TAT), 分段加锁的开放寻址表, 不创建对象, 没有定时任务.
+ *      TAT 不晚于当前时间的记录与不存在的记录等价, 插入时直接复用, 扩容时丢弃, 所以表的大小只取决于活跃的键.
+ *
+ *      按 GCRA 算法判断: 发射间隔 T = 周期 / 数量, 容忍度 τ 为允许的突发,
+ *      请求到达时 tat = max(TAT, now), tat - now > τ 则拒绝, 否则 TAT = tat + T.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class GCRATable {
+    private static final int MIN_CAPACITY = 16;
+
+    private Stripe[] stripes;
+    private int stripeMask;
+
+    /**
+     * 构造函数
+     * @param stripeCount 分段的数量, 会调整为 2 的幂
+     */
+    public GCRATable(int stripeCount) {
+        int size = stripeCount <= 1 ? 1 : Integer.highestOneBit((stripeCount - 1) << 1);
+        stripes = new Stripe[size];
+        for(int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        stripeMask = size - 1;
+    }
+
+    /**
+     * 构造函数
+     *      分段数量为 CPU 核心数的 4 倍
+     */
+    public GCRATable() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * 计算字符串的 64 位哈希值
+     * @param seed 种子, 用于区分不同的规则
+     * @param value 字符串
+     * @return 哈希值, 不为 0
+     */
+    public static long hash(long seed, String value) {
+        //FNV-1a
+        long hash = 0xcbf29ce484222325L ^ (seed * 0x9E3779B97F4A7C15L);
+        for(int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * 尝试通过
+     * @param key 键的哈希值, 使用 hash 方法计算
+     * @param emissionInterval 发射间隔, 单位: 纳秒
+     * @param tolerance 容忍度, 单位: 纳秒
+     * @return true: 允许通过, false: 被限流
+     */
+    public boolean acquire(long key, long emissionInterval, long tolerance) {
+        Stripe stripe = stripes[(int) (key >>> 32) & stripeMask];
+        return stripe.acquire(key, emissionInterval, tolerance, System.nanoTime());
+    }
+
+    /**
+     * 活跃的记录数量
+     * @return 记录数量, 包含还未被复用的过期记录
+     */
+    public int size() {
+        int size = 0;
+        for(Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    private static class Stripe {
+        private long[] keys = new long[MIN_CAPACITY];
+        private long[] tats = new long[MIN_CAPACITY];
+        private int size = 0;
+
+        private synchronized boolean acquire(long key, long emissionInterval, long tolerance, long now) {
+            int mask = keys.length - 1;
+            int index = (int) key & mask;
+            int reusable = -1;
+
+            //查找到键或空位为止, 记住第一个过期的位置
+            while(keys[index] != 0 && keys[index] != key) {
+                if(reusable < 0 && tats[index] - now <= 0) {
+                    reusable = index;
+                }
+                index = (index + 1) & mask;
+            }
+
+            long tat;
+            if(keys[index] == key) {
+                tat = Math.max(tats[index], now);
+                if(tat - now > tolerance) {
+                    return false;
+                }
+            } else {
+                tat = now;
+                if(reusable >= 0) {
+                    index = reusable;
+                    keys[index] = key;
+                } else {
+                    keys[index] = key;
+                    size++;
+                }
+            }
+
+            tats[index] = tat + emissionInterval;
+
+            if(size > keys.length * 3 / 4) {
+                rebuild(now);
+            }
+            return true;
+        }
+
+        /**
+         * 丢弃过期的记录并按活跃记录的数量调整容量
+         * @param now 当前时间
+         */
+        private void rebuild(long now) {
+            int live = 0;
+            for(int i = 0; i < keys.length; i++) {
+                if(keys[i] != 0 && tats[i] - now > 0) {
+                    live++;
+                }
+            }
+
+            int capacity = MIN_CAPACITY;
+            while(capacity < live * 4) {
+                capacity <<= 1;
+            }
+
+            long[] oldKeys = keys;
+            long[] oldTats = tats;
+            keys = new long[capacity];
+            tats = new long[capacity];
+            size = 0;
+
+            int mask = capacity - 1;
+            for(int i = 0; i < oldKeys.length; i++) {
+                if(oldKeys[i] != 0 && oldTats[i] - now > 0) {
+                    int index = (int) oldKeys[i] & mask;
+                    while(keys[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    keys[index] = oldKeys[i];
+                    tats[index] = oldTats[i];
+                    size++;
+                }
+            }
+        }
+    }
+}
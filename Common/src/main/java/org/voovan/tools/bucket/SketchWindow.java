@@ -0,0 +1,137 @@
+package org.voovan.tools.bucket;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 基于 Count-Min Sketch 的滑动窗口计数
+ *      使用固定大小的内存统计任意数量的键, 计数只会高估不会低估, 适合在键的数量没有上限时(例如 IP 地址)找出高频的键.
+ *      保存当前周期和上一个周期两组计数, 滑动窗口的计数按上一个周期未过去的比例加上当前周期估算.
+ *      周期在访问时切换, 没有定时任务.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SketchWindow {
+    private static final int DEPTH = 4;
+
+    private int widthMask;
+    private long interval;
+    private volatile long epoch;
+    private volatile AtomicIntegerArray current;
+    private volatile AtomicIntegerArray previous;
+
+    /**
+     * 构造函数
+     * @param width 每一行的计数器数量, 会调整为 2 的幂
+     * @param interval 窗口的长度, 单位: 毫秒
+     */
+    public SketchWindow(int width, int interval) {
+        int size = Integer.highestOneBit(Math.max(2, width - 1) << 1);
+        this.widthMask = size - 1;
+        this.interval = Math.max(1, interval);
+        this.epoch = System.currentTimeMillis() / this.interval;
+        this.current = new AtomicIntegerArray(size * DEPTH);
+        this.previous = new AtomicIntegerArray(size * DEPTH);
+    }
+
+    /**
+     * 构造函数
+     *      每行 16384 个计数器
+     * @param interval 窗口的长度, 单位: 毫秒
+     */
+    public SketchWindow(int interval) {
+        this(16384, interval);
+    }
+
+    private int index(long hash, int row) {
+        int h = (int) (hash >>> (row * 16)) ^ (int) (hash >>> 32) * (row * 2 + 1);
+        return row * (widthMask + 1) + (h & widthMask);
+    }
+
+    private long slide(long now) {
+        long nowEpoch = now / interval;
+        if(nowEpoch != epoch) {
+            synchronized (this) {
+                if(nowEpoch != epoch) {
+                    AtomicIntegerArray expired = previous;
+                    for(int i = 0; i < expired.length(); i++) {
+                        expired.set(i, 0);
+                    }
+
+                    if(nowEpoch == epoch + 1) {
+                        previous = current;
+                        current = expired;
+                    } else {
+                        //超过一个周期没有访问, 两组计数都已经过期
+                        AtomicIntegerArray last = current;
+                        for(int i = 0; i < last.length(); i++) {
+                            last.set(i, 0);
+                        }
+                        previous = last;
+                        current = expired;
+                    }
+                    epoch = nowEpoch;
+                }
+            }
+        }
+        return nowEpoch;
+    }
+
+    /**
+     * 估算键在滑动窗口中的计数
+     * @param hash 键的 64 位哈希值
+     * @return 估算的计数
+     */
+    public long estimate(long hash) {
+        long now = System.currentTimeMillis();
+        long nowEpoch = slide(now);
+        return estimate(hash, now, nowEpoch);
+    }
+
+    private long estimate(long hash, long now, long nowEpoch) {
+        AtomicIntegerArray current = this.current;
+        AtomicIntegerArray previous = this.previous;
+
+        int currentCount = Integer.MAX_VALUE;
+        int previousCount = Integer.MAX_VALUE;
+        for(int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            currentCount = Math.min(currentCount, current.get(index));
+            previousCount = Math.min(previousCount, previous.get(index));
+        }
+
+        //上一个周期在滑动窗口中剩余的比例
+        double remain = 1 - (double) (now - nowEpoch * interval) / interval;
+        return currentCount + (long) (previousCount * remain);
+    }
+
+    /**
+     * 在滑动窗口的计数小于限制时计数并通过
+     * @param hash 键的 64 位哈希值
+     * @param limit 窗口内允许的数量
+     * @return true: 允许通过, false: 被限流
+     */
+    public boolean acquire(long hash, int limit) {
+        long now = System.currentTimeMillis();
+        long nowEpoch = slide(now);
+        if(estimate(hash, now, nowEpoch) >= limit) {
+            return false;
+        }
+
+        //保守更新, 只增加最小的计数器, 减少高估
+        AtomicIntegerArray current = this.current;
+        int min = Integer.MAX_VALUE;
+        for(int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, current.get(index(hash, row)));
+        }
+        for(int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if(current.get(index) == min) {
+                current.incrementAndGet(index);
+            }
+        }
+        return true;
+    }
+}
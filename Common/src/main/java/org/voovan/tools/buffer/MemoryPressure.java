@@ -0,0 +1,27 @@
+package org.voovan.tools.buffer;
+
+/**
+ * 堆外内存压力等级
+ *
+ * @author helyho
+ *
+ * Java Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public enum MemoryPressure {
+    /**
+     * 正常, 不做任何限制
+     */
+    NORMAL,
+
+    /**
+     * 高压, 网络层暂停读缓冲区的扩容, 释放的内存不再回收到线程池中
+     */
+    HIGH,
+
+    /**
+     * 临界, 网络层暂停读取, 拒绝新的连接, 并清理线程缓冲池
+     */
+    CRITICAL
+}
@@ -35,8 +35,17 @@ public class TByteBuffer {
 
     public final static int BYTE_BUFFER_ANALYSIS  = TEnv.getSystemProperty("ByteBufferAnalysis", 0);
 
+    //堆外内存的全局预算, 单位: 字节, 小于等于 0 则不限制
+    public final static long MAX_DIRECT_MEMORY       = TEnv.getSystemProperty("MaxDirectMemory", 0L);
+    //高压等级的比例阈值
+    public final static float HIGH_PRESSURE_RATIO     = TEnv.getSystemProperty("HighPressureRatio", 0.75f);
+    //临界等级的比例阈值
+    public final static float CRITICAL_PRESSURE_RATIO = TEnv.getSystemProperty("CriticalPressureRatio", 0.9f);
+
+    private final static boolean TRACE_MALLOC = BYTE_BUFFER_ANALYSIS >= 0 || MAX_DIRECT_MEMORY > 0;
+
     public static void malloc(int capacity) {
-        if(BYTE_BUFFER_ANALYSIS >= 0) {
+        if(TRACE_MALLOC) {
             MALLOC_SIZE.add(capacity);
             MALLOC_COUNT.increment();
             BYTE_BUFFER_COUNT.increment();
@@ -44,24 +53,58 @@ public class TByteBuffer {
     }
 
     public static void realloc(int oldCapacity, int newCapacity) {
-        if(BYTE_BUFFER_ANALYSIS >= 0) {
+        if(TRACE_MALLOC) {
             MALLOC_SIZE.add(newCapacity - oldCapacity);
         }
     }
 
 
     public static void free(int capacity) {
-        if(BYTE_BUFFER_ANALYSIS >= 0) {
+        if(TRACE_MALLOC) {
             MALLOC_SIZE.add(-1 * capacity);
             MALLOC_COUNT.decrement();
             BYTE_BUFFER_COUNT.decrement();
         }
     }
 
+    /**
+     * 获取当前堆外内存的压力等级
+     *      未配置 MaxDirectMemory 时永远返回 NORMAL
+     * @return 压力等级
+     */
+    public static MemoryPressure getMemoryPressure() {
+        if(MAX_DIRECT_MEMORY <= 0) {
+            return MemoryPressure.NORMAL;
+        }
+
+        return getMemoryPressure(MALLOC_SIZE.sum(), MAX_DIRECT_MEMORY);
+    }
+
+    /**
+     * 按堆外内存的预算计算压力等级
+     * @param mallocSize 已分配的字节数
+     * @param maxDirectMemory 堆外内存的预算, 小于等于 0 则不限制
+     * @return 压力等级
+     */
+    public static MemoryPressure getMemoryPressure(long mallocSize, long maxDirectMemory) {
+        if(maxDirectMemory <= 0) {
+            return MemoryPressure.NORMAL;
+        }
+
+        if(mallocSize >= (long) (maxDirectMemory * CRITICAL_PRESSURE_RATIO)) {
+            return MemoryPressure.CRITICAL;
+        } else if(mallocSize >= (long) (maxDirectMemory * HIGH_PRESSURE_RATIO)) {
+            return MemoryPressure.HIGH;
+        } else {
+            return MemoryPressure.NORMAL;
+        }
+    }
+
     public static Map<String, Long> getByteBufferAnalysis() {
        return TObject.asMap("Time", TDateTime.now(), "MallocSize", TString.formatBytes(MALLOC_SIZE.longValue()),
                "MallocCount", MALLOC_COUNT.longValue(),
-               "ByteBufferCount", BYTE_BUFFER_COUNT.longValue());
+               "ByteBufferCount", BYTE_BUFFER_COUNT.longValue(),
+               "MemoryPressure", getMemoryPressure());
     }
 
     static {
@@ -77,6 +120,9 @@ public class TByteBuffer {
     static {
         System.out.println("[BUFFER] ThreadBufferPoolSize: \t" + THREAD_BYTE_BUFFER_POOL.getThreadPoolSize());
         System.out.println("[BUFFER] BufferSize: \t\t" + DEFAULT_BYTE_BUFFER_SIZE);
+        if(MAX_DIRECT_MEMORY > 0) {
+            System.out.println("[BUFFER] MaxDirectMemory: \t" + TString.formatBytes(MAX_DIRECT_MEMORY));
+        }
     }
 
     public final static ByteBuffer EMPTY_BYTE_BUFFER = ByteBuffer.allocateDirect(0);
@@ -350,34 +396,60 @@ public class TByteBuffer {
 
         if (byteBuffer != null) {
 
+            //内存存在压力时不再回收到线程池, 直接释放
+            if(getMemoryPressure() != MemoryPressure.NORMAL) {
+                freeBuffer(byteBuffer);
+                return;
+            }
+
             if(THREAD_BYTE_BUFFER_POOL.getPool().avaliable() > 0 &&
                     byteBuffer.capacity() > DEFAULT_BYTE_BUFFER_SIZE){
                 reallocate(byteBuffer, DEFAULT_BYTE_BUFFER_SIZE);
             }
 
-            THREAD_BYTE_BUFFER_POOL.release(byteBuffer, (buffer)->{
-                try {
-                    long address = TByteBuffer.getAddress(byteBuffer);
-                    Object att = getAtt(byteBuffer);
-                    if (address!=0 && att!=null && att.getClass() == Deallocator.class) {
-                        if(address!=0) {
-                            byteBuffer.clear();
-                            synchronized (byteBuffer) {
-                                //这里不使用传入的参数, 需要复用上面代码获得的地址
-                                byteBuffer.position(0);
-                                byteBuffer.limit(0);
-                                setCapacity(byteBuffer, 0);
-                                setAddress(byteBuffer, 0);
-
-                                UNSAFE.freeMemory(address);
-                                free(byteBuffer.capacity());
-                            }
-                        }
-                    }
-                } catch (ReflectiveOperationException e) {
-                    Logger.error(e);
+            THREAD_BYTE_BUFFER_POOL.release(byteBuffer, TByteBuffer::freeBuffer);
+        }
+    }
+
+    /**
+     * 清理当前线程的缓冲池
+     *      在内存压力较大时释放线程缓冲池中闲置的 ByteBuffer
+     * @return 释放的字节数
+     */
+    public static long shedThreadPool() {
+        long shedSize = 0;
+        ByteBuffer byteBuffer;
+        while((byteBuffer = THREAD_BYTE_BUFFER_POOL.getPool().pop()) != null) {
+            shedSize += byteBuffer.capacity();
+            freeBuffer(byteBuffer);
+        }
+        return shedSize;
+    }
+
+    /**
+     * 释放 ByteBuffer 的堆外内存
+     * @param byteBuffer bytebuffer 对象
+     */
+    private static void freeBuffer(ByteBuffer byteBuffer) {
+        try {
+            long address = TByteBuffer.getAddress(byteBuffer);
+            Object att = getAtt(byteBuffer);
+            if (address!=0 && att!=null && att.getClass() == Deallocator.class) {
+                byteBuffer.clear();
+                synchronized (byteBuffer) {
+                    //这里不使用传入的参数, 需要复用上面代码获得的地址和容量
+                    int capacity = byteBuffer.capacity();
+                    byteBuffer.position(0);
+                    byteBuffer.limit(0);
+                    setCapacity(byteBuffer, 0);
+                    setAddress(byteBuffer, 0);
+
+                    UNSAFE.freeMemory(address);
+                    free(capacity);
                 }
-            });
+            }
+        } catch (ReflectiveOperationException e) {
+            Logger.error(e);
         }
     }
 
@@ -7,6 +7,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 属性存储器
+ *      属性 Map 在第一次写入时才创建, 没有属性的对象不占用 Map 的内存
  *
  * @author: helyho
  * voovan Framework.
@@ -15,13 +16,12 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class Attributes {
 
-    private Map<Object, Object> attr;
+    private volatile Map<Object, Object> attr;
 
     @NotSerialization
     private transient boolean modifyed = false;
 
     public Attributes() {
-        attr = new ConcurrentHashMap<Object, Object>();
     }
 
     public boolean isModifyed() {
@@ -37,7 +37,26 @@ public class Attributes {
      * @return 属性参数Map
      */
     public Map<Object,Object> attributes(){
-        return this.attr;
+        Map<Object, Object> attr = this.attr;
+        if(attr == null) {
+            synchronized (this) {
+                attr = this.attr;
+                if(attr == null) {
+                    attr = new ConcurrentHashMap<Object, Object>(4);
+                    this.attr = attr;
+                }
+            }
+        }
+        return attr;
+    }
+
+    /**
+     * 是否没有任何属性
+     * @return true: 没有属性, false: 有属性
+     */
+    public boolean isAttributeEmpty() {
+        Map<Object, Object> attr = this.attr;
+        return attr == null || attr.isEmpty();
     }
 
     /**
@@ -46,7 +65,8 @@ public class Attributes {
      * @return    参数对象
      */
     public Object getAttribute(Object key) {
-        return attr.get(key);
+        Map<Object, Object> attr = this.attr;
+        return attr == null ? null : attr.get(key);
     }
 
     /**
@@ -57,7 +77,7 @@ public class Attributes {
      * @return 对象自身
      */
     public <T> T setAttribute(Object key, Object value) {
-        this.attr.put(key, value);
+        attributes().put(key, value);
         modifyed = true;
         return (T)this;
     }
@@ -69,7 +89,10 @@ public class Attributes {
      * @return 对象自身
      */
     public  <T> T  removeAttribute(Object key) {
-        this.attr.remove(key);
+        Map<Object, Object> attr = this.attr;
+        if(attr != null) {
+            attr.remove(key);
+        }
         modifyed = true;
         return (T)this;
     }
@@ -80,7 +103,8 @@ public class Attributes {
      * @return 是否包含
      */
     public boolean containAttribute(Object key) {
-        return this.attr.containsKey(key);
+        Map<Object, Object> attr = this.attr;
+        return attr != null && attr.containsKey(key);
     }
 
     /**
@@ -89,7 +113,10 @@ public class Attributes {
      * @return 对象自身
      */
     public  <T> T clearAttribute() {
-        attr.clear();
+        Map<Object, Object> attr = this.attr;
+        if(attr != null) {
+            attr.clear();
+        }
         modifyed = true;
         return (T)this;
     }
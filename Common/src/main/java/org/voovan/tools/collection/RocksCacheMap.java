@@ -0,0 +1,326 @@
+package org.voovan.tools.collection;
+
+import org.voovan.Global;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.log.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 持久化的进程内缓存
+ *      数据保存在内存中(ShardedCacheMap), 修改按写后(write-behind)的方式定时批量写入 RocksMap 的列族中,
+ *      重启后内存中不存在的数据在第一次访问时从 RocksMap 中加载.
+ *      持久化的记录中保存了最后刷新时间和超时时间, 加载时已经超时的记录会被删除.
+ *      只刷新时间戳的访问在超时时间的 1/8 内最多持久化一次, 重启后数据的剩余存活时间最多缩短超时时间的 1/8.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class RocksCacheMap<K, V> extends ShardedCacheMap<K, V> {
+    public final static String DEFAULT_COLUMN_FAMILY_NAME = "voovan_cache";
+
+    private RocksMap<K, List<Object>> rocksMap;
+    private Set<K> dirtyKeys;
+    //正在写入的数据
+    private Set<K> flushingKeys;
+    private Function<V, Object> encoder;
+    private Function<Object, V> decoder;
+    private int batchSize = 1000;
+    private int flushInterval = 1;
+    private AtomicBoolean flushing;
+    private volatile HashWheelTask flushTask;
+
+    /**
+     * 构造函数
+     * @param dbname 数据库的名称, 为 null 时使用 RocksMap 的默认数据库
+     * @param columnFamilyName 列族名称
+     */
+    public RocksCacheMap(String dbname, String columnFamilyName) {
+        super();
+        this.rocksMap = new RocksMap<K, List<Object>>(dbname, columnFamilyName);
+        this.dirtyKeys = ConcurrentHashMap.newKeySet();
+        this.flushingKeys = ConcurrentHashMap.newKeySet();
+        this.encoder = value -> value;
+        this.decoder = value -> (V) value;
+        this.flushing = new AtomicBoolean(false);
+    }
+
+    /**
+     * 构造函数
+     * @param columnFamilyName 列族名称
+     */
+    public RocksCacheMap(String columnFamilyName) {
+        this(null, columnFamilyName);
+    }
+
+    /**
+     * 构造函数
+     */
+    public RocksCacheMap() {
+        this(null, DEFAULT_COLUMN_FAMILY_NAME);
+    }
+
+    public RocksMap<K, List<Object>> getRocksMap() {
+        return rocksMap;
+    }
+
+    /**
+     * 设置持久化时值的编解码函数
+     *      默认直接使用 TSerialize 序列化值
+     * @param encoder 编码函数, 返回值需要能被 TSerialize 序列化
+     * @param decoder 解码函数
+     * @return RocksCacheMap 对象
+     */
+    public RocksCacheMap<K, V> codec(Function<V, Object> encoder, Function<Object, V> decoder) {
+        this.encoder = encoder;
+        this.decoder = decoder;
+        return this;
+    }
+
+    /**
+     * 设置每批写入的最大数量
+     * @param batchSize 最大数量
+     * @return RocksCacheMap 对象
+     */
+    public RocksCacheMap<K, V> batchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 设置写入 RocksMap 的周期
+     * @param flushInterval 写入周期, 单位: 秒
+     * @return RocksCacheMap 对象
+     */
+    public RocksCacheMap<K, V> flushInterval(int flushInterval) {
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * 获取等待写入的数据数量
+     * @return 数据数量
+     */
+    public int getDirtySize() {
+        return dirtyKeys.size();
+    }
+
+    /**
+     * 创建 RocksCacheMap, 启动超时处理和写入任务, 并在后台清理 RocksMap 中已经超时的记录
+     * @return RocksCacheMap 对象
+     */
+    @Override
+    public RocksCacheMap<K, V> create() {
+        super.create();
+
+        if(flushTask == null) {
+            synchronized (this) {
+                if(flushTask == null) {
+                    flushTask = new HashWheelTask() {
+                        @Override
+                        public void run() {
+                            if (!dirtyKeys.isEmpty() && flushing.compareAndSet(false, true)) {
+                                Global.getThreadPool().execute(() -> {
+                                    try {
+                                        flush();
+                                    } finally {
+                                        flushing.set(false);
+                                    }
+                                });
+                            }
+                        }
+                    };
+                    CacheMap.CACHE_MAP_WHEEL_TIMER.addTask(flushTask, flushInterval);
+
+                    TEnv.addShutDownHook(this::flush);
+                    Global.getThreadPool().execute(this::removeExpired);
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    protected void onUpdate(K key) {
+        dirtyKeys.add(key);
+    }
+
+    @Override
+    protected void onTouch(K key, long previous, long current, long expire) {
+        long persistInterval = Math.max(1000, expire * 1000 / 8);
+        if(previous / persistInterval != current / persistInterval) {
+            dirtyKeys.add(key);
+        }
+    }
+
+    @Override
+    protected void onRemove(K key) {
+        dirtyKeys.add(key);
+    }
+
+    @Override
+    protected boolean load(K key) {
+        //等待写入和正在写入的数据以内存为准
+        if(dirtyKeys.contains(key) || flushingKeys.contains(key)) {
+            return false;
+        }
+
+        try {
+            List<Object> record = rocksMap.get(key);
+            if (record == null) {
+                return false;
+            }
+
+            long lastTouch = ((Number) record.get(0)).longValue();
+            long expire = ((Number) record.get(1)).longValue();
+            if (expire > 0 && System.currentTimeMillis() >= lastTouch + expire * 1000) {
+                dirtyKeys.add(key);
+                return false;
+            }
+
+            return restore(key, decoder.apply(record.get(2)), expire, lastTouch);
+        } catch (Exception e) {
+            Logger.error("RocksCacheMap load " + key + " failed", e);
+            return false;
+        }
+    }
+
+    /**
+     * 将修改过的数据写入 RocksMap
+     *      内存中存在的数据写入, 不存在的数据删除
+     */
+    public synchronized void flush() {
+        if(dirtyKeys.isEmpty()) {
+            return;
+        }
+
+        Map<K, List<Object>> puts = new HashMap<K, List<Object>>();
+        List<K> removes = new ArrayList<K>();
+        List<K> failedKeys = new ArrayList<K>();
+
+        for(K key : dirtyKeys) {
+            //先移除标记再读取数据, 读取之后的修改会在下一次写入
+            flushingKeys.add(key);
+            dirtyKeys.remove(key);
+
+            V value = peek(key);
+            long lastTouch = getLastTouch(key);
+            if(value == null || lastTouch < 0) {
+                removes.add(key);
+            } else {
+                try {
+                    puts.put(key, toRecord(lastTouch, getTTL(key), encoder.apply(value)));
+                } catch (Exception e) {
+                    Logger.error("RocksCacheMap encode " + key + " failed", e);
+                }
+            }
+
+            if(puts.size() + removes.size() >= batchSize) {
+                write(puts, removes, failedKeys);
+            }
+        }
+
+        write(puts, removes, failedKeys);
+
+        //写入失败的数据重新标记, 在下一次写入时重试
+        dirtyKeys.addAll(failedKeys);
+        flushingKeys.clear();
+    }
+
+    /**
+     * 构造持久化的记录
+     *      使用 List 保存, 在 JDK, JSON, ProtoStuff 几种序列化方式下都能还原, 数字按 Number 读取
+     * @param lastTouch 最后刷新时间
+     * @param expire 超时时间
+     * @param value 编码后的值
+     * @return 持久化的记录
+     */
+    private static List<Object> toRecord(long lastTouch, long expire, Object value) {
+        List<Object> record = new ArrayList<Object>(3);
+        record.add(lastTouch);
+        record.add(expire);
+        record.add(value);
+        return record;
+    }
+
+    /**
+     * 批量写入 RocksMap
+     * @param puts 需要写入的数据
+     * @param removes 需要删除的数据
+     * @param failedKeys 写入失败的 key
+     */
+    private void write(Map<K, List<Object>> puts, List<K> removes, List<K> failedKeys) {
+        try {
+            if (!puts.isEmpty()) {
+                rocksMap.putAll(puts);
+            }
+
+            if (!removes.isEmpty()) {
+                rocksMap.removeAll(removes);
+            }
+        } catch (Exception e) {
+            failedKeys.addAll(puts.keySet());
+            failedKeys.addAll(removes);
+            Logger.error("RocksCacheMap flush failed, " + (puts.size() + removes.size()) + " keys will be retried", e);
+        } finally {
+            puts.clear();
+            removes.clear();
+        }
+    }
+
+    /**
+     * 删除 RocksMap 中已经超时的记录
+     */
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        List<K> removes = new ArrayList<K>();
+        try {
+            rocksMap.scan(entry -> {
+                List<Object> record = entry.getValue();
+                long lastTouch = ((Number) record.get(0)).longValue();
+                long expire = ((Number) record.get(1)).longValue();
+                if (expire > 0 && now >= lastTouch + expire * 1000 && peek(entry.getKey()) == null) {
+                    removes.add(entry.getKey());
+                    if (removes.size() >= batchSize) {
+                        rocksMap.removeAll(removes);
+                        removes.clear();
+                    }
+                }
+                return true;
+            });
+
+            if (!removes.isEmpty()) {
+                rocksMap.removeAll(removes);
+            }
+        } catch (Exception e) {
+            Logger.error("RocksCacheMap remove expired failed", e);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        V value = super.remove(key);
+        if(value == null && key != null) {
+            //可能只存在于 RocksMap 中
+            dirtyKeys.add((K) key);
+        }
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        dirtyKeys.clear();
+        rocksMap.clear();
+    }
+}
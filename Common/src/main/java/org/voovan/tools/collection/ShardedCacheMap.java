@@ -0,0 +1,659 @@
+package org.voovan.tools.collection;
+
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.log.Logger;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * 分片的进程内缓存
+ *      读取不加锁, 写入和超时处理按键的哈希值分片, 每个分片使用独立的锁, 减少并发访问时的锁竞争.
+ *      刷新超时时间只在距离上次刷新超过 touchInterval 后才写入, 频繁访问的键不会每次都更新时间戳.
+ *      超时由时间轮按秒增量处理: 每个数据按到期的秒数挂在时间轮的槽上, 每秒只检查当前槽中的数据,
+ *      期间被刷新过的数据按新的到期时间重新挂到对应的槽上, 不扫描全部数据.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ShardedCacheMap<K, V> implements ICacheMap<K, V> {
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private ConcurrentHashMap<K, Node<K, V>> data;
+    private Shard<K, V>[] shards;
+    private int shardMask;
+    private Function<K, V> supplier = null;
+    private long expire = 0;
+    private int touchInterval = 1000;
+    private volatile HashWheelTask expireTask;
+    //最后处理过的秒数, 只在超时处理任务中修改
+    private long lastSecond;
+
+    /**
+     * 构造函数
+     * @param shardCount 分片数量, 会调整为 2 的幂
+     */
+    public ShardedCacheMap(int shardCount) {
+        int size = 1;
+        while(size < shardCount) {
+            size = size << 1;
+        }
+
+        data = new ConcurrentHashMap<K, Node<K, V>>();
+        shards = new Shard[size];
+        for(int i = 0; i < size; i++) {
+            shards[i] = new Shard<K, V>(this);
+        }
+        shardMask = size - 1;
+        lastSecond = System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * 构造函数
+     *      分片数量为 CPU 核心数的 4 倍
+     */
+    public ShardedCacheMap() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * 获取数据创建 Function 对象
+     * @return Function 对象
+     */
+    @Override
+    public Function<K, V> getSupplier() {
+        return supplier;
+    }
+
+    /**
+     * 设置数据创建 Function 对象
+     * @param buildFunction Function 对象
+     * @return ShardedCacheMap 对象
+     */
+    @Override
+    public ShardedCacheMap<K, V> supplier(Function<K, V> buildFunction) {
+        this.supplier = buildFunction;
+        return this;
+    }
+
+    /**
+     * 获取默认超时时间
+     * @return 获取超时时间
+     */
+    @Override
+    public long getExpire() {
+        return expire;
+    }
+
+    /**
+     * 设置默认超时时间
+     * @param expire 超时时间, 单位: 秒
+     * @return ShardedCacheMap 对象
+     */
+    @Override
+    public ShardedCacheMap<K, V> expire(long expire) {
+        this.expire = expire;
+        return this;
+    }
+
+    /**
+     * 获取刷新超时时间的最小间隔
+     * @return 最小间隔, 单位: 毫秒
+     */
+    public int getTouchInterval() {
+        return touchInterval;
+    }
+
+    /**
+     * 设置刷新超时时间的最小间隔
+     * @param touchInterval 最小间隔, 单位: 毫秒
+     * @return ShardedCacheMap 对象
+     */
+    public ShardedCacheMap<K, V> touchInterval(int touchInterval) {
+        this.touchInterval = touchInterval;
+        return this;
+    }
+
+    /**
+     * 创建 ShardedCacheMap, 启动超时处理任务
+     * @return ShardedCacheMap 对象
+     */
+    public ShardedCacheMap<K, V> create() {
+        if(expireTask == null) {
+            synchronized (this) {
+                if(expireTask == null) {
+                    expireTask = new HashWheelTask() {
+                        @Override
+                        public void run() {
+                            try {
+                                expireTick();
+                            } catch (Exception e) {
+                                Logger.error("ShardedCacheMap expire error", e);
+                            }
+                        }
+                    };
+                    CacheMap.CACHE_MAP_WHEEL_TIMER.addTask(expireTask, 1);
+                }
+            }
+        }
+        return this;
+    }
+
+    private Shard<K, V> shard(Object key) {
+        int hash = key.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & shardMask];
+    }
+
+    /**
+     * 处理到期的槽, 每秒执行一次
+     */
+    private void expireTick() {
+        expireTick(System.currentTimeMillis());
+    }
+
+    /**
+     * 处理截至指定时间到期的槽
+     * @param now 当前时间
+     */
+    private void expireTick(long now) {
+        long second = now / 1000;
+        //时间轮最多追赶一圈
+        long from = Math.max(lastSecond + 1, second - WHEEL_MASK);
+        for(long current = from; current <= second; current++) {
+            for(Shard<K, V> shard : shards) {
+                synchronized (shard) {
+                    shard.expireSlot(current, now);
+                }
+            }
+        }
+        lastSecond = second;
+    }
+
+    @Override
+    public V get(Object key, Function<K, V> appointedSupplier, Long createExpire, boolean refresh) {
+        if(key == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        Node<K, V> node = data.get(key);
+        if(node != null && node.isExpire(now)) {
+            Shard<K, V> shard = shard(key);
+            synchronized (shard) {
+                shard.removeNode(node);
+            }
+            node = null;
+        }
+
+        if(node == null && load((K) key)) {
+            node = data.get(key);
+        }
+
+        if(node != null) {
+            if(refresh) {
+                touch(node, now);
+            }
+            return node.value;
+        }
+
+        appointedSupplier = appointedSupplier == null ? supplier : appointedSupplier;
+        if(appointedSupplier != null) {
+            try {
+                V value = appointedSupplier.apply((K) key);
+                if (value != null) {
+                    V exists = putIfAbsent((K) key, value, createExpire == null ? expire : createExpire);
+                    return exists == null ? value : exists;
+                }
+            } catch (Exception e) {
+                Logger.error("Create with supplier failed: ", e);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, expire);
+    }
+
+    /**
+     * 写入对象
+     * @param key  键
+     * @param value 值
+     * @param expire 超时时间, 单位: 秒, 小于等于 0 时不超时
+     * @return 原来的对象
+     */
+    @Override
+    public V put(K key, V value, long expire) {
+        if (key == null || value == null){
+            throw new NullPointerException();
+        }
+
+        long now = System.currentTimeMillis();
+        Shard<K, V> shard = shard(key);
+        synchronized (shard) {
+            Node<K, V> node = data.get(key);
+            if(node == null) {
+                shard.addNode(new Node<K, V>(key, value, expire, now));
+                return null;
+            } else {
+                V oldValue = node.isExpire(now) ? null : node.value;
+                node.value = value;
+                shard.reschedule(node, expire, now);
+                return oldValue;
+            }
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putIfAbsent(key, value, expire);
+    }
+
+    /**
+     * 写入如果对象为空
+     * @param key  键
+     * @param value 值
+     * @param expire 超时时间, 单位: 秒, 小于等于 0 时不超时
+     * @return 如果数据存在返回已经存在对象, 如果数据不存在,新的对象被置入,则返回: null
+     */
+    @Override
+    public V putIfAbsent(K key, V value, long expire) {
+        if (key == null || value == null){
+            throw new NullPointerException();
+        }
+
+        long now = System.currentTimeMillis();
+        Shard<K, V> shard = shard(key);
+        synchronized (shard) {
+            Node<K, V> node = data.get(key);
+            if(node != null && !node.isExpire(now)) {
+                return node.value;
+            }
+
+            if(node != null) {
+                shard.removeNode(node);
+            }
+            shard.addNode(new Node<K, V>(key, value, expire, now));
+            return null;
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map) {
+        putAll(map, expire);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> map, long expire) {
+        for(Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue(), expire);
+        }
+    }
+
+    @Override
+    public long getTTL(K key) {
+        Node<K, V> node = data.get(key);
+        return node == null ? -1 : node.expire;
+    }
+
+    /**
+     * 更新某个对象的超时时间
+     *      超时时间没有改变时只按 touchInterval 刷新时间戳
+     * @param key 键
+     * @param expire 超时时间, 单位: 秒
+     * @return true: 成功, false: 失败
+     */
+    @Override
+    public boolean setTTL(K key, long expire) {
+        long now = System.currentTimeMillis();
+        Node<K, V> node = data.get(key);
+        if(node == null || node.isExpire(now)) {
+            return false;
+        }
+
+        if(node.expire != expire) {
+            Shard<K, V> shard = shard(key);
+            synchronized (shard) {
+                if(data.get(key) == node) {
+                    shard.reschedule(node, expire, now);
+                }
+            }
+        } else {
+            touch(node, now);
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if(key == null) {
+            return false;
+        }
+
+        Node<K, V> node = data.get(key);
+        if(node == null && load((K) key)) {
+            node = data.get(key);
+        }
+        return node != null && !node.isExpire(System.currentTimeMillis());
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return values().contains(value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if(key == null) {
+            return null;
+        }
+
+        Shard<K, V> shard = shard(key);
+        synchronized (shard) {
+            Node<K, V> node = data.get(key);
+            if(node == null) {
+                return null;
+            }
+
+            shard.removeNode(node);
+            return node.value;
+        }
+    }
+
+    @Override
+    public void clear() {
+        for(Node<K, V> node : data.values()) {
+            Shard<K, V> shard = shard(node.key);
+            synchronized (shard) {
+                shard.removeNode(node);
+            }
+        }
+    }
+
+    /**
+     * 获取所有的键
+     * @return 键集合的快照
+     */
+    @Override
+    public Set<K> keySet() {
+        return new HashSet<K>(data.keySet());
+    }
+
+    /**
+     * 获取所有的值
+     * @return 值集合的快照
+     */
+    @Override
+    public Collection<V> values() {
+        List<V> values = new ArrayList<V>(data.size());
+        for(Node<K, V> node : data.values()) {
+            values.add(node.value);
+        }
+        return values;
+    }
+
+    /**
+     * 获取所有的键值对
+     * @return 键值对集合的快照
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> entries = new HashSet<Entry<K, V>>();
+        for(Node<K, V> node : data.values()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<K, V>(node.key, node.value));
+        }
+        return entries;
+    }
+
+    /**
+     * 刷新时间戳, 距离上次刷新不足 touchInterval 时不写入
+     * @param node 数据节点
+     * @param now 当前时间
+     */
+    private void touch(Node<K, V> node, long now) {
+        long lastTouch = node.lastTouch;
+        if(now - lastTouch >= touchInterval) {
+            node.lastTouch = now;
+            onTouch(node.key, lastTouch, now, node.expire);
+        }
+    }
+
+    /**
+     * 恢复数据, 用于从外部存储加载数据
+     *      内存中已经存在或者已经超时的数据不会恢复
+     * @param key 键
+     * @param value 值
+     * @param expire 超时时间, 单位: 秒
+     * @param lastTouch 最后刷新的时间
+     * @return true: 恢复成功, false: 没有恢复
+     */
+    protected boolean restore(K key, V value, long expire, long lastTouch) {
+        Node<K, V> node = new Node<K, V>(key, value, expire, lastTouch);
+        if(node.isExpire(System.currentTimeMillis())) {
+            return false;
+        }
+
+        Shard<K, V> shard = shard(key);
+        synchronized (shard) {
+            if(data.containsKey(key)) {
+                return false;
+            }
+
+            shard.addNode(node, false);
+            return true;
+        }
+    }
+
+    /**
+     * 获取内存中的值, 不加载, 不刷新
+     * @param key 键
+     * @return 值
+     */
+    protected V peek(K key) {
+        Node<K, V> node = data.get(key);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * 获取最后刷新的时间
+     * @param key 键
+     * @return 最后刷新的时间, 不存在时返回 -1
+     */
+    protected long getLastTouch(K key) {
+        Node<K, V> node = data.get(key);
+        return node == null ? -1 : node.lastTouch;
+    }
+
+    /**
+     * 数据写入或者超时时间改变后调用, 调用时持有分片的锁
+     * @param key 键
+     */
+    protected void onUpdate(K key) {
+    }
+
+    /**
+     * 时间戳刷新后调用
+     * @param key 键
+     * @param previous 上次刷新的时间
+     * @param current 本次刷新的时间
+     * @param expire 超时时间, 单位: 秒
+     */
+    protected void onTouch(K key, long previous, long current, long expire) {
+    }
+
+    /**
+     * 数据移除或者超时后调用, 调用时持有分片的锁
+     * @param key 键
+     */
+    protected void onRemove(K key) {
+    }
+
+    /**
+     * 内存中不存在数据时调用, 用于从外部存储加载数据
+     * @param key 键
+     * @return true: 已经通过 restore 加载, false: 没有加载
+     */
+    protected boolean load(K key) {
+        return false;
+    }
+
+    /**
+     * 分片
+     *      时间轮的槽是数据节点组成的双向链表, 数据的写入和移除以及时间轮只在持有分片的锁时访问
+     */
+    private static class Shard<K, V> {
+        private ShardedCacheMap<K, V> owner;
+        private ConcurrentMap<K, Node<K, V>> data;
+        private Node<K, V>[] wheel = new Node[WHEEL_SIZE];
+
+        private Shard(ShardedCacheMap<K, V> owner) {
+            this.owner = owner;
+            this.data = owner.data;
+        }
+
+        private void addNode(Node<K, V> node) {
+            addNode(node, true);
+        }
+
+        private void addNode(Node<K, V> node, boolean notify) {
+            data.put(node.key, node);
+            link(node, node.deadline() / 1000);
+            if(notify) {
+                owner.onUpdate(node.key);
+            }
+        }
+
+        private void removeNode(Node<K, V> node) {
+            if(data.remove(node.key, node)) {
+                unlink(node);
+                owner.onRemove(node.key);
+            }
+        }
+
+        private void reschedule(Node<K, V> node, long expire, long now) {
+            unlink(node);
+            node.expire = expire;
+            node.lastTouch = now;
+            link(node, node.deadline() / 1000);
+            owner.onUpdate(node.key);
+        }
+
+        private void link(Node<K, V> node, long second) {
+            if(node.expire <= 0) {
+                node.slot = -1;
+                return;
+            }
+
+            int slot = (int) (second & WHEEL_MASK);
+            node.slot = slot;
+            node.prev = null;
+            node.next = wheel[slot];
+            if(node.next != null) {
+                node.next.prev = node;
+            }
+            wheel[slot] = node;
+        }
+
+        private void unlink(Node<K, V> node) {
+            if(node.slot < 0) {
+                return;
+            }
+
+            if(node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                wheel[node.slot] = node.next;
+            }
+
+            if(node.next != null) {
+                node.next.prev = node.prev;
+            }
+
+            node.prev = null;
+            node.next = null;
+            node.slot = -1;
+        }
+
+        /**
+         * 处理时间轮中的一个槽
+         *      到期的数据移除, 未到期的数据(期间被刷新或者到期时间超过时间轮一圈)按到期时间重新挂到对应的槽上
+         * @param second 槽对应的秒数
+         * @param now 当前时间
+         */
+        private void expireSlot(long second, long now) {
+            int slot = (int) (second & WHEEL_MASK);
+            Node<K, V> node = wheel[slot];
+            wheel[slot] = null;
+
+            while(node != null) {
+                Node<K, V> next = node.next;
+                node.prev = null;
+                node.next = null;
+                node.slot = -1;
+
+                if(node.isExpire(now)) {
+                    if(data.remove(node.key, node)) {
+                        owner.onRemove(node.key);
+                    }
+                } else {
+                    //到期时间在已经处理过的秒数内的, 挂到下一秒的槽上
+                    link(node, Math.max(node.deadline() / 1000, second + 1));
+                }
+
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * 数据节点
+     */
+    private static class Node<K, V> {
+        private K key;
+        private volatile V value;
+        //超时时间, 单位: 秒
+        private long expire;
+        private volatile long lastTouch;
+        private int slot = -1;
+        private Node<K, V> prev;
+        private Node<K, V> next;
+
+        private Node(K key, V value, long expire, long now) {
+            this.key = key;
+            this.value = value;
+            this.expire = expire;
+            this.lastTouch = now;
+        }
+
+        private long deadline() {
+            return lastTouch + expire * 1000;
+        }
+
+        private boolean isExpire(long now) {
+            return expire > 0 && now >= deadline();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.voovan.tools.event;
+
+import org.voovan.tools.TEnv;
+
+/**
+ * 事件队列延迟统计
+ *      按 CoDel 的方式计算: 记录每个事件在队列中的等待时间, 每个周期取最小值作为持续的排队延迟(standing delay).
+ *      短暂的突发只会抬高部分事件的等待时间, 只有一个周期内所有事件的等待时间都很高时才表示队列持续积压.
+ *      执行线程空闲时立即归零, 不等待统计周期结束.
+ *      只在事件执行器的线程中写入, 其他线程只读取发布的结果.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class CoDel {
+    //统计周期, 单位: 毫秒
+    public final static int INTERVAL = TEnv.getSystemProperty("CoDelInterval", 100);
+
+    private long interval;
+    private long windowStart;
+    private long windowMin;
+    private volatile long standingDelay;
+    private volatile long lastDelay;
+
+    public CoDel() {
+        this.interval = INTERVAL * 1000000L;
+        this.windowStart = System.nanoTime();
+        this.windowMin = Long.MAX_VALUE;
+        this.standingDelay = 0;
+        this.lastDelay = 0;
+    }
+
+    /**
+     * 记录事件的等待时间
+     * @param sojourn 等待时间, 单位: 纳秒
+     * @param now 当前时间, System.nanoTime()
+     */
+    public void record(long sojourn, long now) {
+        lastDelay = sojourn;
+        if(sojourn < windowMin) {
+            windowMin = sojourn;
+        }
+
+        if(now - windowStart >= interval) {
+            standingDelay = windowMin;
+            windowMin = Long.MAX_VALUE;
+            windowStart = now;
+        }
+    }
+
+    /**
+     * 执行线程空闲
+     *      队列中没有积压的事件, 持续的排队延迟立即归零并开始新的统计周期,
+     *      避免空闲之后一直读取到空闲之前发布的排队延迟
+     * @param now 当前时间, System.nanoTime()
+     */
+    public void idle(long now) {
+        lastDelay = 0;
+        standingDelay = 0;
+        windowMin = Long.MAX_VALUE;
+        windowStart = now;
+    }
+
+    /**
+     * 获取持续的排队延迟
+     *      上一个统计周期中事件等待时间的最小值
+     * @return 排队延迟, 单位: 纳秒
+     */
+    public long getStandingDelay() {
+        return standingDelay;
+    }
+
+    /**
+     * 获取最近一个事件的等待时间
+     * @return 等待时间, 单位: 纳秒
+     */
+    public long getLastDelay() {
+        return lastDelay;
+    }
+
+    /**
+     * 获取过载等级
+     * @param target 目标延迟, 单位: 纳秒
+     * @return 0: 排队延迟不超过目标延迟, 1-10: 排队延迟为目标延迟的倍数
+     */
+    public int getLevel(long target) {
+        long delay = standingDelay;
+        if(target <= 0 || delay <= target) {
+            return 0;
+        }
+        return (int) Math.min(10, delay / target);
+    }
+}
@@ -21,6 +21,9 @@ public class EventRunner {
 	private Object attachment;
 	private Thread thread = null;
 	private EventRunnerGroup eventRunnerGroup;
+	private CoDel coDel = new CoDel();
+	//从空闲等待中恢复的时间, 空闲期间事件的等待不计入排队延迟
+	private long resumeTime = 0;
 
 	/**
 	 * 事件处理 Thread
@@ -63,6 +66,23 @@ public class EventRunner {
 		this.attachment = attachment;
 	}
 
+	/**
+	 * 获取事件队列延迟统计
+	 * @return 事件队列延迟统计对象
+	 */
+	public CoDel getCoDel() {
+		return coDel;
+	}
+
+	/**
+	 * 标记执行线程从空闲等待中恢复
+	 * 		在执行线程中调用, 之前进入队列的事件只从这个时间开始计算等待时间, 同时将持续的排队延迟归零
+	 */
+	public void resume() {
+		resumeTime = System.nanoTime();
+		coDel.idle(resumeTime);
+	}
+
 	/**
 	 * 添加事件
 	 * @param priority 事件优先级必须在1-10之间
@@ -75,6 +95,21 @@ public class EventRunner {
 		eventQueue.add(EventTask.newInstance(priority, runnable));
 	}
 
+	/**
+	 * 添加事件
+	 * @param priority 事件优先级必须在1-10之间
+	 * @param runnable 事件执行器
+	 * @param addTime 事件开始等待的时间, System.nanoTime()
+	 */
+	public void addEvent(int priority, Runnable runnable, long addTime) {
+		if(priority > 10 || priority < 1) {
+			throw new EventRunnerException("priority must between 1-10");
+		}
+		EventTask eventTask = EventTask.newInstance(priority, runnable);
+		eventTask.addTime = addTime;
+		eventQueue.add(eventTask);
+	}
+
 	/**
 	 * 获取事件任务对象集合
 	 * @return 事件任务对象集合
@@ -98,11 +133,15 @@ public class EventRunner {
 				try {
 					EventTask eventTask = eventQueue.poll(1000, TimeUnit.MILLISECONDS);
 					if(eventTask!=null) {
+						long now = System.nanoTime();
+						coDel.record(now - Math.max(eventTask.addTime, resumeTime), now);
+
 						Runnable runnable = eventTask.getRunnable();
 						if (runnable != null) {
 							runnable.run();
 						}
 					} else {
+						resume();
 						if(eventRunnerGroup.getThreadPool().isShutdown()){
 							break;
 						}
@@ -118,10 +157,12 @@ public class EventRunner {
 	public static class EventTask implements Comparable{
 		private int priority;
 		private Runnable runnable;
+		private long addTime;
 
 		public EventTask(int priority, Runnable runnable) {
 			this.priority = priority;
 			this.runnable = runnable;
+			this.addTime = System.nanoTime();
 		}
 
 		public int getPriority() {
@@ -140,6 +181,14 @@ public class EventRunner {
 			this.runnable = runnable;
 		}
 
+		/**
+		 * 获取事件开始等待的时间
+		 * @return 开始等待的时间, System.nanoTime()
+		 */
+		public long getAddTime() {
+			return addTime;
+		}
+
 		public static EventTask newInstance(int priority, Runnable runnable){
 			return new EventTask(priority, runnable);
 		}
@@ -1,6 +1,7 @@
 package org.voovan.test.tools.buffer;
 
 import junit.framework.TestCase;
+import org.voovan.tools.buffer.MemoryPressure;
 import org.voovan.tools.buffer.TByteBuffer;
 import org.voovan.tools.log.Logger;
 
@@ -57,4 +58,44 @@ public class TByteBufferUnit extends TestCase {
         assertEquals("lylyho", TByteBuffer.toString(b).trim());
 
     }
+
+    public void testMemoryPressure(){
+        //未配置预算时不限制
+        assertEquals(MemoryPressure.NORMAL, TByteBuffer.getMemoryPressure(Long.MAX_VALUE, 0));
+        assertEquals(MemoryPressure.NORMAL, TByteBuffer.getMemoryPressure(Long.MAX_VALUE, -1));
+
+        //默认 75% 进入高压, 90% 进入临界
+        assertEquals(MemoryPressure.NORMAL, TByteBuffer.getMemoryPressure(0, 1000));
+        assertEquals(MemoryPressure.NORMAL, TByteBuffer.getMemoryPressure(749, 1000));
+        assertEquals(MemoryPressure.HIGH, TByteBuffer.getMemoryPressure(750, 1000));
+        assertEquals(MemoryPressure.HIGH, TByteBuffer.getMemoryPressure(899, 1000));
+        assertEquals(MemoryPressure.CRITICAL, TByteBuffer.getMemoryPressure(900, 1000));
+        assertEquals(MemoryPressure.CRITICAL, TByteBuffer.getMemoryPressure(2000, 1000));
+    }
+
+    public void testMallocAccounting() throws InterruptedException {
+        long[] sizes = new long[4];
+
+        //在独立的线程中使用独立的线程缓冲池
+        Thread thread = new Thread(() -> {
+            sizes[0] = TByteBuffer.MALLOC_SIZE.sum();
+            ByteBuffer byteBuffer = TByteBuffer.allocateDirect(1000);
+            sizes[1] = TByteBuffer.MALLOC_SIZE.sum();
+
+            //没有压力时释放到线程缓冲池, 不释放内存
+            TByteBuffer.release(byteBuffer);
+            sizes[2] = TByteBuffer.MALLOC_SIZE.sum();
+
+            //清理线程缓冲池后释放内存
+            sizes[3] = TByteBuffer.shedThreadPool();
+        });
+        thread.start();
+        thread.join();
+
+        //线程缓冲池按需分配的内存都计入
+        assertTrue(sizes[1] - sizes[0] >= 1000);
+        assertEquals(sizes[1], sizes[2]);
+        assertEquals(sizes[1] - sizes[0], sizes[3]);
+        assertEquals(sizes[0], TByteBuffer.MALLOC_SIZE.sum());
+    }
 }
@@ -0,0 +1,128 @@
+package org.voovan.test.tools.cache;
+
+import junit.framework.TestCase;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.bucket.GCRATable;
+import org.voovan.tools.reflect.TReflect;
+
+/**
+ * GCRA 限流表测试
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class GCRATableUnit extends TestCase {
+    private static final long MS = 1000000L;
+
+    //与 RateLimiterFilter 相同的方式计算发射间隔和容忍度
+    private static long emissionInterval(int limitSize, int interval) {
+        return Math.max(1, interval * MS / limitSize);
+    }
+
+    private static long tolerance(String bucketType, int limitSize, int interval) {
+        return "LEAK".equals(bucketType) ? 0 : emissionInterval(limitSize, interval) * (limitSize - 1);
+    }
+
+    private static int capacity(GCRATable gcraTable) throws ReflectiveOperationException {
+        Object[] stripes = TReflect.getFieldValue(gcraTable, "stripes");
+        long[] keys = TReflect.getFieldValue(stripes[0], "keys");
+        return keys.length;
+    }
+
+    public void testTokenBurst() {
+        GCRATable gcraTable = new GCRATable(1);
+        long key = GCRATable.hash(0, "/api/user");
+        long emissionInterval = emissionInterval(5, 10000);
+        long tolerance = tolerance("TOKEN", 5, 10000);
+
+        //TOKEN 允许 limitSize 个请求的突发
+        for(int i=0;i<5;i++) {
+            assertTrue(gcraTable.acquire(key, emissionInterval, tolerance));
+        }
+        assertFalse(gcraTable.acquire(key, emissionInterval, tolerance));
+
+        //不同的规则使用不同的种子, 互不影响
+        assertTrue(gcraTable.acquire(GCRATable.hash(1, "/api/user"), emissionInterval, tolerance));
+    }
+
+    public void testLeakSpacing() {
+        GCRATable gcraTable = new GCRATable(1);
+        long key = GCRATable.hash(0, "127.0.0.1");
+        long emissionInterval = emissionInterval(5, 1000);
+        long tolerance = tolerance("LEAK", 5, 1000);
+
+        //LEAK 不允许突发, 请求按 interval / limitSize 的间隔通过
+        assertTrue(gcraTable.acquire(key, emissionInterval, tolerance));
+        assertFalse(gcraTable.acquire(key, emissionInterval, tolerance));
+
+        TEnv.sleep(100);
+        assertFalse(gcraTable.acquire(key, emissionInterval, tolerance));
+
+        TEnv.sleep(120);
+        assertTrue(gcraTable.acquire(key, emissionInterval, tolerance));
+        assertFalse(gcraTable.acquire(key, emissionInterval, tolerance));
+    }
+
+    public void testCollision() {
+        GCRATable gcraTable = new GCRATable(1);
+        long emissionInterval = 10000 * MS;
+
+        //低位相同的键落在同一个位置, 按线性探测查找
+        long[] keys = new long[]{16, 32, 48, 64};
+        for(long key : keys) {
+            assertTrue(gcraTable.acquire(key, emissionInterval, 0));
+        }
+        assertEquals(4, gcraTable.size());
+
+        for(long key : keys) {
+            assertFalse(gcraTable.acquire(key, emissionInterval, 0));
+        }
+        assertEquals(4, gcraTable.size());
+    }
+
+    public void testExpiredReuse() {
+        GCRATable gcraTable = new GCRATable(1);
+        long emissionInterval = 10000 * MS;
+
+        assertTrue(gcraTable.acquire(16, 50 * MS, 0));
+        assertTrue(gcraTable.acquire(32, emissionInterval, 0));
+        assertTrue(gcraTable.acquire(48, emissionInterval, 0));
+        assertEquals(3, gcraTable.size());
+
+        //探测路径上过期的位置被新的键复用
+        TEnv.sleep(60);
+        assertTrue(gcraTable.acquire(64, emissionInterval, 0));
+        assertEquals(3, gcraTable.size());
+
+        //复用之后探测路径上的其他键仍然能被找到
+        assertFalse(gcraTable.acquire(32, emissionInterval, 0));
+        assertFalse(gcraTable.acquire(48, emissionInterval, 0));
+        assertFalse(gcraTable.acquire(64, emissionInterval, 0));
+
+        //过期的键等同于不存在
+        assertTrue(gcraTable.acquire(16, emissionInterval, 0));
+        assertEquals(4, gcraTable.size());
+    }
+
+    public void testRebuild() throws ReflectiveOperationException {
+        GCRATable gcraTable = new GCRATable(1);
+        assertEquals(16, capacity(gcraTable));
+
+        for(int i=1;i<=1000;i++) {
+            assertTrue(gcraTable.acquire(GCRATable.hash(0, "key_" + i), 500 * MS, 0));
+        }
+        assertEquals(1000, gcraTable.size());
+        int capacity = capacity(gcraTable);
+        assertTrue(capacity >= 1000 * 4 / 3);
+
+        //扩容时丢弃过期的记录, 按活跃记录的数量缩小容量
+        TEnv.sleep(550);
+        for(int i=1;i<=100000 && capacity(gcraTable) == capacity;i++) {
+            assertTrue(gcraTable.acquire(GCRATable.hash(1, "key_" + i), 1, 0));
+        }
+        assertTrue(capacity(gcraTable) < capacity);
+        assertTrue(gcraTable.size() < 16);
+    }
+}
@@ -0,0 +1,185 @@
+package org.voovan.test.tools.cache;
+
+import junit.framework.TestCase;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.collection.ShardedCacheMap;
+import org.voovan.tools.reflect.TReflect;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分片的进程内缓存测试
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ShardedCacheMapTest extends TestCase {
+
+    /**
+     * 按指定的时间执行超时处理, 不启动后台任务
+     */
+    private static void expireTick(ShardedCacheMap cacheMap, long now) throws ReflectiveOperationException {
+        TReflect.invokeMethod(cacheMap, "expireTick", now);
+    }
+
+    public void testPutGet() {
+        ShardedCacheMap<String, String> cacheMap = new ShardedCacheMap<String, String>(4);
+        assertNull(cacheMap.put("key_1", "value_1"));
+        assertEquals("value_1", cacheMap.put("key_1", "value_2"));
+        assertEquals("value_2", cacheMap.get("key_1"));
+        assertNull(cacheMap.get("key_2"));
+        assertEquals(1, cacheMap.size());
+
+        for(int i=0;i<1000;i++) {
+            cacheMap.put("key_" + i, "value_" + i);
+        }
+        assertEquals(1000, cacheMap.size());
+        assertEquals("value_999", cacheMap.get("key_999"));
+        assertTrue(cacheMap.containsKey("key_500"));
+        assertTrue(cacheMap.containsValue("value_500"));
+
+        cacheMap.supplier(key -> key + "_created");
+        assertEquals("key_aaa_created", cacheMap.get("key_aaa"));
+        assertEquals("key_aaa_created", cacheMap.get("key_aaa", key -> "other", null, true));
+        assertEquals(1001, cacheMap.size());
+    }
+
+    public void testTouchInterval() {
+        AtomicInteger touchCount = new AtomicInteger();
+        ShardedCacheMap<String, String> cacheMap = new ShardedCacheMap<String, String>(4) {
+            @Override
+            protected void onTouch(String key, long previous, long current, long expire) {
+                touchCount.incrementAndGet();
+            }
+        };
+        cacheMap.expire(10).touchInterval(200);
+        cacheMap.put("key_1", "value_1");
+
+        //距离上次刷新不足 touchInterval 时不刷新时间戳
+        for(int i=0;i<100;i++) {
+            cacheMap.getAndRefresh("key_1");
+        }
+        assertEquals(0, touchCount.get());
+
+        //不刷新的读取不更新时间戳
+        TEnv.sleep(300);
+        cacheMap.get("key_1");
+        assertEquals(0, touchCount.get());
+
+        for(int i=0;i<100;i++) {
+            cacheMap.getAndRefresh("key_1");
+        }
+        assertEquals(1, touchCount.get());
+
+        //setTTL 超时时间不变时按 touchInterval 刷新
+        assertTrue(cacheMap.setTTL("key_1", 10));
+        assertEquals(1, touchCount.get());
+    }
+
+    public void testWheelExpire() throws ReflectiveOperationException {
+        ShardedCacheMap<String, String> cacheMap = new ShardedCacheMap<String, String>(4);
+        long now = System.currentTimeMillis();
+        cacheMap.put("short", "value", 2);
+        cacheMap.put("never", "value", 0);
+
+        expireTick(cacheMap, now + 1000);
+        assertEquals(2, cacheMap.size());
+
+        expireTick(cacheMap, now + 3000);
+        assertEquals(1, cacheMap.size());
+        assertEquals("value", cacheMap.get("never"));
+    }
+
+    public void testWheelExpireWrapAround() throws ReflectiveOperationException {
+        ShardedCacheMap<String, String> cacheMap = new ShardedCacheMap<String, String>(4);
+        long now = System.currentTimeMillis();
+        //超时时间超过时间轮一圈(512 秒), 到期之前会先经过一次所在的槽
+        cacheMap.put("long", "value", 600);
+        cacheMap.put("short", "value", 100);
+
+        expireTick(cacheMap, now + 101 * 1000);
+        assertEquals(1, cacheMap.size());
+        assertEquals(600, cacheMap.getTTL("long"));
+
+        //经过所在的槽时未到期, 重新挂到到期时间对应的槽上
+        expireTick(cacheMap, now + 599 * 1000);
+        assertEquals(1, cacheMap.size());
+
+        expireTick(cacheMap, now + 601 * 1000);
+        assertEquals(0, cacheMap.size());
+
+        //落后超过一圈时最多追赶一圈, 所有的槽都会被处理
+        cacheMap.put("catchUp", "value", 1);
+        expireTick(cacheMap, now + 2000 * 1000);
+        assertEquals(0, cacheMap.size());
+    }
+
+    public void testPutIfAbsent() {
+        ShardedCacheMap<String, String> cacheMap = new ShardedCacheMap<String, String>(4);
+        assertNull(cacheMap.putIfAbsent("key_1", "value_1"));
+        assertEquals("value_1", cacheMap.putIfAbsent("key_1", "value_2"));
+        assertEquals("value_1", cacheMap.get("key_1"));
+
+        //已经超时的数据被替换
+        cacheMap.put("key_2", "value_1", 1);
+        TEnv.sleep(1100);
+        assertNull(cacheMap.putIfAbsent("key_2", "value_2"));
+        assertEquals("value_2", cacheMap.get("key_2"));
+    }
+
+    public void testRemoveClear() {
+        AtomicInteger removeCount = new AtomicInteger();
+        ShardedCacheMap<String, String> cacheMap = new ShardedCacheMap<String, String>(4) {
+            @Override
+            protected void onRemove(String key) {
+                removeCount.incrementAndGet();
+            }
+        };
+
+        for(int i=0;i<100;i++) {
+            cacheMap.put("key_" + i, "value_" + i, 10);
+        }
+
+        assertEquals("value_0", cacheMap.remove("key_0"));
+        assertNull(cacheMap.remove("key_0"));
+        assertNull(cacheMap.get("key_0"));
+        assertEquals(99, cacheMap.size());
+        assertEquals(1, removeCount.get());
+
+        cacheMap.clear();
+        assertTrue(cacheMap.isEmpty());
+        assertEquals(100, removeCount.get());
+
+        //清空后可以重新写入
+        cacheMap.put("key_0", "value_0");
+        assertEquals("value_0", cacheMap.get("key_0"));
+    }
+
+    public void testTTL() throws ReflectiveOperationException {
+        ShardedCacheMap<String, String> cacheMap = new ShardedCacheMap<String, String>(4);
+        cacheMap.expire(10);
+        cacheMap.put("key_1", "value_1");
+        assertEquals(10, cacheMap.getTTL("key_1"));
+        assertEquals(-1, cacheMap.getTTL("key_2"));
+        assertFalse(cacheMap.setTTL("key_2", 10));
+
+        long now = System.currentTimeMillis();
+        assertTrue(cacheMap.setTTL("key_1", 600));
+        assertEquals(600, cacheMap.getTTL("key_1"));
+
+        //修改超时时间后按新的到期时间挂到时间轮上
+        expireTick(cacheMap, now + 20 * 1000);
+        assertEquals(1, cacheMap.size());
+        expireTick(cacheMap, now + 601 * 1000);
+        assertEquals(0, cacheMap.size());
+
+        cacheMap = new ShardedCacheMap<String, String>(4);
+        now = System.currentTimeMillis();
+        cacheMap.put("key_1", "value_1", 600);
+        assertTrue(cacheMap.setTTL("key_1", 2));
+        expireTick(cacheMap, now + 3000);
+        assertEquals(0, cacheMap.size());
+    }
+}
@@ -0,0 +1,74 @@
+package org.voovan.test.tools.cache;
+
+import junit.framework.TestCase;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.bucket.GCRATable;
+import org.voovan.tools.bucket.SketchWindow;
+
+/**
+ * Count-Min Sketch 滑动窗口测试
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SketchWindowUnit extends TestCase {
+    private static final int INTERVAL = 1000;
+
+    /**
+     * 等待到下一个周期开始之后
+     * @param offset 周期开始之后的时间, 单位: 毫秒
+     */
+    private static void waitEpoch(int offset) {
+        long now = System.currentTimeMillis();
+        TEnv.sleep((int) (INTERVAL - now % INTERVAL) + offset);
+    }
+
+    private static int acquire(SketchWindow sketchWindow, long hash, int limit, int count) {
+        int acquired = 0;
+        for(int i=0;i<count;i++) {
+            if(sketchWindow.acquire(hash, limit)) {
+                acquired++;
+            }
+        }
+        return acquired;
+    }
+
+    public void testLimit() {
+        SketchWindow sketchWindow = new SketchWindow(1024, INTERVAL);
+        long hash = GCRATable.hash(0, "127.0.0.1");
+
+        waitEpoch(10);
+        assertEquals(10, acquire(sketchWindow, hash, 10, 20));
+        assertEquals(10, sketchWindow.estimate(hash));
+
+        //其他的键不受影响
+        long otherHash = GCRATable.hash(0, "127.0.0.2");
+        assertEquals(0, sketchWindow.estimate(otherHash));
+        assertEquals(10, acquire(sketchWindow, otherHash, 10, 20));
+    }
+
+    public void testRollover() {
+        SketchWindow sketchWindow = new SketchWindow(1024, INTERVAL);
+        long hash = GCRATable.hash(0, "127.0.0.1");
+
+        waitEpoch(10);
+        assertEquals(10, acquire(sketchWindow, hash, 10, 20));
+
+        //周期刚切换时上一个周期的计数几乎全部保留在滑动窗口中
+        waitEpoch(50);
+        assertTrue(acquire(sketchWindow, hash, 10, 20) <= 1);
+
+        //周期快结束时上一个周期的计数几乎全部滑出窗口
+        TEnv.sleep(INTERVAL - 200);
+        int acquired = acquire(sketchWindow, hash, 10, 20);
+        assertTrue(acquired >= 6 && acquired <= 9);
+        assertTrue(sketchWindow.estimate(hash) <= 10);
+
+        //超过一个周期没有访问, 两组计数都已经过期
+        waitEpoch(INTERVAL + 10);
+        assertTrue(sketchWindow.estimate(hash) == 0);
+        assertEquals(10, acquire(sketchWindow, hash, 10, 20));
+    }
+}
@@ -0,0 +1,104 @@
+package org.voovan.test.tools.collection;
+
+import junit.framework.TestCase;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.collection.RocksCacheMap;
+import org.voovan.tools.serialize.Serialize;
+import org.voovan.tools.serialize.TSerialize;
+
+import java.util.List;
+
+/**
+ * 持久化进程内缓存测试
+ *
+ * @author: helyho
+ * voovan Framework.
+ * WebSite: https://github.com/helyho/voovan
+ * Licence: Apache v2 License
+ */
+public class RocksCacheMapTest extends TestCase {
+    private static final String DB_NAME = "RocksCacheMapTest";
+
+    private RocksCacheMap<String, String> newCacheMap(String columnFamilyName) {
+        RocksCacheMap<String, String> cacheMap = new RocksCacheMap<String, String>(DB_NAME, columnFamilyName);
+        cacheMap.expire(60);
+        return cacheMap.flushInterval(60).create();
+    }
+
+    public void testRoundTrip() {
+        RocksCacheMap<String, String> cacheMap = newCacheMap("roundTrip");
+        cacheMap.clear();
+
+        cacheMap.put("aaa", "value_aaa");
+        cacheMap.put("bbb", "value_bbb", 1);
+        cacheMap.put("ccc", "value_ccc");
+        cacheMap.remove("ccc");
+        assertEquals(3, cacheMap.getDirtySize());
+
+        cacheMap.flush();
+        assertEquals(0, cacheMap.getDirtySize());
+        assertNotNull(cacheMap.getRocksMap().get("aaa"));
+        assertNotNull(cacheMap.getRocksMap().get("bbb"));
+        assertNull(cacheMap.getRocksMap().get("ccc"));
+
+        //重启后内存中没有数据, 第一次访问时从 RocksMap 中加载
+        RocksCacheMap<String, String> restartMap = newCacheMap("roundTrip");
+        assertEquals(0, restartMap.size());
+        assertEquals("value_aaa", restartMap.get("aaa"));
+        assertEquals(60, restartMap.getTTL("aaa"));
+        assertEquals(1, restartMap.size());
+        assertNull(restartMap.get("ccc"));
+
+        //加载时已经超时的记录不恢复, 并在下一次写入时删除
+        TEnv.sleep(1100);
+        assertNull(restartMap.get("bbb"));
+        restartMap.flush();
+        assertNull(restartMap.getRocksMap().get("bbb"));
+
+        //只存在于 RocksMap 中的数据也能被移除
+        RocksCacheMap<String, String> removeMap = newCacheMap("roundTrip");
+        removeMap.remove("aaa");
+        removeMap.flush();
+        assertNull(removeMap.getRocksMap().get("aaa"));
+
+        removeMap.clear();
+    }
+
+    public void testFlushFailed() {
+        RocksCacheMap<String, String> cacheMap = newCacheMap("flushFailed");
+        cacheMap.clear();
+
+        cacheMap.put("aaa", "value_aaa");
+        cacheMap.put("bbb", "value_bbb");
+
+        Serialize serialize = TSerialize.SERIALIZE;
+        TSerialize.SERIALIZE = new Serialize() {
+            @Override
+            public byte[] serialize(Object obj) {
+                throw new RuntimeException("serialize failed");
+            }
+
+            @Override
+            public <T> T unserialize(byte[] bytes) {
+                return serialize.unserialize(bytes);
+            }
+        };
+
+        try {
+            cacheMap.flush();
+        } finally {
+            TSerialize.SERIALIZE = serialize;
+        }
+
+        //写入失败的数据重新标记, 下一次写入时重试
+        assertEquals(2, cacheMap.getDirtySize());
+
+        cacheMap.flush();
+        assertEquals(0, cacheMap.getDirtySize());
+        List<Object> record = cacheMap.getRocksMap().get("aaa");
+        assertEquals("value_aaa", record.get(2));
+        assertEquals(60L, ((Number) record.get(1)).longValue());
+
+        cacheMap.clear();
+    }
+}
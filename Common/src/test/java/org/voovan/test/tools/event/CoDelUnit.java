@@ -0,0 +1,76 @@
+package org.voovan.test.tools.event;
+
+import junit.framework.TestCase;
+import org.voovan.tools.event.CoDel;
+
+/**
+ * 事件队列延迟统计测试
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class CoDelUnit extends TestCase {
+    private static final long MS = 1000000L;
+    private static final long INTERVAL = CoDel.INTERVAL * MS;
+
+    public void testStandingDelay() {
+        long now = System.nanoTime();
+        CoDel coDel = new CoDel();
+
+        //统计周期结束前不发布
+        coDel.record(50 * MS, now + 10 * MS);
+        assertEquals(0, coDel.getStandingDelay());
+        assertEquals(50 * MS, coDel.getLastDelay());
+
+        //发布周期内的最小值
+        coDel.record(30 * MS, now + INTERVAL + MS);
+        assertEquals(30 * MS, coDel.getStandingDelay());
+
+        //短暂的突发不影响持续的排队延迟
+        coDel.record(500 * MS, now + INTERVAL + 2 * MS);
+        coDel.record(1 * MS, now + INTERVAL * 2 + 2 * MS);
+        assertEquals(1 * MS, coDel.getStandingDelay());
+        assertEquals(1 * MS, coDel.getLastDelay());
+    }
+
+    public void testLevel() {
+        long now = System.nanoTime();
+        CoDel coDel = new CoDel();
+        long target = 10 * MS;
+
+        assertEquals(0, coDel.getLevel(target));
+
+        coDel.record(10 * MS, now + INTERVAL + MS);
+        assertEquals(0, coDel.getLevel(target));
+
+        coDel.record(35 * MS, now + INTERVAL * 2 + 2 * MS);
+        assertEquals(3, coDel.getLevel(target));
+
+        //最高等级为 10
+        coDel.record(5000 * MS, now + INTERVAL * 3 + 3 * MS);
+        assertEquals(10, coDel.getLevel(target));
+
+        //目标延迟不大于 0 时不启用
+        assertEquals(0, coDel.getLevel(0));
+    }
+
+    public void testIdle() {
+        long now = System.nanoTime();
+        CoDel coDel = new CoDel();
+        coDel.record(100 * MS, now + INTERVAL + MS);
+        assertEquals(10, coDel.getLevel(10 * MS));
+
+        //执行线程空闲后立即归零, 不会一直读取到空闲之前的排队延迟
+        coDel.idle(now + INTERVAL + 2 * MS);
+        assertEquals(0, coDel.getStandingDelay());
+        assertEquals(0, coDel.getLevel(10 * MS));
+
+        //空闲之后开始新的统计周期
+        coDel.record(50 * MS, now + INTERVAL + 3 * MS);
+        assertEquals(0, coDel.getStandingDelay());
+        coDel.record(50 * MS, now + INTERVAL * 2 + 3 * MS);
+        assertEquals(5, coDel.getLevel(10 * MS));
+    }
+}
@@ -121,7 +121,9 @@ public class EventProcess {
                     session.flush();
                 }
 
-                if (session.getReadByteBufferChannel().size() > 0) {
+                //消息不完整时由下一次读取事件触发, 不再重复触发
+                if (session.getReadByteBufferChannel().size() > 0 &&
+                        session.getMessageLoader().getStopType() != MessageLoader.StopType.INCOMPLETE) {
                     EventTrigger.fireReceiveAsync(session);
                 }
             }
@@ -55,6 +55,8 @@ public abstract class IoSession<T extends SocketContext> extends Attributes {
 	private State state;
 	private SelectionKey selectionKey;
 	private SocketSelector socketSelector;
+	//发送缓冲区中的数据开始等待 socketChannel 可写的时间, 0: 没有等待
+	private volatile long writeWaitTime = 0;
 
 	private Object attachment;
 
@@ -128,6 +130,10 @@ public abstract class IoSession<T extends SocketContext> extends Attributes {
 		readByteBufferChannel = new ByteBufferChannel(socketContext.getReadBufferSize());
 		sendByteBufferChannel = new ByteBufferChannel(socketContext.getSendBufferSize());
 		sendByteBufferChannel.setThreadSafe(SocketContext.ASYNC_SEND);
+		if(socketContext.getMaxBufferSize() > 0) {
+			readByteBufferChannel.setMaxSize(socketContext.getMaxBufferSize());
+			sendByteBufferChannel.setMaxSize(socketContext.getMaxBufferSize());
+		}
 		messageLoader = new MessageLoader(this);
 		checkIdle();
 	}
@@ -532,6 +538,84 @@ public abstract class IoSession<T extends SocketContext> extends Attributes {
 		return -1;
 	}
 
+	/**
+	 * 直接向缓冲区发送消息, 不推送到 socketChannel
+	 * 		缓冲区空间不足时不写入, 不会阻塞, 也不会触发 onSent 事件, 不经过任何过滤器
+	 * 	@param buffer byte缓冲区
+	 * 	@return 发送的数据大小, -1: 缓冲区空间不足或发送失败
+	 */
+	public int trySend(ByteBuffer buffer){
+		if(buffer.remaining() + sendByteBufferChannel.size() > sendByteBufferChannel.getMaxSize()){
+			return -1;
+		}
+
+		try {
+			if(sslParser!=null && sslParser.isHandShakeDone()) {
+				sslParser.warpData(buffer);
+				return buffer.limit();
+			} else {
+				return sendToBuffer(buffer);
+			}
+		} catch (IOException e) {
+			Logger.error("IoSession.trySend data failed" ,e);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * 推送缓冲区的数据到 socketChannel, 不等待
+	 * 		socketChannel 暂时不能写入时剩余的数据留在缓冲区, 注册 OP_WRITE 在可写时继续推送.
+	 * 		需要在会话的事件线程中调用
+	 * @return 缓冲区中剩余的字节数, -1: 发送失败
+	 */
+	public int tryFlush() {
+		if(sendByteBufferChannel.size() == 0) {
+			writeWaitTime = 0;
+			return 0;
+		}
+
+		int size;
+		int remain;
+		ByteBuffer byteBuffer = sendByteBufferChannel.getByteBuffer();
+		try {
+			size = socketSelector == null ? -1 : socketSelector.tryWriteToChannel(socketContext, byteBuffer);
+			remain = byteBuffer.remaining();
+		} finally {
+			sendByteBufferChannel.compact();
+		}
+
+		if(size < 0) {
+			this.close();
+			return -1;
+		}
+
+		if(remain > 0) {
+			//有数据写出时重新开始计算等待时间
+			if(size > 0 || writeWaitTime == 0) {
+				writeWaitTime = System.currentTimeMillis();
+			}
+			socketSelector.waitWritable(this);
+		} else {
+			writeWaitTime = 0;
+			//ssl 握手完成后才触发 flush 事件
+			if(!sslMode || sslParser.isHandShakeDone()) {
+				EventTrigger.fireFlush(this);
+			}
+		}
+
+		return remain;
+	}
+
+	/**
+	 * 发送缓冲区中的数据是否超过发送超时时间仍然无法写出
+	 * @return true: 发送超时, false: 没有超时
+	 */
+	public boolean isSendTimeout() {
+		long waitTime = writeWaitTime;
+		return waitTime != 0 && System.currentTimeMillis() - waitTime >= socketContext.getSendTimeout();
+	}
+
 	/**
 	 * 推送缓冲区的数据到 socketChannel
 	 */
@@ -40,6 +40,7 @@ public class MessageLoader {
 		SOCKET_CLOSED,
 		STREAM_END,
 		MSG_SPLITTER,
+		INCOMPLETE,
 		EXCEPTION
 	}
 
@@ -166,6 +167,10 @@ public class MessageLoader {
 						if (splitLength >= 0) {
 							stopType = StopType.MSG_SPLITTER;
 							break;
+						} else if (messageSplitter.isResumable()) {
+							//消息不完整, 等待下一次读取事件
+							stopType = StopType.INCOMPLETE;
+							break;
 						} else {
 							//消息不可分割,且有消息报文存在, 则尝试继续从 Socket 通道读取数据
 							session.getSocketSelector().select();
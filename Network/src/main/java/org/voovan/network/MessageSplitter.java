@@ -26,4 +26,14 @@ public interface MessageSplitter {
 	 */
 	public int canSplite(IoSession session, ByteBuffer byteBuffer);
 
+	/**
+	 * 消息不完整时是否立即返回
+	 * 		返回 true 时, 分割器需要自己保存判断的进度, 在下一次读取事件到来时继续判断, 不会占用事件线程等待数据
+	 * 		返回 false 时, 在当前线程中继续从 Socket 读取数据, 直到消息可分割
+	 * @return true: 立即返回, false: 继续读取
+	 */
+	public default boolean isResumable() {
+		return false;
+	}
+
 }
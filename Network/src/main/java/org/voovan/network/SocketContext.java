@@ -122,6 +122,7 @@ public abstract class SocketContext<C extends SelectableChannel, S extends IoSes
 	protected ConnectType connectType;
 	protected int readBufferSize = TByteBuffer.DEFAULT_BYTE_BUFFER_SIZE;
 	protected int sendBufferSize = TByteBuffer.DEFAULT_BYTE_BUFFER_SIZE;
+	protected int maxBufferSize = 0;
 
 	protected int idleInterval = 0;
 	protected long lastReadTime = System.currentTimeMillis();
@@ -220,6 +221,7 @@ public abstract class SocketContext<C extends SelectableChannel, S extends IoSes
 		this.sslManager = parentSocketContext.sslManager;
 		this.readBufferSize = parentSocketContext.readBufferSize;
 		this.sendBufferSize = parentSocketContext.sendBufferSize;
+		this.maxBufferSize = parentSocketContext.maxBufferSize;
 		this.idleInterval = parentSocketContext.idleInterval;
 		this.acceptEventRunnerGroup = parentSocketContext.acceptEventRunnerGroup;
 		this.ioEventRunnerGroup = parentSocketContext.ioEventRunnerGroup;
@@ -299,6 +301,29 @@ public abstract class SocketContext<C extends SelectableChannel, S extends IoSes
 		this.sendBufferSize = sendBufferSize;
 	}
 
+	/**
+	 * 会话缓冲区的内存预算
+	 * @return 单个读/写缓冲区允许扩容到的最大字节数, 小于等于 0 则使用 ByteBufferChannel 的默认值
+	 */
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	/**
+	 * 设置会话缓冲区的内存预算
+	 * 		读缓冲区达到预算后会暂停读取, 直到数据被消费
+	 * @param maxBufferSize 单个读/写缓冲区允许扩容到的最大字节数
+	 */
+	public void setMaxBufferSize(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+
+		IoSession session = getSession();
+		if(session != null && maxBufferSize > 0) {
+			session.getReadByteBufferChannel().setMaxSize(maxBufferSize);
+			session.getSendByteBufferChannel().setMaxSize(maxBufferSize);
+		}
+	}
+
 	public boolean isRegister() {
 		return isRegister;
 	}
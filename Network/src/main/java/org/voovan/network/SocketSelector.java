@@ -8,6 +8,8 @@ import org.voovan.network.tcp.TcpSocket;
 import org.voovan.network.udp.UdpSocket;
 import org.voovan.tools.*;
 import org.voovan.tools.buffer.ByteBufferChannel;
+import org.voovan.tools.buffer.MemoryPressure;
+import org.voovan.tools.buffer.TByteBuffer;
 import org.voovan.tools.collection.ArraySet;
 import org.voovan.tools.event.EventRunner;
 import org.voovan.tools.hashwheeltimer.HashWheelTask;
@@ -21,6 +23,8 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -42,6 +46,12 @@ public class SocketSelector implements Closeable {
 	protected AtomicBoolean selecting = new AtomicBoolean(false);
 	private boolean useSelectNow = false;
 
+	//因内存预算被暂停读取的会话, 仅在选择器线程中访问
+	private ArrayList<IoSession> suspendedSessions = new ArrayList<IoSession>();
+	private MemoryPressure memoryPressure = MemoryPressure.NORMAL;
+	//存在暂停读取的会话时, 阻塞选择的最大时间
+	private final static int SUSPEND_CHECK_INTERVAL = 10;
+
 	/**
 	 * 构造方法
 	 * @param eventRunner 事件执行器
@@ -179,9 +189,9 @@ public class SocketSelector implements Closeable {
 
 	/**
 	 * 是否在选择器绑定的执行器的线程中执行
-	 * @return
+	 * @return true: 在执行器的线程中, false: 在其他线程中
 	 */
-	private boolean inEventRunner(){
+	public boolean inEventRunner(){
 		return eventRunner.getThread() == Thread.currentThread();
 	}
 
@@ -189,10 +199,11 @@ public class SocketSelector implements Closeable {
 	 * 向执行器中增加一个选择事件
 	 */
 	public void addIoEvent(){
+		//上一次选择处理了 IO 事件时, 从那次选择开始计算等待时间, 同步处理 IO 事件的耗时也计入事件队列的排队延迟
 		eventRunner.addEvent(4, () -> {
 			select();
 			addIoEvent();
-		});
+		}, useSelectNow ? selectTime : System.nanoTime());
 	}
 
 	/**
@@ -218,6 +229,9 @@ public class SocketSelector implements Closeable {
 
 	int JvmEpollBugFlag = 0;
 
+	//最近一次选择开始的时间
+	private long selectTime = 0;
+
 	/**
 	 * 事件选择业务
 	 */
@@ -225,6 +239,11 @@ public class SocketSelector implements Closeable {
 		// 事件循环
 		try {
 			if (selector != null && selector.isOpen()) {
+				selectTime = System.nanoTime();
+
+				//检查内存压力, 恢复被暂停读取的会话
+				checkMemoryPressure();
+
 				//执行选择操作, 如果还有可选择的 socket 注册的 key
 				processSelect();
 
@@ -253,14 +272,88 @@ public class SocketSelector implements Closeable {
 				//检查超时
 				checkReadTimeout();
 				selecting.compareAndSet(false, true);
-				selector.select(SocketContext.SELECT_INTERVAL);
+				selector.select(suspendedSessions.isEmpty() ? SocketContext.SELECT_INTERVAL : SUSPEND_CHECK_INTERVAL);
 				selecting.compareAndSet(true, false);
+				//阻塞选择期间线程是空闲的, 不计入排队延迟
+				eventRunner.resume();
 			} catch (IOException e) {
 				Logger.error(e);
 			}
 		}
 	}
 
+	/**
+	 * 内存压力检查
+	 * 		CRITICAL: 清理当前线程的缓冲池
+	 * 		压力解除后: 恢复缓冲区已有可用空间的会话的读取
+	 */
+	private void checkMemoryPressure() {
+		memoryPressure = TByteBuffer.getMemoryPressure();
+
+		if(memoryPressure == MemoryPressure.CRITICAL) {
+			TByteBuffer.shedThreadPool();
+			return;
+		}
+
+		if(!suspendedSessions.isEmpty()) {
+			Iterator<IoSession> iterator = suspendedSessions.iterator();
+			while (iterator.hasNext()) {
+				IoSession session = iterator.next();
+				SelectionKey selectionKey = session.getSelectionKey();
+
+				if (!session.isConnected() || selectionKey == null || !selectionKey.isValid()) {
+					iterator.remove();
+					continue;
+				}
+
+				if (canRead(session)) {
+					NioUtil.addOps(selectionKey, SelectionKey.OP_READ);
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 判断会话是否可以继续读取
+	 * @param session IoSession 对象
+	 * @return true: 可以读取, false: 需要暂停读取
+	 */
+	private boolean canRead(IoSession session) {
+		if(memoryPressure == MemoryPressure.CRITICAL) {
+			return false;
+		}
+
+		ByteBufferChannel byteBufferChannel = session.isSSLMode()
+				? session.getSSLParser().getSSlByteBufferChannel()
+				: session.getReadByteBufferChannel();
+
+		if(byteBufferChannel.isReleased()) {
+			return false;
+		}
+
+		//缓冲区有剩余空间则直接读取
+		if(byteBufferChannel.available() > 0) {
+			return true;
+		}
+
+		//缓冲区需要扩容, 高压或超过会话的预算则暂停读取
+		return memoryPressure == MemoryPressure.NORMAL &&
+				byteBufferChannel.capacity() + 4 * 1024 <= byteBufferChannel.getMaxSize();
+	}
+
+	/**
+	 * 暂停会话的读取, 等待内存压力解除或者缓冲区中的数据被消费
+	 * @param session IoSession 对象
+	 */
+	private void suspendRead(IoSession session) {
+		SelectionKey selectionKey = session.getSelectionKey();
+		if(selectionKey != null && selectionKey.isValid()) {
+			NioUtil.removeOps(selectionKey, SelectionKey.OP_READ);
+			suspendedSessions.add(session);
+		}
+	}
+
 	/**
 	 * 读超时检查
 	 */
@@ -276,6 +369,10 @@ public class SocketSelector implements Closeable {
 					if(socketContext.isTimeOut() && bufferDataEmpty) {
 						socketContext.close();
 						EventTrigger.fireException(socketContext.getSession(), new TimeoutException("Socket Read timeout"));
+					} else if(socketContext.getSession().isSendTimeout()) {
+						//等待可写的数据超过发送超时时间仍然无法写出
+						socketContext.close();
+						EventTrigger.fireException(socketContext.getSession(), new TimeoutException("Socket send timeout"));
 					} else if(!bufferDataEmpty) {
 						socketContext.updateLastTime();
 					}
@@ -310,6 +407,12 @@ public class SocketSelector implements Closeable {
 						socketContext.updateLastTime();
 						readFromChannel(socketContext, channel);
 					}
+
+					// 可以继续写出发送缓冲区中剩余的数据
+					if (selectedKey.isValid() && (selectedKey.readyOps() & SelectionKey.OP_WRITE) != 0) {
+						NioUtil.removeOps(selectedKey, SelectionKey.OP_WRITE);
+						socketContext.getSession().tryFlush();
+					}
 				}
 			}
 //			else {
@@ -320,6 +423,14 @@ public class SocketSelector implements Closeable {
 		selectedKeys.reset();
 	}
 
+	/**
+	 * 选择器是否处于打开状态
+	 * @return true: 打开, false: 关闭
+	 */
+	public boolean isOpen() {
+		return selector.isOpen();
+	}
+
 	/**
 	 * 选择器关闭方法
 	 */
@@ -381,6 +492,16 @@ public class SocketSelector implements Closeable {
 	 * @param socketChannel Socketchannel 对象
 	 */
 	public void tcpAccept(TcpServerSocket socketContext, SocketChannel socketChannel) {
+		//内存达到临界时拒绝新的连接
+		if(TByteBuffer.getMemoryPressure() == MemoryPressure.CRITICAL) {
+			try {
+				socketChannel.close();
+			} catch (IOException e) {
+				Logger.error(e);
+			}
+			return;
+		}
+
 		TcpSocket socket = new TcpSocket(socketContext, socketChannel);
 		EventTrigger.fireAccept(socket.getSession());
 	}
@@ -399,6 +520,12 @@ public class SocketSelector implements Closeable {
 								? session.getSSLParser().getSSlByteBufferChannel()
 								: session.getReadByteBufferChannel();
 
+		//内存压力或超出会话预算时暂停读取
+		if(!canRead(session)) {
+			suspendRead(session);
+			return 0;
+		}
+
 		//自动扩容
 		if(byteBufferChannel.available() == 0) {
 			byteBufferChannel.reallocate(byteBufferChannel.capacity() + 4 * 1024);
@@ -456,6 +583,58 @@ public class SocketSelector implements Closeable {
 		return totalSendByte;
 	}
 
+	/**
+	 * TCP 向通道写数据, 不等待
+	 * 		写入 socketChannel 当前可以接受的数据, 剩余的数据保留在 buffer 中
+	 * @param socketContext SocketContext 对象
+	 * @param buffer 待写入的数据缓冲对象
+	 * @return 写入数据的字节数, -1:写入失败
+	 */
+	public int tryWriteToChannel(SocketContext socketContext, ByteBuffer buffer) {
+		if (socketContext.getConnectType() != ConnectType.TCP) {
+			return writeToChannel(socketContext, buffer);
+		}
+
+		try {
+			socketContext.updateLastTime();
+
+			int totalSendByte = 0;
+			SocketChannel socketChannel = ((TcpSocket) socketContext).socketChannel();
+			while (socketContext.isConnected() && buffer.hasRemaining()) {
+				int sendSize = socketChannel.write(buffer);
+				if (sendSize < 0) {
+					socketContext.close();
+					return -1;
+				} else if (sendSize == 0) {
+					break;
+				}
+				totalSendByte += sendSize;
+			}
+			return totalSendByte;
+		} catch (Exception e) {
+			return dealException(socketContext, e);
+		}
+	}
+
+	/**
+	 * 等待会话的通道可写, 可写时继续推送发送缓冲区中的数据
+	 * @param session IoSession 对象
+	 */
+	public void waitWritable(IoSession session) {
+		SelectionKey selectionKey = session.getSelectionKey();
+		if(selectionKey != null && selectionKey.isValid()) {
+			if(inEventRunner()) {
+				NioUtil.addOps(selectionKey, SelectionKey.OP_WRITE);
+			} else {
+				addEvent(6, () -> {
+					if (selectionKey.isValid()) {
+						NioUtil.addOps(selectionKey, SelectionKey.OP_WRITE);
+					}
+				});
+			}
+		}
+	}
+
 	/**
 	 * UDP 服务接受一个新的连接
 	 * @param socketContext UdpServerSocket 对象
@@ -0,0 +1,154 @@
+package org.voovan.test.network;
+
+import junit.framework.TestCase;
+import org.voovan.network.IoSession;
+import org.voovan.network.MessageSplitter;
+import org.voovan.network.SocketContext;
+import org.voovan.network.SocketSelector;
+import org.voovan.network.tcp.TcpSocket;
+import org.voovan.tools.buffer.ByteBufferChannel;
+import org.voovan.tools.buffer.MemoryPressure;
+import org.voovan.tools.event.EventRunnerGroup;
+import org.voovan.tools.reflect.TReflect;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 选择器内存预算测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SocketSelectorUnit extends TestCase {
+	private static EventRunnerGroup eventRunnerGroup = SocketContext.createEventRunnerGroup("SocketSelectorUnit", 1, false);
+
+	private static class MockSession extends IoSession<TcpSocket> {
+		public MockSession(TcpSocket tcpSocket) {
+			super(tcpSocket);
+		}
+
+		@Override
+		public String localAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int loaclPort() {
+			return 0;
+		}
+
+		@Override
+		public String remoteAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int remotePort() {
+			return 0;
+		}
+
+		@Override
+		protected MessageSplitter getMessageSplitter() {
+			return null;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public boolean close() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "MockSession";
+		}
+	}
+
+	private SocketSelector socketSelector;
+
+	@Override
+	protected void setUp() {
+		socketSelector = (SocketSelector) eventRunnerGroup.choseEventRunner().attachment();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		TReflect.setFieldValue(socketSelector, "memoryPressure", MemoryPressure.NORMAL);
+	}
+
+	private boolean canRead(IoSession session, MemoryPressure memoryPressure) throws Exception {
+		TReflect.setFieldValue(socketSelector, "memoryPressure", memoryPressure);
+		return TReflect.invokeMethod(socketSelector, "canRead", session);
+	}
+
+	private static MockSession newSession(int maxBufferSize) throws IOException {
+		TcpSocket tcpSocket = new TcpSocket("127.0.0.1", 1, 6000);
+		tcpSocket.setMaxBufferSize(maxBufferSize);
+		return new MockSession(tcpSocket);
+	}
+
+	private static void fill(ByteBufferChannel byteBufferChannel) {
+		byteBufferChannel.writeEnd(ByteBuffer.allocate(byteBufferChannel.available()));
+		assertEquals(0, byteBufferChannel.available());
+	}
+
+	public void testMaxBufferSize() throws IOException {
+		//会话的缓冲区使用连接的预算
+		MockSession session = newSession(64 * 1024);
+		assertEquals(64 * 1024, session.getReadByteBufferChannel().getMaxSize());
+		assertEquals(64 * 1024, session.getSendByteBufferChannel().getMaxSize());
+	}
+
+	public void testSessionBudget() throws Exception {
+		ByteBufferChannel readChannel;
+
+		//缓冲区满且扩容后不超过预算时继续读取
+		MockSession session = newSession(64 * 1024);
+		readChannel = session.getReadByteBufferChannel();
+		assertTrue(canRead(session, MemoryPressure.NORMAL));
+		fill(readChannel);
+		assertTrue(canRead(session, MemoryPressure.NORMAL));
+
+		//扩容后超过预算时暂停读取
+		session = newSession(1024);
+		readChannel = session.getReadByteBufferChannel();
+		assertTrue(canRead(session, MemoryPressure.NORMAL));
+		fill(readChannel);
+		assertFalse(canRead(session, MemoryPressure.NORMAL));
+
+		//数据被消费后恢复读取
+		readChannel.shrink(0, 100);
+		assertTrue(canRead(session, MemoryPressure.NORMAL));
+
+		readChannel.release();
+		assertFalse(canRead(session, MemoryPressure.NORMAL));
+	}
+
+	public void testMemoryPressure() throws Exception {
+		MockSession session = newSession(64 * 1024);
+		ByteBufferChannel readChannel = session.getReadByteBufferChannel();
+
+		//高压时缓冲区有空间可以读取, 但不再扩容
+		assertTrue(canRead(session, MemoryPressure.HIGH));
+		fill(readChannel);
+		assertFalse(canRead(session, MemoryPressure.HIGH));
+		assertTrue(canRead(session, MemoryPressure.NORMAL));
+
+		//临界时暂停所有读取
+		readChannel.clear();
+		assertFalse(canRead(session, MemoryPressure.CRITICAL));
+	}
+}
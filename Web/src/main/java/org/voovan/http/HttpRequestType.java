@@ -9,5 +9,5 @@ package org.voovan.http;
  * Licence: Apache v2 License
  */
 public enum HttpRequestType {
-    HTTP, WEBSOCKET, UPGRADE
+    HTTP, WEBSOCKET, UPGRADE, HTTP2
 }
@@ -12,7 +12,9 @@ import org.voovan.http.server.HttpRequest;
 import org.voovan.http.server.HttpSessionState;
 import org.voovan.http.server.WebServerHandler;
 import org.voovan.http.server.WebSocketDispatcher;
+import org.voovan.http.websocket.WebSocketDeflate;
 import org.voovan.http.websocket.WebSocketFrame;
+import org.voovan.http.websocket.WebSocketHeartBeat;
 import org.voovan.http.websocket.WebSocketRouter;
 import org.voovan.http.websocket.WebSocketSession;
 import org.voovan.http.websocket.WebSocketType;
@@ -67,6 +69,10 @@ public class HttpClient extends PooledObject implements Closeable{
 	private SynchronousHandler synchronousHandler;
 	private AsyncHandler asyncHandler;
 	private boolean paramInUrl = false;
+	private boolean webSocketDeflate = false;
+	private int webSocketDeflateMinSize = WebSocketDeflate.DEFAULT_MIN_SIZE;
+	//和服务端默认的 maxRequestSize 一致, 64M
+	private int webSocketMaxMessageSize = 64 * 1024 * 1024;
 
 	/**
 	 * 构建函数
@@ -207,6 +213,60 @@ public class HttpClient extends PooledObject implements Closeable{
 		return this;
 	}
 
+	/**
+	 * 获取 WebSocket 连接是否请求 permessage-deflate 压缩扩展
+	 * @return true:是, false: 否
+	 */
+	public boolean isWebSocketDeflate() {
+		return webSocketDeflate;
+	}
+
+	/**
+	 * 设置 WebSocket 连接是否请求 permessage-deflate 压缩扩展, 需要在 webSocket 方法之前调用
+	 * @param webSocketDeflate true:是, false: 否
+	 * @return  HttpClient 对象
+	 */
+	public HttpClient setWebSocketDeflate(boolean webSocketDeflate) {
+		this.webSocketDeflate = webSocketDeflate;
+		return this;
+	}
+
+	/**
+	 * 获取 WebSocket 消息压缩的最小字节数
+	 * @return 压缩的最小字节数
+	 */
+	public int getWebSocketDeflateMinSize() {
+		return webSocketDeflateMinSize;
+	}
+
+	/**
+	 * 设置 WebSocket 消息压缩的最小字节数, 小于这个值的消息不压缩
+	 * @param webSocketDeflateMinSize 压缩的最小字节数
+	 * @return  HttpClient 对象
+	 */
+	public HttpClient setWebSocketDeflateMinSize(int webSocketDeflateMinSize) {
+		this.webSocketDeflateMinSize = webSocketDeflateMinSize;
+		return this;
+	}
+
+	/**
+	 * 获取 WebSocket 压缩消息解压后的最大字节数
+	 * @return 最大字节数
+	 */
+	public int getWebSocketMaxMessageSize() {
+		return webSocketMaxMessageSize;
+	}
+
+	/**
+	 * 设置 WebSocket 压缩消息解压后的最大字节数, 超过时关闭连接, 小于等于 0 不限制
+	 * @param webSocketMaxMessageSize 最大字节数
+	 * @return  HttpClient 对象
+	 */
+	public HttpClient setWebSocketMaxMessageSize(int webSocketMaxMessageSize) {
+		this.webSocketMaxMessageSize = webSocketMaxMessageSize;
+		return this;
+	}
+
 	/**
 	 * 重新初始化 http 头
 	 * @return  HttpClient 对象
@@ -685,6 +745,9 @@ public class HttpClient extends PooledObject implements Closeable{
 		httpRequest.header().put("Origin", this.urlString);
 		httpRequest.header().put("Sec-WebSocket-Version","13");
 		httpRequest.header().put("Sec-WebSocket-Key","c1Mm+c0b28erlzCWWYfrIg==");
+		if(webSocketDeflate) {
+			httpRequest.header().put(HttpStatic.SEC_WEB_SOCKET_EXTENSIONS_STRING, WebSocketDeflate.offer());
+		}
 		Response response =send(location);
 	}
 
@@ -705,13 +768,26 @@ public class HttpClient extends PooledObject implements Closeable{
 	/**
 	 * 初始化 WebSocket
 	 *    在 HttpFilter 中触发
+	 * @param response 协议升级的响应
 	 */
-	protected void initWebSocket( ){
+	protected void initWebSocket(Response response){
 		//设置 WebSocket 标记
 		isWebSocket = true;
 
 		IoSession session = socket.getSession();
 
+		//permessage-deflate 压缩扩展协商, 服务端的响应无法满足时关闭连接
+		String extensions = response.header().get(HttpStatic.SEC_WEB_SOCKET_EXTENSIONS_STRING);
+		if(extensions != null) {
+			WebSocketDeflate deflate = webSocketDeflate ? WebSocketDeflate.negotiate(extensions, webSocketDeflateMinSize, webSocketMaxMessageSize) : null;
+			if(deflate == null) {
+				Logger.error("WebSocket extensions negotiation failed: " + extensions);
+				session.close();
+				return;
+			}
+			WebServerHandler.getAttachment(session).setWebSocketDeflate(deflate);
+		}
+
 		WebSocketSession webSocketSession = new WebSocketSession(socket.getSession(), webSocketRouter, WebSocketType.CLIENT);
 		WebSocketHandler webSocketHandler = new WebSocketHandler(this, webSocketSession, webSocketRouter);
 		webSocketSession.setWebSocketRouter(webSocketRouter);
@@ -721,6 +797,9 @@ public class HttpClient extends PooledObject implements Closeable{
 		HttpSessionState httpSessionState = WebServerHandler.getAttachment(session);
 		httpSessionState.setType(HttpRequestType.WEBSOCKET);
 
+		//加入心跳服务, 连接空闲时发送 ping 消息
+		WebSocketHeartBeat.register(session);
+
 		Object result = null;
 
 		//触发onOpen事件
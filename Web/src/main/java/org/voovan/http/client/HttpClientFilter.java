@@ -5,6 +5,7 @@ import org.voovan.http.message.Response;
 import org.voovan.http.server.HttpRequest;
 import org.voovan.http.server.WebServerHandler;
 import org.voovan.http.message.exception.HttpParserException;
+import org.voovan.http.websocket.WebSocketDeflate;
 import org.voovan.http.websocket.WebSocketFrame;
 import org.voovan.network.IoFilter;
 import org.voovan.network.IoSession;
@@ -37,7 +38,15 @@ public class HttpClientFilter implements IoFilter {
 	@Override
 	public Object encode(IoSession session, Object object) {
 		if(object instanceof WebSocketFrame){
-			return ((WebSocketFrame)object).toByteBuffer();
+			WebSocketFrame webSocketFrame = (WebSocketFrame)object;
+			//帧直接写入发送缓冲区, 协商了压缩扩展时由压缩上下文压缩后写入
+			WebSocketDeflate webSocketDeflate = WebServerHandler.getAttachment(session).getWebSocketDeflate();
+			if(webSocketDeflate != null) {
+				webSocketDeflate.send(session, webSocketFrame);
+			} else {
+				webSocketFrame.send(session);
+			}
+			return TByteBuffer.EMPTY_BYTE_BUFFER;
 		}
 		if(object instanceof HttpRequest){
 			HttpRequest httpRequest = (HttpRequest)object;
@@ -67,7 +76,7 @@ public class HttpClientFilter implements IoFilter {
 
 					if(response.protocol().getStatus() == 101){
 						//初始化 WebSocket
-						httpClient.initWebSocket();
+						httpClient.initWebSocket(response);
 					}
 
 					return response;
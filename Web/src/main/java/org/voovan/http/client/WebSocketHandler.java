@@ -1,19 +1,20 @@
 package org.voovan.http.client;
 
-import org.voovan.Global;
+import org.voovan.http.server.WebServerHandler;
 import org.voovan.http.server.WebSocketDispatcher;
+import org.voovan.http.websocket.WebSocketDeflate;
 import org.voovan.http.websocket.WebSocketFrame;
+import org.voovan.http.websocket.WebSocketHeartBeat;
 import org.voovan.http.websocket.WebSocketRouter;
 import org.voovan.http.websocket.WebSocketSession;
 import org.voovan.http.websocket.exception.WebSocketFilterException;
 import org.voovan.network.IoHandler;
 import org.voovan.network.IoSession;
-import org.voovan.network.exception.SendMessageException;
 import org.voovan.tools.buffer.ByteBufferChannel;
-import org.voovan.tools.hashwheeltimer.HashWheelTask;
 import org.voovan.tools.log.Logger;
 
 import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
 
 /**
  * 处理 WebSocket 相关的 IoHandler 事件
@@ -58,6 +59,13 @@ public class WebSocketHandler implements IoHandler{
         if (byteBufferChannel != null && !byteBufferChannel.isReleased()) {
             byteBufferChannel.release();
         }
+
+        WebSocketDeflate webSocketDeflate = WebServerHandler.getAttachment(session).getWebSocketDeflate();
+        if (webSocketDeflate != null) {
+            webSocketDeflate.release();
+        }
+
+        WebSocketHeartBeat.unregister(session);
     }
 
     @Override
@@ -75,14 +83,8 @@ public class WebSocketHandler implements IoHandler{
             return null;
         }
 
-        ByteBufferChannel byteBufferChannel = null;
-        if(!session.containAttribute("WebSocketByteBufferChannel")){
-            byteBufferChannel = new ByteBufferChannel(session.socketContext().getReadBufferSize());
-            session.setAttribute("WebSocketByteBufferChannel",byteBufferChannel);
-        }else{
-            byteBufferChannel = (ByteBufferChannel)session.getAttribute("WebSocketByteBufferChannel");
-        }
-
+        //收到任何帧都说明连接是活跃的
+        WebSocketHeartBeat.touch(session);
 
         // WS_CLOSE 如果收到关闭帧则关闭连接
         if (reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.CLOSING) {
@@ -92,37 +94,62 @@ public class WebSocketHandler implements IoHandler{
         else if (reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.PING) {
             return WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.PONG, true,  reqWebSocketFrame.getFrameData());
         }
-        // WS_PONG 收到 pong 帧则返回 ping 帧
-        else if (reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.PONG) {
-            final IoSession poneSession = session;
+        // WS_RECIVE 文本和二进制消息触发 Recived 事件, 分片的消息在收到最后一个分片时触发
+        else if (reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.TEXT || reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.BINARY ||
+                reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS) {
+            ByteBufferChannel byteBufferChannel = (ByteBufferChannel)session.getAttribute("WebSocketByteBufferChannel");
+            WebSocketDeflate webSocketDeflate = WebServerHandler.getAttachment(session).getWebSocketDeflate();
+
+            //只有协商了压缩扩展的消息的第一个帧可以设置 RSV1
+            if(reqWebSocketFrame.isCompressed() &&
+                    (webSocketDeflate == null || reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS)) {
+                session.close();
+                return null;
+            }
+
+            boolean compressed = webSocketDeflate != null && (reqWebSocketFrame.isCompressed() ||
+                    (reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS && webSocketDeflate.isMessageCompressed()));
+
+            //分片或压缩的消息在收到每个帧时追加(解压)到消息缓冲区
+            boolean fragmented = compressed || !reqWebSocketFrame.isFin() || (byteBufferChannel != null && !byteBufferChannel.isEmpty());
+            if(fragmented) {
+                if(byteBufferChannel == null){
+                    byteBufferChannel = new ByteBufferChannel(session.socketContext().getReadBufferSize());
+                    session.setAttribute("WebSocketByteBufferChannel",byteBufferChannel);
+                }
+
+                if(compressed) {
+                    if(reqWebSocketFrame.getOpcode() != WebSocketFrame.Opcode.CONTINUOUS) {
+                        webSocketDeflate.beginMessage(true);
+                    }
 
-            Global.getHashWheelTimer().addTask(new HashWheelTask() {
-                @Override
-                public void run() {
                     try {
-                        poneSession.syncSend(WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.PING, true, null));
-                    } catch (SendMessageException e) {
-                        poneSession.close();
-                        Logger.error("WebSocket Pong event writeToChannel Ping frame error", e);
-                    }finally {
-                        this.cancel();
+                        //解压后超过最大消息长度
+                        if(!webSocketDeflate.inflate(reqWebSocketFrame.getFrameData(), reqWebSocketFrame.isFin(), byteBufferChannel)) {
+                            Logger.warn("WebSocket inflated message exceeds the max message size, close the connection");
+                            byteBufferChannel.clear();
+                            session.close();
+                            return null;
+                        }
+                    } catch (DataFormatException e) {
+                        Logger.error("WebSocket inflate message error", e);
+                        session.close();
+                        return null;
                     }
+                } else {
+                    byteBufferChannel.writeEnd(reqWebSocketFrame.getFrameData());
                 }
-            }, poneSession.socketContext().getReadTimeout()/3/1000);
-        }
-        // CONTINUOUS 收到 pong 帧则返回 ping 帧
-        else if(reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS){
-            byteBufferChannel.writeEnd(reqWebSocketFrame.getFrameData());
-        }
-        // WS_RECIVE 文本和二进制消息触发 Recived 事件
-        else if (reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.TEXT || reqWebSocketFrame.getOpcode() == WebSocketFrame.Opcode.BINARY) {
-            Object result = null;
 
-            byteBufferChannel.writeEnd(reqWebSocketFrame.getFrameData());
+                if(!reqWebSocketFrame.isFin()) {
+                    return null;
+                }
+            }
+
+            Object result = null;
 
             try {
-                //解包
-                ByteBuffer byteBuffer = byteBufferChannel.getByteBuffer();
+                //解包, 未分片且未压缩的消息直接使用接收缓冲区中的帧数据
+                ByteBuffer byteBuffer = fragmented ? byteBufferChannel.getByteBuffer() : reqWebSocketFrame.getFrameData();
 
                 try {
                     result = WebSocketDispatcher.filterDecoder(webSocketSession, byteBuffer);
@@ -130,8 +157,10 @@ public class WebSocketHandler implements IoHandler{
                     //触发 onRecive
                     result = webSocketRouter.onRecived(webSocketSession, result);
                 } finally {
-                    byteBufferChannel.compact();
-                    byteBufferChannel.clear();
+                    if(fragmented) {
+                        byteBufferChannel.compact();
+                        byteBufferChannel.clear();
+                    }
                 }
 
                 if(result!=null) {
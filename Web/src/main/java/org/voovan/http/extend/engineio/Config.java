@@ -4,7 +4,9 @@ import org.voovan.tools.TString;
 import org.voovan.tools.json.JSON;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Engine IO 配置类
@@ -19,6 +21,10 @@ public class Config {
     private List<String> upgrades;
     private int pingInterval;
     private int pingTimeout;
+    //一个报文最多携带的二进制附件数量
+    private int maxAttachments;
+    //一个报文的二进制附件的最大总字节数
+    private int maxBinarySize;
 
     public Config(){
         this.sid = TString.generateShortUUID();
@@ -26,6 +32,8 @@ public class Config {
         upgrades.add("websocket");
         this.pingInterval = 25000;
         this.pingTimeout = 60000;
+        this.maxAttachments = 10;
+        this.maxBinarySize = 1024 * 1024;
     }
 
     public String getSid() {
@@ -60,6 +68,37 @@ public class Config {
         this.pingTimeout = pingTimeout;
     }
 
+    public int getMaxAttachments() {
+        return maxAttachments;
+    }
+
+    public void setMaxAttachments(int maxAttachments) {
+        this.maxAttachments = maxAttachments;
+    }
+
+    public int getMaxBinarySize() {
+        return maxBinarySize;
+    }
+
+    public void setMaxBinarySize(int maxBinarySize) {
+        this.maxBinarySize = maxBinarySize;
+    }
+
+    /**
+     * 生成 engine.io OPEN 报文的数据
+     *      每个连接使用独立的 sid
+     * @param sid 连接的 sid
+     * @return OPEN 报文的数据
+     */
+    public String toJSON(String sid){
+        Map<String, Object> openData = new LinkedHashMap<String, Object>();
+        openData.put("sid", sid);
+        openData.put("upgrades", upgrades);
+        openData.put("pingInterval", pingInterval);
+        openData.put("pingTimeout", pingTimeout);
+        return JSON.toJSON(openData);
+    }
+
     public String toString(){
         return JSON.toJSON(this);
     }
@@ -1,16 +1,24 @@
 package org.voovan.http.extend.engineio;
 
-import org.voovan.http.extend.SocketIOParserException;
+import org.voovan.http.server.WebSocketDispatcher;
+import org.voovan.http.websocket.WebSocketBroadcast;
+import org.voovan.http.websocket.WebSocketFrame;
 import org.voovan.http.websocket.WebSocketRouter;
 import org.voovan.http.websocket.WebSocketSession;
-import org.voovan.http.websocket.filter.StringFilter;
-import org.voovan.tools.log.Logger;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Engine IO 消息分发
+ *      直接处理 WebSocket 帧数据, 不经过字符串过滤器.
+ *      按 engine.io v4 的约定由服务端每隔 pingInterval 发送 ping, 所有连接共享同一个 ping 帧,
+ *      超过 pingInterval + pingTimeout 没有收到 pong 的连接会被关闭.
  *
  * @author: helyho
  * Voovan Framework.
@@ -18,13 +26,18 @@ import java.util.Map;
  * Licence: Apache v2 License
  */
 public class EIODispatcher extends WebSocketRouter{
+    private static final String EIO_SESSION = "EIO_SESSION";
+    private static final WebSocketBroadcast PING = new WebSocketBroadcast(WebSocketFrame.Opcode.TEXT, EIOParser.encode(EIOPacket.PING, null));
+
     private Config config;
     private Map<String, EIOHandler> eioEventHandlers;
+    private Set<WebSocketSession> sessions;
+    private volatile HashWheelTask pingTask;
 
     public EIODispatcher(Config config){
         this.config = config;
         this.eioEventHandlers = new HashMap<String, EIOHandler>();
-        this.addFilterChain(new StringFilter());
+        this.sessions = ConcurrentHashMap.newKeySet();
     }
 
     public EIODispatcher on(String Event, EIOHandler eioHandler){
@@ -32,61 +45,135 @@ public class EIODispatcher extends WebSocketRouter{
         return this;
     }
 
-    @Override
-    public Object onOpen(WebSocketSession session) {
-        EIOHandler eioHandler = eioEventHandlers.get("connection");
-        if(eioHandler !=null) {
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * 获取 WebSocket 会话对应的 engine.io 会话
+     * @param session WebSocket 会话
+     * @return engine.io 会话
+     */
+    public static EIOSession getEIOSession(WebSocketSession session) {
+        EIOSession eioSession = (EIOSession) session.getAttribute(EIO_SESSION);
+        if(eioSession == null) {
+            eioSession = new EIOSession(session, null);
+            session.setAttribute(EIO_SESSION, eioSession);
+        }
+        return eioSession;
+    }
+
+    /**
+     * 获取所有的连接
+     * @return WebSocket 会话集合
+     */
+    public Set<WebSocketSession> getSessions() {
+        return sessions;
+    }
+
+    protected String execute(String event, WebSocketSession session, String msg) {
+        EIOHandler eioHandler = eioEventHandlers.get(event);
+        if(eioHandler != null) {
             eioHandler.setWebSocketSession(session);
-            eioHandler.execute(null);
+            return eioHandler.execute(msg);
         }
-        return EIOParser.encode(new EIOPacket(0, config.toString()));
+        return null;
     }
 
-    @Override
-    public Object onRecived(WebSocketSession session, Object obj) {
-        try {
-            if(EIOParser.isEngineIOMessage((String)obj)){
-                EIOPacket eioPacket = EIOParser.decode((String)obj);
-
-                if(eioPacket.getEngineType() == EIOPacket.MESSAGE){
-                    EIOHandler eioHandler = eioEventHandlers.get("message");
-                    if(eioHandler !=null) {
-                        eioHandler.setWebSocketSession(session);
-                        String result = eioHandler.execute(eioPacket.getData());
-                        if(result!=null) {
-                            eioPacket.setData(result);
-                            return EIOParser.encode(eioPacket);
+    private void startPing() {
+        if(pingTask != null) {
+            return;
+        }
+
+        synchronized (this) {
+            if(pingTask == null) {
+                pingTask = new HashWheelTask() {
+                    @Override
+                    public void run() {
+                        long timeout = System.currentTimeMillis() - config.getPingInterval() - config.getPingTimeout();
+                        for(WebSocketSession session : sessions) {
+                            if(getEIOSession(session).getLastPongTime() < timeout) {
+                                session.close();
+                            }
                         }
+
+                        WebSocketDispatcher.broadcast(sessions, PING);
                     }
-                }else if(eioPacket.getEngineType() == EIOPacket.PING){
-                    EIOHandler eioHandler = eioEventHandlers.get("ping");
-                    if(eioHandler !=null) {
-                        eioHandler.setWebSocketSession(session);
-                        eioHandler.execute(eioPacket.getData());
-                    }
-                    eioPacket.setEngineType(EIOPacket.PONG);
-                    return EIOParser.encode(eioPacket);
-                }else if(eioPacket.getEngineType() == EIOPacket.PONG){
-                    EIOHandler eioHandler = eioEventHandlers.get("pong");
-                    if(eioHandler !=null) {
-                        eioHandler.setWebSocketSession(session);
-                        eioHandler.execute(eioPacket.getData());
-                    }
-                    eioPacket.setEngineType(EIOPacket.PING);
-                    return EIOParser.encode(eioPacket);
-                }else if(eioPacket.getEngineType() == EIOPacket.NOOP){
-                    EIOHandler eioHandler = eioEventHandlers.get("noop");
-                    if(eioHandler !=null) {
-                        eioHandler.setWebSocketSession(session);
-                        String result = eioHandler.execute(null);
-                        return EIOParser.encode(new EIOPacket(EIOPacket.MESSAGE, result));
-                    }
-                }
+                };
+                WebSocketDispatcher.getHeartBeatWheelTimer().addTask(pingTask, Math.max(1, config.getPingInterval() / 1000));
+            }
+        }
+    }
+
+    @Override
+    public Object onOpen(WebSocketSession session) {
+        EIOSession eioSession = getEIOSession(session);
+        sessions.add(session);
+        startPing();
+
+        execute("connection", session, null);
+        return EIOParser.encode(EIOPacket.OPEN, config.toJSON(eioSession.getSid()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Object onRecived(WebSocketSession session, Object obj) {
+        ByteBuffer data = (ByteBuffer) obj;
+        EIOSession eioSession = getEIOSession(session);
+
+        //上层协议声明的二进制消息没有类型前缀
+        if(eioSession.getBinaryExpected() > 0) {
+            eioSession.setBinaryExpected(eioSession.getBinaryExpected() - 1);
+            return onMessage(session, eioSession, data, true);
+        }
 
-                return null;
+        int engineType = EIOParser.getEngineType(data);
+        if(engineType < 0) {
+            return null;
+        }
+        data.position(data.position() + 1);
+
+        if(engineType == EIOPacket.MESSAGE){
+            return onMessage(session, eioSession, data, false);
+        } else if(engineType == EIOPacket.PING){
+            //兼容客户端发送 ping 的 engine.io v3 客户端和升级探测
+            execute("ping", session, EIOParser.toString(data));
+            data.position(data.position() - 1);
+            ByteBuffer pong = ByteBuffer.allocate(data.remaining());
+            pong.put(data);
+            pong.put(0, (byte) ('0' + EIOPacket.PONG));
+            pong.flip();
+            return pong;
+        } else if(engineType == EIOPacket.PONG){
+            eioSession.setLastPongTime(System.currentTimeMillis());
+            execute("pong", session, EIOParser.toString(data));
+        } else if(engineType == EIOPacket.CLOSE){
+            session.close();
+        } else if(engineType == EIOPacket.NOOP){
+            EIOHandler eioHandler = eioEventHandlers.get("noop");
+            if(eioHandler !=null) {
+                eioHandler.setWebSocketSession(session);
+                String result = eioHandler.execute(null);
+                if(result != null) {
+                    return EIOParser.encode(EIOPacket.MESSAGE, result.getBytes(StandardCharsets.UTF_8));
+                }
             }
-        } catch (SocketIOParserException e) {
-            Logger.error(e);
+        }
+
+        return null;
+    }
+
+    /**
+     * 处理 engine.io 的 MESSAGE 报文
+     * @param session WebSocket 会话
+     * @param eioSession engine.io 会话
+     * @param data 报文数据, 不包含类型前缀, 只在本方法执行期间有效
+     * @param binary 是否是二进制消息
+     * @return 响应的报文数据
+     */
+    protected Object onMessage(WebSocketSession session, EIOSession eioSession, ByteBuffer data, boolean binary) {
+        String result = execute("message", session, EIOParser.toString(data));
+        if(result != null) {
+            return EIOParser.encode(EIOPacket.MESSAGE, result.getBytes(StandardCharsets.UTF_8));
         }
         return null;
     }
@@ -98,10 +185,7 @@ public class EIODispatcher extends WebSocketRouter{
 
     @Override
     public void onClose(WebSocketSession session) {
-        EIOHandler eioHandler = eioEventHandlers.get("close");
-        if(eioHandler !=null) {
-            eioHandler.setWebSocketSession(session);
-            eioHandler.execute(null);
-        }
+        sessions.remove(session);
+        execute("close", session, null);
     }
 }
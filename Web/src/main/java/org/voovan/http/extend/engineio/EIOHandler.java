@@ -14,19 +14,15 @@ import org.voovan.network.exception.SendMessageException;
  */
 public abstract class EIOHandler {
 
-    private WebSocketSession webSocketSession;
+    //同一个句柄在所有连接的 IO 线程中共享, 当前处理的会话按线程保存
+    private ThreadLocal<WebSocketSession> webSocketSession = new ThreadLocal<WebSocketSession>();
 
     public void setWebSocketSession(WebSocketSession webSocketSession) {
-         this.webSocketSession = webSocketSession;
+         this.webSocketSession.set(webSocketSession);
     }
 
     public EIOSession getEIOSession() {
-        EIOSession eioSession = (EIOSession) webSocketSession.getAttribute("EIO_SESSION");
-        if(eioSession == null) {
-            eioSession = new EIOSession(this.webSocketSession, this);
-            webSocketSession.setAttribute("EIOSession", eioSession);
-        }
-        return eioSession;
+        return EIODispatcher.getEIOSession(webSocketSession.get());
     }
 
     public void send(String msg) throws SendMessageException, WebSocketFilterException {
@@ -4,6 +4,9 @@ import org.voovan.http.extend.SocketIOParserException;
 import org.voovan.tools.TString;
 import org.voovan.tools.log.Logger;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * engine.io 报文解析
  *
@@ -20,7 +23,33 @@ public class EIOParser {
      * @return true: 是, false: 否
      */
     public static boolean isEngineIOMessage(String msg){
-        return TString.regexMatch(msg, "^[0-6]") >0;
+        return msg.length() > 0 && msg.charAt(0) >= '0' && msg.charAt(0) <= '6';
+    }
+
+    /**
+     * 读取 engine.io 报文的类型
+     *      直接读取 WebSocket 帧数据的第一个字节, 不改变 position
+     * @param data WebSocket 帧数据
+     * @return 报文类型, 不是 engine.io 报文时返回 -1
+     */
+    public static int getEngineType(ByteBuffer data) {
+        if(!data.hasRemaining()) {
+            return -1;
+        }
+
+        int engineType = data.get(data.position()) - '0';
+        return engineType >= 0 && engineType <= 6 ? engineType : -1;
+    }
+
+    /**
+     * 读取 WebSocket 帧数据中的字符串
+     * @param data 帧数据, position 不会改变
+     * @return UTF-8 解码的字符串
+     */
+    public static String toString(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /**
@@ -56,6 +85,23 @@ public class EIOParser {
         return packet.getEngineType() + packet.getData();
     }
 
+    /**
+     * 编码 engine.io 报文成 WebSocket 帧数据
+     * @param engineType 报文类型
+     * @param data 报文数据, 可以为 null
+     * @return 帧数据
+     */
+    public static ByteBuffer encode(int engineType, byte[] data) {
+        int length = data == null ? 0 : data.length;
+        ByteBuffer byteBuffer = ByteBuffer.allocate(length + 1);
+        byteBuffer.put((byte) ('0' + engineType));
+        if(data != null) {
+            byteBuffer.put(data);
+        }
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
     public static void main(String[] args) throws SocketIOParserException {
         String mm = "42/socketio,0[\"show\", \"kkkk\"]";
         Logger.simple(EIOParser.isEngineIOMessage(mm));
@@ -3,8 +3,12 @@ package org.voovan.http.extend.engineio;
 import org.voovan.http.websocket.WebSocketSession;
 import org.voovan.http.websocket.exception.WebSocketFilterException;
 import org.voovan.network.exception.SendMessageException;
+import org.voovan.tools.TString;
 import org.voovan.tools.collection.Attributes;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Engine IO 会话类
  *
@@ -17,17 +21,23 @@ public class EIOSession extends Attributes {
 
     private WebSocketSession webSocketSession;
     private EIOHandler eioHandler;
+    private String sid;
+    private volatile long lastPongTime;
+    //接下来的消息中需要按二进制数据处理的数量
+    private int binaryExpected = 0;
 
     public EIOSession(WebSocketSession webSocketSession, EIOHandler eioHandler){
         this.webSocketSession = webSocketSession;
         this.eioHandler = eioHandler;
+        this.sid = TString.generateShortUUID();
+        this.lastPongTime = System.currentTimeMillis();
     }
 
     protected void getEioHandler(EIOHandler eioHandler) {
         this.eioHandler = eioHandler;
     }
 
-    protected WebSocketSession getWebSocketSession() {
+    public WebSocketSession getWebSocketSession() {
         return webSocketSession;
     }
 
@@ -35,7 +45,64 @@ public class EIOSession extends Attributes {
         this.webSocketSession = webSocketSession;
     }
 
+    /**
+     * 获取连接的 sid
+     * @return 连接的 sid
+     */
+    public String getSid() {
+        return sid;
+    }
+
+    /**
+     * 获取最后收到 pong 的时间
+     * @return 最后收到 pong 的时间(ms)
+     */
+    public long getLastPongTime() {
+        return lastPongTime;
+    }
+
+    protected void setLastPongTime(long lastPongTime) {
+        this.lastPongTime = lastPongTime;
+    }
+
+    /**
+     * 获取接下来需要按二进制数据处理的消息数量
+     * @return 消息数量
+     */
+    public int getBinaryExpected() {
+        return binaryExpected;
+    }
+
+    /**
+     * 设置接下来需要按二进制数据处理的消息数量
+     *      engine.io 的二进制消息没有类型前缀, 由上层协议(例如 socket.io 的二进制附件)声明
+     * @param binaryExpected 消息数量
+     */
+    public void setBinaryExpected(int binaryExpected) {
+        this.binaryExpected = binaryExpected;
+    }
+
     public void send(String msg) throws SendMessageException, WebSocketFilterException {
-        webSocketSession.send(EIOParser.encode(new EIOPacket(4, msg)));
+        webSocketSession.send(EIOParser.encode(EIOPacket.MESSAGE, msg.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 发送已经编码的 engine.io 报文
+     * @param byteBuffer 报文数据
+     * @throws SendMessageException 发送异常
+     * @throws WebSocketFilterException WebSocket过滤器异常
+     */
+    public void send(ByteBuffer byteBuffer) throws SendMessageException, WebSocketFilterException {
+        webSocketSession.send(byteBuffer);
+    }
+
+    /**
+     * 发送二进制消息
+     * @param byteBuffer 二进制数据
+     * @throws SendMessageException 发送异常
+     * @throws WebSocketFilterException WebSocket过滤器异常
+     */
+    public void sendBinary(ByteBuffer byteBuffer) throws SendMessageException, WebSocketFilterException {
+        webSocketSession.sendBinary(byteBuffer);
     }
 }
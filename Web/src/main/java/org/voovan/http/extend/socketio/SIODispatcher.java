@@ -2,16 +2,27 @@ package org.voovan.http.extend.socketio;
 
 import org.voovan.http.extend.engineio.Config;
 import org.voovan.http.extend.engineio.EIODispatcher;
-import org.voovan.http.extend.engineio.EIOHandler;
+import org.voovan.http.extend.engineio.EIOSession;
+import org.voovan.http.server.WebSocketDispatcher;
+import org.voovan.http.websocket.WebSocketBroadcast;
+import org.voovan.http.websocket.WebSocketFrame;
+import org.voovan.http.websocket.WebSocketSession;
 import org.voovan.tools.json.JSON;
 import org.voovan.tools.log.Logger;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Socket IO 消息分发类
+ *      按 socket.io v4 协议处理 WebSocket 传输的报文, 支持 ACK, 二进制附件, 命名空间和房间.
+ *      每个命名空间和房间对应 WebSocketDispatcher 中的一个主题, 广播的报文只编码一次, 所有接收者共享同一组帧.
  *
  * @author: helyho
  * Voovan Framework.
@@ -19,13 +30,17 @@ import java.util.Map;
  * Licence: Apache v2 License
  */
 public class SIODispatcher extends EIODispatcher {
+    private static final String SIO_SESSION = "SIO_SESSION";
+    private static final String SIO_BINARY_PACKET = "SIO_BINARY_PACKET";
 
     private Map<String, SIOHandler> sioEventHandlers;
+    private String topicPrefix;
+    private volatile WebSocketDispatcher webSocketDispatcher;
 
     public SIODispatcher(Config config) {
         super(config);
         this.sioEventHandlers = new HashMap<String, SIOHandler>();
-        super.on("message", new MessageHandler(this));
+        this.topicPrefix = "socket.io@" + Integer.toHexString(System.identityHashCode(this));
     }
 
     public SIODispatcher on(String Event, SIOHandler sioHandler){
@@ -33,107 +48,211 @@ public class SIODispatcher extends EIODispatcher {
         return this;
     }
 
-    public class MessageHandler extends EIOHandler {
-        private SIODispatcher sioDispatcher;
+    /**
+     * 获取命名空间中房间对应的主题
+     * @param nsp 命名空间
+     * @param room 房间名称, 为 null 时表示整个命名空间
+     * @return 主题名称
+     */
+    public String getTopic(String nsp, String room) {
+        return topicPrefix + (nsp == null ? "/" : nsp) + (room == null ? "" : "#" + room);
+    }
+
+    /**
+     * 获取 engine.io 会话在命名空间中的 socket.io 会话
+     * @param eioSession engine.io 会话
+     * @param nsp 命名空间
+     * @return socket.io 会话, 没有连接到命名空间时为 null
+     */
+    public static SIOSession getSIOSession(EIOSession eioSession, String nsp) {
+        return (SIOSession) eioSession.getAttribute(SIO_SESSION + (nsp == null ? "/" : nsp));
+    }
 
-        public MessageHandler(SIODispatcher sioDispatcher){
-            this.sioDispatcher = sioDispatcher;
+    @Override
+    public Object onOpen(WebSocketSession session) {
+        if(webSocketDispatcher == null) {
+            webSocketDispatcher = session.getWebSocketDispatcher();
         }
+        return super.onOpen(session);
+    }
+
+    @Override
+    protected Object onMessage(WebSocketSession session, EIOSession eioSession, ByteBuffer data, boolean binary) {
+        try {
+            SIOPacket sioPacket;
+            if(binary) {
+                //二进制附件, 追加到等待中的报文
+                sioPacket = (SIOPacket) eioSession.getAttribute(SIO_BINARY_PACKET);
+                if(sioPacket == null) {
+                    return null;
+                }
 
-        public MessageHandler() {
+                //附件的总大小超过限制时关闭连接
+                if((long) sioPacket.getBinarySize() + data.remaining() > getConfig().getMaxBinarySize()) {
+                    eioSession.removeAttribute(SIO_BINARY_PACKET);
+                    eioSession.setBinaryExpected(0);
+                    Logger.warn("Socket.io binary attachments size is over " + getConfig().getMaxBinarySize() + ", session will be closed");
+                    session.close();
+                    return null;
+                }
+
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                sioPacket.addBinary(bytes);
+                if(sioPacket.getBinaries().size() < sioPacket.getAttachments()) {
+                    return null;
+                }
+                eioSession.removeAttribute(SIO_BINARY_PACKET);
+            } else {
+                sioPacket = SIOParser.decode(data, getConfig().getMaxAttachments());
+                if(sioPacket.getAttachments() > 0) {
+                    eioSession.setAttribute(SIO_BINARY_PACKET, sioPacket);
+                    eioSession.setBinaryExpected(sioPacket.getAttachments());
+                    return null;
+                }
+            }
 
+            return dispatch(session, eioSession, sioPacket);
+        } catch(Exception e){
+            Logger.error(e);
         }
 
-        @Override
-        public String execute(String msg) {
-            try {
-                if (SIOParser.isSocketIOMessage(msg)) {
-                    SIOPacket sioPacket = SIOParser.decode(msg);
-
-                    if (sioPacket.getSocketType() == SIOPacket.CONNECT) {
-                        SIOHandler sioHandler = sioEventHandlers.get("connect");
-                        sioHandler.setNsp(sioPacket.getNsp());
-                        sioHandler.setEioHandler(this);
-                        sioHandler.setSioDispatcher(sioDispatcher);
-                        if (sioHandler != null) {
-                            sioHandler.execute(null);
-                        }
-
-                        return SIOParser.encode(sioPacket);
-                    }
+        return null;
+    }
 
-                    if (sioPacket.getSocketType() == SIOPacket.DISCONNECT) {
-                        SIOHandler sioHandler = sioEventHandlers.get("disconnect");
-                        sioHandler.setNsp(sioPacket.getNsp());
-                        sioHandler.setEioHandler(this);
-                        sioHandler.setSioDispatcher(sioDispatcher);
-                        if (sioHandler != null) {
-                            sioHandler.execute(null);
-                        }
-                        return SIOParser.encode(sioPacket);
-                    }
+    /**
+     * 分发 socket.io 报文
+     * @param session WebSocket 会话
+     * @param eioSession engine.io 会话
+     * @param sioPacket socket.io 报文
+     * @return 响应的报文数据
+     * @throws Exception 处理异常
+     */
+    protected Object dispatch(WebSocketSession session, EIOSession eioSession, SIOPacket sioPacket) throws Exception {
+        String nsp = sioPacket.getNsp() == null ? "/" : sioPacket.getNsp();
+        SIOSession sioSession = getSIOSession(eioSession, nsp);
+        int socketType = sioPacket.getSocketType();
 
-                    if (sioPacket.getSocketType() == SIOPacket.ERROR) {
-                        SIOHandler sioHandler = sioEventHandlers.get("error");
-                        sioHandler.setNsp(sioPacket.getNsp());
-                        sioHandler.setEioHandler(this);
-                        sioHandler.setSioDispatcher(sioDispatcher);
-                        if (sioHandler != null) {
-                            sioHandler.execute(null);
-                        }
+        if (socketType == SIOPacket.CONNECT) {
+            if(sioSession == null) {
+                sioSession = new SIOSession(eioSession, this, nsp);
+                eioSession.setAttribute(SIO_SESSION + nsp, sioSession);
+                session.subscribe(getTopic(nsp, null));
+            }
 
-                        return SIOParser.encode(sioPacket);
-                    }
+            execute("connect", sioSession, Collections.emptyList());
 
+            Map<String, Object> connectData = new LinkedHashMap<String, Object>();
+            connectData.put("sid", sioSession.getId());
+            return SIOParser.toByteBuffer(new SIOPacket(SIOPacket.CONNECT, nsp, JSON.toJSON(connectData)));
+        }
 
-                    if (sioPacket.getSocketType() == SIOPacket.EVENT) {
-                        List argsList = (List) JSON.parse(sioPacket.getData());
-                        String event = (String) argsList.get(0);
-                        argsList.remove(0);
-                        Object[] args = argsList.toArray(new Object[]{});
-
-                        SIOHandler sioHandler = sioEventHandlers.get(event);
-                        sioHandler.setNsp(sioPacket.getNsp());
-                        sioHandler.setEioHandler(this);
-                        sioHandler.setSioDispatcher(sioDispatcher);
-                        if (sioHandler != null) {
-                            Object result = sioHandler.execute(args);
-
-                            if(result!=null) {
-                                if (!result.getClass().isArray()) {
-                                    result = new Object[]{result};
-                                }
-
-                                //设置成 ACK 事件
-                                sioPacket.setSocketType(3);
-                                sioPacket.setData(JSON.toJSON(result));
-                                return SIOParser.encode(sioPacket);
-                            }
-                        }
-                    }
+        if(sioSession == null) {
+            return null;
+        }
+
+        if (socketType == SIOPacket.DISCONNECT) {
+            disconnect(session, eioSession, sioSession);
+        } else if (socketType == SIOPacket.ERROR) {
+            execute("error", sioSession, SIOParser.getArgs(sioPacket));
+        } else if (socketType == SIOPacket.EVENT || socketType == SIOPacket.BINARY_EVENT) {
+            List<Object> args = SIOParser.getArgs(sioPacket);
+            if(args.isEmpty() || !(args.get(0) instanceof String)) {
+                return null;
+            }
 
-                    if (sioPacket.getSocketType() == SIOPacket.ACK) {
-                        List argsList = (List) JSON.parse(sioPacket.getData());
-                        String event = (String) argsList.get(0);
-                        argsList.remove(0);
-                        Object[] args = argsList.toArray(new Object[]{});
-
-                        SIOHandler sioHandler = sioEventHandlers.get("ack_" + event);
-                        sioHandler.setNsp(sioPacket.getNsp());
-                        sioHandler.setEioHandler(this);
-                        sioHandler.setSioDispatcher(sioDispatcher);
-                        if (sioHandler != null) {
-                            sioHandler.execute(args);
-                        }
+            Object result = execute((String) args.remove(0), sioSession, args);
+
+            if(sioPacket.getSeq() != -1) {
+                List<Object> ackArgs = new ArrayList<Object>();
+                if(result != null) {
+                    if(result instanceof Object[]) {
+                        Collections.addAll(ackArgs, (Object[]) result);
+                    } else {
+                        ackArgs.add(result);
                     }
                 }
-            } catch(Exception e){
-                Logger.error(e);
+
+                ByteBuffer[] byteBuffers = SIOParser.encode(SIOPacket.ACK, nsp, sioPacket.getSeq(), ackArgs);
+                if(byteBuffers.length == 1) {
+                    return byteBuffers[0];
+                } else {
+                    sioSession.send(byteBuffers);
+                }
             }
+        } else if (socketType == SIOPacket.ACK || socketType == SIOPacket.BINARY_ACK) {
+            if(sioPacket.getSeq() != -1) {
+                sioSession.onAck(sioPacket.getSeq(), SIOParser.getArgs(sioPacket));
+            }
+        }
 
-            return null;
+        return null;
+    }
+
+    private Object execute(String event, SIOSession sioSession, List<Object> args) {
+        SIOHandler sioHandler = sioEventHandlers.get(event);
+        if (sioHandler != null) {
+            sioHandler.setSIOSession(sioSession);
+            return sioHandler.execute(args.toArray());
+        }
+        return null;
+    }
+
+    private void disconnect(WebSocketSession session, EIOSession eioSession, SIOSession sioSession) {
+        execute("disconnect", sioSession, Collections.emptyList());
+        sioSession.leaveAll();
+        session.unsubscribe(getTopic(sioSession.getNsp(), null));
+        eioSession.removeAttribute(SIO_SESSION + sioSession.getNsp());
+    }
+
+    @Override
+    public void onClose(WebSocketSession session) {
+        EIOSession eioSession = getEIOSession(session);
+        for(Object key : new ArrayList<Object>(eioSession.attributes().keySet())) {
+            if(key instanceof String && ((String) key).startsWith(SIO_SESSION)) {
+                disconnect(session, eioSession, (SIOSession) eioSession.getAttribute(key));
+            }
         }
+        super.onClose(session);
     }
 
+    /**
+     * 向命名空间中的所有会话触发事件
+     * @param nsp 命名空间
+     * @param event 事件名
+     * @param params 事件参数
+     * @return 消息进入发送队列的会话数量
+     */
+    public int emit(String nsp, String event, Object ... params) {
+        return emitTo(nsp, null, event, params);
+    }
+
+    /**
+     * 向房间中的所有会话触发事件
+     *      报文只编码一次, 所有会话共享
+     * @param nsp 命名空间
+     * @param room 房间名称, 为 null 时表示整个命名空间
+     * @param event 事件名
+     * @param params 事件参数
+     * @return 消息进入发送队列的会话数量
+     */
+    public int emitTo(String nsp, String room, String event, Object ... params) {
+        if(webSocketDispatcher == null) {
+            return 0;
+        }
 
+        Set<WebSocketSession> sessions = webSocketDispatcher.getTopicSessions(getTopic(nsp, room));
+        if(sessions == null || sessions.isEmpty()) {
+            return 0;
+        }
+
+        ByteBuffer[] byteBuffers = SIOParser.encode(SIOPacket.EVENT, nsp, -1, SIOSession.toArgs(event, params));
+        WebSocketBroadcast[] webSocketBroadcasts = new WebSocketBroadcast[byteBuffers.length];
+        webSocketBroadcasts[0] = new WebSocketBroadcast(WebSocketFrame.Opcode.TEXT, byteBuffers[0]);
+        for(int i = 1; i < byteBuffers.length; i++) {
+            webSocketBroadcasts[i] = new WebSocketBroadcast(WebSocketFrame.Opcode.BINARY, byteBuffers[i]);
+        }
+
+        return WebSocketDispatcher.broadcast(sessions, webSocketBroadcasts);
+    }
 }
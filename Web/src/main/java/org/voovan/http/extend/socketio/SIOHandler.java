@@ -1,6 +1,5 @@
 package org.voovan.http.extend.socketio;
 
-import org.voovan.http.extend.engineio.EIOHandler;
 import org.voovan.http.websocket.exception.WebSocketFilterException;
 import org.voovan.network.exception.SendMessageException;
 
@@ -13,34 +12,30 @@ import org.voovan.network.exception.SendMessageException;
  * Licence: Apache v2 License
  */
 public abstract class SIOHandler {
-    // TODO: io.sockets.emit(‘String’,data);//给所有客户端广播消息
-    // TODO: io.sockets.socket(socketid).emit(‘String’, data);//给指定的客户端发送消息
 
-    private EIOHandler eioHandler;
-    private SIODispatcher sioDispatcher;
-    private String nsp;
+    //同一个句柄在所有连接的 IO 线程中共享, 当前处理的会话按线程保存
+    private ThreadLocal<SIOSession> sioSession = new ThreadLocal<SIOSession>();
 
-    protected void setEioHandler(EIOHandler eioHandler) {
-        this.eioHandler = eioHandler;
-    }
-
-    protected void setNsp(String nsp) {
-        this.nsp = nsp;
-    }
-
-    protected void setSioDispatcher(SIODispatcher sioDispatcher) {
-        this.sioDispatcher = sioDispatcher;
+    protected void setSIOSession(SIOSession sioSession) {
+        this.sioSession.set(sioSession);
     }
 
+    /**
+     * 获取当前处理的 socket.io 会话
+     * @return socket.io 会话
+     */
     public SIOSession getSIOSession(){
-        SIOSession sioSession = (SIOSession) eioHandler.getEIOSession().getAttribute("SIO_SESSIOM");
-        if(sioSession == null) {
-            sioSession = new SIOSession(eioHandler.getEIOSession(), sioDispatcher, nsp);
-            eioHandler.getEIOSession().setAttribute("SIOSESSIOM", sioSession);
-        }
-        return sioSession;
+        return sioSession.get();
     }
 
+    /**
+     * 向当前会话的客户端触发事件
+     * @param event 事件名
+     * @param sioHandler 客户端确认后的回调, 为 null 时不需要确认
+     * @param params 事件参数
+     * @throws SendMessageException 发送异常
+     * @throws WebSocketFilterException WebSocket过滤器异常
+     */
     public void emit(String event, SIOHandler sioHandler, Object ... params) throws SendMessageException, WebSocketFilterException {
         this.getSIOSession().emit(event, sioHandler, params);
     }
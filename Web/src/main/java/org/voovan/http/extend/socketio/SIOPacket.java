@@ -1,5 +1,8 @@
 package org.voovan.http.extend.socketio;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * socket.io 报文
  *
@@ -25,6 +28,10 @@ public class SIOPacket {
     private String nsp = null;
     private String data = null;
     private int socketType = -1;
+    //二进制附件的数量
+    private int attachments = 0;
+    private List<byte[]> binaries;
+    private int binarySize = 0;
 
     public final static String[] SOCKET_TYPES = new String[] {
             "CONNECT",
@@ -78,4 +85,40 @@ public class SIOPacket {
     public void setSocketType(int socketType) {
         this.socketType = socketType;
     }
+
+    public int getAttachments() {
+        return attachments;
+    }
+
+    public void setAttachments(int attachments) {
+        this.attachments = attachments;
+    }
+
+    /**
+     * 获取已经收到的二进制附件
+     * @return 二进制附件
+     */
+    public List<byte[]> getBinaries() {
+        if(binaries == null) {
+            binaries = new ArrayList<byte[]>();
+        }
+        return binaries;
+    }
+
+    /**
+     * 获取已经收到的二进制附件的总字节数
+     * @return 总字节数
+     */
+    public int getBinarySize() {
+        return binarySize;
+    }
+
+    /**
+     * 追加收到的二进制附件
+     * @param bytes 二进制附件
+     */
+    public void addBinary(byte[] bytes) {
+        getBinaries().add(bytes);
+        binarySize = binarySize + bytes.length;
+    }
 }
@@ -1,11 +1,22 @@
 package org.voovan.http.extend.socketio;
 
 import org.voovan.http.extend.SocketIOParserException;
-import org.voovan.tools.TString;
+import org.voovan.http.extend.engineio.EIOPacket;
+import org.voovan.tools.json.JSON;
 import org.voovan.tools.log.Logger;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * socket.io 报文解析
+ *      按 socket.io v4 的格式: 类型[附件数量-][命名空间,][ACK ID][JSON 数据]
+ *      直接从 WebSocket 帧数据中解析报文头, 只有 JSON 数据部分转换为字符串.
+ *      二进制数据在 JSON 中使用 {"_placeholder":true,"num":n} 占位, 数据本身作为独立的二进制消息紧随其后.
  *
  * @author: helyho
  * Voovan Framework.
@@ -15,7 +26,12 @@ import org.voovan.tools.log.Logger;
 public class SIOParser {
 
     private static final char SPLITER = ',';
-    private static final char DATA_BEGIN = '[';
+    private static final char ATTACHMENTS_SPLITER = '-';
+    private static final char NSP_BEGIN = '/';
+    private static final String PLACEHOLDER = "_placeholder";
+    private static final String PLACEHOLDER_NUM = "num";
+    //默认的最大附件数量
+    public static final int MAX_ATTACHMENTS = 10;
 
     /**
      * 判断是否是 socket.io 的消息
@@ -23,7 +39,7 @@ public class SIOParser {
      * @return true: 是, false: 否
      */
     public static boolean isSocketIOMessage(String msg){
-        return TString.regexMatch(msg, "(^[0-6].*?,(\\d*\\[.*\\])?)|(^[0-6]\\[.*\\])") >0;
+        return msg.length() > 0 && msg.charAt(0) >= '0' && msg.charAt(0) <= '6';
     }
 
     /**
@@ -33,43 +49,101 @@ public class SIOParser {
      * @throws SocketIOParserException 解析异常
      */
     public static SIOPacket decode(String msg) throws SocketIOParserException {
-        SIOPacket packet = new SIOPacket();
-        StringBuilder stringBuilder = new StringBuilder();
+        return decode(ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 从 engine.io MESSAGE 报文的数据中解析 Packet 对象
+     * @param data 报文数据, 不包含 engine.io 的类型前缀, position 不会改变
+     * @return SIOPacket 对象
+     * @throws SocketIOParserException 解析异常
+     */
+    public static SIOPacket decode(ByteBuffer data) throws SocketIOParserException {
+        return decode(data, MAX_ATTACHMENTS);
+    }
 
-        char c = msg.charAt(0);
+    /**
+     * 从 engine.io MESSAGE 报文的数据中解析 Packet 对象
+     * @param data 报文数据, 不包含 engine.io 的类型前缀, position 不会改变
+     * @param maxAttachments 最大附件数量, 附件数量由客户端声明, 超过时拒绝报文
+     * @return SIOPacket 对象
+     * @throws SocketIOParserException 解析异常
+     */
+    public static SIOPacket decode(ByteBuffer data, int maxAttachments) throws SocketIOParserException {
+        SIOPacket packet = new SIOPacket();
+        int position = data.position();
+        int limit = data.limit();
 
-        int socketType = c-48;
-        if(!TString.isNumber(String.valueOf(c),10)){
-            throw new SocketIOParserException("The socket.io packet first char must be number");
+        if(position >= limit) {
+            throw new SocketIOParserException("The socket.io packet is empty");
         }
 
+        int socketType = data.get(position++) - '0';
         if(socketType<0 || socketType>6) {
             throw new SocketIOParserException("The socket.io packet first char must be exists in [0...6]");
         }
-
         packet.setSocketType(socketType);
 
-        int dotPosition = msg.indexOf(',');
-        int dataPosition = msg.indexOf('[');
-        if( (dotPosition>0 && dataPosition<0) || (dotPosition < dataPosition)) {
-            packet.setNsp(msg.substring(1, dotPosition));
+        //二进制报文的附件数量
+        if(socketType == SIOPacket.BINARY_EVENT || socketType == SIOPacket.BINARY_ACK) {
+            int start = position;
+            int attachments = 0;
+            while(position < limit && isDigit(data.get(position)) && position - start < 9) {
+                attachments = attachments * 10 + data.get(position++) - '0';
+            }
+
+            if(position == start || position >= limit || data.get(position) != ATTACHMENTS_SPLITER) {
+                throw new SocketIOParserException("The socket.io binary packet must has attachments count");
+            }
+            position++;
+
+            if(attachments > maxAttachments) {
+                throw new SocketIOParserException("The socket.io binary packet attachments count " + attachments + " is over " + maxAttachments);
+            }
+            packet.setAttachments(attachments);
         }
 
-        if(dotPosition>0 && dataPosition>0 && dotPosition < dataPosition ){
-            String seqValue = msg.substring(dotPosition + 1, dotPosition + 2);
-            if(TString.isNumber(seqValue, 10)) {
-                packet.setSeq(Integer.valueOf(msg.substring(dotPosition + 1, dataPosition)));
+        //命名空间
+        if(position < limit && data.get(position) == NSP_BEGIN) {
+            int start = position;
+            while(position < limit && data.get(position) != SPLITER) {
+                position++;
+            }
+            packet.setNsp(toString(data, start, position));
+            if(position < limit) {
+                position++;
             }
         }
 
-        if(dataPosition>0) {
-            dataPosition = dataPosition < 0 ? 1 : dataPosition;
-            packet.setData(msg.substring(dataPosition));
+        //ACK ID
+        int start = position;
+        int seq = 0;
+        while(position < limit && isDigit(data.get(position)) && position - start < 9) {
+            seq = seq * 10 + data.get(position++) - '0';
+        }
+        if(position > start) {
+            packet.setSeq(seq);
+        }
+
+        if(position < limit) {
+            packet.setData(toString(data, position, limit));
         }
 
         return packet;
     }
 
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+
+    private static String toString(ByteBuffer data, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     /**
      * 编码 Packet 成 字符串
      * @param packet SIOPacket 对象
@@ -79,7 +153,12 @@ public class SIOParser {
         StringBuilder msg = new StringBuilder();
         msg.append(packet.getSocketType());
 
-        if(packet.getNsp()!=null) {
+        if(packet.getAttachments() > 0) {
+            msg.append(packet.getAttachments());
+            msg.append(ATTACHMENTS_SPLITER);
+        }
+
+        if(packet.getNsp()!=null && !"/".equals(packet.getNsp())) {
             msg.append(packet.getNsp());
             msg.append(SPLITER);
         }
@@ -96,6 +175,146 @@ public class SIOParser {
 
     }
 
+    /**
+     * 编码 Packet 成 engine.io MESSAGE 报文的 WebSocket 帧数据
+     * @param packet SIOPacket 对象
+     * @return 帧数据
+     */
+    public static ByteBuffer toByteBuffer(SIOPacket packet) {
+        byte[] bytes = encode(packet).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(bytes.length + 1);
+        byteBuffer.put((byte) ('0' + EIOPacket.MESSAGE));
+        byteBuffer.put(bytes);
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    /**
+     * 编码事件或 ACK 报文
+     *      参数中的 byte[] 和 ByteBuffer 作为二进制附件, 报文类型相应的变为 BINARY_EVENT 或 BINARY_ACK
+     * @param socketType 报文类型, EVENT 或 ACK
+     * @param nsp 命名空间
+     * @param seq ACK ID, -1 表示没有
+     * @param args 参数
+     * @return 第一个元素是报文的帧数据, 其后是二进制附件
+     */
+    public static ByteBuffer[] encode(int socketType, String nsp, int seq, List<Object> args) {
+        List<ByteBuffer> binaries = null;
+        Object data = args;
+        if(hasBinary(args)) {
+            binaries = new ArrayList<ByteBuffer>();
+            data = deconstruct(args, binaries);
+            socketType = socketType == SIOPacket.ACK ? SIOPacket.BINARY_ACK : SIOPacket.BINARY_EVENT;
+        }
+
+        SIOPacket packet = new SIOPacket(socketType, nsp, JSON.toJSON(data));
+        packet.setSeq(seq);
+
+        int attachments = binaries == null ? 0 : binaries.size();
+        packet.setAttachments(attachments);
+
+        ByteBuffer[] byteBuffers = new ByteBuffer[attachments + 1];
+        byteBuffers[0] = toByteBuffer(packet);
+        for(int i = 0; i < attachments; i++) {
+            byteBuffers[i + 1] = binaries.get(i);
+        }
+        return byteBuffers;
+    }
+
+    private static boolean hasBinary(Object obj) {
+        if(obj instanceof byte[] || obj instanceof ByteBuffer) {
+            return true;
+        } else if(obj instanceof List) {
+            for(Object item : (List) obj) {
+                if(hasBinary(item)) {
+                    return true;
+                }
+            }
+        } else if(obj instanceof Map) {
+            for(Object item : ((Map) obj).values()) {
+                if(hasBinary(item)) {
+                    return true;
+                }
+            }
+        } else if(obj instanceof Object[]) {
+            for(Object item : (Object[]) obj) {
+                if(hasBinary(item)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 使用占位符替换二进制数据
+     * @param obj 数据
+     * @param binaries 二进制数据
+     * @return 替换后的数据
+     */
+    private static Object deconstruct(Object obj, List<ByteBuffer> binaries) {
+        if(obj instanceof byte[] || obj instanceof ByteBuffer) {
+            Map<String, Object> placeholder = new LinkedHashMap<String, Object>();
+            placeholder.put(PLACEHOLDER, true);
+            placeholder.put(PLACEHOLDER_NUM, binaries.size());
+            binaries.add(obj instanceof byte[] ? ByteBuffer.wrap((byte[]) obj) : ((ByteBuffer) obj).duplicate());
+            return placeholder;
+        } else if(obj instanceof List || obj instanceof Object[]) {
+            List<Object> items = obj instanceof List ? (List<Object>) obj : java.util.Arrays.asList((Object[]) obj);
+            List<Object> result = new ArrayList<Object>(items.size());
+            for(Object item : items) {
+                result.add(deconstruct(item, binaries));
+            }
+            return result;
+        } else if(obj instanceof Map) {
+            Map<Object, Object> result = new LinkedHashMap<Object, Object>();
+            for(Map.Entry<Object, Object> entry : ((Map<Object, Object>) obj).entrySet()) {
+                result.put(entry.getKey(), deconstruct(entry.getValue(), binaries));
+            }
+            return result;
+        }
+        return obj;
+    }
+
+    /**
+     * 解析报文的参数
+     *      占位符被替换为收到的二进制附件(byte[])
+     * @param packet SIOPacket 对象
+     * @return 参数列表
+     */
+    public static List<Object> getArgs(SIOPacket packet) {
+        if(packet.getData() == null) {
+            return new ArrayList<Object>();
+        }
+
+        Object data = JSON.parse(packet.getData());
+        List<Object> args = data instanceof List ? (List<Object>) data : new ArrayList<Object>();
+        if(packet.getAttachments() > 0) {
+            reconstruct(args, packet.getBinaries());
+        }
+        return args;
+    }
+
+    private static Object reconstruct(Object obj, List<byte[]> binaries) {
+        if(obj instanceof List) {
+            List<Object> items = (List<Object>) obj;
+            for(int i = 0; i < items.size(); i++) {
+                items.set(i, reconstruct(items.get(i), binaries));
+            }
+        } else if(obj instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) obj;
+            Object num = map.get(PLACEHOLDER_NUM);
+            if(Boolean.TRUE.equals(map.get(PLACEHOLDER)) && num instanceof Number) {
+                int index = ((Number) num).intValue();
+                return index >= 0 && index < binaries.size() ? binaries.get(index) : null;
+            }
+
+            for(Map.Entry<Object, Object> entry : map.entrySet()) {
+                entry.setValue(reconstruct(entry.getValue(), binaries));
+            }
+        }
+        return obj;
+    }
 
     public static void main(String[] args) throws SocketIOParserException {
         String mm = "2/socketio,0[\"show\", \"kkkk\"]";
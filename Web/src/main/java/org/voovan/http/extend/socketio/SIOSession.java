@@ -1,17 +1,23 @@
 package org.voovan.http.extend.socketio;
 
-import org.voovan.http.extend.engineio.EIOHandler;
 import org.voovan.http.extend.engineio.EIOSession;
 import org.voovan.http.websocket.exception.WebSocketFilterException;
 import org.voovan.network.exception.SendMessageException;
-import org.voovan.tools.TObject;
-import org.voovan.tools.json.JSON;
+import org.voovan.tools.TString;
+import org.voovan.tools.log.Logger;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *  Socket IO 会话
+ *      每个命名空间一个会话, 房间对应 WebSocketDispatcher 中的主题, 向房间发送的消息只编码一次.
  *
  * @author: helyho
  * Voovan Framework.
@@ -22,32 +28,160 @@ public class SIOSession {
     private SIODispatcher sioDispatcher;
     private EIOSession eioSession;
     private String nsp;
+    private String id;
+    private Set<String> rooms;
+    private AtomicInteger ackId;
+    private Map<Integer, SIOHandler> ackHandlers;
 
     public SIOSession(EIOSession eioSession, SIODispatcher sioDispatcher, String nsp){
         this.eioSession = eioSession;
         this.sioDispatcher = sioDispatcher;
         this.nsp = nsp;
+        this.id = TString.generateShortUUID();
+        this.rooms = ConcurrentHashMap.newKeySet();
+        this.ackId = new AtomicInteger(0);
+        this.ackHandlers = new ConcurrentHashMap<Integer, SIOHandler>();
     }
 
-    protected void getEioSession(EIOHandler eioHandler) {
-        this.eioSession = eioSession;
+    public EIOSession getEIOSession() {
+        return eioSession;
     }
 
-    protected void getNsp(String nsp) {
-        this.nsp = nsp;
+    public SIODispatcher getSIODispatcher() {
+        return sioDispatcher;
     }
 
-    protected void getSioDispatcher(SIODispatcher sioDispatcher) {
-        this.sioDispatcher = sioDispatcher;
+    /**
+     * 获取会话在命名空间中的 id
+     * @return 会话 id
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getNsp() {
+        return nsp;
+    }
+
+    /**
+     * 获取已经加入的房间
+     * @return 房间集合
+     */
+    public Set<String> getRooms() {
+        return Collections.unmodifiableSet(rooms);
+    }
+
+    /**
+     * 加入房间
+     * @param room 房间名称
+     */
+    public void join(String room) {
+        if(rooms.add(room)) {
+            eioSession.getWebSocketSession().subscribe(sioDispatcher.getTopic(nsp, room));
+        }
+    }
+
+    /**
+     * 离开房间
+     * @param room 房间名称
+     */
+    public void leave(String room) {
+        if(rooms.remove(room)) {
+            eioSession.getWebSocketSession().unsubscribe(sioDispatcher.getTopic(nsp, room));
+        }
+    }
+
+    /**
+     * 离开所有房间
+     */
+    protected void leaveAll() {
+        for(String room : rooms) {
+            leave(room);
+        }
+        ackHandlers.clear();
+    }
+
+    /**
+     * 向客户端触发事件
+     * @param event 事件名
+     * @param params 事件参数
+     * @throws SendMessageException 发送异常
+     * @throws WebSocketFilterException WebSocket过滤器异常
+     */
+    public void emit(String event, Object ... params) throws SendMessageException, WebSocketFilterException {
+        emit(event, null, params);
     }
 
+    /**
+     * 向客户端触发事件
+     * @param event 事件名
+     * @param sioHandler 客户端确认后的回调, 为 null 时不需要确认
+     * @param params 事件参数
+     * @throws SendMessageException 发送异常
+     * @throws WebSocketFilterException WebSocket过滤器异常
+     */
     public void emit(String event, SIOHandler sioHandler, Object ... params) throws SendMessageException, WebSocketFilterException {
-        sioDispatcher.on(event, sioHandler);
+        int seq = -1;
+        if(sioHandler != null) {
+            seq = ackId.getAndIncrement() & Integer.MAX_VALUE;
+            ackHandlers.put(seq, sioHandler);
+        }
+
+        send(SIOParser.encode(SIOPacket.EVENT, nsp, seq, toArgs(event, params)));
+    }
+
+    /**
+     * 向房间中的所有会话触发事件, 包括当前会话
+     * @param room 房间名称
+     * @param event 事件名
+     * @param params 事件参数
+     * @return 消息进入发送队列的会话数量
+     */
+    public int emitTo(String room, String event, Object ... params) {
+        return sioDispatcher.emitTo(nsp, room, event, params);
+    }
+
+    /**
+     * 发送已经编码的报文
+     * @param byteBuffers 报文的帧数据和二进制附件
+     * @throws SendMessageException 发送异常
+     * @throws WebSocketFilterException WebSocket过滤器异常
+     */
+    protected void send(ByteBuffer[] byteBuffers) throws SendMessageException, WebSocketFilterException {
+        eioSession.send(byteBuffers[0]);
+        for(int i = 1; i < byteBuffers.length; i++) {
+            eioSession.sendBinary(byteBuffers[i]);
+        }
+    }
+
+    /**
+     * 处理客户端的确认
+     * @param seq ACK ID
+     * @param args 确认的参数
+     */
+    protected void onAck(int seq, List<Object> args) {
+        SIOHandler sioHandler = ackHandlers.remove(seq);
+        if(sioHandler == null) {
+            Logger.warnf("socket.io ack {} not found", seq);
+            return;
+        }
+
+        sioHandler.setSIOSession(this);
+        sioHandler.execute(args.toArray());
+    }
 
-        List<Object> args = new ArrayList<Object>();
+    /**
+     * 构造事件参数
+     * @param event 事件名
+     * @param params 事件参数
+     * @return 参数列表
+     */
+    protected static List<Object> toArgs(String event, Object[] params) {
+        List<Object> args = new ArrayList<Object>(params == null ? 1 : params.length + 1);
         args.add(event);
-        args.addAll(TObject.asList(params));
-        SIOPacket sioPacket = new SIOPacket(2, this.nsp, JSON.toJSON(args));
-        eioSession.send(SIOParser.encode(sioPacket));
+        if(params != null) {
+            Collections.addAll(args, params);
+        }
+        return args;
     }
 }
@@ -0,0 +1,125 @@
+package org.voovan.http.http2;
+
+import org.voovan.http.http2.exception.Http2Exception;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * HPACK 解码器
+ * 		每个连接一个实例, 动态表的状态在同一连接的所有头部块之间共享
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HpackDecoder {
+	private HpackTable table;
+	private int maxTableSize;
+	private byte[] stringBuffer;
+
+	/**
+	 * 构造函数
+	 * @param maxTableSize 允许对端使用的动态表最大字节数, 即本端 SETTINGS_HEADER_TABLE_SIZE 的值
+	 * @param maxStringSize 单个字符串的最大字节数
+	 */
+	public HpackDecoder(int maxTableSize, int maxStringSize) {
+		this.maxTableSize = maxTableSize;
+		this.table = new HpackTable(maxTableSize);
+		this.stringBuffer = new byte[maxStringSize];
+	}
+
+	/**
+	 * 解码一个完整的头部块
+	 * @param block 头部块数据, 从当前位置读取到 limit
+	 * @param consumer 名称和值的消费者
+	 */
+	public void decode(ByteBuffer block, BiConsumer<String, String> consumer) {
+		try {
+			while (block.hasRemaining()) {
+				int b = block.get(block.position()) & 0xFF;
+
+				//索引的头字段
+				if ((b & 0x80) != 0) {
+					int index = decodeInt(block, 7);
+					consumer.accept(table.getName(index), table.getValue(index));
+				}
+				//增量索引的字面量
+				else if ((b & 0x40) != 0) {
+					int index = decodeInt(block, 6);
+					String name = index == 0 ? decodeString(block) : table.getName(index);
+					String value = decodeString(block);
+					table.add(name, value);
+					consumer.accept(name, value);
+				}
+				//动态表大小更新
+				else if ((b & 0x20) != 0) {
+					int size = decodeInt(block, 5);
+					if (size > maxTableSize) {
+						throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Hpack table size update exceeds the limit");
+					}
+					table.setMaxSize(size);
+				}
+				//不索引和永不索引的字面量
+				else {
+					int index = decodeInt(block, 4);
+					String name = index == 0 ? decodeString(block) : table.getName(index);
+					String value = decodeString(block);
+					consumer.accept(name, value);
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Hpack block is truncated");
+		}
+	}
+
+	/**
+	 * 解码带前缀的整数
+	 * @param buffer 数据
+	 * @param prefixBits 前缀的位数
+	 * @return 整数值
+	 */
+	public static int decodeInt(ByteBuffer buffer, int prefixBits) {
+		int mask = (1 << prefixBits) - 1;
+		int value = buffer.get() & mask;
+		if (value < mask) {
+			return value;
+		}
+
+		int shift = 0;
+		int b;
+		do {
+			b = buffer.get() & 0xFF;
+			value += (b & 0x7F) << shift;
+			shift += 7;
+			if (shift > 28 || value < 0) {
+				throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Hpack integer overflow");
+			}
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	private String decodeString(ByteBuffer buffer) {
+		boolean huffman = (buffer.get(buffer.position()) & 0x80) != 0;
+		int length = decodeInt(buffer, 7);
+		if (length > buffer.remaining()) {
+			throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Hpack string is truncated");
+		}
+
+		if (huffman) {
+			int size = Huffman.decode(buffer, length, stringBuffer);
+			return new String(stringBuffer, 0, size, StandardCharsets.ISO_8859_1);
+		} else {
+			if (length > stringBuffer.length) {
+				throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Hpack string is too long");
+			}
+			buffer.get(stringBuffer, 0, length);
+			return new String(stringBuffer, 0, length, StandardCharsets.ISO_8859_1);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package org.voovan.http.http2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * HPACK 编码器
+ * 		每个连接一个实例, 字符串不做 Huffman 编码.
+ * 		取值经常变化的头(如 date, content-length)使用不索引的字面量, 避免冲刷动态表.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HpackEncoder {
+	private static final Set<String> VOLATILE_HEADERS = new HashSet<String>(Arrays.asList(
+			"content-length", "date", "set-cookie", "etag", "last-modified", "expires", "location", ":path"));
+
+	private HpackTable table;
+	//名称+值 -> 插入序号, 名称 -> 插入序号
+	private Map<String, Long> fieldIndex;
+	private Map<String, Long> nameIndex;
+	private int pendingTableSize = -1;
+
+	private byte[] buffer;
+	private int length;
+
+	public HpackEncoder() {
+		table = new HpackTable(HpackTable.DEFAULT_MAX_SIZE);
+		fieldIndex = new HashMap<String, Long>();
+		nameIndex = new HashMap<String, Long>();
+		buffer = new byte[1024];
+	}
+
+	/**
+	 * 对端通过 SETTINGS_HEADER_TABLE_SIZE 修改动态表的大小
+	 * @param maxSize 动态表的最大字节数
+	 */
+	public void setMaxTableSize(int maxSize) {
+		maxSize = Math.min(maxSize, HpackTable.DEFAULT_MAX_SIZE);
+		if(maxSize != table.getMaxSize()) {
+			table.setMaxSize(maxSize);
+			pendingTableSize = maxSize;
+		}
+	}
+
+	/**
+	 * 开始编码一个新的头部块
+	 */
+	public void begin() {
+		length = 0;
+		if(pendingTableSize >= 0) {
+			encodeInt(0x20, 5, pendingTableSize);
+			pendingTableSize = -1;
+		}
+	}
+
+	/**
+	 * 编码一个头字段
+	 * @param name 名称, 必须是小写
+	 * @param value 值
+	 */
+	public void encode(String name, String value) {
+		int index = HpackTable.findStaticField(name, value);
+		if(index == 0) {
+			index = dynamicIndex(fieldIndex.get(name + '\0' + value));
+		}
+
+		if(index > 0) {
+			encodeInt(0x80, 7, index);
+			return;
+		}
+
+		int nameIdx = HpackTable.findStaticName(name);
+		if(nameIdx == 0) {
+			nameIdx = dynamicIndex(nameIndex.get(name));
+		}
+
+		if(VOLATILE_HEADERS.contains(name)) {
+			encodeInt(0x00, 4, nameIdx);
+		} else {
+			encodeInt(0x40, 6, nameIdx);
+			table.add(name, value);
+			long seq = table.getInsertCount();
+			fieldIndex.put(name + '\0' + value, seq);
+			nameIndex.put(name, seq);
+
+			//索引失效的条目过多时清理映射
+			if(fieldIndex.size() > table.count() * 4 + 64) {
+				purge();
+			}
+		}
+
+		if(nameIdx == 0) {
+			encodeString(name);
+		}
+		encodeString(value);
+	}
+
+	/**
+	 * 获取编码的数据
+	 * @return 字节数组, 有效长度为 length()
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * 获取编码数据的长度
+	 * @return 字节数
+	 */
+	public int length() {
+		return length;
+	}
+
+	private int dynamicIndex(Long seq) {
+		if(seq == null) {
+			return 0;
+		}
+
+		long dynamicIndex = table.getInsertCount() - seq + 1;
+		return dynamicIndex <= table.count() ? HpackTable.STATIC_SIZE + (int) dynamicIndex : 0;
+	}
+
+	private void purge() {
+		fieldIndex.values().removeIf(seq -> dynamicIndex(seq) == 0);
+		nameIndex.values().removeIf(seq -> dynamicIndex(seq) == 0);
+	}
+
+	private void ensure(int size) {
+		if(length + size > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + size));
+		}
+	}
+
+	private void encodeInt(int flags, int prefixBits, int value) {
+		ensure(6);
+		int mask = (1 << prefixBits) - 1;
+		if(value < mask) {
+			buffer[length++] = (byte) (flags | value);
+			return;
+		}
+
+		buffer[length++] = (byte) (flags | mask);
+		value -= mask;
+		while(value >= 0x80) {
+			buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[length++] = (byte) value;
+	}
+
+	private void encodeString(String value) {
+		int size = value.length();
+		encodeInt(0x00, 7, size);
+		ensure(size);
+		for(int i = 0; i < size; i++) {
+			buffer[length++] = (byte) value.charAt(i);
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package org.voovan.http.http2;
+
+import org.voovan.http.http2.exception.Http2Exception;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HPACK 的索引表
+ * 		包含 RFC 7541 附录 A 中的静态表和一个按大小淘汰的动态表.
+ * 		字符串按 ISO-8859-1 处理, 所以字符数就是字节数.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HpackTable {
+	public static final int DEFAULT_MAX_SIZE = 4096;
+	public static final int ENTRY_OVERHEAD = 32;
+
+	public static final String[][] STATIC_TABLE = new String[][]{
+			null,
+			{":authority", ""},
+			{":method", "GET"},
+			{":method", "POST"},
+			{":path", "/"},
+			{":path", "/index.html"},
+			{":scheme", "http"},
+			{":scheme", "https"},
+			{":status", "200"},
+			{":status", "204"},
+			{":status", "206"},
+			{":status", "304"},
+			{":status", "400"},
+			{":status", "404"},
+			{":status", "500"},
+			{"accept-charset", ""},
+			{"accept-encoding", "gzip, deflate"},
+			{"accept-language", ""},
+			{"accept-ranges", ""},
+			{"accept", ""},
+			{"access-control-allow-origin", ""},
+			{"age", ""},
+			{"allow", ""},
+			{"authorization", ""},
+			{"cache-control", ""},
+			{"content-disposition", ""},
+			{"content-encoding", ""},
+			{"content-language", ""},
+			{"content-length", ""},
+			{"content-location", ""},
+			{"content-range", ""},
+			{"content-type", ""},
+			{"cookie", ""},
+			{"date", ""},
+			{"etag", ""},
+			{"expect", ""},
+			{"expires", ""},
+			{"from", ""},
+			{"host", ""},
+			{"if-match", ""},
+			{"if-modified-since", ""},
+			{"if-none-match", ""},
+			{"if-range", ""},
+			{"if-unmodified-since", ""},
+			{"last-modified", ""},
+			{"link", ""},
+			{"location", ""},
+			{"max-forwards", ""},
+			{"proxy-authenticate", ""},
+			{"proxy-authorization", ""},
+			{"range", ""},
+			{"referer", ""},
+			{"refresh", ""},
+			{"retry-after", ""},
+			{"server", ""},
+			{"set-cookie", ""},
+			{"strict-transport-security", ""},
+			{"transfer-encoding", ""},
+			{"user-agent", ""},
+			{"vary", ""},
+			{"via", ""},
+			{"www-authenticate", ""}
+	};
+
+	public static final int STATIC_SIZE = STATIC_TABLE.length - 1;
+
+	private static final Map<String, Integer> STATIC_NAME_INDEX = new HashMap<String, Integer>();
+	private static final Map<String, Integer> STATIC_FIELD_INDEX = new HashMap<String, Integer>();
+
+	static {
+		for(int i = STATIC_SIZE; i > 0; i--) {
+			STATIC_NAME_INDEX.put(STATIC_TABLE[i][0], i);
+			if(!STATIC_TABLE[i][1].isEmpty()) {
+				STATIC_FIELD_INDEX.put(STATIC_TABLE[i][0] + '\0' + STATIC_TABLE[i][1], i);
+			}
+		}
+	}
+
+	/**
+	 * 在静态表中查找名称
+	 * @param name 名称
+	 * @return 索引, 不存在时返回 0
+	 */
+	public static int findStaticName(String name) {
+		Integer index = STATIC_NAME_INDEX.get(name);
+		return index == null ? 0 : index;
+	}
+
+	/**
+	 * 在静态表中查找名称和值都相同的条目
+	 * @param name 名称
+	 * @param value 值
+	 * @return 索引, 不存在时返回 0
+	 */
+	public static int findStaticField(String name, String value) {
+		Integer index = STATIC_FIELD_INDEX.get(name + '\0' + value);
+		return index == null ? 0 : index;
+	}
+
+	//动态表, 环形数组, head 为下一个写入的位置
+	private String[] names;
+	private String[] values;
+	private int head;
+	private int count;
+	private int size;
+	private int maxSize;
+	private long insertCount;
+
+	/**
+	 * 构造函数
+	 * @param maxSize 动态表的最大字节数
+	 */
+	public HpackTable(int maxSize) {
+		this.maxSize = maxSize;
+		int capacity = maxSize / ENTRY_OVERHEAD + 1;
+		names = new String[capacity];
+		values = new String[capacity];
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * 获取动态表的条目数
+	 * @return 条目数
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * 获取动态表累计插入的条目数, 用于编码时计算条目的索引
+	 * @return 累计插入的条目数
+	 */
+	public long getInsertCount() {
+		return insertCount;
+	}
+
+	/**
+	 * 设置动态表的最大字节数, 超出的条目被淘汰
+	 * @param maxSize 最大字节数
+	 */
+	public void setMaxSize(int maxSize) {
+		this.maxSize = maxSize;
+		evict(0);
+
+		int capacity = maxSize / ENTRY_OVERHEAD + 1;
+		if(capacity > names.length) {
+			String[] newNames = new String[capacity];
+			String[] newValues = new String[capacity];
+			for(int i = count; i > 0; i--) {
+				newNames[count - i] = names[position(i)];
+				newValues[count - i] = values[position(i)];
+			}
+			names = newNames;
+			values = newValues;
+			head = count;
+		}
+	}
+
+	private int position(int dynamicIndex) {
+		int position = head - dynamicIndex;
+		return position < 0 ? position + names.length : position;
+	}
+
+	private static int entrySize(String name, String value) {
+		return name.length() + value.length() + ENTRY_OVERHEAD;
+	}
+
+	private void evict(int required) {
+		while(count > 0 && size + required > maxSize) {
+			int position = position(count);
+			size -= entrySize(names[position], values[position]);
+			names[position] = null;
+			values[position] = null;
+			count--;
+		}
+	}
+
+	/**
+	 * 在动态表中增加条目
+	 * @param name 名称
+	 * @param value 值
+	 */
+	public void add(String name, String value) {
+		int entrySize = entrySize(name, value);
+		insertCount++;
+
+		//条目大于表的容量时清空动态表
+		if(entrySize > maxSize) {
+			evict(maxSize + 1);
+			return;
+		}
+
+		evict(entrySize);
+		names[head] = name;
+		values[head] = value;
+		head = (head + 1) % names.length;
+		count++;
+		size += entrySize;
+	}
+
+	private void checkIndex(int index) {
+		if(index <= 0 || index > STATIC_SIZE + count) {
+			throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Invalid hpack index: " + index);
+		}
+	}
+
+	/**
+	 * 获取索引对应的名称
+	 * @param index 索引, 静态表和动态表统一编号
+	 * @return 名称
+	 */
+	public String getName(int index) {
+		checkIndex(index);
+		return index <= STATIC_SIZE ? STATIC_TABLE[index][0] : names[position(index - STATIC_SIZE)];
+	}
+
+	/**
+	 * 获取索引对应的值
+	 * @param index 索引, 静态表和动态表统一编号
+	 * @return 值
+	 */
+	public String getValue(int index) {
+		checkIndex(index);
+		return index <= STATIC_SIZE ? STATIC_TABLE[index][1] : values[position(index - STATIC_SIZE)];
+	}
+}
@@ -0,0 +1,139 @@
+package org.voovan.http.http2;
+
+import org.voovan.http.http2.exception.Http2Exception;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HTTP/2 帧对象
+ * 		payload 是读取缓冲区的切片, 只在 onReceive 处理期间有效
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class Http2Frame {
+	public static final int FRAME_HEADER_LENGTH = 9;
+
+	//帧类型
+	public static final int DATA 			= 0x0;
+	public static final int HEADERS 		= 0x1;
+	public static final int PRIORITY 		= 0x2;
+	public static final int RST_STREAM 		= 0x3;
+	public static final int SETTINGS 		= 0x4;
+	public static final int PUSH_PROMISE 	= 0x5;
+	public static final int PING 			= 0x6;
+	public static final int GOAWAY 			= 0x7;
+	public static final int WINDOW_UPDATE 	= 0x8;
+	public static final int CONTINUATION 	= 0x9;
+
+	//帧标志
+	public static final int FLAG_END_STREAM 	= 0x1;
+	public static final int FLAG_ACK 			= 0x1;
+	public static final int FLAG_END_HEADERS 	= 0x4;
+	public static final int FLAG_PADDED 		= 0x8;
+	public static final int FLAG_PRIORITY 		= 0x20;
+
+	private int length;
+	private int type;
+	private int flags;
+	private int streamId;
+	private ByteBuffer payload;
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public int getStreamId() {
+		return streamId;
+	}
+
+	public ByteBuffer getPayload() {
+		return payload;
+	}
+
+	/**
+	 * 判断是否包含标志
+	 * @param flag 标志
+	 * @return true: 包含, false: 不包含
+	 */
+	public boolean hasFlag(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	/**
+	 * 读取缓冲区中帧的总长度
+	 * @param byteBuffer 缓冲区, 从 position 开始
+	 * @return 帧头和负载的总长度, 帧头不完整时返回 -1
+	 */
+	public static int frameLength(ByteBuffer byteBuffer) {
+		if(byteBuffer.remaining() < FRAME_HEADER_LENGTH) {
+			return -1;
+		}
+
+		int position = byteBuffer.position();
+		int length = ((byteBuffer.get(position) & 0xFF) << 16) |
+				((byteBuffer.get(position + 1) & 0xFF) << 8) |
+				(byteBuffer.get(position + 2) & 0xFF);
+		return FRAME_HEADER_LENGTH + length;
+	}
+
+	/**
+	 * 解析一个完整的帧
+	 * @param byteBuffer 只包含一个帧的缓冲区
+	 * @param maxFrameSize 允许的最大负载长度
+	 * @return 帧对象
+	 */
+	public static Http2Frame parse(ByteBuffer byteBuffer, int maxFrameSize) {
+		Http2Frame frame = new Http2Frame();
+		frame.length = ((byteBuffer.get() & 0xFF) << 16) | ((byteBuffer.get() & 0xFF) << 8) | (byteBuffer.get() & 0xFF);
+		frame.type = byteBuffer.get() & 0xFF;
+		frame.flags = byteBuffer.get() & 0xFF;
+		frame.streamId = byteBuffer.getInt() & 0x7FFFFFFF;
+
+		if(frame.length > maxFrameSize) {
+			throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Frame size " + frame.length + " exceeds " + maxFrameSize);
+		}
+
+		if(byteBuffer.remaining() < frame.length) {
+			throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Frame is truncated");
+		}
+
+		ByteBuffer payload = byteBuffer.slice();
+		payload.limit(frame.length);
+		frame.payload = payload;
+		return frame;
+	}
+
+	/**
+	 * 写入帧头
+	 * @param byteBuffer 缓冲区
+	 * @param length 负载长度
+	 * @param type 帧类型
+	 * @param flags 帧标志
+	 * @param streamId 流 id
+	 */
+	public static void writeHeader(ByteBuffer byteBuffer, int length, int type, int flags, int streamId) {
+		byteBuffer.put((byte) (length >>> 16));
+		byteBuffer.put((byte) (length >>> 8));
+		byteBuffer.put((byte) length);
+		byteBuffer.put((byte) type);
+		byteBuffer.put((byte) flags);
+		byteBuffer.putInt(streamId & 0x7FFFFFFF);
+	}
+
+	@Override
+	public String toString() {
+		return "Http2Frame{type=" + type + ", flags=" + flags + ", streamId=" + streamId + ", length=" + length + "}";
+	}
+}
@@ -0,0 +1,772 @@
+package org.voovan.http.http2;
+
+import org.voovan.http.http2.exception.Http2Exception;
+import org.voovan.http.message.HttpClock;
+import org.voovan.http.message.HttpStatic;
+import org.voovan.http.message.Request;
+import org.voovan.http.message.Response;
+import org.voovan.http.message.packet.Cookie;
+import org.voovan.http.message.packet.Header;
+import org.voovan.http.server.context.WebContext;
+import org.voovan.network.IoSession;
+import org.voovan.tools.collection.IntKeyMap;
+import org.voovan.tools.log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP/2 连接会话
+ * 		处理连接级别的帧(SETTINGS, PING, WINDOW_UPDATE, GOAWAY), 组装各个流的请求,
+ * 		并将响应编码为 HEADERS 和 DATA 帧, DATA 帧按连接和流两级发送窗口进行流控, 窗口不足的数据等待 WINDOW_UPDATE 后继续发送.
+ * 		所有方法都是同步的, 异步响应可以在其他线程中发送.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class Http2Session {
+	public static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	public static final int DEFAULT_WINDOW_SIZE 		= 65535;
+	public static final int DEFAULT_MAX_FRAME_SIZE 		= 16384;
+	public static final int MAX_CONCURRENT_STREAMS 		= 100;
+
+	//SETTINGS 参数
+	public static final int SETTINGS_HEADER_TABLE_SIZE 		= 0x1;
+	public static final int SETTINGS_ENABLE_PUSH 			= 0x2;
+	public static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	public static final int SETTINGS_INITIAL_WINDOW_SIZE 	= 0x4;
+	public static final int SETTINGS_MAX_FRAME_SIZE 		= 0x5;
+	public static final int SETTINGS_MAX_HEADER_LIST_SIZE 	= 0x6;
+
+	private static final String[] CONNECTION_HEADERS = new String[]{
+			"connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"
+	};
+
+	private IoSession session;
+	private long maxRequestSize;
+	private HpackDecoder decoder;
+	private HpackEncoder encoder;
+	private IntKeyMap<Http2Stream> streams;
+
+	private boolean prefaceReceived = false;
+	private boolean settingsSent = false;
+	private int lastStreamId = 0;
+
+	//发送窗口和对端的参数
+	private int sendWindow = DEFAULT_WINDOW_SIZE;
+	private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+	private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+	//跨 CONTINUATION 帧的头部块
+	private int headersStreamId = 0;
+	private boolean headersEndStream = false;
+	private byte[] headerBlock = new byte[1024];
+	private int headerBlockLength = 0;
+
+	private ByteBuffer frameBuffer;
+	private byte[] dataBuffer;
+
+	/**
+	 * 构造函数
+	 * @param session socket 会话对象
+	 * @param maxRequestSize 单个请求(头部块或请求体)的最大字节数, 小于 0 不限制
+	 */
+	public Http2Session(IoSession session, long maxRequestSize) {
+		this.session = session;
+		this.maxRequestSize = maxRequestSize < 0 ? Long.MAX_VALUE : maxRequestSize;
+		this.decoder = new HpackDecoder(HpackTable.DEFAULT_MAX_SIZE, DEFAULT_MAX_FRAME_SIZE * 4);
+		this.encoder = new HpackEncoder();
+		this.streams = new IntKeyMap<Http2Stream>(64);
+		this.frameBuffer = ByteBuffer.allocate(Http2Frame.FRAME_HEADER_LENGTH + DEFAULT_MAX_FRAME_SIZE);
+		this.dataBuffer = new byte[DEFAULT_MAX_FRAME_SIZE];
+	}
+
+	public IoSession getSession() {
+		return session;
+	}
+
+	public boolean isPrefaceReceived() {
+		return prefaceReceived;
+	}
+
+	/**
+	 * 本端能接受的最大帧负载长度
+	 * @return 最大帧负载长度
+	 */
+	public int getMaxFrameSize() {
+		return DEFAULT_MAX_FRAME_SIZE;
+	}
+
+	/**
+	 * 判断缓冲区中的数据是否是连接前言
+	 * @param byteBuffer 缓冲区
+	 * @return true: 是连接前言, false: 不是
+	 */
+	public static boolean isPreface(ByteBuffer byteBuffer) {
+		if(byteBuffer.remaining() < PREFACE.length) {
+			return false;
+		}
+
+		int position = byteBuffer.position();
+		for(int i = 0; i < PREFACE.length; i++) {
+			if(byteBuffer.get(position + i) != PREFACE[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 收到客户端的连接前言, 发送本端的 SETTINGS
+	 */
+	public synchronized void onPreface() {
+		prefaceReceived = true;
+		sendSettings();
+	}
+
+	/**
+	 * 发送本端的 SETTINGS, 只发送一次
+	 */
+	public synchronized void sendSettings() {
+		if(settingsSent) {
+			return;
+		}
+
+		frameBuffer.clear();
+		Http2Frame.writeHeader(frameBuffer, 12, Http2Frame.SETTINGS, 0, 0);
+		frameBuffer.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS);
+		frameBuffer.putInt(MAX_CONCURRENT_STREAMS);
+		frameBuffer.putShort((short) SETTINGS_ENABLE_PUSH);
+		frameBuffer.putInt(0);
+		frameBuffer.flip();
+		session.send(frameBuffer);
+		settingsSent = true;
+	}
+
+	/**
+	 * 应用 h2c 升级请求中 HTTP2-Settings 头携带的 SETTINGS 参数
+	 * @param settings base64url 编码的 SETTINGS 帧负载
+	 */
+	public synchronized void applyUpgradeSettings(String settings) {
+		byte[] payload = Base64.getUrlDecoder().decode(settings.trim());
+		applySettings(ByteBuffer.wrap(payload));
+	}
+
+	/**
+	 * 将 h2c 升级的 HTTP/1.1 请求作为流 1
+	 * 		升级请求是半关闭的, 响应在流 1 上发送
+	 * @return 流 1
+	 */
+	public synchronized Http2Stream openUpgradeStream() {
+		Http2Stream stream = new Http2Stream(1, peerInitialWindowSize);
+		stream.setRemoteClosed(true);
+		stream.setDispatched(true);
+		streams.put(1, stream);
+		lastStreamId = 1;
+		return stream;
+	}
+
+	/**
+	 * 处理一个帧
+	 * @param frame 帧对象
+	 * @return 请求接收完整的流, 没有时返回 null
+	 */
+	public synchronized Http2Stream onFrame(Http2Frame frame) {
+		try {
+			if(headersStreamId != 0 && (frame.getType() != Http2Frame.CONTINUATION || frame.getStreamId() != headersStreamId)) {
+				throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Expect CONTINUATION frame of stream " + headersStreamId);
+			}
+
+			switch (frame.getType()) {
+				case Http2Frame.DATA:
+					return onData(frame);
+				case Http2Frame.HEADERS:
+					return onHeaders(frame);
+				case Http2Frame.CONTINUATION:
+					return onContinuation(frame);
+				case Http2Frame.PRIORITY:
+					if (frame.getLength() != 5) {
+						throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, frame.getStreamId(), "Invalid PRIORITY frame");
+					}
+					return null;
+				case Http2Frame.RST_STREAM:
+					onRstStream(frame);
+					return null;
+				case Http2Frame.SETTINGS:
+					onSettings(frame);
+					return null;
+				case Http2Frame.PING:
+					onPing(frame);
+					return null;
+				case Http2Frame.GOAWAY:
+					session.close();
+					return null;
+				case Http2Frame.WINDOW_UPDATE:
+					onWindowUpdate(frame);
+					return null;
+				case Http2Frame.PUSH_PROMISE:
+					throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Client can't send PUSH_PROMISE");
+				default:
+					//未知的帧类型直接忽略
+					return null;
+			}
+		} catch (Http2Exception e) {
+			onError(e);
+			return null;
+		}
+	}
+
+	/**
+	 * 处理协议错误
+	 * 		流错误发送 RST_STREAM, 连接错误发送 GOAWAY 后关闭连接
+	 * @param e 异常对象
+	 */
+	public synchronized void onError(Http2Exception e) {
+		if(e.isConnectionError()) {
+			frameBuffer.clear();
+			Http2Frame.writeHeader(frameBuffer, 8, Http2Frame.GOAWAY, 0, 0);
+			frameBuffer.putInt(lastStreamId);
+			frameBuffer.putInt(e.getErrorCode());
+			frameBuffer.flip();
+			session.send(frameBuffer);
+			session.flush();
+			session.close();
+			Logger.warn("Http2 connection error: " + e.getMessage());
+		} else {
+			sendRstStream(e.getStreamId(), e.getErrorCode());
+			streams.remove(e.getStreamId());
+		}
+	}
+
+	private int readPadding(Http2Frame frame, ByteBuffer payload) {
+		if(!frame.hasFlag(Http2Frame.FLAG_PADDED)) {
+			return 0;
+		}
+
+		if(!payload.hasRemaining()) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid padding");
+		}
+
+		return payload.get() & 0xFF;
+	}
+
+	private Http2Stream onData(Http2Frame frame) {
+		int streamId = frame.getStreamId();
+		if(streamId == 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA frame on stream 0");
+		}
+
+		//整个帧都计入流控, 处理后立即归还连接窗口
+		if(frame.getLength() > 0) {
+			sendWindowUpdate(0, frame.getLength());
+		}
+
+		ByteBuffer payload = frame.getPayload();
+		int padding = readPadding(frame, payload);
+		int length = payload.remaining() - padding;
+		if(length < 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid padding");
+		}
+
+		Http2Stream stream = streams.get(streamId);
+		if(stream == null || stream.isRemoteClosed()) {
+			throw new Http2Exception(Http2Exception.STREAM_CLOSED, streamId, "Stream " + streamId + " is closed");
+		}
+
+		Request request = stream.getRequest();
+		if(request.body().size() + length > maxRequestSize) {
+			throw new Http2Exception(Http2Exception.REFUSED_STREAM, streamId, "Request is too large");
+		}
+
+		payload.get(dataBuffer, 0, length);
+		request.body().write(dataBuffer, 0, length);
+		request.setHasBody(true);
+
+		if(frame.hasFlag(Http2Frame.FLAG_END_STREAM)) {
+			stream.setRemoteClosed(true);
+			return dispatch(stream);
+		} else if(frame.getLength() > 0) {
+			sendWindowUpdate(streamId, frame.getLength());
+		}
+
+		return null;
+	}
+
+	private Http2Stream onHeaders(Http2Frame frame) {
+		int streamId = frame.getStreamId();
+		if(streamId == 0 || (streamId & 1) == 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid stream id " + streamId);
+		}
+
+		ByteBuffer payload = frame.getPayload();
+		int padding = readPadding(frame, payload);
+		if(frame.hasFlag(Http2Frame.FLAG_PRIORITY)) {
+			if(payload.remaining() < 5) {
+				throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid HEADERS frame");
+			}
+			payload.position(payload.position() + 5);
+		}
+
+		int length = payload.remaining() - padding;
+		if(length < 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid padding");
+		}
+
+		headerBlockLength = 0;
+		appendHeaderBlock(payload, length);
+		headersEndStream = frame.hasFlag(Http2Frame.FLAG_END_STREAM);
+
+		if(frame.hasFlag(Http2Frame.FLAG_END_HEADERS)) {
+			return onHeaderBlock(streamId);
+		} else {
+			headersStreamId = streamId;
+			return null;
+		}
+	}
+
+	private Http2Stream onContinuation(Http2Frame frame) {
+		if(headersStreamId == 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+		}
+
+		ByteBuffer payload = frame.getPayload();
+		appendHeaderBlock(payload, payload.remaining());
+
+		if(frame.hasFlag(Http2Frame.FLAG_END_HEADERS)) {
+			int streamId = headersStreamId;
+			headersStreamId = 0;
+			return onHeaderBlock(streamId);
+		}
+
+		return null;
+	}
+
+	private void appendHeaderBlock(ByteBuffer payload, int length) {
+		if(headerBlockLength + length > maxRequestSize) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Header block is too large");
+		}
+
+		if(headerBlockLength + length > headerBlock.length) {
+			headerBlock = Arrays.copyOf(headerBlock, Math.max(headerBlock.length * 2, headerBlockLength + length));
+		}
+
+		payload.get(headerBlock, headerBlockLength, length);
+		headerBlockLength += length;
+	}
+
+	private Http2Stream onHeaderBlock(int streamId) {
+		ByteBuffer block = ByteBuffer.wrap(headerBlock, 0, headerBlockLength);
+		Http2Stream stream = streams.get(streamId);
+
+		//尾部头(trailers), 只接受并结束请求
+		if(stream != null) {
+			if(stream.isRemoteClosed() || !headersEndStream) {
+				decoder.decode(block, (name, value) -> {});
+				throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "Unexpected HEADERS frame");
+			}
+
+			Header header = stream.getRequest().header();
+			decoder.decode(block, (name, value) -> header.put(name, value));
+			stream.setRemoteClosed(true);
+			return dispatch(stream);
+		}
+
+		if(streamId <= lastStreamId) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Stream id " + streamId + " is not increasing");
+		}
+		lastStreamId = streamId;
+
+		//无论是否接受这个流, 都必须解码头部块以保持动态表的同步
+		if(streams.size() >= MAX_CONCURRENT_STREAMS) {
+			decoder.decode(block, (name, value) -> {});
+			throw new Http2Exception(Http2Exception.REFUSED_STREAM, streamId, "Too many concurrent streams");
+		}
+
+		stream = new Http2Stream(streamId, peerInitialWindowSize);
+		Request request = stream.getRequest();
+		request.protocol().setVersion("2.0");
+		request.protocol().setMethod(null);
+		request.protocol().setPath(null);
+		Header header = request.header();
+
+		decoder.decode(block, (name, value) -> {
+			if(name.isEmpty()) {
+				return;
+			}
+
+			if(name.charAt(0) == ':') {
+				if(":method".equals(name)) {
+					request.protocol().setMethod(value);
+				} else if(":path".equals(name)) {
+					int queryIndex = value.indexOf('?');
+					if(queryIndex >= 0) {
+						request.protocol().setPath(value.substring(0, queryIndex));
+						request.protocol().setQueryString(value.substring(queryIndex + 1));
+					} else {
+						request.protocol().setPath(value);
+					}
+				} else if(":authority".equals(name)) {
+					header.put(HttpStatic.HOST_STRING, value);
+				}
+			} else {
+				//多个 cookie 头按 HTTP/1.1 的格式合并
+				String oldValue = header.get(name);
+				if(oldValue == null) {
+					header.put(name, value);
+				} else {
+					header.put(name, oldValue + (HttpStatic.COOKIE_STRING.equalsIgnoreCase(name) ? "; " : ", ") + value);
+				}
+			}
+		});
+
+		if(request.protocol().getMethod() == null || request.protocol().getPath() == null) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "Missing :method or :path");
+		}
+
+		streams.put(streamId, stream);
+
+		if(headersEndStream) {
+			stream.setRemoteClosed(true);
+			return dispatch(stream);
+		}
+
+		return null;
+	}
+
+	private Http2Stream dispatch(Http2Stream stream) {
+		if(stream.isDispatched()) {
+			return null;
+		}
+
+		stream.setDispatched(true);
+		return stream;
+	}
+
+	private void onRstStream(Http2Frame frame) {
+		if(frame.getStreamId() == 0 || frame.getLength() != 4) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid RST_STREAM frame");
+		}
+
+		streams.remove(frame.getStreamId());
+	}
+
+	private void onSettings(Http2Frame frame) {
+		if(frame.getStreamId() != 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "SETTINGS frame on stream " + frame.getStreamId());
+		}
+
+		if(frame.hasFlag(Http2Frame.FLAG_ACK)) {
+			if(frame.getLength() != 0) {
+				throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS ack with payload");
+			}
+			return;
+		}
+
+		applySettings(frame.getPayload());
+
+		frameBuffer.clear();
+		Http2Frame.writeHeader(frameBuffer, 0, Http2Frame.SETTINGS, Http2Frame.FLAG_ACK, 0);
+		frameBuffer.flip();
+		session.send(frameBuffer);
+
+		resumePending();
+	}
+
+	private void applySettings(ByteBuffer payload) {
+		if(payload.remaining() % 6 != 0) {
+			throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+		}
+
+		while(payload.hasRemaining()) {
+			int id = payload.getShort() & 0xFFFF;
+			int value = payload.getInt();
+
+			switch (id) {
+				case SETTINGS_HEADER_TABLE_SIZE:
+					encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+					break;
+				case SETTINGS_INITIAL_WINDOW_SIZE:
+					if(value < 0) {
+						throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Invalid initial window size");
+					}
+
+					int delta = value - peerInitialWindowSize;
+					peerInitialWindowSize = value;
+					for(Http2Stream stream : activeStreams()) {
+						stream.updateSendWindow(delta);
+					}
+					break;
+				case SETTINGS_MAX_FRAME_SIZE:
+					if(value < DEFAULT_MAX_FRAME_SIZE || value > 0xFFFFFF) {
+						throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid max frame size");
+					}
+
+					peerMaxFrameSize = value;
+					if(frameBuffer.capacity() < Http2Frame.FRAME_HEADER_LENGTH + value) {
+						frameBuffer = ByteBuffer.allocate(Http2Frame.FRAME_HEADER_LENGTH + Math.min(value, 4 * DEFAULT_MAX_FRAME_SIZE));
+					}
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	private void onPing(Http2Frame frame) {
+		if(frame.getStreamId() != 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PING frame on stream " + frame.getStreamId());
+		}
+
+		if(frame.getLength() != 8) {
+			throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid PING frame");
+		}
+
+		if(!frame.hasFlag(Http2Frame.FLAG_ACK)) {
+			frameBuffer.clear();
+			Http2Frame.writeHeader(frameBuffer, 8, Http2Frame.PING, Http2Frame.FLAG_ACK, 0);
+			frameBuffer.put(frame.getPayload());
+			frameBuffer.flip();
+			session.send(frameBuffer);
+		}
+	}
+
+	private void onWindowUpdate(Http2Frame frame) {
+		if(frame.getLength() != 4) {
+			throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame");
+		}
+
+		int streamId = frame.getStreamId();
+		int increment = frame.getPayload().getInt() & 0x7FFFFFFF;
+		if(increment == 0) {
+			throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "WINDOW_UPDATE increment is 0");
+		}
+
+		if(streamId == 0) {
+			if((long) sendWindow + increment > Integer.MAX_VALUE) {
+				throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Connection window overflow");
+			}
+			sendWindow += increment;
+		} else {
+			Http2Stream stream = streams.get(streamId);
+			if(stream != null) {
+				stream.updateSendWindow(increment);
+			}
+		}
+
+		resumePending();
+	}
+
+	private List<Http2Stream> activeStreams() {
+		List<Http2Stream> result = new ArrayList<Http2Stream>();
+		for(int i = 0; i < streams.getCapacity(); i++) {
+			Http2Stream stream = streams.getValue(i);
+			if(stream != null) {
+				result.add(stream);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 发送窗口增大后继续发送等待中的响应数据
+	 */
+	private void resumePending() {
+		for(Http2Stream stream : activeStreams()) {
+			if(stream.hasPending()) {
+				writeData(stream);
+			}
+		}
+	}
+
+	/**
+	 * 在流上发送响应
+	 * 		数据写入发送缓冲区, 由调用方负责 flush
+	 * @param streamId 流 id
+	 * @param response 响应对象
+	 * @throws IOException IO 异常
+	 */
+	public synchronized void sendResponse(int streamId, Response response) throws IOException {
+		Http2Stream stream = streams.get(streamId);
+
+		//流已经被对端重置
+		if(stream == null) {
+			return;
+		}
+
+		response.prepareHeader();
+
+		boolean hasData = response.body().size() > 0 && !"HEAD".equals(stream.getRequest().protocol().getMethod());
+
+		encoder.begin();
+		encoder.encode(":status", Integer.toString(response.protocol().getStatus()));
+
+		for(Map.Entry<String, String> entry : response.header().getHeaders().entrySet()) {
+			String name = entry.getKey().toLowerCase();
+			if(isConnectionHeader(name)) {
+				continue;
+			}
+			encoder.encode(name, entry.getValue());
+		}
+
+		if(!response.header().contain(HttpStatic.DATE_STRING)) {
+			encoder.encode("date", HttpClock.getDate());
+		}
+
+		if(!response.header().contain(HttpStatic.SERVER_STRING)) {
+			encoder.encode("server", WebContext.FRAMEWORK_NAME);
+		}
+
+		for(Cookie cookie : response.cookies()) {
+			encoder.encode("set-cookie", cookie.toString());
+		}
+
+		writeHeaders(streamId, !hasData);
+
+		if(!hasData) {
+			streams.remove(streamId);
+			return;
+		}
+
+		//压缩时边读取 body 边压缩, 直接写入 DATA 帧, 流以 END_STREAM 结束, 不需要 content-length
+		if(response.isCompress()) {
+			Response.writeGzip(response.body(), response.getCompressLevel(), (data, length) -> writeData(stream, data, 0, length));
+		} else {
+			byte[] data = response.body().getBodyBytes();
+			writeData(stream, data, 0, data.length);
+		}
+
+		stream.setPendingEnd(true);
+		writeData(stream);
+	}
+
+	private static boolean isConnectionHeader(String name) {
+		for(String connectionHeader : CONNECTION_HEADERS) {
+			if(connectionHeader.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void writeHeaders(int streamId, boolean endStream) {
+		byte[] block = encoder.getBuffer();
+		int length = encoder.length();
+		int offset = 0;
+		int type = Http2Frame.HEADERS;
+
+		do {
+			int size = Math.min(length - offset, peerMaxFrameSize);
+			size = Math.min(size, frameBuffer.capacity() - Http2Frame.FRAME_HEADER_LENGTH);
+			int flags = offset + size == length ? Http2Frame.FLAG_END_HEADERS : 0;
+			if(type == Http2Frame.HEADERS && endStream) {
+				flags |= Http2Frame.FLAG_END_STREAM;
+			}
+
+			writeFrame(type, flags, streamId, block, offset, size);
+			offset += size;
+			type = Http2Frame.CONTINUATION;
+		} while(offset < length);
+	}
+
+	/**
+	 * 在发送窗口允许的范围内发送响应数据
+	 * 		超出发送窗口的数据保存在流中, 发送窗口增大后继续发送
+	 * @param stream 流对象
+	 * @param data 数据
+	 * @param offset 数据的偏移量
+	 * @param length 数据长度
+	 */
+	private void writeData(Http2Stream stream, byte[] data, int offset, int length) {
+		int size = stream.getPendingSize() > 0 ? 0 : writeDataFrames(stream, data, offset, length, false);
+		if(size < length) {
+			stream.appendPending(data, offset + size, length - size);
+		}
+	}
+
+	/**
+	 * 在发送窗口允许的范围内发送流中等待的响应数据
+	 * 		响应数据已经全部产生且全部发送后结束流
+	 * @param stream 流对象
+	 */
+	private void writeData(Http2Stream stream) {
+		int pendingSize = stream.getPendingSize();
+		int size = writeDataFrames(stream, stream.getPendingData(), stream.getPendingOffset(), pendingSize, stream.isPendingEnd());
+		stream.consumePending(size);
+
+		if(size == pendingSize && stream.isPendingEnd()) {
+			stream.setPendingEnd(false);
+			streams.remove(stream.getId());
+		}
+	}
+
+	/**
+	 * 按帧大小和发送窗口写入 DATA 帧
+	 * @param stream 流对象
+	 * @param data 数据
+	 * @param offset 数据的偏移量
+	 * @param length 数据长度
+	 * @param endStream 数据全部写入后是否结束流
+	 * @return 已经写入的数据长度
+	 */
+	private int writeDataFrames(Http2Stream stream, byte[] data, int offset, int length, boolean endStream) {
+		int sent = 0;
+		do {
+			int size = Math.min(length - sent, peerMaxFrameSize);
+			size = Math.min(size, frameBuffer.capacity() - Http2Frame.FRAME_HEADER_LENGTH);
+			size = Math.min(size, Math.min(sendWindow, stream.getSendWindow()));
+
+			//END_STREAM 可以使用空的 DATA 帧发送, 不占用发送窗口
+			boolean last = endStream && size >= 0 && sent + size == length;
+			if(size <= 0 && !last) {
+				break;
+			}
+
+			writeFrame(Http2Frame.DATA, last ? Http2Frame.FLAG_END_STREAM : 0, stream.getId(), data, offset + sent, size);
+			sent += size;
+			sendWindow -= size;
+			stream.updateSendWindow(-size);
+
+			if(last) {
+				break;
+			}
+		} while(sent < length);
+
+		return sent;
+	}
+
+	private void sendWindowUpdate(int streamId, int increment) {
+		frameBuffer.clear();
+		Http2Frame.writeHeader(frameBuffer, 4, Http2Frame.WINDOW_UPDATE, 0, streamId);
+		frameBuffer.putInt(increment);
+		frameBuffer.flip();
+		session.send(frameBuffer);
+	}
+
+	private void sendRstStream(int streamId, int errorCode) {
+		frameBuffer.clear();
+		Http2Frame.writeHeader(frameBuffer, 4, Http2Frame.RST_STREAM, 0, streamId);
+		frameBuffer.putInt(errorCode);
+		frameBuffer.flip();
+		session.send(frameBuffer);
+	}
+
+	private void writeFrame(int type, int flags, int streamId, byte[] data, int offset, int length) {
+		frameBuffer.clear();
+		Http2Frame.writeHeader(frameBuffer, length, type, flags, streamId);
+		if(length > 0) {
+			frameBuffer.put(data, offset, length);
+		}
+		frameBuffer.flip();
+		session.send(frameBuffer);
+	}
+}
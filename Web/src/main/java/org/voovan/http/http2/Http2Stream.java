@@ -0,0 +1,154 @@
+package org.voovan.http.http2;
+
+import org.voovan.http.http2.exception.Http2Exception;
+import org.voovan.http.message.Request;
+
+/**
+ * HTTP/2 流对象
+ * 		保存请求的组装状态和响应数据的发送状态
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class Http2Stream {
+	private int id;
+	private Request request;
+	private int sendWindow;
+	private boolean remoteClosed;
+	private boolean dispatched;
+
+	//等待发送窗口的响应数据
+	private byte[] pendingData;
+	private int pendingOffset;
+	private int pendingLength;
+	//响应数据已经全部产生, 等待的数据发送完后结束流
+	private boolean pendingEnd;
+
+	public Http2Stream(int id, int sendWindow) {
+		this.id = id;
+		this.sendWindow = sendWindow;
+		this.request = new Request();
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public Request getRequest() {
+		return request;
+	}
+
+	public int getSendWindow() {
+		return sendWindow;
+	}
+
+	/**
+	 * 调整发送窗口
+	 * @param delta 变化量, 可以为负数
+	 */
+	public void updateSendWindow(int delta) {
+		long window = (long) sendWindow + delta;
+		if(window > Integer.MAX_VALUE) {
+			throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, id, "Stream window overflow");
+		}
+		sendWindow = (int) window;
+	}
+
+	/**
+	 * 对端是否已经发送完请求
+	 * @return true: 已发送完, false: 未发送完
+	 */
+	public boolean isRemoteClosed() {
+		return remoteClosed;
+	}
+
+	public void setRemoteClosed(boolean remoteClosed) {
+		this.remoteClosed = remoteClosed;
+	}
+
+	/**
+	 * 请求是否已经交给 HttpDispatcher 处理
+	 * @return true: 已处理, false: 未处理
+	 */
+	public boolean isDispatched() {
+		return dispatched;
+	}
+
+	public void setDispatched(boolean dispatched) {
+		this.dispatched = dispatched;
+	}
+
+	public byte[] getPendingData() {
+		return pendingData;
+	}
+
+	public int getPendingOffset() {
+		return pendingOffset;
+	}
+
+	/**
+	 * 获取等待发送的数据长度
+	 * @return 数据长度
+	 */
+	public int getPendingSize() {
+		return pendingLength - pendingOffset;
+	}
+
+	/**
+	 * 是否有等待发送窗口的响应
+	 * @return true: 有, false: 没有
+	 */
+	public boolean hasPending() {
+		return getPendingSize() > 0 || pendingEnd;
+	}
+
+	public boolean isPendingEnd() {
+		return pendingEnd;
+	}
+
+	public void setPendingEnd(boolean pendingEnd) {
+		this.pendingEnd = pendingEnd;
+	}
+
+	/**
+	 * 追加等待发送的响应数据
+	 * 		空间不足时按两倍扩容, 已经发送的数据被丢弃
+	 * @param data 数据
+	 * @param offset 数据的偏移量
+	 * @param length 数据长度
+	 */
+	public void appendPending(byte[] data, int offset, int length) {
+		int size = getPendingSize();
+		if(pendingData == null || pendingLength + length > pendingData.length) {
+			byte[] newData = pendingData;
+			if(newData == null || size + length > newData.length) {
+				newData = new byte[Math.max(size + length, newData == null ? 0 : newData.length * 2)];
+			}
+			if(size > 0) {
+				System.arraycopy(pendingData, pendingOffset, newData, 0, size);
+			}
+			pendingData = newData;
+			pendingOffset = 0;
+			pendingLength = size;
+		}
+
+		System.arraycopy(data, offset, pendingData, pendingLength, length);
+		pendingLength = pendingLength + length;
+	}
+
+	/**
+	 * 移除已经发送的数据
+	 * @param size 已经发送的数据长度
+	 */
+	public void consumePending(int size) {
+		pendingOffset = pendingOffset + size;
+		if(pendingOffset == pendingLength) {
+			pendingData = null;
+			pendingOffset = 0;
+			pendingLength = 0;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package org.voovan.http.http2.exception;
+
+import org.voovan.tools.exception.EmptyStackRuntimeException;
+
+/**
+ * HTTP/2 协议异常
+ * 		streamId 为 0 时是连接错误, 需要发送 GOAWAY 并关闭连接, 否则是流错误, 只重置对应的流
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class Http2Exception extends EmptyStackRuntimeException {
+    public final static int NO_ERROR            = 0x0;
+    public final static int PROTOCOL_ERROR      = 0x1;
+    public final static int INTERNAL_ERROR      = 0x2;
+    public final static int FLOW_CONTROL_ERROR  = 0x3;
+    public final static int STREAM_CLOSED       = 0x5;
+    public final static int FRAME_SIZE_ERROR    = 0x6;
+    public final static int REFUSED_STREAM      = 0x7;
+    public final static int CANCEL              = 0x8;
+    public final static int COMPRESSION_ERROR   = 0x9;
+
+    private int errorCode;
+    private int streamId;
+
+    public Http2Exception(int errorCode, String msg){
+        this(errorCode, 0, msg);
+    }
+
+    public Http2Exception(int errorCode, int streamId, String msg){
+        super(msg);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public boolean isConnectionError() {
+        return streamId == 0;
+    }
+}
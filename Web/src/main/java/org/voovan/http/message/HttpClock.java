@@ -0,0 +1,70 @@
+package org.voovan.http.message;
+
+import org.voovan.Global;
+import org.voovan.tools.TDateTime;
+import org.voovan.tools.TString;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+
+import java.util.Date;
+
+/**
+ * HTTP 时钟
+ * 		每秒刷新一次当前时间和 GMT 格式的日期, 响应直接使用预编码的 Date 头, 不在每个响应上格式化日期
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpClock {
+	private static volatile long currentTimeMillis;
+	private static volatile String date;
+	private static volatile byte[] dateHeader;
+
+	static {
+		refresh();
+
+		Global.getHashWheelTimer().addTask(new HashWheelTask() {
+			@Override
+			public void run() {
+				refresh();
+			}
+		}, 1);
+	}
+
+	private static void refresh() {
+		long now = System.currentTimeMillis();
+		String newDate = TDateTime.formatToGMT(new Date(now));
+		if(!newDate.equals(date)) {
+			dateHeader = TString.toAsciiBytes(HttpStatic.DATE_STRING + HttpStatic.HEADER_SPLITER_STRING + newDate + HttpStatic.LINE_MARK_STRING);
+			date = newDate;
+		}
+		currentTimeMillis = now;
+	}
+
+	/**
+	 * 获取最近一次刷新的时间
+	 * @return 毫秒时间戳, 精度为秒
+	 */
+	public static long currentTimeMillis() {
+		return currentTimeMillis;
+	}
+
+	/**
+	 * 获取 GMT 格式的当前日期
+	 * @return 日期字符串
+	 */
+	public static String getDate() {
+		return date;
+	}
+
+	/**
+	 * 获取预编码的 Date 头, 包含行结束符
+	 * 		每秒更新为一个新的数组, 可以通过比较引用判断日期是否变化
+	 * @return Date 头的字节
+	 */
+	public static byte[] getDateHeader() {
+		return dateHeader;
+	}
+}
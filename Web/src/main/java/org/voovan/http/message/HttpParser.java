@@ -2,6 +2,7 @@ package org.voovan.http.message;
 
 import org.voovan.Global;
 import org.voovan.http.message.packet.Cookie;
+import org.voovan.http.message.packet.Header;
 import org.voovan.http.message.packet.Part;
 import org.voovan.http.server.context.WebContext;
 import org.voovan.http.message.exception.HttpParserException;
@@ -18,9 +19,11 @@ import org.voovan.tools.security.THash;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * Http 报文解析类
@@ -48,12 +51,13 @@ public class HttpParser {
 	private final static String UPLOAD_PATH 			= TFile.assemblyPath(TFile.getTemporaryPath(),"voovan", "webserver", "upload");
 
 	private final static String PROPERTY_LINE_SPILITER 	= ": ";
-	private final static String EQUAL_MAP_REGEX 		= "([^ ;,]+=[^;,]+)";
 
 	private final static FastThreadLocal<Object[]> THREAD_PACKET_MAP = FastThreadLocal.withInitial(()->new Object[20]);
 	private final static FastThreadLocal<Request>  THREAD_REQUEST    = FastThreadLocal.withInitial(()->new Request());
 	private final static FastThreadLocal<Response> THREAD_RESPONSE   = FastThreadLocal.withInitial(()->new Response());
 	private final static FastThreadLocal<byte[]>   THREAD_BYTE_ARRAY = FastThreadLocal.withInitial(()->new byte[1024]);
+	private final static FastThreadLocal<Header>   THREAD_HEADER     = FastThreadLocal.withInitial(()->new Header());
+	private final static FastThreadLocal<byte[]>   THREAD_DECODE_BYTES = FastThreadLocal.withInitial(()->new byte[1024]);
 
 	private final static LongKeyMap<Long> 	  	   PROTOCOL_HASH_MAP = new LongKeyMap<Long>(64);
 	private final static LongKeyMap<Object[]> 	   PARSED_PACKET_MAP = new LongKeyMap<Object[]>(64);
@@ -124,6 +128,50 @@ public class HttpParser {
 //		return TString.removeSuffix(stringBuilder.toString());
 //	}
 
+	/**
+	 * 遍历字符串中的所有等号表达式
+	 * 		以 ';' 或 ',' 分段, 每段中等号前不含空格的部分作为名称, 等号后直到段尾的部分作为值,
+	 * 		值两端的双引号会被去除
+	 * @param str 等式表达式
+	 * @param consumer 名称和值的消费者
+	 */
+	private static void scanEqualPairs(String str, BiConsumer<String, String> consumer) {
+		int length = str.length();
+		int segmentStart = 0;
+
+		while(segmentStart < length) {
+			int segmentEnd = segmentStart;
+			while(segmentEnd < length) {
+				char c = str.charAt(segmentEnd);
+				if(c == Global.CHAR_SEMICOLON || c == Global.CHAR_COMMA) {
+					break;
+				}
+				segmentEnd++;
+			}
+
+			int keyStart = segmentStart;
+			for(int i=segmentStart; i<segmentEnd; i++) {
+				char c = str.charAt(i);
+				if(c == Global.CHAR_SPACE) {
+					keyStart = i + 1;
+				} else if(c == Global.CHAR_EQUAL && i > keyStart) {
+					if(i + 1 < segmentEnd) {
+						int valueStart = i + 1;
+						int valueEnd = segmentEnd;
+						if(valueEnd - valueStart >= 2 && str.charAt(valueStart) == Global.CHAR_QUOTE && str.charAt(valueEnd - 1) == Global.CHAR_QUOTE) {
+							valueStart++;
+							valueEnd--;
+						}
+						consumer.accept(str.substring(keyStart, i), str.substring(valueStart, valueEnd));
+					}
+					break;
+				}
+			}
+
+			segmentStart = segmentEnd + 1;
+		}
+	}
+
 	/**
 	 * 解析字符串中的所有等号表达式成 Map
 	 * @param str
@@ -132,23 +180,80 @@ public class HttpParser {
 	 */
 	public static Map<String, String> getEqualMap(String str){
 		Map<String, String> equalMap = new HashMap<String, String>();
-		String[] searchedStrings = TString.searchByRegex(str, EQUAL_MAP_REGEX);
-		for(String groupString : searchedStrings){
-			//这里不用 split 的原因是有可能等号后的值字符串中出现等号
-			String[] equalStrings = new String[2];
-			int equalCharIndex= groupString.indexOf(Global.STR_EQUAL);
-			equalStrings[0] = groupString.substring(0,equalCharIndex);
-			equalStrings[1] = groupString.substring(equalCharIndex+1,groupString.length());
-			if(equalStrings.length==2){
-				String key = equalStrings[0];
-				String value = equalStrings[1];
-				if(value.charAt(0) == Global.CHAR_QUOTE && value.charAt(value.length() - 1)== Global.CHAR_QUOTE){
-					value = value.substring(1,value.length()-1);
+		scanEqualPairs(str, equalMap::put);
+		return equalMap;
+	}
+
+	/**
+	 * 解析 application/x-www-form-urlencoded 形式的参数
+	 * 		一次遍历完成分割和 URL 解码, 没有值的参数以 null 作为值
+	 * @param parameters 解析结果的容器
+	 * @param bytes 字节数组
+	 * @param offset 偏移量
+	 * @param length 长度
+	 * @param charset 字符集
+	 */
+	public static void parseUrlEncoded(Map<String, String> parameters, byte[] bytes, int offset, int length, Charset charset) {
+		byte[] decodeBytes = THREAD_DECODE_BYTES.get();
+		if(decodeBytes.length < length) {
+			decodeBytes = new byte[length];
+			THREAD_DECODE_BYTES.set(decodeBytes);
+		}
+
+		int end = offset + length;
+		int position = 0;
+		String name = null;
+
+		for(int i=offset; i<=end; i++) {
+			byte b = i < end ? bytes[i] : Global.BYTE_AND;
+
+			if(b == Global.BYTE_AND) {
+				if(name != null) {
+					parameters.put(name, new String(decodeBytes, 0, position, charset));
+				} else if(position > 0) {
+					parameters.put(new String(decodeBytes, 0, position, charset), null);
 				}
-				equalMap.put(key, value);
+				name = null;
+				position = 0;
+			} else if(b == Global.BYTE_EQUAL && name == null && position > 0) {
+				name = new String(decodeBytes, 0, position, charset);
+				position = 0;
+			} else if(b == Global.BYTE_PLUS) {
+				decodeBytes[position++] = Global.BYTE_SPACE;
+			} else if(b == Global.BYTE_PERCENT && i + 2 < end && hexValue(bytes[i+1]) >= 0 && hexValue(bytes[i+2]) >= 0) {
+				decodeBytes[position++] = (byte) ((hexValue(bytes[i+1]) << 4) + hexValue(bytes[i+2]));
+				i = i + 2;
+			} else {
+				decodeBytes[position++] = b;
 			}
 		}
-		return equalMap;
+	}
+
+	/**
+	 * 解析 application/x-www-form-urlencoded 形式的参数
+	 * @param parameters 解析结果的容器
+	 * @param str 参数字符串
+	 * @param charset 字符集
+	 */
+	public static void parseUrlEncoded(Map<String, String> parameters, String str, Charset charset) {
+		if(str == null || str.isEmpty()) {
+			return;
+		}
+
+		byte[] bytes = str.getBytes(charset);
+		parseUrlEncoded(parameters, bytes, 0, bytes.length, charset);
+	}
+
+	private static int hexValue(byte b) {
+		if(b >= '0' && b <= '9') {
+			return b - '0';
+		} else if(b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		} else if(b >= 'A' && b <= 'F') {
+			return b - 'A' + 10;
+		} else {
+			return -1;
+		}
 	}
 
 	/**
@@ -170,6 +275,22 @@ public class HttpParser {
 		return equalMap.get(valueName);
 	}
 
+	/**
+	 * 获取HTTP 头属性里等式的值
+	 * @param header         HTTP 头对象
+	 * @param propertyName   属性名
+	 * @param valueName      属性值
+	 * @return
+	 */
+	private static String getPerprotyEqualValue(Header header, String propertyName, String valueName){
+		String propertyValue = header.get(propertyName);
+		if(propertyValue == null){
+			return null;
+		}
+		Map<String, String> equalMap = getEqualMap(propertyValue);
+		return equalMap.get(valueName);
+	}
+
 	/**
 	 * 处理消息的Cookie
 	 * @param cookies           Cookie 保存集合
@@ -182,23 +303,17 @@ public class HttpParser {
 			return;
 		}
 
-		List<Map<String, String>> cookieMapList = new ArrayList<Map<String, String>>();
-
-		Map<String, String>cookieMap = getEqualMap(cookieValue);
-
 		// Cookie
-		//请求 request 的 cookie 形式 多个cookie 一行
+		//请求 request 的 cookie 形式 多个cookie 一行, 每个名称和值直接构建 Cookie 对象
 		if(cookieType == 0){
-			for(Entry<String,String> cookieMapEntry: cookieMap.entrySet()){
-				HashMap<String, String> cookieOneMap = new HashMap<String, String>();
-				cookieOneMap.put(cookieMapEntry.getKey(), cookieMapEntry.getValue());
-				cookieMapList.add(cookieOneMap);
-			}
+			scanEqualPairs(cookieValue, (name, value) -> cookies.add(Cookie.newInstance(name, value)));
 		}
 
 		//Set-Cookie
 		//响应 response 的 cookie 形式 一个cookie 一行
 		else if(cookieType == 1){
+			Map<String, String> cookieMap = getEqualMap(cookieValue);
+
 			//处理非键值的 cookie 属性
 			if(cookieValue.toLowerCase().contains(HttpStatic.HTTPONLY_STRING)){
 				cookieMap.put(HttpStatic.HTTPONLY_STRING, Global.EMPTY_STRING);
@@ -206,32 +321,27 @@ public class HttpParser {
 			if(cookieValue.toLowerCase().contains(HttpStatic.SECURE_STRING)){
 				cookieMap.put(HttpStatic.SECURE_STRING, Global.EMPTY_STRING);
 			}
-			cookieMapList.add(cookieMap);
-		}
-
-		//遍历 Cookie,并构建 Cookie 对象
-		for (Map<String, String> cookieMapItem : cookieMapList) {
-			Cookie cookie = Cookie.buildCookie(cookieMapItem);
-			cookies.add(cookie);
+			cookies.add(Cookie.buildCookie(cookieMap));
 		}
 	}
 
 	/**
 	 * 处理 body 段
 	 * 		判断是否使用 GZIP 压缩,如果使用则解压缩后返回,如果没有压缩则直接返回
-	 * @param headerMap
+	 * @param header
 	 * @param contentBytes
 	 * @return
 	 * @throws IOException
 	 */
-	private static byte[] dealBodyContent(Map<String, Object> headerMap, byte[] contentBytes) throws IOException{
+	private static byte[] dealBodyContent(Header header, byte[] contentBytes) throws IOException{
 		byte[] bytesValue;
 		if(contentBytes.length == 0 ){
 			return contentBytes;
 		}
 
 		//是否支持 GZip
-		boolean isGZip = headerMap.get(HttpStatic.CONTENT_ENCODING_STRING)==null ? false : headerMap.get(HttpStatic.CONTENT_ENCODING_STRING).toString().contains(HttpStatic.GZIP_STRING);
+		String contentEncoding = header.get(HttpStatic.CONTENT_ENCODING_STRING);
+		boolean isGZip = contentEncoding==null ? false : contentEncoding.contains(HttpStatic.GZIP_STRING);
 
 		//如果是 GZip 则解压缩
 		if(isGZip && contentBytes.length>0){
@@ -470,6 +580,98 @@ public class HttpParser {
 		return false;
 	}
 
+	/**
+	 * 解析 HTTP 请求 Header 中的一行
+	 * 		值的字节直接写入 Header 的原始字节中, 只记录偏移量, 读取时才转换成字符串
+	 * @param header 解析后数据的容器
+	 * @param byteBuffer ByteBuffer对象
+	 * @param contiuneRead 当数据不足时的读取器
+	 * @param timeout 读取超时时间参数
+	 * @return true: Header解析未完成, false: Header解析完成
+	 */
+	public static boolean parseHeaderLine(Header header, ByteBuffer byteBuffer, Runnable contiuneRead, int timeout) {
+		byte[] bytes = THREAD_BYTE_ARRAY.get();
+		int position = 0;
+		boolean isCache = WebContext.isCache();
+
+		boolean onHeaderName = true;
+		byte prevByte = '\0';
+		byte currentByte = '\0';
+		String headerName = null;
+		int valueOffset = header.getRawSize();
+
+		long start = System.currentTimeMillis();
+		while (true) {
+
+			//如果数据不够则尝试读取
+			while(!byteBuffer.hasRemaining()) {
+				contiuneRead.run();
+				if(System.currentTimeMillis() - start > timeout) {
+					throw new HttpParserException("HttpParser read timeout");
+				}
+			}
+
+			currentByte = byteBuffer.get();
+
+			if (onHeaderName && prevByte == Global.BYTE_COLON && currentByte == Global.BYTE_SPACE) {
+				headerName = Header.getKnownName(bytes, 0, position);
+				if(headerName == null) {
+					if (isCache) {
+						headerName = HttpItem.getHttpItem(bytes, 0, position).getValue();
+					} else {
+						headerName = new String(bytes, 0, position);
+					}
+				}
+
+				onHeaderName = false;
+				position = 0;
+				continue;
+			} else if (!onHeaderName && prevByte == Global.BYTE_CR && currentByte == Global.BYTE_LF) {
+				break;
+			}
+
+			//http 头结束了
+			if (onHeaderName && prevByte == Global.BYTE_CR && currentByte == Global.BYTE_LF) {
+				return true;
+			}
+
+			prevByte = currentByte;
+
+			if (onHeaderName && currentByte == Global.BYTE_COLON) {
+				continue;
+			} else if (!onHeaderName && currentByte == Global.BYTE_CR) {
+				continue;
+			}
+
+			if(onHeaderName) {
+				bytes[position] = currentByte;
+			} else {
+				header.appendRaw(currentByte);
+			}
+			position++;
+		}
+
+		if(headerName!=null) {
+			header.putRaw(headerName, valueOffset, position);
+		}
+		return false;
+	}
+
+	/**
+	 * 解析 HTTP 请求 Header
+	 * @param header 解析后数据的容器
+	 * @param byteBuffer ByteBuffer对象
+	 * @param contiuneRead 当数据不足时的读取器
+	 * @param timeout 读取超时时间参数
+	 */
+	public static void parseHeader(Header header, ByteBuffer byteBuffer, Runnable contiuneRead, int timeout) {
+		while (!parseHeaderLine(header, byteBuffer, contiuneRead, timeout)) {
+			if (!byteBuffer.hasRemaining()) {
+				throw new HttpParserException("HttpParser parse header failed, not enough data");
+			}
+		}
+	}
+
 	/**
 	 * 解析 HTTP 请求 Header 中的一行
 	 * @param byteBuffer ByteBuffer对象
@@ -558,6 +760,8 @@ public class HttpParser {
 			packetMap[HEADER_MARK] = mark;
 
 			Object[] cachedPacketMap = Arrays.copyOf(packetMap, packetMap.length);
+			//线程内的 Header 会被复用, 缓存使用它的副本
+			cachedPacketMap[HEADER] = ((Header)packetMap[HEADER]).copy();
 			PARSED_PACKET_MAP.put(mark, cachedPacketMap);
 			PROTOCOL_HASH_MAP.put(protocolMark, mark);
 		}
@@ -589,11 +793,12 @@ public class HttpParser {
 		int protocolPosition = 0;
 
 		boolean isCache = WebContext.isCache();
-		TreeMap<String, Object> headerMap = null;
+		Header header = null;
 
 		requestMaxSize = requestMaxSize < 0 ? Integer.MAX_VALUE : requestMaxSize;
 
 		//继续从 Socket 中读取数据
+		//	HttpMessageSplitter 在报文完整后才开始解析, 只有超过读缓冲区容量的 multipart 报文会在这里边读取边解析
 		Runnable contiuneRead = ()->{
 			if(session==null || !session.isConnected()) {
 				throw new HttpParserException("Socket is disconnect", HttpParserException.SOCKET_DISCONNECT);
@@ -620,12 +825,14 @@ public class HttpParser {
 				Object[] cachedPacketMap = findCache(byteBufferChannel, protocolPosition, protocolMark);
 				if (cachedPacketMap != null) {
 					packetMap = cachedPacketMap;
-					headerMap = (TreeMap<String, Object>) packetMap[HEADER];
+					header = (Header) packetMap[HEADER];
 				} else {
 					//处理 Http [ header ]
 					{
-						headerMap = parseHeader(byteBuffer, contiuneRead, timeout);
-						packetMap[HEADER] = headerMap;
+						header = THREAD_HEADER.get();
+						header.clear();
+						parseHeader(header, byteBuffer, contiuneRead, timeout);
+						packetMap[HEADER] = header;
 					}
 
 					//处理更新或设置缓存
@@ -642,23 +849,36 @@ public class HttpParser {
 				break;
 			}
 
-			String contentType = (String)headerMap.get(HttpStatic.CONTENT_TYPE_STRING);
+			String contentType = header.get(HttpStatic.CONTENT_TYPE_STRING);
 			if(contentType == null) {
 				//无 body 报文完成解析
 				break;
 			}
 
+			//无 body 的响应状态
+			if(type == PARSER_TYPE_RESPONSE) {
+				int status = Integer.parseInt(packetMap[PL_STATUS].toString());
+				if((status >= 100 && status < 200) || status == 204 || status == 304) {
+					break;
+				}
+			}
+
 			//解析 HTTP 请求 body
-			String transferEncoding = (String)headerMap.get(HttpStatic.TRANSFER_ENCODING_STRING);
-			String contentLength 	= (String)headerMap.get(HttpStatic.CONTENT_LENGTH_STRING);
+			String transferEncoding = header.get(HttpStatic.TRANSFER_ENCODING_STRING);
+			String contentLength 	= header.get(HttpStatic.CONTENT_LENGTH_STRING);
 
 			//1. 解析 HTTP 的 POST 请求 body part
 			if(contentType!=null && contentType.contains(HttpStatic.MULTIPART_FORM_DATA_STRING)){
+				//请求过大的处理, 有 Content-Length 时无需等待数据
+				if(contentLength != null && totalLength + Long.parseLong(contentLength.trim()) > requestMaxSize * 1024) {
+					throw new RequestTooLarge("Request is too large: {max size: " + requestMaxSize*1024 + ", expect size: " + (totalLength + Long.parseLong(contentLength.trim())) + "}");
+				}
+
 				//用来保存 Part 的 list
 				List<Object[]> bodyPartList = new ArrayList<Object[]>();
 
 				//取boundary 用于 part 内容分段
-				String boundary = TString.assembly("--", getPerprotyEqualValue(headerMap, HttpStatic.CONTENT_TYPE_STRING, HttpStatic.BOUNDARY_STRING));
+				String boundary = TString.assembly("--", getPerprotyEqualValue(header, HttpStatic.CONTENT_TYPE_STRING, HttpStatic.BOUNDARY_STRING));
 
 				ByteBuffer boundaryByteBuffer = ByteBuffer.allocate(2);
 				while(true) {
@@ -869,7 +1089,7 @@ public class HttpParser {
 					byteBufferChannel.shrink(2);
 				}
 
-				byte[] value = dealBodyContent(headerMap, chunkedByteBufferChannel.array());
+				byte[] value = dealBodyContent(header, chunkedByteBufferChannel.array());
 				chunkedByteBufferChannel.release();
 				packetMap[BODY_VALUE] = value;
 				byteBufferChannel.shrink(2);
@@ -897,7 +1117,7 @@ public class HttpParser {
 				byteBufferChannel.get(contentBytes);
 				byteBufferChannel.shrink(0, contentSize);
 
-				byte[] value = dealBodyContent(headerMap, contentBytes);
+				byte[] value = dealBodyContent(header, contentBytes);
 				packetMap[BODY_VALUE] = value;
 			}
 
@@ -1022,7 +1242,7 @@ public class HttpParser {
 					parsedPartArray.clear();
 					break;
 				case HEADER:
-					request.header().setHeaders((Map<String, String>) value);
+					request.header().setHeaders((Header) value);
 					break;
 			}
 		}
@@ -1101,7 +1321,7 @@ public class HttpParser {
 					response.setHasBody(true);
 					break;
 				case HEADER:
-					response.header().setHeaders((Map<String, String>) value);
+					response.header().setHeaders((Header) value);
 					break;
 			}
 		}
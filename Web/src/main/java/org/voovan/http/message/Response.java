@@ -18,6 +18,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
  * HTTP 响应对象
@@ -31,11 +33,25 @@ import java.util.List;
 public class Response {
 	private static FastThreadLocal<StringBuilder> THREAD_STRING_BUILDER = FastThreadLocal.withInitial(()->new StringBuilder(512));
 
+	//gzip 流式压缩使用的线程对象, 避免每个响应创建 Deflater 和缓冲区
+	private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+	private static final byte[] GZIP_HEADER = new byte[]{(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+	private static FastThreadLocal<Deflater> THREAD_DEFLATER = FastThreadLocal.withInitial(()->new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+	private static FastThreadLocal<CRC32> THREAD_CRC32 = FastThreadLocal.withInitial(()->new CRC32());
+	private static FastThreadLocal<byte[]> THREAD_GZIP_INPUT = FastThreadLocal.withInitial(()->new byte[GZIP_BUFFER_SIZE]);
+	private static FastThreadLocal<byte[]> THREAD_GZIP_OUTPUT = FastThreadLocal.withInitial(()->new byte[GZIP_BUFFER_SIZE]);
+
+	//chunked 段预留的协议字节, 换行符4个,长度描述符1-8个,以及报文结束符5个
+	private static final int CHUNK_RESERVE_SIZE = 20;
+
+	private static final byte[] SET_COOKIE_PREFIX = TString.toAsciiBytes("Set-Cookie: ");
+
 	private ResponseProtocol 	protocol;
 	private Header				header;
 	private List<Cookie>		cookies;
 	private Body 				body;
 	private boolean				isCompress;
+	private int 				compressLevel = Deflater.DEFAULT_COMPRESSION;
 	private boolean         	hasBody;
 	protected boolean 			basicSend = false;
 	private boolean 			async = false;
@@ -57,6 +73,7 @@ public class Response {
 		this.body = response.body;
 		this.cookies = response.cookies;
 		this.isCompress = response.isCompress;
+		this.compressLevel = response.compressLevel;
 		this.basicSend = false;
 		this.mark = response.mark;
 		this.hasBody = response.hasBody;
@@ -100,6 +117,22 @@ public class Response {
 		this.isCompress = isCompress;
 	}
 
+	/**
+	 * 获取压缩级别
+	 * @return 压缩级别, 0-9, -1 为默认级别
+	 */
+	public int getCompressLevel() {
+		return compressLevel;
+	}
+
+	/**
+	 * 设置压缩级别
+	 * @param compressLevel 压缩级别, 0-9, -1 为默认级别
+	 */
+	public void setCompressLevel(int compressLevel) {
+		this.compressLevel = compressLevel;
+	}
+
 	/**
 	 * 是否在路由异步响应
 	 * @return true: 异步响应 false: 同步响应
@@ -201,6 +234,14 @@ public class Response {
 		}
 	}
 
+	/**
+	 * 根据内容构造必要的 Header 属性
+	 * 		用于不经过 HTTP/1.1 报文拼装的响应, 例如 HTTP/2
+	 */
+	public void prepareHeader() {
+		initHeader();
+	}
+
 	/**
 	 * 根据 Cookie 对象,生成 HTTP 响应中的 Cookie 字符串 用于报文拼装
 	 *
@@ -238,8 +279,37 @@ public class Response {
 	}
 
 
-	private byte[] readEnd(){
-		if (isCompress) {
+	/**
+	 * 计算报头编码后的字节数, 不包含 Date 和 Server 头以及报头结束符
+	 * 		调用前需要先构造必要的 Header 属性
+	 * @return 报头的字节数
+	 */
+	public int headSize() {
+		int cookieSize = 0;
+		for (Cookie cookie : cookies) {
+			cookieSize = cookieSize + SET_COOKIE_PREFIX.length + cookie.toString().length() + 2;
+		}
+
+		return protocol.toBytes().length + header.encodedSize() + cookieSize;
+	}
+
+	/**
+	 * 将报头直接编码写入缓冲区, Date 和 Server 头以及报头结束符由发送方追加
+	 * 		状态行和常用的 header 名称都使用预编码的字节
+	 * @param byteBuffer 缓冲区, 需要有 headSize() 大小的可写空间
+	 */
+	public void encodeHead(ByteBuffer byteBuffer) {
+		byteBuffer.put(protocol.toBytes());
+		header.writeTo(byteBuffer);
+		for (Cookie cookie : cookies) {
+			byteBuffer.put(SET_COOKIE_PREFIX);
+			byteBuffer.put(TString.toAsciiBytes(cookie.toString()));
+			byteBuffer.put(HttpStatic.LINE_MARK.getBytes());
+		}
+	}
+
+	private byte[] readEnd(boolean chunked){
+		if (chunked) {
 			return TString.toAsciiBytes("0" + HttpStatic.BODY_MARK_STRING);
 		}else{
 			return TByte.EMPTY_BYTES;
@@ -264,33 +334,34 @@ public class Response {
 				return;
 			}
 
-			//自动扩容
-			if(byteBufferChannel.available() == 0) {
-				byteBufferChannel.reallocate(byteBufferChannel.capacity() + 4 * 1024);
-			}
-
 			//如果有历史数据则从历史数据尾部开始写入
 			byteBuffer.position(byteBuffer.limit());
 			byteBuffer.limit(byteBuffer.capacity());
 
 			try {
-				byteBuffer.put(readHead());
-				byteBuffer.put(WebContext.RESPONSE_COMMON_HEADER);
+				initHeader();
+
+				//管道化请求的响应连续写入发送缓冲区, 空间不足时先发送之前的响应
+				byte[] dateHeader = HttpClock.getDateHeader();
+				byteBuffer = ensureRemaining(session, byteBufferChannel, byteBuffer, headSize() + dateHeader.length + WebContext.RESPONSE_SERVER_HEADER.length + CHUNK_RESERVE_SIZE);
+				encodeHead(byteBuffer);
+				byteBuffer.put(dateHeader);
+				byteBuffer.put(WebContext.RESPONSE_SERVER_HEADER);
 			} catch (Throwable e) {
 				if (!(e instanceof MemoryReleasedException)) {
 					Logger.error("Response writeToChannel error: ", (Exception) e);
 				}
 			}
 
-			//是否需要压缩
-			if (isCompress) {
-				body.compress();
-			}
-
 			//发送报文主体
 			int avaliableSize = 0;
 			try {
-				int totalBodySize = (int) body.size();
+				//压缩时边读取 body 边压缩, 直接写入 chunked 段, 空的 body 不压缩, 使用 Content-Length
+				boolean chunked = isCompress && body.size() != 0;
+				int totalBodySize = isCompress ? 0 : (int) body.size();
+				if (chunked) {
+					byteBuffer = writeGzipBody(session, byteBufferChannel, byteBuffer);
+				}
 
 				while ( totalBodySize > 0) {
 					//预留写入 chunked 结束符的位置
@@ -329,7 +400,7 @@ public class Response {
 				}
 
 				//发送报文结束符
-				byteBuffer.put(readEnd());
+				byteBuffer.put(readEnd(chunked));
 				byteBuffer.flip();
 				byteBufferChannel.compact();
 			} catch (Throwable e) {
@@ -348,6 +419,153 @@ public class Response {
 		}
 	}
 
+	/**
+	 * 流式压缩 body 并以 chunked 段写入发送缓冲区
+	 * @param session socket 会话对象
+	 * @param byteBufferChannel 发送缓冲区通道
+	 * @param byteBuffer 发送缓冲区
+	 * @return 写入后的发送缓冲区
+	 * @throws IOException IO异常
+	 */
+	private ByteBuffer writeGzipBody(IoSession session, ByteBufferChannel byteBufferChannel, ByteBuffer byteBuffer) throws IOException {
+		ByteBuffer[] sendBuffer = new ByteBuffer[]{byteBuffer};
+		writeGzip(body, compressLevel, (data, length) -> sendBuffer[0] = writeChunk(session, byteBufferChannel, sendBuffer[0], data, length));
+		return sendBuffer[0];
+	}
+
+	/**
+	 * 流式压缩 body
+	 * 		使用线程内复用的 Deflater, 边读取 body 边压缩, 不产生完整的压缩副本
+	 * 		压缩数据每填满一个缓冲区输出一次, 输出的数组在回调返回后会被复用
+	 * @param body 报文主体
+	 * @param compressLevel 压缩级别, 0-9, -1 为默认级别
+	 * @param output 压缩数据的输出
+	 * @throws IOException IO异常
+	 */
+	public static void writeGzip(Body body, int compressLevel, GzipOutput output) throws IOException {
+		Deflater deflater = THREAD_DEFLATER.get();
+		CRC32 crc32 = THREAD_CRC32.get();
+		byte[] input = THREAD_GZIP_INPUT.get();
+		byte[] buffer = THREAD_GZIP_OUTPUT.get();
+
+		deflater.reset();
+		deflater.setLevel(compressLevel);
+		crc32.reset();
+
+		System.arraycopy(GZIP_HEADER, 0, buffer, 0, GZIP_HEADER.length);
+		int outputSize = GZIP_HEADER.length;
+
+		int readSize;
+		while ((readSize = body.read(input)) > 0) {
+			crc32.update(input, 0, readSize);
+			deflater.setInput(input, 0, readSize);
+
+			while (!deflater.needsInput()) {
+				outputSize += deflater.deflate(buffer, outputSize, buffer.length - outputSize);
+				if (outputSize == buffer.length) {
+					output.write(buffer, outputSize);
+					outputSize = 0;
+				}
+			}
+		}
+
+		deflater.finish();
+		while (!deflater.finished()) {
+			outputSize += deflater.deflate(buffer, outputSize, buffer.length - outputSize);
+			if (outputSize == buffer.length) {
+				output.write(buffer, outputSize);
+				outputSize = 0;
+			}
+		}
+
+		//gzip 尾部: CRC32 和原始长度, 小端序
+		if (buffer.length - outputSize < 8) {
+			output.write(buffer, outputSize);
+			outputSize = 0;
+		}
+		writeIntLE(buffer, outputSize, (int) crc32.getValue());
+		writeIntLE(buffer, outputSize + 4, (int) deflater.getBytesRead());
+		outputSize = outputSize + 8;
+
+		output.write(buffer, outputSize);
+	}
+
+	/**
+	 * 压缩数据的输出
+	 */
+	public interface GzipOutput {
+		/**
+		 * 输出压缩数据
+		 * @param data 数据
+		 * @param length 数据长度
+		 * @throws IOException IO异常
+		 */
+		public void write(byte[] data, int length) throws IOException;
+	}
+
+	/**
+	 * 将数据以 chunked 段写入发送缓冲区, 缓冲区不足时先发送
+	 * @param session socket 会话对象
+	 * @param byteBufferChannel 发送缓冲区通道
+	 * @param byteBuffer 发送缓冲区
+	 * @param data 数据
+	 * @param length 数据长度
+	 * @return 写入后的发送缓冲区
+	 */
+	private ByteBuffer writeChunk(IoSession session, ByteBufferChannel byteBufferChannel, ByteBuffer byteBuffer, byte[] data, int length) {
+		int offset = 0;
+		while (offset < length) {
+			byteBuffer = ensureRemaining(session, byteBufferChannel, byteBuffer, CHUNK_RESERVE_SIZE + 1);
+
+			int chunkSize = Math.min(length - offset, byteBuffer.remaining() - CHUNK_RESERVE_SIZE);
+			byteBuffer.put(TString.toAsciiBytes(Integer.toHexString(chunkSize) + HttpStatic.LINE_MARK_STRING));
+			byteBuffer.put(data, offset, chunkSize);
+			byteBuffer.put(HttpStatic.LINE_MARK.getBytes());
+			offset = offset + chunkSize;
+		}
+
+		return byteBuffer;
+	}
+
+	/**
+	 * 确保发送缓冲区有足够的可写空间, 不足时先发送缓冲区中的数据, 仍然不足则扩容
+	 * @param session socket 会话对象
+	 * @param byteBufferChannel 发送缓冲区通道
+	 * @param byteBuffer 发送缓冲区
+	 * @param size 需要的可写字节数
+	 * @return 可写入的发送缓冲区
+	 */
+	private ByteBuffer ensureRemaining(IoSession session, ByteBufferChannel byteBufferChannel, ByteBuffer byteBuffer, int size) {
+		if (byteBuffer.remaining() >= size) {
+			return byteBuffer;
+		}
+
+		byteBuffer.flip();
+		byteBufferChannel.compact();
+		session.flush();
+
+		byteBuffer = byteBufferChannel.getByteBuffer();
+		if(byteBuffer == null) {
+			throw new MemoryReleasedException("Response send buffer is released");
+		}
+
+		//未能发送出去则扩容
+		if (byteBufferChannel.available() < size) {
+			byteBufferChannel.reallocate(byteBufferChannel.size() + size + 4 * 1024);
+		}
+
+		byteBuffer.position(byteBuffer.limit());
+		byteBuffer.limit(byteBuffer.capacity());
+		return byteBuffer;
+	}
+
+	private static void writeIntLE(byte[] bytes, int offset, int value) {
+		bytes[offset]     = (byte) value;
+		bytes[offset + 1] = (byte) (value >> 8);
+		bytes[offset + 2] = (byte) (value >> 16);
+		bytes[offset + 3] = (byte) (value >> 24);
+	}
+
 	public void release(){
 		body.release();
 	}
@@ -375,6 +593,7 @@ public class Response {
 		this.body().write(otherResponse.body().getBodyBytes());
 		this.cookies().addAll(otherResponse.cookies());
 		this.setCompress(otherResponse.isCompress);
+		this.setCompressLevel(otherResponse.compressLevel);
 		this.setMark(otherResponse.getMark());
 		this.setHasBody(otherResponse.hasBody);
 
@@ -403,6 +622,7 @@ public class Response {
 		this.protocol.clear();
 		this.body.clear();
 		this.isCompress = false;
+		this.compressLevel = Deflater.DEFAULT_COMPRESSION;
 		this.basicSend = false;
 		this.async = false;
 		this.cookieParsed = false;
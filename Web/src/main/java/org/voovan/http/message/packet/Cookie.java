@@ -153,6 +153,19 @@ public class Cookie {
 	}
 
 
+	/**
+	 * 创建一个只有名称和值的 Cookie, 用于解析请求中的 Cookie
+	 * @param name		名称
+	 * @param value		值
+	 * @return Cookie 对象
+	 */
+	public static Cookie newInstance(String name, String value){
+		Cookie cookie = new Cookie();
+		cookie.setName(name);
+		cookie.setValue(value);
+		return cookie;
+	}
+
 	/**
 	 * 创建一个 Cookie
 	 * @param domain	cookie的受控域
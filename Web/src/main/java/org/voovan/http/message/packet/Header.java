@@ -2,15 +2,18 @@ package org.voovan.http.message.packet;
 
 import org.voovan.http.message.HttpStatic;
 import org.voovan.tools.FastThreadLocal;
-import org.voovan.tools.json.JSON;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
 /**
  * HTTP 的 header 对象
+ * 		使用开放地址的扁平表存储, 名称按忽略大小写的 hash 定位, 常用的名称复用 HttpStatic 中的字符串.
+ * 		解析得到的值以偏移量的形式保存在原始字节中, 在第一次读取时才转换成字符串.
+ *
  * @author helyho
  *
  * Voovan Framework.
@@ -20,17 +23,230 @@ import java.util.TreeMap;
 public class Header {
 	private static FastThreadLocal<StringBuilder> THREAD_STRING_BUILDER = FastThreadLocal.withInitial(()->new StringBuilder(512));
 
-	private String contentType;
-	private String contentLength;
-	private String contentEncoding;
-	private String transferEncoding;
-	private Map<String, String> headers;
+	private static final int DEFAULT_CAPACITY = 32;
+	private static final int DEFAULT_RAW_SIZE = 512;
+
+	//常用的 header 名称
+	private static final String[] KNOWN_NAMES = new String[]{
+			HttpStatic.HOST_STRING, HttpStatic.CONNECTION_STRING, HttpStatic.USER_AGENT_STRING, HttpStatic.ACCEPT_STRING,
+			HttpStatic.ACCEPT_CHARSET_STRING, HttpStatic.ACCEPT_ENCODING_STRING, HttpStatic.ACCEPT_LANGUAGE_STRING,
+			HttpStatic.ACCEPT_RANGES_STRING, HttpStatic.AUTHORIZATION_STRING, HttpStatic.CACHE_CONTROL_STRING,
+			HttpStatic.COOKIE_STRING, HttpStatic.CONTENT_DISPOSITION_STRING, HttpStatic.CONTENT_ENCODING_STRING,
+			HttpStatic.CONTENT_LANGUAGE_STRING, HttpStatic.CONTENT_LENGTH_STRING, HttpStatic.CONTENT_RANGE_STRING,
+			HttpStatic.CONTENT_TYPE_STRING, HttpStatic.DATE_STRING, HttpStatic.ETAG_STRING, HttpStatic.EXPECT_STRING,
+			HttpStatic.EXPIRES_STRING, HttpStatic.IF_MATCH_STRING, HttpStatic.IF_MODIFIED_SINCE_STRING,
+			HttpStatic.IF_NONE_MATCH_STRING, HttpStatic.IF_RANGE_STRING, HttpStatic.IF_UNMODIFIED_SINCE_STRING,
+			HttpStatic.LAST_MODIFIED_STRING, HttpStatic.LOCATION_STRING, HttpStatic.ORIGIN_STRING, HttpStatic.PRAGMA_STRING,
+			HttpStatic.RANGE_STRING, HttpStatic.REFERER_STRING, HttpStatic.SEC_WEB_SOCKET_ACCEPT_STRING,
+			HttpStatic.SEC_WEB_SOCKET_EXTENSIONS_STRING, HttpStatic.SEC_WEB_SOCKET_KEY_STRING,
+			HttpStatic.SEC_WEB_SOCKET_PROTOCOL_STRING, HttpStatic.SEC_WEB_SOCKET_VERSION_STRING, HttpStatic.SERVER_STRING,
+			HttpStatic.SET_COOKIE_STRING, HttpStatic.TRANSFER_ENCODING_STRING, HttpStatic.UPGRADE_STRING,
+			HttpStatic.VARY_STRING, HttpStatic.VIA_STRING, HttpStatic.X_FORWARDED_FOR_STRING,
+			HttpStatic.X_FORWARDED_PROTO_STRING, HttpStatic.X_FORWARDED_HOST_STRING, HttpStatic.X_REAL_IP_STRING,
+			"Keep-Alive", "Upgrade-Insecure-Requests", "X-Requested-With", "DNT"
+	};
+
+	private static final String[] KNOWN_TABLE = new String[256];
+	private static final int[] KNOWN_HASH = new int[256];
+	//常用名称预编码的 "名称: " 字节, 与 KNOWN_TABLE 对应
+	private static final byte[][] KNOWN_BYTES = new byte[256][];
+
+	static {
+		for(String name : KNOWN_NAMES) {
+			int hash = hash(name);
+			int index = hash & (KNOWN_TABLE.length - 1);
+			while(KNOWN_TABLE[index] != null) {
+				index = (index + 1) & (KNOWN_TABLE.length - 1);
+			}
+			KNOWN_TABLE[index] = name;
+			KNOWN_HASH[index] = hash;
+			KNOWN_BYTES[index] = (name + HttpStatic.HEADER_SPLITER_STRING).getBytes();
+		}
+	}
+
+	private int[] hashes;
+	private String[] names;
+	private String[] values;
+	private int[] valueOffsets;
+	private int[] valueLengths;
+	private int size;
+
+	//解析时的原始字节
+	private byte[] raw;
+	private int rawSize;
 
 	/**
 	 * 构造函数
 	 */
 	public Header(){
-		headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		init(DEFAULT_CAPACITY);
+	}
+
+	private void init(int capacity) {
+		hashes = new int[capacity];
+		names = new String[capacity];
+		values = new String[capacity];
+		valueOffsets = new int[capacity];
+		valueLengths = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * 计算忽略大小写的 hash
+	 * @param name 名称
+	 * @return hash 值
+	 */
+	private static int hash(String name) {
+		int hash = 0;
+		for(int i=0; i<name.length(); i++) {
+			char c = name.charAt(i);
+			hash = 31 * hash + (c >= 'A' && c <= 'Z' ? c + 32 : c);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * 计算忽略大小写的 hash
+	 * @param bytes 字节数组
+	 * @param offset 偏移量
+	 * @param length 长度
+	 * @return hash 值
+	 */
+	private static int hash(byte[] bytes, int offset, int length) {
+		int hash = 0;
+		for(int i=offset; i<offset+length; i++) {
+			int c = bytes[i] & 0xFF;
+			hash = 31 * hash + (c >= 'A' && c <= 'Z' ? c + 32 : c);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean equalsIgnoreCase(String name, byte[] bytes, int offset, int length) {
+		if(name.length() != length) {
+			return false;
+		}
+
+		for(int i=0; i<length; i++) {
+			int c1 = name.charAt(i);
+			int c2 = bytes[offset + i] & 0xFF;
+			if(c1 != c2) {
+				c1 = c1 >= 'A' && c1 <= 'Z' ? c1 + 32 : c1;
+				c2 = c2 >= 'A' && c2 <= 'Z' ? c2 + 32 : c2;
+				if(c1 != c2) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 获取常用的 header 名称
+	 * @param bytes 字节数组
+	 * @param offset 偏移量
+	 * @param length 长度
+	 * @return 常用的 header 名称, 不是常用的名称时返回 null
+	 */
+	public static String getKnownName(byte[] bytes, int offset, int length) {
+		int hash = hash(bytes, offset, length);
+		int index = hash & (KNOWN_TABLE.length - 1);
+		while(KNOWN_TABLE[index] != null) {
+			if(KNOWN_HASH[index] == hash && equalsIgnoreCase(KNOWN_TABLE[index], bytes, offset, length)) {
+				return KNOWN_TABLE[index];
+			}
+			index = (index + 1) & (KNOWN_TABLE.length - 1);
+		}
+		return null;
+	}
+
+	/**
+	 * 获取常用名称预编码的字节
+	 * @param name 名称, 大小写需要完全一致
+	 * @param hash 名称的 hash
+	 * @return "名称: " 的字节, 不是常用的名称时返回 null
+	 */
+	private static byte[] getKnownBytes(String name, int hash) {
+		int index = hash & (KNOWN_TABLE.length - 1);
+		String knownName;
+		while((knownName = KNOWN_TABLE[index]) != null) {
+			if(knownName == name || (KNOWN_HASH[index] == hash && knownName.equals(name))) {
+				return KNOWN_BYTES[index];
+			}
+			index = (index + 1) & (KNOWN_TABLE.length - 1);
+		}
+		return null;
+	}
+
+	/**
+	 * 查找 header 所在的位置
+	 * @param header header 的 name
+	 * @param hash header 的 hash
+	 * @return 所在位置, 不存在时返回 -1
+	 */
+	private int indexOf(String header, int hash) {
+		int mask = names.length - 1;
+		int index = hash & mask;
+		String name;
+		while((name = names[index]) != null) {
+			if(name == header || (hashes[index] == hash && name.equalsIgnoreCase(header))) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * 获取位置上的值, 原始字节形式的值在这里转换成字符串
+	 * @param index 位置
+	 * @return header 的值
+	 */
+	private String valueAt(int index) {
+		String value = values[index];
+		if(value == null && valueOffsets[index] >= 0) {
+			value = new String(raw, valueOffsets[index], valueLengths[index]);
+			values[index] = value;
+		}
+		return value;
+	}
+
+	private void putAt(String header, int hash, String value, int valueOffset, int valueLength) {
+		int index = indexOf(header, hash);
+		if(index < 0) {
+			if((size + 1) * 2 > names.length) {
+				resize(names.length * 2);
+			}
+
+			int mask = names.length - 1;
+			index = hash & mask;
+			while(names[index] != null) {
+				index = (index + 1) & mask;
+			}
+
+			names[index] = header;
+			hashes[index] = hash;
+			size++;
+		}
+
+		values[index] = value;
+		valueOffsets[index] = valueOffset;
+		valueLengths[index] = valueLength;
+	}
+
+	private void resize(int capacity) {
+		int[] oldHashes = hashes;
+		String[] oldNames = names;
+		String[] oldValues = values;
+		int[] oldValueOffsets = valueOffsets;
+		int[] oldValueLengths = valueLengths;
+
+		init(capacity);
+
+		for(int i=0; i<oldNames.length; i++) {
+			if(oldNames[i] != null) {
+				putAt(oldNames[i], oldHashes[i], oldValues[i], oldValueOffsets[i], oldValueLengths[i]);
+			}
+		}
 	}
 
 	/**
@@ -39,16 +255,89 @@ public class Header {
 	 */
 	public Map<String,String> getHeaders() {
 		TreeMap<String, String> newHeaders = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
-		newHeaders.putAll(headers);
+		for(int i=0; i<names.length; i++) {
+			if(names[i] != null) {
+				newHeaders.put(names[i], valueAt(i));
+			}
+		}
 		return newHeaders;
 	}
 
+	/**
+	 * 使用 Map 设置 Header
+	 * @param headers Header 的 Map 形式
+	 */
 	public void setHeaders(Map<String, String> headers) {
-		contentType = null;
-		contentLength = null;
-		contentEncoding = null;
-		transferEncoding = null;
-		this.headers = headers;
+		clear();
+		putAll(headers);
+	}
+
+	/**
+	 * 从解析得到的 Header 复制数据
+	 * 		只复制名称, 偏移量和原始字节, 不转换值
+	 * @param otherHeader 解析得到的 Header
+	 */
+	public void setHeaders(Header otherHeader) {
+		if(names.length != otherHeader.names.length) {
+			init(otherHeader.names.length);
+		}
+
+		System.arraycopy(otherHeader.hashes, 0, hashes, 0, hashes.length);
+		System.arraycopy(otherHeader.names, 0, names, 0, names.length);
+		System.arraycopy(otherHeader.values, 0, values, 0, values.length);
+		System.arraycopy(otherHeader.valueOffsets, 0, valueOffsets, 0, valueOffsets.length);
+		System.arraycopy(otherHeader.valueLengths, 0, valueLengths, 0, valueLengths.length);
+		size = otherHeader.size;
+
+		rawSize = 0;
+		if(otherHeader.rawSize > 0) {
+			ensureRaw(otherHeader.rawSize);
+			System.arraycopy(otherHeader.raw, 0, raw, 0, otherHeader.rawSize);
+			rawSize = otherHeader.rawSize;
+		}
+	}
+
+	/**
+	 * 获取原始字节
+	 * @return 原始字节
+	 */
+	public byte[] getRaw() {
+		return raw;
+	}
+
+	/**
+	 * 获取原始字节的长度
+	 * @return 原始字节的长度
+	 */
+	public int getRawSize() {
+		return rawSize;
+	}
+
+	private void ensureRaw(int length) {
+		if(raw == null) {
+			raw = new byte[Math.max(DEFAULT_RAW_SIZE, length)];
+		} else if(raw.length < length) {
+			raw = Arrays.copyOf(raw, Math.max(raw.length * 2, length));
+		}
+	}
+
+	/**
+	 * 在原始字节尾部写入一个字节, 用于解析
+	 * @param b 字节
+	 */
+	public void appendRaw(byte b) {
+		ensureRaw(rawSize + 1);
+		raw[rawSize++] = b;
+	}
+
+	/**
+	 * 填充原始字节形式的 Header, 值在第一次读取时转换
+	 * @param header header 的 name
+	 * @param valueOffset 值在原始字节中的偏移量
+	 * @param valueLength 值的长度
+	 */
+	public void putRaw(String header, int valueOffset, int valueLength) {
+		putAt(header, hash(header), null, valueOffset, valueLength);
 	}
 
 	/**
@@ -57,28 +346,42 @@ public class Header {
 	 * @return 移除的header 的 name
 	 */
 	public String remove(String header){
-		String ret = null;
-		switch (header) {
-			case HttpStatic.CONTENT_TYPE_STRING:
-				ret = this.headers.remove(HttpStatic.CONTENT_TYPE_STRING);
-				contentType = null;
-				break;
-			case HttpStatic.CONTENT_ENCODING_STRING:
-				ret = this.headers.remove(HttpStatic.CONTENT_ENCODING_STRING);
-				contentEncoding = null;
-				break;
-			case HttpStatic.CONTENT_LENGTH_STRING:
-				ret = this.headers.remove(HttpStatic.CONTENT_LENGTH_STRING);
-				contentLength = null;
-				break;
-			case HttpStatic.TRANSFER_ENCODING_STRING:
-				ret = this.headers.remove(HttpStatic.TRANSFER_ENCODING_STRING);
-				transferEncoding = null;
+		int index = indexOf(header, hash(header));
+		if(index < 0) {
+			return null;
+		}
+
+		String ret = valueAt(index);
+
+		//线性探测的删除, 将后续冲突的元素前移
+		int mask = names.length - 1;
+		int next = index;
+		while(true) {
+			names[index] = null;
+			values[index] = null;
+
+			int slot;
+			while(true) {
+				next = (next + 1) & mask;
+				if(names[next] == null) {
+					size--;
+					return ret;
+				}
+
+				slot = hashes[next] & mask;
+				if(index <= next ? (index < slot && slot <= next) : (index < slot || slot <= next)) {
+					continue;
+				}
 				break;
-			default:
-				ret = headers.remove(header);
+			}
+
+			names[index] = names[next];
+			hashes[index] = hashes[next];
+			values[index] = values[next];
+			valueOffsets[index] = valueOffsets[next];
+			valueLengths[index] = valueLengths[next];
+			index = next;
 		}
-		return ret;
 	}
 
 	/**
@@ -87,16 +390,7 @@ public class Header {
 	 * @return 是否存在
 	 */
 	public boolean contain(String header){
-		boolean ret = false;
-		switch (header) {
-			case HttpStatic.CONTENT_TYPE_STRING 	 :  ret = get(header) != null;  break;
-			case HttpStatic.CONTENT_LENGTH_STRING 	 :  ret = get(header) != null;  break;
-			case HttpStatic.CONTENT_ENCODING_STRING  :  ret = get(header) != null;  break;
-			case HttpStatic.TRANSFER_ENCODING_STRING :  ret = get(header) != null;  break;
-			default: ret = headers.containsKey(header);
-		}
-
-		return ret;
+		return indexOf(header, hash(header)) >= 0;
 	}
 
 	/**
@@ -105,29 +399,8 @@ public class Header {
 	 * @return header 的值
 	 */
 	public String get(String header){
-		String ret = null;
-		boolean tryGetFromMap = false;
-		switch (header) {
-			case HttpStatic.CONTENT_TYPE_STRING 	 : 	{
-				ret = contentType == null ? contentType = headers.get(header) : contentType;
-				break;
-			}
-			case HttpStatic.CONTENT_LENGTH_STRING 	 : 	{
-				ret = contentLength == null ? contentLength = headers.get(header) : contentLength;
-				break;
-			}
-			case HttpStatic.CONTENT_ENCODING_STRING  : 	{
-				ret = contentEncoding == null ? contentEncoding = headers.get(header) : contentEncoding;
-				break;
-			}
-			case HttpStatic.TRANSFER_ENCODING_STRING : 	{
-				ret = transferEncoding == null ? transferEncoding = headers.get(header) : transferEncoding;
-				break;
-			}
-			default: ret = headers.get(header);
-		}
-
-		return ret;
+		int index = indexOf(header, hash(header));
+		return index < 0 ? null : valueAt(index);
 	}
 
 	/**
@@ -137,12 +410,10 @@ public class Header {
 	 * @return header 的 name
 	 */
 	public String put(String header,String value){
-		switch (header) {
-			case HttpStatic.CONTENT_TYPE_STRING 	 :  this.contentType 		= value; break;
-			case HttpStatic.CONTENT_LENGTH_STRING 	 : 	this.contentLength 		= value; break;
-			case HttpStatic.CONTENT_ENCODING_STRING  : 	this.contentEncoding 	= value; break;
-			case HttpStatic.TRANSFER_ENCODING_STRING : 	this.transferEncoding 	= value; break;
-			default : headers.put(header,value);
+		if(value == null) {
+			remove(header);
+		} else {
+			putAt(header, hash(header), value, -1, 0);
 		}
 		return value;
 	}
@@ -162,66 +433,101 @@ public class Header {
 	 * @return header 元素的数量
 	 */
 	public int size(){
-		return headers.size();
+		return size;
 	}
 
 	public Header copyFrom(Header otherHeader) {
-		this.putAll(otherHeader.getHeaders());
-		this.put(HttpStatic.CONTENT_TYPE_STRING, otherHeader.get(HttpStatic.CONTENT_TYPE_STRING));
-		this.put(HttpStatic.CONTENT_LENGTH_STRING, otherHeader.get(HttpStatic.CONTENT_LENGTH_STRING));
-		this.put(HttpStatic.CONTENT_ENCODING_STRING, otherHeader.get(HttpStatic.CONTENT_ENCODING_STRING));
-		this.put(HttpStatic.TRANSFER_ENCODING_STRING, otherHeader.get(HttpStatic.TRANSFER_ENCODING_STRING));
+		for(int i=0; i<otherHeader.names.length; i++) {
+			if(otherHeader.names[i] != null) {
+				put(otherHeader.names[i], otherHeader.valueAt(i));
+			}
+		}
 		return this;
 	}
 
+	/**
+	 * 复制一个 Header
+	 * @return 新的 Header 对象
+	 */
+	public Header copy() {
+		Header header = new Header();
+		header.setHeaders(this);
+		return header;
+	}
+
 	/**
 	 * 清空头
 	 */
 	public void clear(){
-		contentType = null;
-		contentLength = null;
-		contentEncoding = null;
-		transferEncoding = null;
-		headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		if(size > 0) {
+			Arrays.fill(names, null);
+			Arrays.fill(values, null);
+			size = 0;
+		}
+		rawSize = 0;
 	}
 
-	@Override
-	public String toString(){
-		StringBuilder headerContent = THREAD_STRING_BUILDER.get();
-		headerContent.setLength(0);
-
-		if(contentType!=null) {
-			headerContent.append(HttpStatic.CONTENT_TYPE_STRING);
-			headerContent.append(HttpStatic.HEADER_SPLITER_STRING);
-			headerContent.append(contentType);
-			headerContent.append(HttpStatic.LINE_MARK_STRING);
+	/**
+	 * 计算编码成报文后的字节数
+	 * @return 所有 header 行的字节数, 包含行结束符
+	 */
+	public int encodedSize() {
+		int encodedSize = 0;
+		for(int i=0; i<names.length; i++){
+			String key = names[i];
+			if(key != null && !key.isEmpty()){
+				int valueLength = values[i] == null && valueOffsets[i] >= 0 ? valueLengths[i] : String.valueOf(values[i]).length();
+				encodedSize = encodedSize + key.length() + valueLength + 4;
+			}
 		}
+		return encodedSize;
+	}
 
-		if(contentEncoding!=null) {
-			headerContent.append(HttpStatic.CONTENT_ENCODING_STRING);
-			headerContent.append(HttpStatic.HEADER_SPLITER_STRING);
-			headerContent.append(contentEncoding);
-			headerContent.append(HttpStatic.LINE_MARK_STRING);
-		}
+	/**
+	 * 将 header 直接编码写入缓冲区
+	 * 		常用名称使用预编码的字节, 未转换成字符串的值直接复制原始字节
+	 * @param byteBuffer 缓冲区, 需要有 encodedSize() 大小的可写空间
+	 */
+	public void writeTo(ByteBuffer byteBuffer) {
+		for(int i=0; i<names.length; i++){
+			String key = names[i];
+			if(key != null && !key.isEmpty()){
+				byte[] knownBytes = getKnownBytes(key, hashes[i]);
+				if(knownBytes != null) {
+					byteBuffer.put(knownBytes);
+				} else {
+					putAscii(byteBuffer, key);
+					byteBuffer.put((byte)':');
+					byteBuffer.put((byte)' ');
+				}
 
-		if(contentLength!=null) {
-			headerContent.append(HttpStatic.CONTENT_LENGTH_STRING);
-			headerContent.append(HttpStatic.HEADER_SPLITER_STRING);
-			headerContent.append(contentLength);
-			headerContent.append(HttpStatic.LINE_MARK_STRING);
+				if(values[i] == null && valueOffsets[i] >= 0) {
+					byteBuffer.put(raw, valueOffsets[i], valueLengths[i]);
+				} else {
+					putAscii(byteBuffer, String.valueOf(values[i]));
+				}
+
+				byteBuffer.put((byte)'\r');
+				byteBuffer.put((byte)'\n');
+			}
 		}
+	}
 
-		if(transferEncoding!=null) {
-			headerContent.append(HttpStatic.TRANSFER_ENCODING_STRING);
-			headerContent.append(HttpStatic.HEADER_SPLITER_STRING);
-			headerContent.append(transferEncoding);
-			headerContent.append(HttpStatic.LINE_MARK_STRING);
+	private static void putAscii(ByteBuffer byteBuffer, String str) {
+		for(int i=0; i<str.length(); i++) {
+			byteBuffer.put((byte)str.charAt(i));
 		}
+	}
+
+	@Override
+	public String toString(){
+		StringBuilder headerContent = THREAD_STRING_BUILDER.get();
+		headerContent.setLength(0);
 
-		for(Entry<String,String> headerItemEntry : this.headers.entrySet()){
-			String key = headerItemEntry.getKey();
-			String value = headerItemEntry.getValue();
-			if(!key.isEmpty()){
+		for(int i=0; i<names.length; i++){
+			String key = names[i];
+			if(key != null && !key.isEmpty()){
+				String value = valueAt(i);
 				headerContent.append(key);
 				headerContent.append(HttpStatic.HEADER_SPLITER_STRING);
 				headerContent.append(value);
@@ -1,6 +1,7 @@
 package org.voovan.http.message.packet;
 
 import org.voovan.tools.FastThreadLocal;
+import org.voovan.tools.TString;
 
 /**
  * HTTP 响应的协议对象
@@ -13,6 +14,9 @@ import org.voovan.tools.FastThreadLocal;
 public class ResponseProtocol extends Protocol {
 	private static FastThreadLocal<StringBuilder> THREAD_STRING_BUILDER = FastThreadLocal.withInitial(()->new StringBuilder(512));
 
+	//HTTP/1.1 状态行缓存, 按状态码索引, 每个元素为 [状态说明, 状态行字节]
+	private static final Object[][] STATUS_LINE_CACHE = new Object[600][];
+
 	/**
 	 * 状态代码
 	 */
@@ -56,6 +60,28 @@ public class ResponseProtocol extends Protocol {
 		this.statusCode = "OK";
 	}
 
+	/**
+	 * 获取状态行的字节
+	 * 		HTTP/1.1 的状态行按状态码缓存, 状态说明与缓存不一致时重新生成
+	 * @return 状态行的字节, 包含行结束符
+	 */
+	public byte[] toBytes(){
+		boolean cacheable = "HTTP".equals(protocol) && "1.1".equals(version) && status >= 0 && status < STATUS_LINE_CACHE.length;
+
+		if(cacheable) {
+			Object[] cached = STATUS_LINE_CACHE[status];
+			if (cached != null && cached[0].equals(statusCode)) {
+				return (byte[]) cached[1];
+			}
+		}
+
+		byte[] statusLine = TString.toAsciiBytes(toString());
+		if(cacheable && statusCode != null) {
+			STATUS_LINE_CACHE[status] = new Object[]{statusCode, statusLine};
+		}
+		return statusLine;
+	}
+
 	@Override
 	public String toString(){
 		StringBuilder stringBuilder = THREAD_STRING_BUILDER.get();
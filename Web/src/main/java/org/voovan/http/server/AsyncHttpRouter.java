@@ -0,0 +1,43 @@
+package org.voovan.http.server;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * HTTP 异步路由业务处理器
+ *
+ * 路由方法返回 CompletionStage 后立即释放 IO 线程, CompletionStage 完成时在完成它的线程上发送响应.
+ * 		正常完成的结果不为 null 且响应 body 为空时, 结果写入响应 body: String, byte[] 直接写入, 其他对象转换为 JSON.
+ * 		异常完成时按异常定义输出错误响应.
+ * 		传入的请求和响应对象是复制出来的, 可以在任意线程中使用, 响应发送前同一连接上的管道化请求暂停处理.
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface AsyncHttpRouter extends HttpRouter {
+
+	/**
+	 * 异步处理请求
+	 * @param request 请求对象
+	 * @param response 响应对象
+	 * @return 处理完成的 CompletionStage, 为 null 时视为已完成
+	 * @throws Exception 处理异常
+	 */
+	public CompletionStage<?> processAsync(HttpRequest request, HttpResponse response) throws Exception;
+
+	/**
+	 * 不经过 HttpDispatcher 调用时同步等待处理完成
+	 * @param request 请求对象
+	 * @param response 响应对象
+	 * @throws Exception 处理异常
+	 */
+	@Override
+	public default void process(HttpRequest request, HttpResponse response) throws Exception {
+		CompletionStage<?> completionStage = processAsync(request, response);
+		if(completionStage != null) {
+			Object result = completionStage.toCompletableFuture().get();
+			HttpDispatcher.writeAsyncResult(response, result);
+		}
+	}
+}
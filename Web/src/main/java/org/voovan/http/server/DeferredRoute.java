@@ -0,0 +1,26 @@
+package org.voovan.http.server;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 延迟执行的路由
+ *
+ * 过滤器的 onRequest 返回该对象时, 后续的过滤器不再执行, 请求按异步路由处理, IO 线程立即返回.
+ * 		CompletionStage 的结果为 true 时继续执行匹配到的路由, 否则直接发送过滤器写入的响应.
+ * 		传入的请求和响应对象是复制出来的, 可以在任意线程中使用.
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public interface DeferredRoute {
+
+	/**
+	 * 等待执行路由
+	 * @param request 请求对象
+	 * @param response 响应对象
+	 * @return 完成时的结果, true: 执行路由, false: 不执行路由
+	 */
+	public CompletionStage<Boolean> await(HttpRequest request, HttpResponse response);
+}
@@ -8,9 +8,8 @@ import org.voovan.http.server.exception.HttpDispatchException;
 import org.voovan.http.server.exception.ResourceNotFound;
 import org.voovan.http.server.exception.RouterNotFound;
 import org.voovan.http.server.router.MimeFileRouter;
+import org.voovan.http.server.router.StaticFileCache;
 import org.voovan.tools.*;
-import org.voovan.tools.collection.Chain;
-import org.voovan.tools.collection.IntKeyMap;
 import org.voovan.tools.log.Logger;
 
 import java.io.File;
@@ -18,6 +17,9 @@ import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URLDecoder;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,16 +46,22 @@ import java.util.regex.Pattern;
  */
 public class HttpDispatcher {
 
-	private static FastThreadLocal<IntKeyMap<RouterWrap<HttpRouter>>> ROUTER_INFO_CACHE = FastThreadLocal.withInitial(()->new IntKeyMap<RouterWrap<HttpRouter>>(16));
-
 	/**
 	 * [MainKey] = HTTP method ,[Value] = { [Value Key] = Route path, [Value value] = RouteBuiz对象 }
 	 */
 	private Map<String, Map<String, RouterWrap<HttpRouter>>> methodRouters;
+	/**
+	 * [MainKey] = HTTP method ,[Value] = 路由前缀树
+	 */
+	private Map<String, RouterTree<HttpRouter>> methodRouterTrees;
 	private WebServerConfig webConfig;
 	private SessionManager sessionManager;
 	private MimeFileRouter mimeFileRouter;
+	private RouterWrap<HttpRouter> mimeFileRouterWrap;
 	private String[] indexFiles;
+	private volatile HttpFilterConfig[] filterConfigs;
+	private volatile HttpFilterPipeline filterPipeline;
+	private LoadShedder loadShedder;
 
 	/**
 	 * 构造函数
@@ -63,9 +71,8 @@ public class HttpDispatcher {
 	 */
 	public HttpDispatcher(WebServerConfig webConfig, SessionManager sessionManager) {
 
-		ROUTER_INFO_CACHE.get().clear();
-
 		methodRouters = new ConcurrentHashMap<String, Map<String, RouterWrap<HttpRouter>>>();
+		methodRouterTrees = new ConcurrentHashMap<String, RouterTree<HttpRouter>>();
 		this.webConfig = webConfig;
 		this.sessionManager = sessionManager;
 
@@ -83,7 +90,18 @@ public class HttpDispatcher {
 		this.addRouteMethod(HttpStatic.OPTIONS_STRING);
 
 		// Mime静态文件默认请求处理
-		mimeFileRouter = new MimeFileRouter(webConfig.getContextPath());
+		StaticFileCache staticFileCache = null;
+		if(webConfig.getStaticFileCacheSize() > 0) {
+			staticFileCache = new StaticFileCache(webConfig.getStaticFileCacheSize() * 1024L, webConfig.getStaticFileCacheMaxFileSize() * 1024L);
+		}
+		mimeFileRouter = new MimeFileRouter(webConfig.getContextPath(), staticFileCache);
+		mimeFileRouterWrap = new RouterWrap<HttpRouter>(HttpStatic.GET_STRING, "/*", mimeFileRouter);
+
+		//过载保护
+		loadShedder = new LoadShedder(webConfig);
+		if(!loadShedder.isEnabled()) {
+			loadShedder = null;
+		}
 	}
 
 	/**
@@ -117,6 +135,7 @@ public class HttpDispatcher {
 				}
 			});
 			methodRouters.put(method, routers);
+			methodRouterTrees.put(method, new RouterTree<HttpRouter>(webConfig.isMatchRouteIgnoreCase()));
 		}
 	}
 
@@ -151,10 +170,63 @@ public class HttpDispatcher {
 	public void addRouter(String method, String routePath, HttpRouter router) {
 		routePath = fixRoutePath(routePath);
 		if (methodRouters.keySet().contains(method)) {
-			methodRouters.get(method).put(routePath, new RouterWrap(method, routePath, router));
+			RouterWrap<HttpRouter> routerWrap = new RouterWrap(method, routePath, router);
+			methodRouters.get(method).put(routePath, routerWrap);
+			methodRouterTrees.get(method).add(routerWrap);
+
+			//过滤器已经编译时, 为后加入的路由编译过滤器管道
+			HttpFilterConfig[] currentFilterConfigs = filterConfigs;
+			if(currentFilterConfigs != null) {
+				routerWrap.setFilterPipeline(HttpFilterPipeline.compile(currentFilterConfigs, routePath, webConfig.isMatchRouteIgnoreCase()));
+			}
 		}
 	}
 
+	/**
+	 * 编译过滤器管道
+	 * 		为每个路由编译只包含作用于该路由的过滤器管道, 服务启动时调用, 启动后修改过滤器配置需要重新调用
+	 * @return 未匹配到路由的请求使用的全局过滤器管道
+	 */
+	public synchronized HttpFilterPipeline compileFilters() {
+		HttpFilterConfig[] currentFilterConfigs = webConfig.getFilterConfigs().getContianer().toArray(new HttpFilterConfig[0]);
+		boolean ignoreCase = webConfig.isMatchRouteIgnoreCase();
+
+		for(Map<String, RouterWrap<HttpRouter>> routers : methodRouters.values()) {
+			for(RouterWrap<HttpRouter> routerWrap : routers.values()) {
+				routerWrap.setFilterPipeline(HttpFilterPipeline.compile(currentFilterConfigs, routerWrap.getRoutePath(), ignoreCase));
+			}
+		}
+
+		HttpFilterPipeline globalPipeline = HttpFilterPipeline.compile(currentFilterConfigs, null, ignoreCase);
+		filterConfigs = currentFilterConfigs;
+		filterPipeline = globalPipeline;
+		return globalPipeline;
+	}
+
+	/**
+	 * 获取路由对应的过滤器管道
+	 * @param routerWrap 路由信息对象, 为 null 时表示未匹配到路由
+	 * @return 过滤器管道
+	 */
+	private HttpFilterPipeline getFilterPipeline(RouterWrap<HttpRouter> routerWrap) {
+		HttpFilterPipeline globalPipeline = filterPipeline;
+		if(globalPipeline == null) {
+			globalPipeline = compileFilters();
+		}
+
+		//静态文件共用一个路由, 使用全局管道按请求路径判断
+		if(routerWrap == null || routerWrap == mimeFileRouterWrap) {
+			return globalPipeline;
+		}
+
+		HttpFilterPipeline routePipeline = routerWrap.getFilterPipeline();
+		if(routePipeline == null) {
+			routePipeline = HttpFilterPipeline.compile(filterConfigs, routerWrap.getRoutePath(), webConfig.isMatchRouteIgnoreCase());
+			routerWrap.setFilterPipeline(routePipeline);
+		}
+		return routePipeline;
+	}
+
 	/**
 	 * 是否是系统请求
 	 * @param request HTTP 请求
@@ -171,49 +243,53 @@ public class HttpDispatcher {
 	 * @param response   HTTP 响应
 	 */
 	public void process(HttpRequest request, HttpResponse response){
-		Object[] attachment = (Object[])request.getSocketSession().getAttachment();
-		Chain<HttpFilterConfig> filterConfigs = (Chain<HttpFilterConfig>) attachment[1];
-		if(filterConfigs == null) {
-			filterConfigs = (Chain<HttpFilterConfig>) webConfig.getFilterConfigs().clone();
-			attachment[1] =  filterConfigs;
-		}
-
 		Object filterResult = new Object();
-		boolean isFrameWorkRequest = false;
 
 		request.setSessionManager(sessionManager);
 
+		//先匹配路由, 只执行作用于该路由的过滤器, 匹配的同时将路径变量放入请求参数
+		String requestMethod = request.protocol().getMethod();
+		String requestPath = request.protocol().getPath();
+		RouterWrap<HttpRouter> routerWrap = findRouter(request, request.getPathVariables());
+		request.setRoutePath(routerWrap == null ? null : routerWrap.getRoutePath());
+
+		boolean frameWorkRequest = isFrameWorkRequest(request);
 
-		if(filterConfigs.size() > 0) {
-			isFrameWorkRequest = isFrameWorkRequest(request);
+		//过载时按路由优先级快速拒绝, 管理和监控请求不拒绝
+		if(loadShedder != null && !frameWorkRequest && loadShedder.shed(request, response)) {
+			WebContext.writeAccessLog(webConfig, request, response);
+			return;
 		}
+		HttpFilterPipeline pipeline = getFilterPipeline(routerWrap);
 
 		//管理请求不经过过滤器
-		if(filterConfigs.size() > 0 && !isFrameWorkRequest) {
-			//正向过滤器处理,请求有可能被 Redirect 所以过滤器执行放在开始
-			filterResult = disposeFilter(filterConfigs, request, response);
-		}
+		boolean useFilter = pipeline.size() > 0 && !frameWorkRequest;
 
-		//如果 filterResult 的响应为 null 则不执行路由处理
-		if(filterResult!=null) {
-			//调用处理路由函数
-			disposeRoute(request, response);
+		if(useFilter) {
+			//正向过滤器处理
+			filterResult = pipeline.onRequest(request, response);
 		}
 
-		//管理请求不经过过滤器
-		if(filterConfigs.size() > 0 && !isFrameWorkRequest) {
-			//反向过滤器处理
-			filterResult = disposeInvertedFilter(filterConfigs, request, response);
+		//过滤器延迟执行路由时按异步路由处理
+		if(filterResult instanceof DeferredRoute) {
+			disposeDeferredRoute((DeferredRoute) filterResult, routerWrap, request, response, pipeline);
+			return;
 		}
 
-		//向 HttpResponse 中放置 Session 的 Cookie
-		if(request.sessionExists()){
-			HttpSession session = request.getSession();
-			session.attach(request, response);
+		//如果 filterResult 的响应为 null 则不执行路由处理
+		if(filterResult!=null) {
+			//请求被过滤器 Redirect 时重新匹配路由
+			if(!requestPath.equals(request.protocol().getPath()) || !requestMethod.equals(request.protocol().getMethod())) {
+				routerWrap = findRouter(request, request.getPathVariables());
+			}
+
+			//异步路由在完成后再执行反向过滤器, 放置 Session 的 Cookie 和输出访问日志
+			if(disposeRoute(request, response, routerWrap, useFilter ? pipeline : null)) {
+				return;
+			}
 		}
 
-		//输出访问日志
-		WebContext.writeAccessLog(webConfig, request, response);
+		completeResponse(request, response, useFilter ? pipeline : null);
 
 		//缓存处理
 		if (WebContext.isCache()) {
@@ -227,6 +303,29 @@ public class HttpDispatcher {
 		}
 	}
 
+	/**
+	 * 路由处理完成后的响应处理
+	 * 		执行反向过滤器, 向 HttpResponse 中放置 Session 的 Cookie, 输出访问日志
+	 * @param request    HTTP 请求
+	 * @param response   HTTP 响应
+	 * @param pipeline   过滤器管道, 为 null 时不执行反向过滤器
+	 */
+	private void completeResponse(HttpRequest request, HttpResponse response, HttpFilterPipeline pipeline) {
+		if(pipeline != null) {
+			//反向过滤器处理
+			pipeline.onResponse(request, response);
+		}
+
+		//向 HttpResponse 中放置 Session 的 Cookie
+		if(request.sessionExists()){
+			HttpSession session = request.getSession();
+			session.attach(request, response);
+		}
+
+		//输出访问日志
+		WebContext.writeAccessLog(webConfig, request, response);
+	}
+
 	/**
 	 * 判断当前的请求是否是静态文件
 	 * @param request request 请求对象
@@ -252,32 +351,29 @@ public class HttpDispatcher {
 	 * @return 路由信息对象 { 路由标签, [ 匹配到的已注册路由, HttpRouter对象 ] }
 	 */
 	public RouterWrap<HttpRouter> findRouter(HttpRequest request){
+		return findRouter(request, null);
+	}
+
+	/**
+	 * 获取路由处理对象和注册路由, 并在匹配的同时抽取路径变量
+	 * @param request 请求对象
+	 * @param pathVariables 用于存放路径变量的 Map, 为 null 时不抽取路径变量
+	 * @return 路由信息对象 { 路由标签, [ 匹配到的已注册路由, HttpRouter对象 ] }
+	 */
+	public RouterWrap<HttpRouter> findRouter(HttpRequest request, Map<String, String> pathVariables){
 		String requestPath   = request.protocol().getPath();
 		String requestMethod 	= request.protocol().getMethod();
-		int routerMark    = requestPath.hashCode() << 16 +  requestMethod.hashCode();
 
-		RouterWrap<HttpRouter> routerWrap = ROUTER_INFO_CACHE.get().get(routerMark);
+		RouterWrap<HttpRouter> routerWrap = null;
 
-		if(routerWrap ==null) {
-			Map<String, RouterWrap<HttpRouter>> routers = methodRouters.get(requestMethod);
-			for (Map.Entry<String, RouterWrap<HttpRouter>> routeEntry : routers.entrySet()) {
-				RouterWrap tmpRouterWrap = routeEntry.getValue();
-
-				//寻找匹配的路由对象
-				if (matchPath(requestPath, tmpRouterWrap.getRoutePath(), tmpRouterWrap.getRegexPath(), webConfig.isMatchRouteIgnoreCase())) {
-					ROUTER_INFO_CACHE.get().put(routerMark, tmpRouterWrap);
-					return tmpRouterWrap;
-				}
-			}
+		RouterTree<HttpRouter> routerTree = methodRouterTrees.get(requestMethod);
+		if(routerTree != null) {
+			routerWrap = routerTree.find(requestPath, pathVariables);
 		}
 
 		//判断是否是静态文件
-		if(routerWrap == null){
-			if(isStaticFile(request)){
-				routerWrap = new RouterWrap(HttpStatic.GET_STRING, request.protocol().getPath(), mimeFileRouter);
-				ROUTER_INFO_CACHE.get().put(routerMark, routerWrap);
-				return routerWrap;
-			}
+		if(routerWrap == null && isStaticFile(request)){
+			routerWrap = mimeFileRouterWrap;
 		}
 
 		return routerWrap;
@@ -289,27 +385,39 @@ public class HttpDispatcher {
 	 * @param response    Http响应对象
 	 */
 	public void disposeRoute(HttpRequest request, HttpResponse response){
-		String requestPath = request.protocol().getPath();
+		//[ 匹配到的已注册路由, HttpRouter对象, 匹配的同时将路径变量放入请求参数
+		disposeRoute(request, response, findRouter(request, request.getPathVariables()));
+	}
 
-		//[ 匹配到的已注册路由, HttpRouter对象
-		RouterWrap<HttpRouter> routerWrap = findRouter(request);
+	/**
+	 * Http 路由处理函数
+	 * @param request    Http请求对象
+	 * @param response    Http响应对象
+	 * @param routerWrap  已匹配到的路由信息对象, 为 null 时尝试首页索引文件
+	 */
+	public void disposeRoute(HttpRequest request, HttpResponse response, RouterWrap<HttpRouter> routerWrap){
+		disposeRoute(request, response, routerWrap, null);
+	}
 
+	/**
+	 * Http 路由处理函数
+	 * @param request    Http请求对象
+	 * @param response    Http响应对象
+	 * @param routerWrap  已匹配到的路由信息对象, 为 null 时尝试首页索引文件
+	 * @param pipeline   异步路由完成后执行反向过滤器的管道, 为 null 时不执行
+	 * @return true: 异步路由, 响应在路由完成后处理和发送, false: 路由已经处理完成
+	 */
+	private boolean disposeRoute(HttpRequest request, HttpResponse response, RouterWrap<HttpRouter> routerWrap, HttpFilterPipeline pipeline){
 		if (routerWrap !=null) {
-			try {
-				String routePath = routerWrap.getRoutePath();
-				HttpRouter router = routerWrap.getRouter();
-
-				if(routerWrap.hasUrlParam) {
-					//获取路径变量
-					Map<String, String> pathVariables = fetchPathVariables(requestPath, routePath, webConfig.isMatchRouteIgnoreCase());
-					if (pathVariables != null) {
-						request.getParameters().putAll(pathVariables);
-					}
-				}
+			HttpRouter router = routerWrap.getRouter();
+			if(router instanceof AsyncHttpRouter) {
+				disposeAsyncRoute((AsyncHttpRouter) router, request, response, pipeline);
+				return true;
+			}
 
+			try {
 				//处理路由请求
 				router.process(request, response);
-
 			} catch (Exception e) {
 				exceptionMessage(request, response, new HttpDispatchException(e));
 			}
@@ -320,6 +428,121 @@ public class HttpDispatcher {
 				exceptionMessage(request, response, new RouterNotFound("Not avaliable router!"));
 			}
 		}
+
+		return false;
+	}
+
+	/**
+	 * 异步路由处理函数
+	 * 		复制请求和响应对象交给路由, IO 线程立即返回, 在 CompletionStage 完成后发送响应
+	 * @param router     异步路由
+	 * @param request    Http请求对象
+	 * @param response   Http响应对象
+	 */
+	public void disposeAsyncRoute(AsyncHttpRouter router, HttpRequest request, HttpResponse response) {
+		disposeAsyncRoute(router, request, response, null);
+	}
+
+	/**
+	 * 异步路由处理函数
+	 * 		复制请求和响应对象交给路由, IO 线程立即返回, 在 CompletionStage 完成后执行反向过滤器, 放置 Session 的 Cookie,
+	 * 		输出访问日志并发送响应
+	 * @param router     异步路由
+	 * @param request    Http请求对象
+	 * @param response   Http响应对象
+	 * @param pipeline   过滤器管道, 为 null 时不执行反向过滤器
+	 */
+	public void disposeAsyncRoute(AsyncHttpRouter router, HttpRequest request, HttpResponse response, HttpFilterPipeline pipeline) {
+		HttpSessionState httpSessionState = WebServerHandler.getAttachment(request.getSocketSession());
+		HttpRequest asyncRequest = new HttpRequest().copyFrom(request);
+		HttpResponse asyncResponse = response.getAsyncResponse();
+		httpSessionState.addAsyncPending();
+
+		CompletionStage<?> completionStage;
+		try {
+			completionStage = router.processAsync(asyncRequest, asyncResponse);
+			if(completionStage == null) {
+				completionStage = CompletableFuture.completedFuture(null);
+			}
+		} catch (Exception e) {
+			CompletableFuture<Object> failedFuture = new CompletableFuture<Object>();
+			failedFuture.completeExceptionally(e);
+			completionStage = failedFuture;
+		}
+
+		completionStage.whenComplete((result, throwable) -> {
+			try {
+				if (throwable != null) {
+					if (throwable instanceof CompletionException && throwable.getCause() != null) {
+						throwable = throwable.getCause();
+					}
+
+					asyncResponse.body().clear();
+					Exception exception = throwable instanceof Exception ? (Exception) throwable : new Exception(throwable);
+					exceptionMessage(asyncRequest, asyncResponse, new HttpDispatchException(exception));
+				} else {
+					writeAsyncResult(asyncResponse, result);
+				}
+
+				completeResponse(asyncRequest, asyncResponse, pipeline);
+				checkGzip(asyncRequest, asyncResponse);
+				asyncResponse.send();
+			} catch (Throwable e) {
+				Logger.error("Send async response error", e);
+				asyncRequest.getSocketSession().close();
+			} finally {
+				httpSessionState.removeAsyncPending();
+			}
+		});
+	}
+
+	/**
+	 * 延迟执行的路由处理函数
+	 * 		等待过滤器返回的 DeferredRoute 完成, 结果为 true 时在完成它的线程上执行匹配到的路由
+	 * @param deferredRoute 过滤器返回的延迟执行的路由
+	 * @param routerWrap 已匹配到的路由信息对象, 为 null 时尝试首页索引文件
+	 * @param request    Http请求对象
+	 * @param response   Http响应对象
+	 * @param pipeline   过滤器管道, 完成后执行反向过滤器
+	 */
+	private void disposeDeferredRoute(DeferredRoute deferredRoute, RouterWrap<HttpRouter> routerWrap, HttpRequest request, HttpResponse response, HttpFilterPipeline pipeline) {
+		AsyncHttpRouter asyncHttpRouter = (asyncRequest, asyncResponse) -> deferredRoute.await(asyncRequest, asyncResponse).thenCompose(runRoute -> {
+			if(Boolean.TRUE.equals(runRoute)) {
+				if (routerWrap != null && routerWrap.getRouter() instanceof AsyncHttpRouter) {
+					try {
+						return ((AsyncHttpRouter) routerWrap.getRouter()).processAsync(asyncRequest, asyncResponse);
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}
+
+				disposeRoute(asyncRequest, asyncResponse, routerWrap, null);
+			}
+
+			return CompletableFuture.completedFuture(null);
+		});
+
+		disposeAsyncRoute(asyncHttpRouter, request, response, pipeline);
+	}
+
+	/**
+	 * 将异步路由的结果写入响应
+	 * 		响应 body 不为空时不写入
+	 * @param response   Http响应对象
+	 * @param result     异步路由的结果
+	 */
+	public static void writeAsyncResult(HttpResponse response, Object result) {
+		if (result == null || response.body().size() != 0) {
+			return;
+		}
+
+		if (result instanceof String) {
+			response.write((String) result);
+		} else if (result instanceof byte[]) {
+			response.write((byte[]) result);
+		} else {
+			response.writeObject(result);
+		}
 	}
 
 	/**
@@ -425,51 +648,28 @@ public class HttpDispatcher {
 	}
 
 	/**
-	 * //正向处理过滤器
-	 * @param filterConfigs   HTTP过滤器配置对象
-	 * @param request		  请求对象
-	 * @param response		  响应对象
-	 * @return 过滤器最后的结果
-	 */
-	public Object disposeFilter(Chain<HttpFilterConfig> filterConfigs, HttpRequest request, HttpResponse response) {
-		filterConfigs.rewind();
-		Object filterResult = null;
-		while (filterConfigs.hasNext()) {
-			HttpFilterConfig filterConfig = filterConfigs.next();
-			HttpFilter httpFilter = filterConfig.getHttpFilterInstance();
-			if (httpFilter != null) {
-				filterResult = httpFilter.onRequest(filterConfig, request, response, filterResult);
-				if (filterResult == null) {
-					break;
-				}
-			}
-		}
-
-		return filterResult;
-	}
-
-	/**
-	 * 反向处理过滤器
-	 * @param filterConfigs   HTTP过滤器配置对象
-	 * @param request		  请求对象
-	 * @param response		  响应对象
-	 * @return 过滤器最后的结果
+	 * Gzip 启用检测
+	 * @param httpRequest  HTTP 请求对象
+	 * @param httpResponse HTTP 响应对象
 	 */
-	public Object disposeInvertedFilter(Chain<HttpFilterConfig> filterConfigs, HttpRequest request, HttpResponse response) {
-		filterConfigs.rewind();
-		Object filterResult = null;
-		while (filterConfigs.hasPrevious()) {
-			HttpFilterConfig filterConfig = filterConfigs.previous();
-			HttpFilter httpFilter = filterConfig.getHttpFilterInstance();
-			if (httpFilter != null) {
-				filterResult = httpFilter.onResponse(filterConfig, request, response, filterResult);
-				if (filterResult == null) {
-					break;
+	public void checkGzip(HttpRequest httpRequest, HttpResponse httpResponse) {
+		//Gzip 启用检测, 已经编码过的响应(例如预压缩的静态文件)不再压缩
+		if(webConfig.isGzip() && !httpResponse.header().contain(HttpStatic.CONTENT_ENCODING_STRING) &&
+				httpRequest.header().contain(HttpStatic.ACCEPT_ENCODING_STRING) &&
+				httpRequest.header().get(HttpStatic.ACCEPT_ENCODING_STRING).contains(HttpStatic.GZIP_STRING) &&
+				httpResponse.header().get(HttpStatic.CONTENT_TYPE_STRING) != null) {
+			//检查 body 大小是否启用 gzip
+			if(httpResponse.body().size() > webConfig.getGzipMinSize()){
+				//检查 MimeType 是否启用 gzip
+				for(String gzipMimeType : webConfig.getGzipMimeType()){
+					if(httpResponse.header().get(HttpStatic.CONTENT_TYPE_STRING).contains(gzipMimeType)){
+						httpResponse.setCompress(true);
+						httpResponse.setCompressLevel(webConfig.getGzipLevel(httpResponse.header().get(HttpStatic.CONTENT_TYPE_STRING)));
+						break;
+					}
 				}
 			}
 		}
-
-		return filterResult;
 	}
 
 	/**
@@ -0,0 +1,125 @@
+package org.voovan.http.server;
+
+import org.voovan.http.server.context.HttpFilterConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTP 过滤器管道
+ * 		在服务启动时按路由预先编译, 只包含作用于该路由的过滤器, 不可变, 可以在所有连接间共享.
+ * 		未匹配到路由的请求(静态文件, 404 等)使用全局管道, 执行时按请求路径判断绑定了路径的过滤器.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpFilterPipeline {
+	//没有执行任何过滤器时返回的结果, 不阻止路由的执行
+	private static final Object NO_FILTER_RESULT = new Object();
+
+	private final HttpFilterConfig[] filterConfigs;
+	private final HttpFilter[] filters;
+	//执行时是否需要按请求路径判断过滤器
+	private final boolean matchRequestPath;
+	private final boolean ignoreCase;
+
+	private HttpFilterPipeline(HttpFilterConfig[] filterConfigs, HttpFilter[] filters, boolean matchRequestPath, boolean ignoreCase) {
+		this.filterConfigs = filterConfigs;
+		this.filters = filters;
+		this.matchRequestPath = matchRequestPath;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * 编译过滤器管道
+	 * @param filterConfigs 所有的过滤器配置
+	 * @param routePath 路由路径, 为 null 时编译全局管道
+	 * @param ignoreCase 路径匹配是否忽略大小写
+	 * @return 过滤器管道
+	 */
+	public static HttpFilterPipeline compile(HttpFilterConfig[] filterConfigs, String routePath, boolean ignoreCase) {
+		List<HttpFilterConfig> configList = new ArrayList<HttpFilterConfig>();
+		List<HttpFilter> filterList = new ArrayList<HttpFilter>();
+		boolean matchRequestPath = false;
+
+		for (HttpFilterConfig filterConfig : filterConfigs) {
+			if (routePath != null && !filterConfig.matchPath(routePath, ignoreCase)) {
+				continue;
+			}
+
+			//过滤器实例在编译时创建, 创建失败的过滤器不进入管道
+			HttpFilter httpFilter = filterConfig.getHttpFilterInstance();
+			if (httpFilter == null) {
+				continue;
+			}
+
+			configList.add(filterConfig);
+			filterList.add(httpFilter);
+			matchRequestPath = matchRequestPath || (routePath == null && !filterConfig.isGlobal());
+		}
+
+		return new HttpFilterPipeline(configList.toArray(new HttpFilterConfig[0]),
+				filterList.toArray(new HttpFilter[0]), matchRequestPath, ignoreCase);
+	}
+
+	/**
+	 * 管道中的过滤器数量
+	 * @return 过滤器数量
+	 */
+	public int size() {
+		return filters.length;
+	}
+
+	private boolean skip(int index, HttpRequest request) {
+		return matchRequestPath && !filterConfigs[index].matchPath(request.protocol().getPath(), ignoreCase);
+	}
+
+	/**
+	 * 正向处理过滤器
+	 * @param request		  请求对象
+	 * @param response		  响应对象
+	 * @return 过滤器最后的结果, 为 null 时不再执行路由, 为 DeferredRoute 时延迟执行路由, 没有执行任何过滤器时不为 null
+	 */
+	public Object onRequest(HttpRequest request, HttpResponse response) {
+		Object filterResult = null;
+		boolean executed = false;
+		for (int i = 0; i < filters.length; i++) {
+			if (skip(i, request)) {
+				continue;
+			}
+
+			filterResult = filters[i].onRequest(filterConfigs[i], request, response, filterResult);
+			executed = true;
+			if (filterResult == null || filterResult instanceof DeferredRoute) {
+				break;
+			}
+		}
+
+		return executed ? filterResult : NO_FILTER_RESULT;
+	}
+
+	/**
+	 * 反向处理过滤器
+	 * @param request		  请求对象
+	 * @param response		  响应对象
+	 * @return 过滤器最后的结果
+	 */
+	public Object onResponse(HttpRequest request, HttpResponse response) {
+		Object filterResult = null;
+		for (int i = filters.length - 1; i >= 0; i--) {
+			if (skip(i, request)) {
+				continue;
+			}
+
+			filterResult = filters[i].onResponse(filterConfigs[i], request, response, filterResult);
+			if (filterResult == null) {
+				break;
+			}
+		}
+
+		return filterResult;
+	}
+}
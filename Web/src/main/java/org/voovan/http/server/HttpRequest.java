@@ -1,5 +1,6 @@
 package org.voovan.http.server;
 
+import org.voovan.http.message.HttpParser;
 import org.voovan.http.message.Request;
 import org.voovan.http.message.packet.Cookie;
 import org.voovan.http.message.packet.Part;
@@ -11,6 +12,7 @@ import org.voovan.tools.reflect.TReflect;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.*;
 
@@ -27,9 +29,11 @@ public class HttpRequest extends Request {
 	private HttpSession session;
 	private String characterSet;
 	private Map<String, String> parameters;
+	private boolean parametersParsed = false;
 	private Map<String, Object> attributes;
 	private IoSession socketSession;
 	private SessionManager sessionManager;
+	private String routePath;
 
 	/**
 	 * 构造函数
@@ -50,7 +54,6 @@ public class HttpRequest extends Request {
 		this.characterSet=characterSet;
 		parameters = new LinkedHashMap<String, String>();
 		attributes = new HashMap<String, Object>();
-		parseQueryString();
 		this.socketSession = socketSession;
 	}
 
@@ -64,7 +67,6 @@ public class HttpRequest extends Request {
 		this.characterSet=characterSet;
 		parameters = new LinkedHashMap<String, String>();
 		attributes = new HashMap<String, Object>();
-		parseQueryString();
 		this.socketSession = socketSession;
 	}
 
@@ -74,7 +76,8 @@ public class HttpRequest extends Request {
 		parameters.clear();
 		attributes.clear();
         session = null;
-		parseQueryString();
+		parametersParsed = false;
+		routePath = null;
 		this.socketSession = socketSession;
 	}
 
@@ -86,6 +89,18 @@ public class HttpRequest extends Request {
 		this.sessionManager = sessionManager;
 	}
 
+	/**
+	 * 获取匹配到的路由路径
+	 * @return 路由路径, 未匹配到路由时为 null
+	 */
+	public String getRoutePath() {
+		return routePath;
+	}
+
+	protected void setRoutePath(String routePath) {
+		this.routePath = routePath;
+	}
+
 	/**
 	 * 获取 socket 会话对象
 	 * @return socket 会话对象
@@ -116,6 +131,16 @@ public class HttpRequest extends Request {
 	 * @return HTTP-Session 对象
 	 */
 	public HttpSession getSession() {
+		return getSession(true);
+	}
+
+	/**
+	 * 获取 Session
+	 *
+	 * @param create Session 不存在时是否创建新的 Session
+	 * @return HTTP-Session 对象, 不创建且 Session 不存在时返回 null
+	 */
+	public HttpSession getSession(boolean create) {
 		if(session == null){
 			//获取请求的 Cookie中的session标识
 			Cookie sessionCookie = getCookie(WebContext.getSessionName());
@@ -123,7 +148,7 @@ public class HttpRequest extends Request {
 				session = sessionManager.getSession(sessionCookie.getValue());
 			}
 
-			if(session == null){
+			if(session == null && create){
 				session = sessionManager.newSession(this);
 			}
 
@@ -206,6 +231,19 @@ public class HttpRequest extends Request {
 	 * @return 请求参数集合
 	 */
 	public Map<String, String> getParameters() {
+		if(!parametersParsed) {
+			parametersParsed = true;
+			parseParameters();
+		}
+		return parameters;
+	}
+
+	/**
+	 * 获取用于存放路径变量的 Map
+	 * 		路径变量直接写入参数集合, 不触发请求参数的解析
+	 * @return 请求参数集合
+	 */
+	Map<String, String> getPathVariables() {
 		return parameters;
 	}
 
@@ -216,7 +254,7 @@ public class HttpRequest extends Request {
 	 * @return 请求参数值
 	 */
 	public String getParameter(String paramName){
-		return parameters.get(paramName);
+		return getParameters().get(paramName);
 	}
 
 	/**
@@ -226,7 +264,7 @@ public class HttpRequest extends Request {
 	 */
 	public int getParameterAsInt(String paramName){
 		try {
-			return (int) TString.toObject(parameters.get(paramName), int.class);
+			return (int) TString.toObject(getParameters().get(paramName), int.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as int error.",e);
 		}
@@ -239,7 +277,7 @@ public class HttpRequest extends Request {
 	 */
 	public float getParameterAsFloat(String paramName){
 		try {
-			return (float) TString.toObject(parameters.get(paramName), float.class);
+			return (float) TString.toObject(getParameters().get(paramName), float.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as float error.",e);
 		}
@@ -252,7 +290,7 @@ public class HttpRequest extends Request {
 	 */
 	public long getParameterAsLong(String paramName){
 		try {
-			return (long) TString.toObject(parameters.get(paramName), long.class);
+			return (long) TString.toObject(getParameters().get(paramName), long.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as long error.",e);
 		}
@@ -265,7 +303,7 @@ public class HttpRequest extends Request {
 	 */
 	public short getParameterAsShort(String paramName){
 		try {
-			return (short) TString.toObject(parameters.get(paramName), short.class);
+			return (short) TString.toObject(getParameters().get(paramName), short.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as short error.",e);
 		}
@@ -278,7 +316,7 @@ public class HttpRequest extends Request {
 	 */
 	public double getParameterAsDouble(String paramName){
 		try {
-			return (double) TString.toObject(parameters.get(paramName), double.class);
+			return (double) TString.toObject(getParameters().get(paramName), double.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as double error.",e);
 		}
@@ -291,7 +329,7 @@ public class HttpRequest extends Request {
 	 */
 	public boolean getParameterAsBoolean(String paramName){
 		try {
-			return (boolean) TString.toObject(parameters.get(paramName), boolean.class);
+			return (boolean) TString.toObject(getParameters().get(paramName), boolean.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as boolean error.",e);
 		}
@@ -304,7 +342,7 @@ public class HttpRequest extends Request {
 	 */
 	public byte getParameterAsByte(String paramName){
 		try {
-			return (byte) TString.toObject(parameters.get(paramName), byte.class);
+			return (byte) TString.toObject(getParameters().get(paramName), byte.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as byte error.",e);
 		}
@@ -317,7 +355,7 @@ public class HttpRequest extends Request {
 	 */
 	public char getParameterAsChar(String paramName){
 		try {
-			return (char) TString.toObject(parameters.get(paramName), char.class);
+			return (char) TString.toObject(getParameters().get(paramName), char.class);
 		}catch(Exception e){
 			throw new RuntimeException("Get parameter ["+paramName+"] as char error.",e);
 		}
@@ -332,7 +370,7 @@ public class HttpRequest extends Request {
 	 */
 	public <T>T getParameterAsObject(String paramName, Class<T> clazz){
 		try {
-			return TString.toObject(parameters.get(paramName), clazz);
+			return TString.toObject(getParameters().get(paramName), clazz);
 		} catch (Exception e) {
 			throw new RuntimeException("Conver parameters to "+clazz.getCanonicalName()+" error.",e);
 		}
@@ -359,7 +397,7 @@ public class HttpRequest extends Request {
 	 * @return 请求参数集合
 	 */
 	public List<String> getParameterNames(){
-		return Arrays.asList(parameters.keySet().toArray(new String[]{}));
+		return Arrays.asList(getParameters().keySet().toArray(new String[]{}));
 	}
 
 	/**
@@ -391,21 +429,40 @@ public class HttpRequest extends Request {
 
 	/**
 	 * 解析请求参数
+	 * 		在第一次获取参数时才进行解析, 已经写入的路径变量优先于同名的请求参数
 	 */
-	private void parseQueryString() {
-		if(getQueryString()!=null){
-			String[] parameterEquals = getQueryString().split("&");
-			for(String parameterEqual :parameterEquals){
-				int equalFlagPos = parameterEqual.indexOf("=");
-				if(equalFlagPos>0){
-					String name = parameterEqual.substring(0, equalFlagPos);
-					String value = parameterEqual.substring(equalFlagPos+1, parameterEqual.length());
-					parameters.put(name, value);
-				}else{
-					parameters.put(parameterEqual, null);
+	private void parseParameters() {
+		Map<String, String> pathVariables = null;
+		if(!parameters.isEmpty()) {
+			pathVariables = new HashMap<String, String>(parameters);
+		}
+
+		String charsetName = characterSet != null ? characterSet : WebContext.getWebServerConfig().getCharacterSet();
+		Charset charset = Charset.forName(charsetName);
+
+		//请求路径内包含的参数
+		HttpParser.parseUrlEncoded(parameters, protocol().getQueryString(), charset);
+
+		if(isHasBody()) {
+			// POST_URLENCODED 请求类型的处理
+			if (getBodyType() == RequestType.BODY_URLENCODED) {
+				byte[] bodyBytes = body().getBodyBytes();
+				HttpParser.parseUrlEncoded(parameters, bodyBytes, 0, bodyBytes.length, charset);
+			}
+			// POST_MULTIPART 请求类型的处理
+			else if (getBodyType() == RequestType.BODY_MULTIPART) {
+				for (Part part : parts()) {
+					if (part.getType() == Part.PartType.TEXT) {
+						String value = part.body().isFile() ? part.header().get("filename") : part.body().getBodyString(charsetName);
+						parameters.put(part.header().get("name"), value);
+					}
 				}
 			}
 		}
+
+		if(pathVariables != null) {
+			parameters.putAll(pathVariables);
+		}
 	}
 
 	/**
@@ -496,8 +553,10 @@ public class HttpRequest extends Request {
 			this.setSessionManager(request.getSessionManager());
 		}
 		this.parameters.putAll(request.getParameters());
+		this.parametersParsed = true;
 		this.attributes.putAll(request.getAttributes());
 		this.setCharacterSet(request.getCharacterSet());
+		this.routePath = request.getRoutePath();
 
 		if(request.sessionExists()) {
 			this.setSession(request.getSession());
@@ -511,6 +570,8 @@ public class HttpRequest extends Request {
 		characterSet = null;
 		attributes.clear();
 		parameters.clear();
+		parametersParsed = false;
+		routePath = null;
 		sessionManager = null;
 		socketSession = null;
 	}
@@ -2,11 +2,15 @@ package org.voovan.http.server;
 
 import org.voovan.http.message.HttpStatic;
 import org.voovan.http.message.Response;
+import org.voovan.http.server.context.WebContext;
+import org.voovan.network.EventTrigger;
 import org.voovan.network.IoSession;
+import org.voovan.tools.buffer.ByteBufferChannel;
 import org.voovan.tools.json.JSON;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
  * WebServer 响应对象
@@ -20,6 +24,8 @@ import java.nio.ByteBuffer;
 public class HttpResponse extends Response {
 	private String	characterSet;
 	private IoSession socketSession;
+	private int streamId;
+	private PreparedResponse preparedResponse;
 
 	/**
 	 * 构造 HTTP 响应对象
@@ -54,6 +60,7 @@ public class HttpResponse extends Response {
 
 	public void init(String characterSet, IoSession socketSession){
 		this.characterSet=characterSet;
+		this.streamId = 0;
 		//设置当前响应的时间
 		this.socketSession = socketSession;
 	}
@@ -74,6 +81,71 @@ public class HttpResponse extends Response {
 		this.socketSession = socketSession;
 	}
 
+	/**
+	 * 获取 HTTP/2 的流 id
+	 * @return 流 id, HTTP/1.x 连接为 0
+	 */
+	public int getStreamId() {
+		return streamId;
+	}
+
+	protected void setStreamId(int streamId) {
+		this.streamId = streamId;
+	}
+
+	/**
+	 * 构造预编码的响应
+	 * @param response 响应对象
+	 * @return 预编码的响应
+	 */
+	public static PreparedResponse prepare(Response response) {
+		return new PreparedResponse(response);
+	}
+
+	/**
+	 * 构造状态为 200 的预编码响应
+	 * @param contentType 内容类型, 不包含字符集
+	 * @param body 响应内容
+	 * @return 预编码的响应
+	 */
+	public static PreparedResponse prepare(String contentType, byte[] body) {
+		Response response = new Response();
+		response.header().put(HttpStatic.CONTENT_TYPE_STRING, contentType);
+		response.body().write(body);
+		try {
+			return new PreparedResponse(response);
+		} finally {
+			response.release();
+		}
+	}
+
+	/**
+	 * 构造状态为 200 的预编码响应
+	 * @param contentType 内容类型, 不包含字符集
+	 * @param body 响应内容, 使用默认字符集编码
+	 * @return 预编码的响应
+	 */
+	public static PreparedResponse prepare(String contentType, String body) {
+		return prepare(contentType, body.getBytes(Charset.forName(WebContext.getWebServerConfig().getCharacterSet())));
+	}
+
+	/**
+	 * 获取预编码的响应
+	 * @return 预编码的响应, 未设置时返回 null
+	 */
+	public PreparedResponse getPreparedResponse() {
+		return preparedResponse;
+	}
+
+	/**
+	 * 使用预编码的响应作为响应内容
+	 * 		没有再写入其他 header, cookie 和 body 时, 发送时一次性复制预编码的报文
+	 * @param preparedResponse 预编码的响应
+	 */
+	public void setPreparedResponse(PreparedResponse preparedResponse) {
+		this.preparedResponse = preparedResponse;
+	}
+
 	/**
 	 * 获取当前默认字符集
 	 *
@@ -92,8 +164,18 @@ public class HttpResponse extends Response {
 		this.characterSet = characterSet;
 	}
 
+	/**
+	 * 获取用于异步发送的响应对象
+	 * 		异步响应发送前, 同一连接上后续的管道化请求暂停处理
+	 * @return 异步响应对象
+	 */
 	public HttpResponse getAsyncResponse() {
 		this.setAsync(true);
+		//HTTP/2 的流之间相互独立, 不需要暂停后续的请求
+		HttpSessionState httpSessionState = WebServerHandler.getAttachment(socketSession);
+		if(!httpSessionState.isHttp2()) {
+			httpSessionState.setAsyncResponding(true);
+		}
 		HttpResponse httpResponse = new HttpResponse();
 		httpResponse.copyFrom(this);
 
@@ -154,7 +236,85 @@ public class HttpResponse extends Response {
 	 * @throws IOException IO 异常
 	 */
 	public void send() throws IOException {
-		super.send(socketSession);
+		//HTTP/2 响应编码为当前流上的帧
+		HttpSessionState httpSessionState = WebServerHandler.getAttachment(socketSession);
+		if(httpSessionState.isHttp2()) {
+			try {
+				httpSessionState.getHttp2Session().sendResponse(streamId, this);
+				basicSend = true;
+				socketSession.flush();
+			} finally {
+				clear();
+			}
+			return;
+		}
+
+		boolean isAsync = isAsync();
+		httpSessionState.setResponding(true);
+		try {
+			if (preparedResponse != null && header().size() == 0 && cookies().isEmpty() && body().size() == 0) {
+				sendPrepared();
+			} else {
+				applyPreparedResponse();
+				super.send(socketSession);
+			}
+		} finally {
+			httpSessionState.setResponding(false);
+		}
+
+		//写入过程中已经全部发送时, 由这里完成发送后的连接处理
+		if(socketSession.getSendByteBufferChannel().size() == 0) {
+			EventTrigger.fireFlush(socketSession);
+		}
+
+		//异步响应发送后继续处理缓冲区中的管道化请求
+		if(isAsync) {
+			if(httpSessionState.isAsyncResponding()) {
+				httpSessionState.setAsyncResponding(false);
+				if (socketSession.getReadByteBufferChannel().size() > 0) {
+					EventTrigger.fireReceiveAsync(socketSession);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 将预编码的报文一次性写入发送缓冲区
+	 */
+	private void sendPrepared() {
+		try {
+			byte[] bytes = preparedResponse.getBytes();
+			ByteBufferChannel byteBufferChannel = socketSession.getSendByteBufferChannel();
+
+			//管道化请求的响应连续写入发送缓冲区, 空间不足时先发送之前的响应
+			if(byteBufferChannel.size() + bytes.length > byteBufferChannel.getMaxSize()) {
+				socketSession.flush();
+			}
+
+			if(byteBufferChannel.writeEnd(bytes, 0, bytes.length) > 0) {
+				basicSend = true;
+			}
+		} finally {
+			if(isAsync()) {
+				socketSession.flush();
+			}
+			clear();
+		}
+	}
+
+	@Override
+	public void prepareHeader() {
+		//预编码的响应和其他内容合并后按普通响应处理
+		applyPreparedResponse();
+		super.prepareHeader();
+	}
+
+	private void applyPreparedResponse() {
+		if(preparedResponse != null) {
+			PreparedResponse current = preparedResponse;
+			preparedResponse = null;
+			current.apply(this);
+		}
 	}
 
 	/**
@@ -164,6 +324,10 @@ public class HttpResponse extends Response {
 	 * @throws IOException IOException IO 异常
 	 */
 	public int send(ByteBuffer byteBuffer) throws IOException {
+		if(streamId != 0) {
+			throw new IOException("HttpResponse.send(ByteBuffer) is not supported on HTTP/2 stream");
+		}
+
 		if(!super.basicSend) {
 			send();
 		}
@@ -192,9 +356,17 @@ public class HttpResponse extends Response {
 		super.copyFrom(response, useForSend);
 		this.setCharacterSet(response.getCharacterSet());
 		this.setSocketSession(response.getSocketSession());
+		this.setStreamId(response.getStreamId());
+		this.setPreparedResponse(response.getPreparedResponse());
 		return this;
 	}
 
+	@Override
+	public void clear() {
+		super.clear();
+		this.preparedResponse = null;
+	}
+
 	public HttpResponse copyFrom(HttpResponse response) {
 		this.copyFrom(response, false);
 		return this;
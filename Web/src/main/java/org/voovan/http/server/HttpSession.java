@@ -149,7 +149,7 @@ public class HttpSession extends Attributes {
 	 * @param response  响应对象
 	 */
 	public void attach(HttpRequest request, HttpResponse response){
-		if(!this.attributes().isEmpty()) {
+		if(!this.isAttributeEmpty()) {
 			Cookie sessionCookie = request.getCookie(WebContext.getSessionName());
 			if (sessionCookie == null) {
 				//创建 Cookie
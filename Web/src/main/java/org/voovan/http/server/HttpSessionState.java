@@ -1,6 +1,12 @@
 package org.voovan.http.server;
 
 import org.voovan.http.HttpRequestType;
+import org.voovan.http.http2.Http2Session;
+import org.voovan.http.websocket.WebSocketDeflate;
+import org.voovan.http.websocket.WebSocketHeartBeat;
+import org.voovan.network.messagesplitter.HttpMessageSplitter;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HttpSession状态类
@@ -17,6 +23,15 @@ public class HttpSessionState {
     private boolean isKeepAlive = false;
     private long keepAliveTimeout = 30*1000;
     private boolean isKeepLiveListContain = false;
+    private volatile boolean isAsyncResponding = false;
+    private boolean isClosing = false;
+    private volatile boolean isResponding = false;
+    private AtomicInteger asyncPending = new AtomicInteger(0);
+    private HttpMessageSplitter.MessageState messageState = new HttpMessageSplitter.MessageState();
+    private Http2Session http2Session;
+    private WebSocketDeflate webSocketDeflate;
+    private WebSocketHeartBeat webSocketHeartBeat;
+    private int webSocketHeartBeatSlot = -1;
 
     public HttpRequest getHttpRequest() {
         return httpRequest;
@@ -54,6 +69,10 @@ public class HttpSessionState {
         return type == HttpRequestType.WEBSOCKET;
     }
 
+    public boolean isHttp2() {
+        return type == HttpRequestType.HTTP2;
+    }
+
     public boolean isKeepAlive() {
         return isKeepAlive;
     }
@@ -77,4 +96,124 @@ public class HttpSessionState {
     public void setKeepLiveListContain(boolean keepLiveListContain) {
         isKeepLiveListContain = keepLiveListContain;
     }
+
+    /**
+     * 是否有尚未发送的异步响应
+     * 		异步响应发送前不处理后续的管道化请求, 保证响应的顺序
+     * @return true: 有尚未发送的异步响应, false: 没有
+     */
+    public boolean isAsyncResponding() {
+        return isAsyncResponding;
+    }
+
+    public void setAsyncResponding(boolean asyncResponding) {
+        isAsyncResponding = asyncResponding;
+    }
+
+    /**
+     * 是否有正在处理的异步路由
+     * 		异步路由完成前连接不会因为连接保持超时而关闭
+     * @return true: 有, false: 没有
+     */
+    public boolean hasAsyncPending() {
+        return asyncPending.get() > 0;
+    }
+
+    public void addAsyncPending() {
+        asyncPending.incrementAndGet();
+    }
+
+    public void removeAsyncPending() {
+        asyncPending.decrementAndGet();
+    }
+
+    /**
+     * 连接是否会在当前响应发送后关闭
+     * 		关闭前不再处理后续的管道化请求
+     * @return true: 将要关闭, false: 保持连接
+     */
+    public boolean isClosing() {
+        return isClosing;
+    }
+
+    public void setClosing(boolean closing) {
+        isClosing = closing;
+    }
+
+    /**
+     * 是否正在向发送缓冲区写入响应
+     * 		写入过程中缓冲区不足而触发的发送不关闭连接, 避免截断需要关闭连接的响应
+     * @return true: 正在写入, false: 没有写入
+     */
+    public boolean isResponding() {
+        return isResponding;
+    }
+
+    public void setResponding(boolean responding) {
+        isResponding = responding;
+    }
+
+    /**
+     * 是否可以处理缓冲区中后续的管道化请求
+     * @return true: 可以处理, false: 需要等待
+     */
+    public boolean isPipelineReady() {
+        return !isAsyncResponding && !isClosing;
+    }
+
+    /**
+     * 获取报文完整性的判断状态
+     * @return 报文完整性的判断状态
+     */
+    public HttpMessageSplitter.MessageState getMessageState() {
+        return messageState;
+    }
+
+    /**
+     * 获取 HTTP/2 连接会话
+     * @return HTTP/2 连接会话, 非 HTTP/2 连接返回 null
+     */
+    public Http2Session getHttp2Session() {
+        return http2Session;
+    }
+
+    public void setHttp2Session(Http2Session http2Session) {
+        this.http2Session = http2Session;
+    }
+
+    /**
+     * WebSocket permessage-deflate 压缩上下文
+     * @return 压缩上下文, 未协商压缩扩展时为 null
+     */
+    public WebSocketDeflate getWebSocketDeflate() {
+        return webSocketDeflate;
+    }
+
+    public void setWebSocketDeflate(WebSocketDeflate webSocketDeflate) {
+        this.webSocketDeflate = webSocketDeflate;
+    }
+
+    /**
+     * 获取 WebSocket 心跳服务
+     * @return 心跳服务, 未注册时为 null
+     */
+    public WebSocketHeartBeat getWebSocketHeartBeat() {
+        return webSocketHeartBeat;
+    }
+
+    public void setWebSocketHeartBeat(WebSocketHeartBeat webSocketHeartBeat) {
+        this.webSocketHeartBeat = webSocketHeartBeat;
+    }
+
+    /**
+     * 获取在心跳服务中的位置
+     * @return 位置, 未注册时为 -1
+     */
+    public int getWebSocketHeartBeatSlot() {
+        return webSocketHeartBeatSlot;
+    }
+
+    public void setWebSocketHeartBeatSlot(int webSocketHeartBeatSlot) {
+        this.webSocketHeartBeatSlot = webSocketHeartBeatSlot;
+    }
 }
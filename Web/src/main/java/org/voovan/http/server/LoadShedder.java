@@ -0,0 +1,136 @@
+package org.voovan.http.server;
+
+import org.voovan.http.server.context.WebServerConfig;
+import org.voovan.network.IoSession;
+import org.voovan.tools.event.CoDel;
+import org.voovan.tools.event.EventRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 过载保护
+ *      按 CoDel 的方式使用 IO 事件队列的持续排队延迟判断过载, 过载时直接返回 503, 不再执行过滤器和路由.
+ *      持续排队延迟达到目标延迟的 n 倍时, 拒绝优先级小于 n 的请求, 优先级 10 的请求不会被拒绝.
+ *      在客户端超时之前快速拒绝一部分请求, 使剩余的请求能在客户端放弃之前完成.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LoadShedder {
+    public static final int MAX_PRIORITY = 10;
+
+    private long target;
+    private Map<String, Integer> routePriorities;
+    private String[] prefixes;
+    private int[] prefixPriorities;
+
+    /**
+     * 构造函数
+     * @param webConfig Web 服务配置对象
+     */
+    public LoadShedder(WebServerConfig webConfig) {
+        this.target = webConfig.getLoadShedTarget() * 1000000L;
+        this.routePriorities = new HashMap<String, Integer>();
+
+        List<Map.Entry<String, Integer>> prefixList = new ArrayList<Map.Entry<String, Integer>>();
+        for(Map.Entry<String, Integer> entry : webConfig.getLoadShedPriority().entrySet()) {
+            if(entry.getKey().endsWith("*")) {
+                prefixList.add(entry);
+            } else {
+                routePriorities.put(HttpDispatcher.fixRoutePath(entry.getKey()), entry.getValue());
+            }
+        }
+
+        //长的前缀优先匹配
+        prefixList.sort((entry1, entry2) -> entry2.getKey().length() - entry1.getKey().length());
+        prefixes = new String[prefixList.size()];
+        prefixPriorities = new int[prefixList.size()];
+        for(int i = 0; i < prefixList.size(); i++) {
+            String key = prefixList.get(i).getKey();
+            prefixes[i] = key.substring(0, key.length() - 1);
+            prefixPriorities[i] = prefixList.get(i).getValue();
+        }
+    }
+
+    /**
+     * 是否启用过载保护
+     * @return true: 启用, false: 不启用
+     */
+    public boolean isEnabled() {
+        return target > 0;
+    }
+
+    /**
+     * 获取请求的优先级
+     * @param request 请求对象
+     * @return 优先级 0-10
+     */
+    public int getPriority(HttpRequest request) {
+        String routePath = request.getRoutePath();
+        if(routePath != null) {
+            Integer priority = routePriorities.get(routePath);
+            if(priority != null) {
+                return priority;
+            }
+        }
+
+        String requestPath = request.protocol().getPath();
+        for(int i = 0; i < prefixes.length; i++) {
+            if(requestPath.startsWith(prefixes[i])) {
+                return prefixPriorities[i];
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * 获取处理请求的事件执行器的过载等级
+     * @param request 请求对象
+     * @return 0: 未过载, 1-10: 排队延迟为目标延迟的倍数
+     */
+    public int getLevel(HttpRequest request) {
+        IoSession socketSession = request.getSocketSession();
+        EventRunner eventRunner = socketSession == null || socketSession.getSocketSelector() == null ? null : socketSession.getSocketSelector().getEventRunner();
+        if(eventRunner == null) {
+            return 0;
+        }
+
+        CoDel coDel = eventRunner.getCoDel();
+        return coDel.getLevel(target);
+    }
+
+    /**
+     * 过载时拒绝请求
+     * @param request 请求对象
+     * @param response 响应对象
+     * @return true: 请求被拒绝, 已经写入 503 响应, false: 继续处理请求
+     */
+    public boolean shed(HttpRequest request, HttpResponse response) {
+        return shed(request, response, getLevel(request));
+    }
+
+    /**
+     * 按指定的过载等级拒绝请求
+     * @param request 请求对象
+     * @param response 响应对象
+     * @param level 过载等级 0-10
+     * @return true: 请求被拒绝, 已经写入 503 响应, false: 继续处理请求
+     */
+    public boolean shed(HttpRequest request, HttpResponse response, int level) {
+        if(level == 0 || getPriority(request) >= Math.min(level, MAX_PRIORITY)) {
+            return false;
+        }
+
+        response.protocol().setStatus(503);
+        response.protocol().setStatusCode("Service Unavailable");
+        response.header().put("Retry-After", "1");
+        response.write("Service Unavailable");
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+package org.voovan.http.server;
+
+import org.voovan.http.message.HttpClock;
+import org.voovan.http.message.Response;
+import org.voovan.http.message.packet.Body;
+import org.voovan.http.server.context.WebContext;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 预编码的不可变响应
+ * 		状态行、header、cookie 和 body 在构造时编码为字节, 发送时只在日期变化后重新拼接一次,
+ * 		适用于健康检查、固定的错误页面等内容不变的响应.
+ * 		预编码的响应按原样发送, 不进行 gzip 压缩.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class PreparedResponse {
+	//构造时的状态和 header, 用于需要和其他内容合并发送的场景
+	private final Response template;
+	private final byte[] head;
+	private final byte[] body;
+
+	//[Date 头, 完整报文]
+	private volatile Object[] encoded;
+
+	/**
+	 * 构造函数
+	 * @param response 响应对象, 构造后对它的修改不会影响预编码的响应
+	 */
+	public PreparedResponse(Response response) {
+		template = new Response();
+		copyTo(response, template);
+		body = response.body().getBodyBytes();
+
+		Response encoder = new Response();
+		copyTo(template, encoder);
+		encoder.body().write(body);
+		encoder.setCompress(false);
+		encoder.prepareHeader();
+		ByteBuffer byteBuffer = ByteBuffer.allocate(encoder.headSize());
+		encoder.encodeHead(byteBuffer);
+		head = byteBuffer.array();
+		encoder.release();
+	}
+
+	private static void copyTo(Response source, Response target) {
+		target.protocol().setStatus(source.protocol().getStatus());
+		target.protocol().setStatusCode(source.protocol().getStatusCode());
+		target.header().copyFrom(source.header());
+		target.cookies().addAll(source.cookies());
+	}
+
+	/**
+	 * 获取完整的响应报文
+	 * 		包含当前的 Date 头, 同一秒内的调用返回同一个数组, 调用方不能修改
+	 * @return 响应报文的字节
+	 */
+	public byte[] getBytes() {
+		byte[] dateHeader = HttpClock.getDateHeader();
+		Object[] current = encoded;
+
+		if(current == null || current[0] != dateHeader) {
+			byte[] serverHeader = WebContext.RESPONSE_SERVER_HEADER;
+			byte[] bytes = new byte[head.length + dateHeader.length + serverHeader.length + body.length];
+
+			int offset = 0;
+			System.arraycopy(head, 0, bytes, offset, head.length);
+			offset = offset + head.length;
+			System.arraycopy(dateHeader, 0, bytes, offset, dateHeader.length);
+			offset = offset + dateHeader.length;
+			System.arraycopy(serverHeader, 0, bytes, offset, serverHeader.length);
+			offset = offset + serverHeader.length;
+			System.arraycopy(body, 0, bytes, offset, body.length);
+
+			current = new Object[]{dateHeader, bytes};
+			encoded = current;
+		}
+
+		return (byte[]) current[1];
+	}
+
+	/**
+	 * 将预编码的内容填充到响应对象
+	 * 		用于响应还包含其他 header, cookie 或 body 时按普通响应发送,
+	 * 		响应中已有的同名 header 保留, 已写入的 body 追加在预编码的 body 之后,
+	 * 		body 为文件时不写入预编码的 body
+	 * @param response 响应对象
+	 */
+	public void apply(Response response) {
+		response.protocol().setStatus(template.protocol().getStatus());
+		response.protocol().setStatusCode(template.protocol().getStatusCode());
+		for(Map.Entry<String, String> entry : template.header().getHeaders().entrySet()) {
+			if(!response.header().contain(entry.getKey())) {
+				response.header().put(entry.getKey(), entry.getValue());
+			}
+		}
+		response.cookies().addAll(template.cookies());
+
+		Body responseBody = response.body();
+		if(responseBody.isFile()) {
+			return;
+		}
+
+		byte[] written = Arrays.copyOf(responseBody.getBodyBytes(), (int) responseBody.size());
+		responseBody.clear();
+		responseBody.write(body);
+		responseBody.write(written);
+	}
+}
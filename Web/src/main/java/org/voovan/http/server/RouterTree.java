@@ -0,0 +1,236 @@
+package org.voovan.http.server;
+
+import org.voovan.tools.log.Logger;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 路由前缀树
+ *      按 "/" 拆分路由, 支持静态段和参数段(:name), 匹配时一次遍历即可完成路径变量的抽取, 无需正则.
+ *      包含通配符或无法拆分为上述两种段的路由(例如 /a/*, /file-:id) 使用正则匹配.
+ *      前缀树和正则匹配到的路由按 HttpDispatcher 原有的规则合并: 长的路由优先, 长度相同时前缀树的路由优先.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+class RouterTree<T> {
+    private Node<T> root = new Node<T>();
+    private List<RouterWrap<T>> regexRouters = new CopyOnWriteArrayList<RouterWrap<T>>();
+    private boolean ignoreCase;
+    private volatile int maxParamCount = 0;
+
+    /**
+     * 构造函数
+     * @param ignoreCase 匹配时是否忽略大小写
+     */
+    public RouterTree(boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * 路由树节点
+     */
+    private static class Node<T> {
+        private Map<String, Node<T>> staticChildren = new ConcurrentHashMap<String, Node<T>>();
+        private volatile Node<T> paramChild;
+        private volatile RouterWrap<T> routerWrap;
+        private volatile String[] paramNames;
+    }
+
+    /**
+     * 增加一个路由
+     * @param routerWrap 路由信息对象
+     */
+    public synchronized void add(RouterWrap<T> routerWrap) {
+        String[] segments = split(routerWrap.getRoutePath());
+
+        if(segments == null) {
+            regexRouters.remove(find(regexRouters, routerWrap.getRoutePath()));
+            regexRouters.add(routerWrap);
+            //和 HttpDispatcher 原有的规则一致, 长的路由优先匹配
+            regexRouters.sort(Comparator.comparingInt((RouterWrap<T> item) -> item.getRoutePath().length()).reversed());
+            return;
+        }
+
+        Node<T> node = root;
+        List<String> paramNames = new ArrayList<String>();
+
+        for(String segment : segments) {
+            if(segment.charAt(0) == ':') {
+                if(node.paramChild == null) {
+                    node.paramChild = new Node<T>();
+                }
+                paramNames.add(segment.substring(1));
+                node = node.paramChild;
+            } else {
+                String key = ignoreCase ? segment.toLowerCase() : segment;
+                node = node.staticChildren.computeIfAbsent(key, k -> new Node<T>());
+            }
+        }
+
+        node.paramNames = paramNames.toArray(new String[0]);
+        node.routerWrap = routerWrap;
+
+        if(paramNames.size() > maxParamCount) {
+            maxParamCount = paramNames.size();
+        }
+    }
+
+    /**
+     * 查找路由
+     * @param requestPath 请求路径
+     * @param pathVariables 用于存放路径变量的 Map, 为 null 时不抽取路径变量
+     * @return 路由信息对象, 未匹配到返回 null
+     */
+    public RouterWrap<T> find(String requestPath, Map<String, String> pathVariables) {
+        int paramCount = maxParamCount;
+        String[] values = paramCount > 0 ? new String[paramCount] : null;
+
+        Node<T> node = match(root, requestPath, skipSlash(requestPath, 0), values, 0);
+        int treeRouteLength = node == null ? -1 : node.routerWrap.getRoutePath().length();
+
+        //正则路由按长度倒序排列, 只需检查比前缀树匹配到的路由更长的
+        for(RouterWrap<T> routerWrap : regexRouters) {
+            if(routerWrap.getRoutePath().length() <= treeRouteLength) {
+                break;
+            }
+
+            if(HttpDispatcher.matchPath(requestPath, routerWrap.getRoutePath(), routerWrap.getRegexPath(), ignoreCase)) {
+                if(pathVariables != null && routerWrap.getHasUrlParam()) {
+                    Map<String, String> variables = HttpDispatcher.fetchPathVariables(requestPath, routerWrap.getRoutePath(), ignoreCase);
+                    if(variables != null) {
+                        pathVariables.putAll(variables);
+                    }
+                }
+                return routerWrap;
+            }
+        }
+
+        if(node != null) {
+            if(pathVariables != null) {
+                String[] paramNames = node.paramNames;
+                for (int i = 0; i < paramNames.length; i++) {
+                    pathVariables.put(paramNames[i], decode(values[i]));
+                }
+            }
+            return node.routerWrap;
+        }
+
+        return null;
+    }
+
+    /**
+     * 递归匹配路由节点, 优先级: 静态段 > 参数段
+     * @param node 当前节点
+     * @param path 请求路径
+     * @param position 当前段的起始位置
+     * @param values 路径变量值
+     * @param paramIndex 当前路径变量的索引
+     * @return 匹配到的节点
+     */
+    private Node<T> match(Node<T> node, String path, int position, String[] values, int paramIndex) {
+        int length = path.length();
+
+        if(position >= length) {
+            return node.routerWrap != null ? node : null;
+        }
+
+        int end = path.indexOf('/', position);
+        end = end < 0 ? length : end;
+        int next = skipSlash(path, end);
+
+        String segment = path.substring(position, end);
+
+        Node<T> staticChild = node.staticChildren.get(ignoreCase ? segment.toLowerCase() : segment);
+        if(staticChild != null) {
+            Node<T> result = match(staticChild, path, next, values, paramIndex);
+            if(result != null) {
+                return result;
+            }
+        }
+
+        Node<T> paramChild = node.paramChild;
+        if(paramChild != null && values != null && paramIndex < values.length) {
+            values[paramIndex] = segment;
+            Node<T> result = match(paramChild, path, next, values, paramIndex + 1);
+            if(result != null) {
+                return result;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * 跳过连续的 "/"
+     * @param path 路径
+     * @param position 起始位置
+     * @return 第一个非 "/" 的位置
+     */
+    private static int skipSlash(String path, int position) {
+        while(position < path.length() && path.charAt(position) == '/') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * 将路由拆分成段
+     * @param routePath 路由路径
+     * @return 路由段, 如果路由无法用前缀树表达则返回 null
+     */
+    private static String[] split(String routePath) {
+        List<String> segments = new ArrayList<String>();
+
+        int position = skipSlash(routePath, 0);
+        while(position < routePath.length()) {
+            int end = routePath.indexOf('/', position);
+            end = end < 0 ? routePath.length() : end;
+            String segment = routePath.substring(position, end);
+
+            boolean isParam = segment.charAt(0) == ':' && segment.length() > 1 && segment.indexOf(':', 1) < 0 &&
+                    segment.indexOf('*') < 0 && segment.indexOf('?') < 0;
+            boolean isStatic = segment.indexOf(':') < 0 && segment.indexOf('*') < 0;
+
+            if(!(isParam || isStatic)) {
+                return null;
+            }
+
+            segments.add(segment);
+            position = skipSlash(routePath, end);
+        }
+
+        return segments.toArray(new String[0]);
+    }
+
+    private static <T> RouterWrap<T> find(List<RouterWrap<T>> routerWraps, String routePath) {
+        for(RouterWrap<T> routerWrap : routerWraps) {
+            if(routerWrap.getRoutePath().equals(routePath)) {
+                return routerWrap;
+            }
+        }
+        return null;
+    }
+
+    private static String decode(String value) {
+        if(value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            Logger.error("RoutePath URLDecoder.decode failed by charset: UTF-8", e);
+            return value;
+        }
+    }
+}
@@ -16,6 +16,7 @@ class RouterWrap<T> {
     protected String routePath;
     protected Boolean hasUrlParam;
     protected T router;
+    protected volatile HttpFilterPipeline filterPipeline;
 
     public RouterWrap(String method, String routePath, T router) {
         this.method = method;
@@ -44,4 +45,16 @@ class RouterWrap<T> {
     public T getRouter() {
         return router;
     }
+
+    /**
+     * 获取路由预编译的过滤器管道
+     * @return 过滤器管道, 过滤器未编译时为 null
+     */
+    public HttpFilterPipeline getFilterPipeline() {
+        return filterPipeline;
+    }
+
+    public void setFilterPipeline(HttpFilterPipeline filterPipeline) {
+        this.filterPipeline = filterPipeline;
+    }
 }
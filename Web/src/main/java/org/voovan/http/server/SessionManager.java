@@ -4,6 +4,8 @@ import org.voovan.http.message.packet.Cookie;
 import org.voovan.http.server.context.WebServerConfig;
 import org.voovan.tools.collection.ICacheMap;
 import org.voovan.tools.collection.CacheMap;
+import org.voovan.tools.collection.RocksCacheMap;
+import org.voovan.tools.collection.ShardedCacheMap;
 import org.voovan.tools.json.JSON;
 import org.voovan.tools.log.Logger;
 import org.voovan.tools.reflect.TReflect;
@@ -37,6 +39,16 @@ public class SessionManager{
 			((CacheMap)httpSessions).create();
 		}
 
+		//持久化时 Session 以 JSON 形式保存, 加载时还原
+		if(httpSessions instanceof RocksCacheMap){
+			((RocksCacheMap<String, Object>)httpSessions).codec(session -> JSON.toJSON(session),
+					json -> JSON.toObject((String) json, HttpSession.class));
+		}
+
+		if(httpSessions instanceof ShardedCacheMap){
+			((ShardedCacheMap)httpSessions).touchInterval(webConfig.getSessionTouchInterval() * 1000).create();
+		}
+
 		if(httpSessions == null){
 			httpSessions = new CacheMap<String, Object>();
 			Logger.warn("Create session container from config file failed,now use CachedHashMap as defaul session container.");
@@ -69,7 +81,7 @@ public class SessionManager{
 	 * @param session HTTP-Session对象
 	 */
 	public void saveSession(HttpSession session) {
-		if(httpSessions instanceof CacheMap){
+		if(httpSessions instanceof CacheMap || httpSessions instanceof ShardedCacheMap){
 			httpSessions.put(session.getId(), session, session.getMaxInactiveInterval());
 		} else {
 			httpSessions.put(session.getId(), JSON.toJSON(session), session.getMaxInactiveInterval());
@@ -109,7 +121,7 @@ public class SessionManager{
 	 * @return HTTP-Session对象
 	 */
 	public HttpSession getSession(Cookie cookie) {
-		if (cookie!=null && httpSessions.containsKey(cookie.getValue())) {
+		if (cookie!=null) {
 			return getSession(cookie.getValue());
 		}
 		return null;
@@ -133,7 +145,7 @@ public class SessionManager{
 	 * @param id 会话 id
 	 */
 	public void removeSession(String id){
-		if(httpSessions.containsKey(id)) {
+		if(id!=null) {
 			httpSessions.remove(id);
 		}
 	}
@@ -110,8 +110,10 @@ public class WebServer {
 		serverSocket = new TcpServerSocket(config.getHost(), config.getPort(), config.getReadTimeout()*1000, config.getSendTimeout()*1000, 0);
 
 		//构造 Web 独立的事件组执行器
-		serverSocket.setAcceptEventRunnerGroup(SocketContext.createEventRunnerGroup("Web", SocketContext.ACCEPT_THREAD_SIZE, true));
-		serverSocket.setIoEventRunnerGroup(SocketContext.createEventRunnerGroup("Web", SocketContext.IO_THREAD_SIZE, false));
+		//	线程池按名称复用, 事件执行器会一直占用线程, 同一进程中的多个 WebServer 按端口区分名称
+		String eventRunnerGroupName = "Web-" + config.getPort();
+		serverSocket.setAcceptEventRunnerGroup(SocketContext.createEventRunnerGroup(eventRunnerGroupName, SocketContext.ACCEPT_THREAD_SIZE, true));
+		serverSocket.setIoEventRunnerGroup(SocketContext.createEventRunnerGroup(eventRunnerGroupName, SocketContext.IO_THREAD_SIZE, false));
 
 		//[Socket]确认是否启用 HTTPS 支持
 		if(config.isHttps()) {
@@ -419,6 +421,9 @@ public class WebServer {
 		//初始化管理路由
 		InitManagerRouter();
 
+		//按路由编译过滤器管道
+		httpDispatcher.compileFilters();
+
 		initSocketServer(this.config);
 
 		//输出欢迎信息
@@ -492,6 +497,9 @@ public class WebServer {
 		//初始化管理路由
 		InitManagerRouter();
 
+		//按路由编译过滤器管道
+		httpDispatcher.compileFilters();
+
 		WebContext.PAUSE = false;
 	}
 
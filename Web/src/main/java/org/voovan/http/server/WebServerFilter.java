@@ -1,12 +1,16 @@
 package org.voovan.http.server;
 
 import org.voovan.Global;
+import org.voovan.http.http2.Http2Frame;
+import org.voovan.http.http2.Http2Session;
+import org.voovan.http.http2.exception.Http2Exception;
 import org.voovan.http.message.HttpParser;
 import org.voovan.http.message.Request;
 import org.voovan.http.message.Response;
 import org.voovan.http.server.context.WebContext;
 import org.voovan.http.message.exception.HttpParserException;
 import org.voovan.http.server.exception.RequestTooLarge;
+import org.voovan.http.websocket.WebSocketDeflate;
 import org.voovan.http.websocket.WebSocketFrame;
 import org.voovan.network.IoFilter;
 import org.voovan.network.IoSession;
@@ -85,7 +89,14 @@ public class WebServerFilter implements IoFilter {
 			return TByteBuffer.EMPTY_BYTE_BUFFER;
 		} else if(object instanceof WebSocketFrame){
 			WebSocketFrame webSocketFrame = (WebSocketFrame)object;
-			return webSocketFrame.toByteBuffer();
+			//帧直接写入发送缓冲区, 协商了压缩扩展时由压缩上下文压缩后写入
+			WebSocketDeflate webSocketDeflate = WebServerHandler.getAttachment(session).getWebSocketDeflate();
+			if(webSocketDeflate != null) {
+				webSocketDeflate.send(session, webSocketFrame);
+			} else {
+				webSocketFrame.send(session);
+			}
+			return TByteBuffer.EMPTY_BYTE_BUFFER;
 		}
 		return null;
 	}
@@ -160,6 +171,26 @@ public class WebServerFilter implements IoFilter {
 			} else {
 				return null;
 			}
+		}
+		//HTTP/2 连接, 转换成 Http2Frame 对象
+		else if(httpSessionState.isHttp2()) {
+			ByteBuffer byteBuffer = (ByteBuffer)object;
+			Http2Session http2Session = httpSessionState.getHttp2Session();
+
+			if(!http2Session.isPrefaceReceived()) {
+				if(Http2Session.isPreface(byteBuffer)) {
+					http2Session.onPreface();
+				} else {
+					session.close();
+				}
+				return null;
+			}
+
+			try {
+				return Http2Frame.parse(byteBuffer, http2Session.getMaxFrameSize());
+			} catch (Http2Exception e) {
+				http2Session.onError(e);
+			}
 		} else {
 			//如果协议判断失败关闭连接
 			session.close();
@@ -2,13 +2,19 @@ package org.voovan.http.server;
 
 import org.voovan.Global;
 import org.voovan.http.HttpRequestType;
+import org.voovan.http.http2.Http2Frame;
+import org.voovan.http.http2.Http2Session;
+import org.voovan.http.http2.Http2Stream;
+import org.voovan.http.http2.exception.Http2Exception;
 import org.voovan.http.message.HttpParser;
 import org.voovan.http.message.HttpStatic;
 import org.voovan.http.message.Request;
 import org.voovan.http.server.context.WebContext;
 import org.voovan.http.server.context.WebServerConfig;
 import org.voovan.http.server.exception.RouterNotFound;
+import org.voovan.http.websocket.WebSocketDeflate;
 import org.voovan.http.websocket.WebSocketFrame;
+import org.voovan.http.websocket.WebSocketHeartBeat;
 import org.voovan.http.websocket.WebSocketTools;
 import org.voovan.network.IoHandler;
 import org.voovan.network.IoSession;
@@ -20,10 +26,13 @@ import org.voovan.tools.exception.MemoryReleasedException;
 import org.voovan.tools.hashwheeltimer.HashWheelTask;
 import org.voovan.tools.log.Logger;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.DataFormatException;
 
 /**
  * WebServer Socket 事件处理类
@@ -38,6 +47,10 @@ public class WebServerHandler implements IoHandler {
 	private static FastThreadLocal<HttpRequest> THREAD_HTTP_REQUEST = FastThreadLocal.withInitial(()->new HttpRequest());
 	private static FastThreadLocal<HttpResponse> THREAD_HTTP_RESPONSE = FastThreadLocal.withInitial(()->new HttpResponse());
 
+	private static final byte[] H2C_UPGRADE_RESPONSE = ("HTTP/1.1 101 Switching Protocols\r\n" +
+			"Connection: Upgrade\r\n" +
+			"Upgrade: h2c\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
 
 	private HttpDispatcher		httpDispatcher;
 	private WebSocketDispatcher	webSocketDispatcher;
@@ -87,7 +100,8 @@ public class WebServerHandler implements IoHandler {
 
 					long timeoutValue = getAttachment(session).getKeepAliveTimeout();
 
-					if(timeoutValue < currentTimeValue){
+					//异步响应完成前不关闭连接
+					if(timeoutValue < currentTimeValue && !getAttachment(session).hasAsyncPending()){
 						//如果超时则结束当前连接
 						session.close();
 
@@ -103,7 +117,7 @@ public class WebServerHandler implements IoHandler {
 	public Object onConnect(IoSession session) {
 		//初始化 Session.attachment
 		//[0] HttpSessionState
-		//[1] HttpFilter
+		//[1] 保留, HTTP 过滤器管道按路由预编译, 不再保存在连接上
 		//[2] WebSocketFilter
 		Object[] attachment = new Object[3];
 		session.setAttachment(attachment);
@@ -115,6 +129,7 @@ public class WebServerHandler implements IoHandler {
 		HttpSessionState httpSessionState = getAttachment(session);
 
 		if (httpSessionState.isWebSocket()) {
+			WebSocketHeartBeat.unregister(session);
 
 			// 触发一个 WebSocket Close 事件
 			webSocketDispatcher.fireCloseEvent(session);
@@ -124,6 +139,10 @@ public class WebServerHandler implements IoHandler {
 			if (byteBufferChannel != null && !byteBufferChannel.isReleased()) {
 				byteBufferChannel.release();
 			}
+
+			if (httpSessionState.getWebSocketDeflate() != null) {
+				httpSessionState.getWebSocketDeflate().release();
+			}
 		}
 
 		//清理 IoSession
@@ -187,6 +206,11 @@ public class WebServerHandler implements IoHandler {
 				return disposeUpgrade(session, httpRequest, httpResponse);
 			}
 
+			// HTTP/2 协议升级处理
+			else if (webConfig.isEnableHttp2() && isHttp2Upgrade(request)) {
+				return disposeHttp2Upgrade(session, httpRequest, httpResponse);
+			}
+
 			// Http 1.1处理
 			else {
 				return disposeHttp(session, httpRequest, httpResponse);
@@ -196,6 +220,10 @@ public class WebServerHandler implements IoHandler {
 		else if (obj instanceof WebSocketFrame) {
 			return disposeWebSocket(session, (WebSocketFrame)obj);
 		}
+		//处理 HTTP/2 帧
+		else if (obj instanceof Http2Frame) {
+			return disposeHttp2(session, (Http2Frame)obj);
+		}
 
 		// 如果协议判断失败关闭连接
 		session.close();
@@ -213,40 +241,136 @@ public class WebServerHandler implements IoHandler {
 	public HttpResponse disposeHttp(IoSession session, HttpRequest httpRequest, HttpResponse httpResponse) {
 		HttpSessionState httpSessionState = getAttachment(session);
 
-		//如果是长连接则填充响应报文
-		if(httpRequest.protocol().getVersion().endsWith(HttpStatic.HTTP_11_STRING)) {
-			httpSessionState.setKeepAlive(true);
-		} else if (httpRequest.header().contain(HttpStatic.CONNECTION_STRING)) {
-			if(httpRequest.header().get(HttpStatic.CONNECTION_STRING).toLowerCase().contains(HttpStatic.KEEP_ALIVE_STRING)) {
+		//如果是长连接则填充响应报文, HTTP/1.1 默认保持连接
+		boolean isHttp11 = httpRequest.protocol().getVersion().endsWith(HttpStatic.HTTP_11_STRING);
+		httpSessionState.setKeepAlive(isHttp11);
+
+		String connection = httpRequest.header().get(HttpStatic.CONNECTION_STRING);
+		if (connection != null) {
+			connection = connection.toLowerCase();
+			if(!isHttp11 && connection.contains(HttpStatic.KEEP_ALIVE_STRING)) {
 				httpSessionState.setKeepAlive(true);
 				httpResponse.header().put(HttpStatic.CONNECTION_STRING, httpRequest.header().get(HttpStatic.CONNECTION_STRING));
 			}
 
-			if(httpRequest.header().get(HttpStatic.CONNECTION_STRING).toLowerCase().contains(HttpStatic.CLOSE_STRING)) {
+			if(connection.contains(HttpStatic.CLOSE_STRING)) {
 				httpSessionState.setKeepAlive(false);
 				httpResponse.header().remove(HttpStatic.CONNECTION_STRING);
 			}
 		}
 
+		//连接将在响应后关闭, 缓冲区中后续的管道化请求不再处理
+		httpSessionState.setClosing(!httpSessionState.isKeepAlive());
+
         // 处理响应请求
         httpDispatcher.process(httpRequest, httpResponse);
 
-		//Gzip 启用检测
-		if(webConfig.isGzip() && httpRequest.header().contain(HttpStatic.ACCEPT_ENCODING_STRING) &&
-				httpRequest.header().get(HttpStatic.ACCEPT_ENCODING_STRING).contains(HttpStatic.GZIP_STRING) &&
-				httpResponse.header().get(HttpStatic.CONTENT_TYPE_STRING) != null) {
-			//检查 body 大小是否启用 gzip
-			if(httpResponse.body().size() > webConfig.getGzipMinSize()){
-				//检查 MimeType 是否启用 gzip
-				for(String gzipMimeType : webConfig.getGzipMimeType()){
-					if(httpResponse.header().get(HttpStatic.CONTENT_TYPE_STRING).contains(gzipMimeType)){
-						httpResponse.setCompress(true);
-					}
-				}
+		httpDispatcher.checkGzip(httpRequest, httpResponse);
+
+		return httpResponse;
+	}
+
+	/**
+	 * 判断是否是 HTTP/2 明文协议(h2c)的升级请求
+	 * @param request HTTP 请求对象
+	 * @return true: 是, false: 否
+	 */
+	public static boolean isHttp2Upgrade(Request request) {
+		return "h2c".equalsIgnoreCase(request.header().get(HttpStatic.UPGRADE_STRING)) &&
+				request.header().contain("HTTP2-Settings");
+	}
+
+	/**
+	 * HTTP/2 协议升级处理
+	 * 		发送 101 响应后切换到 HTTP/2, 升级请求本身作为流 1 处理, 响应以 HTTP/2 帧发送
+	 *
+	 * @param session    HTTP-Session 对象
+	 * @param httpRequest  HTTP 请求对象
+	 * @param httpResponse HTTP 响应对象
+	 * @return null, 响应已写入发送缓冲区
+	 */
+	public HttpResponse disposeHttp2Upgrade(IoSession session, HttpRequest httpRequest, HttpResponse httpResponse) {
+		HttpSessionState httpSessionState = getAttachment(session);
+
+		Http2Session http2Session = new Http2Session(session, webConfig.getMaxRequestSize() * 1024L);
+		try {
+			http2Session.applyUpgradeSettings(httpRequest.header().get("HTTP2-Settings"));
+		} catch (IllegalArgumentException | Http2Exception e) {
+			//升级参数错误时按普通的 HTTP/1.1 请求处理
+			return disposeHttp(session, httpRequest, httpResponse);
+		}
+
+		session.send(ByteBuffer.wrap(H2C_UPGRADE_RESPONSE));
+
+		httpSessionState.setType(HttpRequestType.HTTP2);
+		httpSessionState.setHttp2Session(http2Session);
+		httpSessionState.setKeepAlive(true);
+		httpSessionState.setClosing(false);
+		http2Session.sendSettings();
+
+		Http2Stream stream = http2Session.openUpgradeStream();
+		httpRequest.header().remove(HttpStatic.UPGRADE_STRING);
+		httpRequest.header().remove("HTTP2-Settings");
+		httpResponse.setStreamId(stream.getId());
+		try {
+			dispatchHttp2(http2Session, httpRequest, httpResponse);
+		} finally {
+			httpResponse.clear();
+			httpResponse.setStreamId(0);
+		}
+
+		return null;
+	}
+
+	/**
+	 * HTTP/2 帧处理
+	 * 		请求接收完整的流交给 HttpDispatcher 处理, 连接级别的帧在 Http2Session 中处理
+	 *
+	 * @param session 	HTTP-Session 对象
+	 * @param frame HTTP/2 帧对象
+	 * @return null, 响应已写入发送缓冲区
+	 */
+	public HttpResponse disposeHttp2(IoSession session, Http2Frame frame) {
+		Http2Session http2Session = getAttachment(session).getHttp2Session();
+		Http2Stream stream = http2Session.onFrame(frame);
+
+		if(stream != null) {
+			Request request = stream.getRequest();
+
+			//检查服务是否暂停
+			checkPause(session, request);
+
+			if(!session.isConnected()) {
+				return null;
+			}
+
+			String defaultCharacterSet = webConfig.getCharacterSet();
+			HttpRequest httpRequest = new HttpRequest(request, defaultCharacterSet, session);
+			HttpResponse httpResponse = new HttpResponse(defaultCharacterSet, session);
+			httpResponse.setStreamId(stream.getId());
+
+			dispatchHttp2(http2Session, httpRequest, httpResponse);
+
+			if(!httpResponse.isAsync()) {
+				httpRequest.release();
+				httpResponse.release();
 			}
 		}
 
-		return httpResponse;
+		return null;
+	}
+
+	private void dispatchHttp2(Http2Session http2Session, HttpRequest httpRequest, HttpResponse httpResponse) {
+		httpDispatcher.process(httpRequest, httpResponse);
+		httpDispatcher.checkGzip(httpRequest, httpResponse);
+
+		if(!httpResponse.isAsync()) {
+			try {
+				http2Session.sendResponse(httpResponse.getStreamId(), httpResponse);
+			} catch (IOException e) {
+				Logger.error("Http2 send response error", e);
+			}
+		}
 	}
 
 	/**
@@ -275,13 +399,18 @@ public class WebServerHandler implements IoHandler {
 				httpResponse.header().put(HttpStatic.UPGRADE_STRING, HttpStatic.WEB_SOCKET_STRING);
 				String webSocketKey = WebSocketTools.generateSecKey(httpRequest.header().get(HttpStatic.SEC_WEB_SOCKET_KEY_STRING));
 				httpResponse.header().put(HttpStatic.SEC_WEB_SOCKET_ACCEPT_STRING, webSocketKey);
-			}
 
-			//http2 升级响应
-			else if(httpRequest.header()!=null && "h2c".equals(httpRequest.header().get(HttpStatic.UPGRADE_STRING))){
-				httpResponse.header().put(HttpStatic.UPGRADE_STRING, "h2c");
-				//这里写 HTTP2的实现,暂时留空
+				//permessage-deflate 压缩扩展协商
+				if(webConfig.isWebSocketDeflate()) {
+					WebSocketDeflate webSocketDeflate = WebSocketDeflate.accept(httpRequest.header().get(HttpStatic.SEC_WEB_SOCKET_EXTENSIONS_STRING),
+							webConfig.getWebSocketDeflateMinSize(), webConfig.getMaxRequestSize() > 0 ? webConfig.getMaxRequestSize() * 1024 : -1);
+					if(webSocketDeflate != null) {
+						httpSessionState.setWebSocketDeflate(webSocketDeflate);
+						httpResponse.header().put(HttpStatic.SEC_WEB_SOCKET_EXTENSIONS_STRING, webSocketDeflate.response());
+					}
+				}
 			}
+
 		} else {
 			httpDispatcher.exceptionMessage(httpRequest, httpResponse, new RouterNotFound("Not avaliable router!"));
 		}
@@ -300,16 +429,11 @@ public class WebServerHandler implements IoHandler {
 	public WebSocketFrame disposeWebSocket(IoSession session, WebSocketFrame webSocketFrame) {
 		HttpSessionState httpSessionState = getAttachment(session);
 
-		ByteBufferChannel byteBufferChannel = null;
-		if(!session.containAttribute("WebSocketByteBufferChannel")){
-			byteBufferChannel = new ByteBufferChannel(session.socketContext().getReadBufferSize());
-			session.setAttribute("WebSocketByteBufferChannel",byteBufferChannel);
-		}else{
-			byteBufferChannel = (ByteBufferChannel)session.getAttribute("WebSocketByteBufferChannel");
-		}
-
 		HttpRequest reqWebSocket = httpSessionState.getHttpRequest();
 
+		//收到任何帧都说明连接是活跃的
+		WebSocketHeartBeat.touch(session);
+
 		// WS_CLOSE 如果收到关闭帧则关闭连接
 		if(webSocketFrame.getOpcode() == WebSocketFrame.Opcode.CLOSING) {
 			return WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.CLOSING, false, webSocketFrame.getFrameData());
@@ -323,35 +447,81 @@ public class WebServerHandler implements IoHandler {
 			refreshTimeout(session);
 			webSocketDispatcher.firePoneEvent(session, reqWebSocket, webSocketFrame.getFrameData());
 			return null;
-		}else if(webSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS){
-			byteBufferChannel.writeEnd(webSocketFrame.getFrameData());
 		}
 		// WS_RECIVE 文本和二进制消息出发 Recived 事件
-		else if (webSocketFrame.getOpcode() == WebSocketFrame.Opcode.TEXT || webSocketFrame.getOpcode() == WebSocketFrame.Opcode.BINARY) {
+		else if (webSocketFrame.getOpcode() == WebSocketFrame.Opcode.TEXT || webSocketFrame.getOpcode() == WebSocketFrame.Opcode.BINARY ||
+				webSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS) {
+
+			WebSocketDeflate webSocketDeflate = httpSessionState.getWebSocketDeflate();
 
-			byteBufferChannel.writeEnd(webSocketFrame.getFrameData());
-			WebSocketFrame respWebSocketFrame = null;
+			//判断解包是否有错, 只有协商了压缩扩展的消息的第一个帧可以设置 RSV1
+			int errorCode = webSocketFrame.getErrorCode();
+			if(errorCode == 0 && webSocketFrame.isCompressed() &&
+					(webSocketDeflate == null || webSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS)) {
+				errorCode = 1002;
+			}
+
+			if(errorCode!=0){
+				//解析时出现异常,返回关闭消息
+				return closeFrame(errorCode);
+			}
+
+			ByteBufferChannel byteBufferChannel = (ByteBufferChannel)session.getAttribute("WebSocketByteBufferChannel");
+			boolean compressed = webSocketDeflate != null &&
+					(webSocketFrame.isCompressed() || (webSocketFrame.getOpcode() == WebSocketFrame.Opcode.CONTINUOUS && webSocketDeflate.isMessageCompressed()));
 
-			//判断解包是否有错
-			if(webSocketFrame.getErrorCode()==0){
+			//未分片且未压缩的消息直接使用接收缓冲区中的帧数据
+			if(!compressed && webSocketFrame.isFin() && (byteBufferChannel == null || byteBufferChannel.isEmpty())) {
+				return webSocketDispatcher.fireReceivedEvent(session, reqWebSocket, webSocketFrame.getFrameData());
+			}
+
+			//分片或压缩的消息在收到每个帧时追加(解压)到消息缓冲区, 收到最后一个帧时触发 Recived 事件
+			if(byteBufferChannel == null){
+				byteBufferChannel = new ByteBufferChannel(session.socketContext().getReadBufferSize());
+				session.setAttribute("WebSocketByteBufferChannel",byteBufferChannel);
+			}
+
+			if(compressed) {
+				if(webSocketFrame.getOpcode() != WebSocketFrame.Opcode.CONTINUOUS) {
+					webSocketDeflate.beginMessage(true);
+				}
+
+				try {
+					if (!webSocketDeflate.inflate(webSocketFrame.getFrameData(), webSocketFrame.isFin(), byteBufferChannel)) {
+						byteBufferChannel.clear();
+						return closeFrame(1009);
+					}
+				} catch (DataFormatException e) {
+					byteBufferChannel.clear();
+					return closeFrame(1007);
+				}
+			} else {
+				byteBufferChannel.writeEnd(webSocketFrame.getFrameData());
+			}
+
+			if(webSocketFrame.isFin()) {
 				ByteBuffer byteBuffer = byteBufferChannel.getByteBuffer();
 				try {
-					respWebSocketFrame = webSocketDispatcher.fireReceivedEvent(session, reqWebSocket, byteBuffer);
+					return webSocketDispatcher.fireReceivedEvent(session, reqWebSocket, byteBuffer);
 				} finally {
 					byteBufferChannel.compact();
 					byteBufferChannel.clear();
 				}
-
-			}else{
-				//解析时出现异常,返回关闭消息
-				respWebSocketFrame = WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.CLOSING, false, ByteBuffer.wrap(WebSocketTools.intToByteArray(webSocketFrame.getErrorCode(), 2)));
 			}
-			return respWebSocketFrame;
 		}
 
 		return null;
 	}
 
+	/**
+	 * 构造关闭帧
+	 * @param errorCode 关闭状态码
+	 * @return 关闭帧
+	 */
+	private static WebSocketFrame closeFrame(int errorCode) {
+		return WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.CLOSING, false, ByteBuffer.wrap(new byte[]{(byte) (errorCode >> 8), (byte) errorCode}));
+	}
+
 	private void refreshTimeout(IoSession session){
 		HttpSessionState httpSessionState = getAttachment(session);
 
@@ -396,23 +566,8 @@ public class WebServerHandler implements IoHandler {
 				}
 			}
 
-			//发送第一次心跳消息
-			WebSocketDispatcher.getHeartBeatWheelTimer().addTask(new HashWheelTask() {
-				@Override
-				public void run() {
-					//发送 ping 消息
-					try {
-						WebSocketFrame ping = WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.PING, false, null);
-						session.send(ping.toByteBuffer());
-						session.flush();
-					} catch (Exception e) {
-						session.close();
-						Logger.error("WebSocket writeToChannel Ping frame error", e);
-					} finally {
-						this.cancel();
-					}
-				}
-			}, session.socketContext().getReadTimeout()/3/1000);
+			//加入心跳服务, 由心跳服务发送 ping 消息
+			WebSocketHeartBeat.register(session);
 		}
 	}
 
@@ -431,7 +586,7 @@ public class WebServerHandler implements IoHandler {
 			//更新会话超时时间
 			refreshTimeout(session);
 
-		} else {
+		} else if(!httpSessionState.isResponding()) {
 			keepAliveSessionList.remove(session);
 			session.close();
 		}
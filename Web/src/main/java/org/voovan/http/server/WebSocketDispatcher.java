@@ -7,16 +7,16 @@ import org.voovan.http.server.exception.RouterNotFound;
 import org.voovan.http.websocket.*;
 import org.voovan.http.websocket.exception.WebSocketFilterException;
 import org.voovan.network.IoSession;
-import org.voovan.network.exception.SendMessageException;
 import org.voovan.tools.collection.Chain;
-import org.voovan.tools.hashwheeltimer.HashWheelTask;
 import org.voovan.tools.hashwheeltimer.HashWheelTimer;
 import org.voovan.tools.log.Logger;
 import org.voovan.tools.reflect.annotation.NotSerialization;
 
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -52,6 +52,12 @@ public class WebSocketDispatcher {
 	@NotSerialization
 	private Map<IoSession, WebSocketSession> webSocketSessions;
 
+	/**
+	 * [Key] = 主题名称 ,[Value] = 订阅主题的 WebSocketSession
+	 */
+	@NotSerialization
+	private Map<String, Set<WebSocketSession>> topics;
+
 	/**
 	 * [Key] = Route path ,[Value] = WebSocketBizHandler对象
 	 */
@@ -71,6 +77,7 @@ public class WebSocketDispatcher {
 		this.sessionManager = sessionManager;
 
 		webSocketSessions = new ConcurrentHashMap<IoSession, WebSocketSession>();
+		topics = new ConcurrentHashMap<String, Set<WebSocketSession>>();
 
 		routers =  new TreeMap<String, RouterWrap<WebSocketRouter>>(new Comparator<String>() {
 			@Override
@@ -126,6 +133,137 @@ public class WebSocketDispatcher {
 	}
 
 
+	/**
+	 * 订阅主题
+	 * @param topic 主题名称
+	 * @param session WebSocket 会话
+	 */
+	public void subscribe(String topic, WebSocketSession session) {
+		topics.compute(topic, (key, sessions) -> {
+			if(sessions == null) {
+				sessions = ConcurrentHashMap.newKeySet();
+			}
+			sessions.add(session);
+			return sessions;
+		});
+		session.getTopics().add(topic);
+	}
+
+	/**
+	 * 取消订阅主题
+	 * 		主题没有订阅者后被移除
+	 * @param topic 主题名称
+	 * @param session WebSocket 会话
+	 */
+	public void unsubscribe(String topic, WebSocketSession session) {
+		session.getTopics().remove(topic);
+		topics.computeIfPresent(topic, (key, sessions) -> {
+			sessions.remove(session);
+			return sessions.isEmpty() ? null : sessions;
+		});
+	}
+
+	/**
+	 * 取消会话订阅的所有主题
+	 * @param session WebSocket 会话
+	 */
+	public void unsubscribe(WebSocketSession session) {
+		for(String topic : session.getTopics().toArray(new String[0])) {
+			unsubscribe(topic, session);
+		}
+	}
+
+	/**
+	 * 获取订阅主题的会话
+	 * @param topic 主题名称
+	 * @return 订阅主题的会话, 主题不存在时返回 null
+	 */
+	public Set<WebSocketSession> getTopicSessions(String topic) {
+		return topics.get(topic);
+	}
+
+	/**
+	 * 获取所有的主题名称
+	 * @return 主题名称集合
+	 */
+	public Set<String> getTopics() {
+		return topics.keySet();
+	}
+
+	/**
+	 * 向主题广播文本消息
+	 * 		消息使用第一个订阅者的过滤器链编码一次, 帧构造一次, 所有订阅者共享
+	 * @param topic 主题名称
+	 * @param obj 消息对象
+	 * @return 消息进入发送队列的订阅者数量
+	 * @throws WebSocketFilterException WebSocket过滤器异常
+	 */
+	public int broadcast(String topic, Object obj) throws WebSocketFilterException {
+		return broadcast(topics.get(topic), obj, WebSocketFrame.Opcode.TEXT);
+	}
+
+	/**
+	 * 向主题广播二进制消息
+	 * 		byte[] 和 ByteBuffer 直接发送, 其他对象使用第一个订阅者的过滤器链编码一次
+	 * @param topic 主题名称
+	 * @param obj 消息对象
+	 * @return 消息进入发送队列的订阅者数量
+	 * @throws WebSocketFilterException WebSocket过滤器异常
+	 */
+	public int broadcastBinary(String topic, Object obj) throws WebSocketFilterException {
+		return broadcast(topics.get(topic), obj, WebSocketFrame.Opcode.BINARY);
+	}
+
+	/**
+	 * 向一组会话广播消息
+	 * @param sessions WebSocket 会话集合
+	 * @param obj 消息对象
+	 * @param opcode 帧类型, TEXT 或 BINARY
+	 * @return 消息进入发送队列的会话数量
+	 * @throws WebSocketFilterException WebSocket过滤器异常
+	 */
+	public static int broadcast(Collection<WebSocketSession> sessions, Object obj, WebSocketFrame.Opcode opcode) throws WebSocketFilterException {
+		if(sessions == null || sessions.isEmpty()) {
+			return 0;
+		}
+
+		ByteBuffer byteBuffer = null;
+		if(opcode == WebSocketFrame.Opcode.BINARY && obj instanceof byte[]) {
+			byteBuffer = ByteBuffer.wrap((byte[])obj);
+		} else if(opcode == WebSocketFrame.Opcode.BINARY && obj instanceof ByteBuffer) {
+			byteBuffer = (ByteBuffer)obj;
+		} else {
+			for(WebSocketSession session : sessions) {
+				byteBuffer = (ByteBuffer) filterEncoder(session, obj);
+				break;
+			}
+		}
+
+		if(byteBuffer == null) {
+			return 0;
+		}
+
+		return broadcast(sessions, new WebSocketBroadcast(opcode, byteBuffer));
+	}
+
+	/**
+	 * 向一组会话广播已经构造好的消息
+	 * @param sessions WebSocket 会话集合
+	 * @param webSocketBroadcasts 广播消息, 多个帧作为一个整体连续发送
+	 * @return 消息进入发送队列的会话数量
+	 */
+	public static int broadcast(Collection<WebSocketSession> sessions, WebSocketBroadcast ... webSocketBroadcasts) {
+		int count = 0;
+		if(sessions != null) {
+			for (WebSocketSession session : sessions) {
+				if (session.deliver(webSocketBroadcasts)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * 过滤器解密函数,接收事件(onRecive)前调用
 	 * 			onRecive事件前调用
@@ -260,29 +398,13 @@ public class WebSocketDispatcher {
 				} else if (event == WebSocketEvent.CLOSE) {
 					webSocketRouter.onClose(webSocketSession);
 
-					//清理 webSocketSessions 中的 WebSocketSession
+					//清理 webSocketSessions 中的 WebSocketSession 和订阅的主题
+					webSocketSession.release();
 					webSocketSessions.remove(session);
 				} else if (event == WebSocketEvent.PING) {
 					return WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.PONG, false, byteBuffer);
 				} else if (event == WebSocketEvent.PONG) {
-					final IoSession poneSession = session;
-					if(poneSession.isConnected()) {
-						WebSocketDispatcher.getHeartBeatWheelTimer().addTask(new HashWheelTask() {
-							@Override
-							public void run() {
-								try {
-									if(poneSession.socketContext().isConnected()) {
-										poneSession.syncSend(WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.PING, false, null));
-									}
-								} catch (SendMessageException e) {
-									poneSession.close();
-									Logger.error("Send WebSocket ping error", e);
-								} finally {
-									this.cancel();
-								}
-							}
-						}, poneSession.socketContext().getReadTimeout() / 1000/ 3);
-					}
+					//心跳由 WebSocketHeartBeat 按连接的空闲时间发送, 收到 pong 不需要处理
 				}
 			} catch (WebSocketFilterException e) {
 				Logger.error(e);
@@ -310,6 +432,9 @@ public class WebSocketDispatcher {
 		if (!webSocketSessions.containsKey(socketSession)) {
 			// 构建 session
 			WebSocketSession webSocketSession = new WebSocketSession(httpSession.getSocketSession(), webSocketRouter, WebSocketType.SERVER);
+			webSocketSession.setWebSocketDispatcher(this);
+			webSocketSession.setSlowConsumerPolicy(SlowConsumerPolicy.parse(webConfig.getWebSocketSlowConsumerPolicy()));
+			webSocketSession.setMaxPendingBytes(webConfig.getWebSocketMaxPendingBytes());
 
 			webSocketSessions.put(socketSession, webSocketSession);
 			return webSocketSession;
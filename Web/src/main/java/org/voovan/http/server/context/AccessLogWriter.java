@@ -0,0 +1,506 @@
+package org.voovan.http.server.context;
+
+import org.voovan.http.message.HttpClock;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.tools.TDateTime;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.TFile;
+import org.voovan.tools.log.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * access.log 异步批量写入器
+ * 		请求线程只把日志字段复制到环形队列中预分配的记录里, 不格式化, 不加锁, 队列满时丢弃并计数.
+ * 		独立的写入线程批量取出记录, 编码后通过 FileChannel 写入文件, 按文件大小和时间间隔切分文件.
+ *
+ * 		格式:
+ * 			text: 和原来的 access.log 相同的文本格式
+ * 			json: 每行一个 JSON 对象
+ * 			binary: 每条记录为 [int 记录长度][long 时间戳][int 状态码][long body 大小][int 远程端口],
+ * 					之后依次为远程地址, 协议, 方法, 路径, User-Agent, Referer, 每个字符串为 [short 长度][UTF-8 字节],
+ * 					每个字符串最多 4096 字节, 超出的部分截断, 一条记录总能放入批量缓冲区
+ *
+ * 		写入失败时丢弃当前批次并记录错误, 写入线程继续运行, 文件不可用时在下一批次重新打开.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class AccessLogWriter implements Runnable {
+	public static final String FORMAT_TEXT = "text";
+	public static final String FORMAT_JSON = "json";
+	public static final String FORMAT_BINARY = "binary";
+
+	public static final int RING_SIZE = 8192;
+	private static final int BATCH_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_FIELD_LENGTH = 4096;
+	private static final long ERROR_WAIT_NANOS = 1_000_000_000L;
+
+	/**
+	 * 环形队列中预分配的日志记录
+	 */
+	private static class Record {
+		//Vyukov 有界队列的序号, 等于写入位置时可写, 等于写入位置 + 1 时可读
+		private volatile long sequence;
+		private long time;
+		private String remoteAddress;
+		private int remotePort;
+		private String protocol;
+		private String version;
+		private String method;
+		private int status;
+		private long bodySize;
+		private String path;
+		private String userAgent;
+		private String referer;
+	}
+
+	private final String fileName;
+	private final String format;
+	private final long maxFileSize;
+	private final long rotateInterval;
+
+	private final Record[] records;
+	private final int mask;
+	private final AtomicLong writePosition = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private long readPosition = 0;
+
+	private volatile boolean running = true;
+	private final Thread thread;
+
+	//以下字段只在写入线程中使用
+	private FileChannel fileChannel;
+	private long fileSize;
+	private long nextRotateTime;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH_BUFFER_SIZE);
+	private final StringBuilder stringBuilder = new StringBuilder(512);
+	private long formatedSecond = -1;
+	private String formatedTime;
+
+	/**
+	 * 构造函数
+	 * @param fileName 日志文件路径
+	 * @param format 日志格式: text, json, binary
+	 * @param maxFileSize 单个日志文件的最大字节数, 小于等于 0 时不按大小切分
+	 * @param rotateInterval 日志文件切分的时间间隔(毫秒), 按本地时间对齐, 小于等于 0 时不按时间切分
+	 */
+	public AccessLogWriter(String fileName, String format, long maxFileSize, long rotateInterval) {
+		this.fileName = fileName;
+		this.format = format == null ? FORMAT_TEXT : format.toLowerCase();
+		this.maxFileSize = maxFileSize;
+		this.rotateInterval = rotateInterval;
+
+		records = new Record[RING_SIZE];
+		for(int i = 0; i < RING_SIZE; i++) {
+			records[i] = new Record();
+			records[i].sequence = i;
+		}
+		mask = RING_SIZE - 1;
+
+		thread = new Thread(this, "VOOVAN@ACCESS_LOG");
+		thread.setDaemon(true);
+		thread.start();
+
+		TEnv.addShutDownHook(this::stop);
+	}
+
+	/**
+	 * 获取日志格式
+	 * @return 日志格式
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * 获取因队列满而丢弃的日志数量
+	 * @return 丢弃的日志数量
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * 记录一次请求, 在请求线程中调用
+	 * @param request HTTP 请求对象
+	 * @param response HTTP 响应对象
+	 * @return true: 记录成功, false: 队列已满, 记录被丢弃
+	 */
+	public boolean write(HttpRequest request, HttpResponse response) {
+		Record record;
+		long position;
+		while(true) {
+			position = writePosition.get();
+			record = records[(int) (position & mask)];
+			long difference = record.sequence - position;
+			if(difference == 0) {
+				if(writePosition.compareAndSet(position, position + 1)) {
+					break;
+				}
+			} else if(difference < 0) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+
+		record.time = HttpClock.currentTimeMillis();
+		record.remoteAddress = request.getRemoteAddres();
+		record.remotePort = request.getRemotePort();
+		record.protocol = request.protocol().getProtocol();
+		record.version = request.protocol().getVersion();
+		record.method = request.protocol().getMethod();
+		record.status = response.protocol().getStatus();
+		record.bodySize = response.body().size();
+		record.path = request.protocol().getPath();
+		record.userAgent = request.header().get("User-Agent");
+		record.referer = request.header().get("Referer");
+
+		//发布记录
+		record.sequence = position + 1;
+		return true;
+	}
+
+	/**
+	 * 停止写入线程, 写出队列中剩余的日志
+	 */
+	public void stop() {
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				try {
+					if (fileChannel == null || !fileChannel.isOpen()) {
+						openFile();
+					}
+
+					int count = drain();
+
+					if (count == 0) {
+						flush();
+
+						long droppedCount = dropped.getAndSet(0);
+						if (droppedCount > 0) {
+							Logger.warn("[AccessLog] " + droppedCount + " access log records dropped, the queue is full");
+						}
+
+						if (!running && record(readPosition).sequence != readPosition + 1) {
+							break;
+						}
+
+						LockSupport.parkNanos(1_000_000);
+					}
+				} catch (Throwable e) {
+					//丢弃当前批次, 关闭文件在下一批次重新打开, 继续处理后续的记录
+					buffer.clear();
+					Logger.error("[AccessLog] write access log failed", e);
+					if (fileChannel != null) {
+						try {
+							fileChannel.close();
+						} catch (IOException closeException) {
+							Logger.error("[AccessLog] close access log failed", closeException);
+						}
+					}
+
+					if (!running) {
+						break;
+					}
+
+					LockSupport.parkNanos(ERROR_WAIT_NANOS);
+				}
+			}
+		} finally {
+			closeFile();
+		}
+	}
+
+	private Record record(long position) {
+		return records[(int) (position & mask)];
+	}
+
+	/**
+	 * 取出所有已发布的记录并编码到批量缓冲区
+	 * @return 取出的记录数量
+	 * @throws IOException IO 异常
+	 */
+	private int drain() throws IOException {
+		int count = 0;
+		while (count < RING_SIZE) {
+			Record record = record(readPosition);
+			if (record.sequence != readPosition + 1) {
+				break;
+			}
+
+			try {
+				encode(record);
+			} finally {
+				//编码失败的记录也释放, 避免反复处理同一条记录
+				record.remoteAddress = null;
+				record.protocol = null;
+				record.version = null;
+				record.method = null;
+				record.path = null;
+				record.userAgent = null;
+				record.referer = null;
+				record.sequence = readPosition + RING_SIZE;
+
+				readPosition++;
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private void encode(Record record) throws IOException {
+		if (FORMAT_BINARY.equals(format)) {
+			encodeBinary(record);
+			return;
+		}
+
+		StringBuilder content = stringBuilder;
+		content.setLength(0);
+		if (FORMAT_JSON.equals(format)) {
+			content.append("{\"time\":\"").append(formatTime(record.time)).append('"');
+			appendJson(content, "remoteAddress", record.remoteAddress);
+			content.append(",\"remotePort\":").append(record.remotePort);
+			appendJson(content, "protocol", record.protocol + "/" + record.version);
+			appendJson(content, "method", record.method);
+			content.append(",\"status\":").append(record.status);
+			content.append(",\"bodySize\":").append(record.bodySize);
+			appendJson(content, "path", record.path);
+			appendJson(content, "userAgent", record.userAgent);
+			appendJson(content, "referer", record.referer);
+			content.append("}\n");
+		} else {
+			content.append('[').append(formatTime(record.time)).append(']');
+			content.append(' ');
+			appendPad(content, record.remoteAddress, 15);
+			content.append(' ');
+			appendPad(content, String.valueOf(record.remotePort), 5);
+			content.append(' ').append(record.protocol).append('/').append(record.version).append(' ');
+			appendPad(content, record.method, 6);
+			content.append(' ').append(record.status);
+			content.append(' ').append(record.bodySize);
+			content.append("\t ").append(record.path);
+			content.append("\t ").append(record.userAgent == null ? "" : record.userAgent);
+			content.append("\t ").append(record.referer == null ? "" : record.referer);
+			content.append("\r\n");
+		}
+
+		put(content.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void encodeBinary(Record record) throws IOException {
+		byte[][] fields = new byte[][]{
+				bytes(record.remoteAddress), bytes(record.protocol + "/" + record.version), bytes(record.method),
+				bytes(record.path), bytes(record.userAgent), bytes(record.referer)
+		};
+
+		int length = 4 + 8 + 4 + 8 + 4;
+		for (byte[] field : fields) {
+			length = length + 2 + field.length;
+		}
+
+		ensureRemaining(length);
+		buffer.putInt(length);
+		buffer.putLong(record.time);
+		buffer.putInt(record.status);
+		buffer.putLong(record.bodySize);
+		buffer.putInt(record.remotePort);
+		for (byte[] field : fields) {
+			buffer.putShort((short) field.length);
+			buffer.put(field);
+		}
+	}
+
+	/**
+	 * 转换为 UTF-8 字节, 超过 MAX_FIELD_LENGTH 字节时在字符边界截断
+	 * @param value 字符串
+	 * @return UTF-8 字节
+	 */
+	private static byte[] bytes(String value) {
+		if (value == null) {
+			return new byte[0];
+		}
+
+		if (value.length() > MAX_FIELD_LENGTH) {
+			value = value.substring(0, MAX_FIELD_LENGTH);
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length <= MAX_FIELD_LENGTH) {
+			return bytes;
+		}
+
+		int length = MAX_FIELD_LENGTH;
+		while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+			length--;
+		}
+		return Arrays.copyOf(bytes, length);
+	}
+
+	private static void appendPad(StringBuilder content, String value, int length) {
+		content.append(value);
+		for (int i = value == null ? 4 : value.length(); i < length; i++) {
+			content.append(' ');
+		}
+	}
+
+	private static void appendJson(StringBuilder content, String name, String value) {
+		content.append(",\"").append(name).append("\":");
+		if (value == null) {
+			content.append("null");
+			return;
+		}
+
+		content.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				content.append('\\').append(c);
+			} else if (c < 0x20) {
+				content.append(String.format("\\u%04x", (int) c));
+			} else {
+				content.append(c);
+			}
+		}
+		content.append('"');
+	}
+
+	private String formatTime(long time) {
+		long second = time / 1000;
+		if (second != formatedSecond) {
+			formatedTime = TDateTime.format(new Date(time), TDateTime.STANDER_DATETIME_TEMPLATE);
+			formatedSecond = second;
+		}
+		return formatedTime;
+	}
+
+	private void put(byte[] bytes) throws IOException {
+		ensureRemaining(bytes.length);
+		if (bytes.length > buffer.remaining()) {
+			writeFully(ByteBuffer.wrap(bytes));
+		} else {
+			buffer.put(bytes);
+		}
+	}
+
+	private void ensureRemaining(int length) throws IOException {
+		if (buffer.remaining() < length) {
+			flush();
+		}
+	}
+
+	/**
+	 * 写出批量缓冲区, 写出前检查是否需要切分文件
+	 * @throws IOException IO 异常
+	 */
+	private void flush() throws IOException {
+		if (buffer.position() == 0) {
+			return;
+		}
+
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+
+	private void writeFully(ByteBuffer byteBuffer) throws IOException {
+		long now = System.currentTimeMillis();
+		if ((maxFileSize > 0 && fileSize > 0 && fileSize + byteBuffer.remaining() > maxFileSize) ||
+				(rotateInterval > 0 && now >= nextRotateTime)) {
+			rotate(now);
+		}
+
+		while (byteBuffer.hasRemaining()) {
+			fileSize = fileSize + fileChannel.write(byteBuffer);
+		}
+	}
+
+	private void openFile() throws IOException {
+		TFile.mkdir(fileName);
+		fileChannel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		fileSize = fileChannel.size();
+		nextRotateTime = nextRotateTime(System.currentTimeMillis());
+	}
+
+	private void closeFile() {
+		if (fileChannel == null || !fileChannel.isOpen()) {
+			return;
+		}
+
+		try {
+			flush();
+		} catch (IOException e) {
+			Logger.error("[AccessLog] flush access log failed", e);
+		}
+
+		try {
+			fileChannel.close();
+		} catch (IOException e) {
+			Logger.error("[AccessLog] close access log failed", e);
+		}
+	}
+
+	/**
+	 * 切分日志文件, 当前文件重命名为 文件名.yyyyMMdd.HHmmss[.序号].扩展名
+	 * @param now 当前时间
+	 * @throws IOException IO 异常
+	 */
+	private void rotate(long now) throws IOException {
+		nextRotateTime = nextRotateTime(now);
+		if (fileSize == 0) {
+			return;
+		}
+
+		fileChannel.close();
+
+		String extendName = TFile.getFileExtension(fileName);
+		String innerFileName = extendName == null ? fileName : fileName.substring(0, fileName.length() - extendName.length() - 1);
+		String rotatePrefix = innerFileName + "." + TDateTime.format(new Date(now), "yyyyMMdd.HHmmss");
+		String rotateSuffix = extendName == null ? "" : "." + extendName;
+		String rotateFileName = rotatePrefix + rotateSuffix;
+		//同一秒内多次切分时增加序号
+		for (int i = 1; new File(rotateFileName).exists(); i++) {
+			rotateFileName = rotatePrefix + "." + i + rotateSuffix;
+		}
+		if (!new File(fileName).renameTo(new File(rotateFileName))) {
+			Logger.warn("[AccessLog] rename " + fileName + " to " + rotateFileName + " failed");
+		}
+
+		openFile();
+	}
+
+	private long nextRotateTime(long now) {
+		if (rotateInterval <= 0) {
+			return Long.MAX_VALUE;
+		}
+
+		long offset = TimeZone.getDefault().getOffset(now);
+		return ((now + offset) / rotateInterval + 1) * rotateInterval - offset;
+	}
+}
@@ -1,9 +1,11 @@
 package org.voovan.http.server.context;
 
+import org.voovan.http.server.HttpDispatcher;
 import org.voovan.http.server.HttpFilter;
 import org.voovan.tools.log.Logger;
 import org.voovan.tools.reflect.TReflect;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,6 +23,8 @@ public class HttpFilterConfig {
     private String className;
     private Map<String, Object> paramters = new HashMap<String, Object>();
     private HttpFilter httpFilter;
+    private String[] paths;
+    private String[] pathRegexes;
 
     /**
      * 构造函数
@@ -33,6 +37,13 @@ public class HttpFilterConfig {
                 this.name = (String) entry.getValue();
             } else if ("ClassName".equalsIgnoreCase(entry.getKey())) {
                 this.className = (String) entry.getValue();
+            } else if ("FilterPaths".equalsIgnoreCase(entry.getKey())) {
+                Object value = entry.getValue();
+                if (value instanceof Collection) {
+                    setPaths(((Collection<?>) value).stream().map(String::valueOf).toArray(String[]::new));
+                } else if (value != null) {
+                    setPaths(value.toString());
+                }
             } else {
                 paramters.put(entry.getKey(), entry.getValue());
             }
@@ -92,6 +103,68 @@ public class HttpFilterConfig {
         this.className = className;
     }
 
+    /**
+     * 获取过滤器绑定的路径
+     * @return 路径数组, 为 null 时作用于所有路径
+     */
+    public String[] getPaths() {
+        return paths;
+    }
+
+    /**
+     * 设置过滤器绑定的路径
+     *      使用路由的写法, 例如: /api/*, /user/:id, 过滤器只在匹配的路由上执行
+     *      需要在服务启动前设置, 启动后修改需要调用 HttpDispatcher.compileFilters() 重新编译过滤器
+     * @param paths 路径数组, 为 null 或空时作用于所有路径
+     */
+    public void setPaths(String ... paths) {
+        if (paths == null || paths.length == 0) {
+            this.paths = null;
+            this.pathRegexes = null;
+            return;
+        }
+
+        String[] regexes = new String[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = HttpDispatcher.fixRoutePath(paths[i]);
+            regexes[i] = HttpDispatcher.routePath2RegexPath(paths[i]);
+        }
+        this.paths = paths;
+        this.pathRegexes = regexes;
+    }
+
+    /**
+     * 过滤器是否作用于所有路径
+     * @return true: 作用于所有路径, false: 只作用于绑定的路径
+     */
+    public boolean isGlobal() {
+        return paths == null;
+    }
+
+    /**
+     * 判断过滤器是否作用于指定的路径
+     * @param path 路由路径或请求路径
+     * @param ignoreCase 是否忽略大小写
+     * @return true: 作用于该路径, false: 不作用于该路径
+     */
+    public boolean matchPath(String path, boolean ignoreCase) {
+        if (paths == null) {
+            return true;
+        }
+
+        for (int i = 0; i < paths.length; i++) {
+            if (ignoreCase ? paths[i].equalsIgnoreCase(path) : paths[i].equals(path)) {
+                return true;
+            }
+
+            if (HttpDispatcher.matchPath(path, paths[i], pathRegexes[i], ignoreCase)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * 获取过滤器的参数,在过滤器定义的时候
      *
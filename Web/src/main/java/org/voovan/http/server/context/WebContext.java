@@ -7,10 +7,8 @@ import org.voovan.http.server.HttpRequest;
 import org.voovan.http.server.HttpResponse;
 import org.voovan.http.server.WebServer;
 import org.voovan.tools.*;
-import org.voovan.tools.hashwheeltimer.HashWheelTask;
 import org.voovan.tools.json.JSONDecode;
 import org.voovan.tools.log.Logger;
-import org.voovan.tools.log.SingleLogger;
 import org.voovan.tools.reflect.TReflect;
 
 import java.io.File;
@@ -19,7 +17,6 @@ import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -53,17 +50,8 @@ public class WebContext {
 
 	private static final String SESSION_NAME = "VOOVAN_SESSIONID";
 
-	//通用 Header
-	public static byte[] RESPONSE_COMMON_HEADER = ("Date: " + TDateTime.formatToGMT(new Date()) + "\r\n" + "Server: " + FRAMEWORK_NAME + "\r\n\r\n").getBytes();
-
-	static{
-		Global.getHashWheelTimer().addTask(new HashWheelTask() {
-			@Override
-			public void run() {
-				RESPONSE_COMMON_HEADER = ("Date: " + TDateTime.formatToGMT(new Date()) + "\r\n" + "Server: " + FRAMEWORK_NAME + "\r\n\r\n").getBytes();
-			}
-		}, 1);
-	}
+	//通用 Header, Date 头由 HttpClock 提供
+	public static final byte[] RESPONSE_SERVER_HEADER = ("Server: " + FRAMEWORK_NAME + "\r\n\r\n").getBytes();
 
 	/**
 	 * Web Config
@@ -92,6 +80,8 @@ public class WebContext {
 
 	private static WebServerConfig webServerConfig = buildConfigFromMap(WEB_CONFIG);
 
+	private static volatile AccessLogWriter accessLogWriter;
+
 	private WebContext(){
 
 	}
@@ -332,15 +322,23 @@ public class WebContext {
 		Logger.simple(TString.rightPad("  CharacterSet: ",35,' ')+config.getCharacterSet());
 		Logger.simple(TString.rightPad("  SessionContainer:",35,' ')+config.getSessionContainer());
 		Logger.simple(TString.rightPad("  SessionTimeout:",35,' ')+config.getSessionTimeout());
+		Logger.simple(TString.rightPad("  SessionTouchInterval:",35,' ')+config.getSessionTouchInterval());
 		Logger.simple(TString.rightPad("  KeepAliveTimeout:",35,' ')+config.getKeepAliveTimeout());
 		Logger.simple(TString.rightPad("  MatchRouteIgnoreCase:",35,' ')+config.isMatchRouteIgnoreCase());
 		Logger.simple(TString.rightPad("  Gzip:",35,' ')+ config.isGzip());
 		Logger.simple(TString.rightPad("  GzipMinSize:",35,' ')+ config.getGzipMinSize());
 		Logger.simple(TString.rightPad("  GzipMimeType:",35,' ')+ config.getGzipMimeType());
+		Logger.simple(TString.rightPad("  GzipLevel:",35,' ')+ config.getGzipLevel());
 		Logger.simple(TString.rightPad("  AccessLog:",35,' ')+ config.isAccessLog());
+		Logger.simple(TString.rightPad("  AccessLogFormat:",35,' ')+ config.getAccessLogFormat());
 		Logger.simple(TString.rightPad("  Cache:",35,' ')+ config.isCache());
+		Logger.simple(TString.rightPad("  StaticFileCacheSize:",35,' ')+ config.getStaticFileCacheSize());
 		Logger.simple(TString.rightPad("  PauseURL:",35,' ')+ config.getPauseURL());
 		Logger.simple(TString.rightPad("  MaxRequestSize:",35,' ')+ config.getMaxRequestSize());
+		Logger.simple(TString.rightPad("  EnableHttp2:",35,' ')+ config.isEnableHttp2());
+		Logger.simple(TString.rightPad("  WebSocketDeflate:",35,' ')+ config.isWebSocketDeflate());
+		Logger.simple(TString.rightPad("  WebSocketSlowConsumerPolicy:",35,' ')+ config.getWebSocketSlowConsumerPolicy());
+		Logger.simple(TString.rightPad("  LoadShedTarget:",35,' ')+ config.getLoadShedTarget());
 
 		if(config.getHotSwapInterval()>0) {
 			Logger.simple(TString.rightPad("  HotSwapInterval:", 35, ' ') + config.getHotSwapInterval());
@@ -389,27 +387,6 @@ public class WebContext {
 		}
 	}
 
-	/**
-	 * 生成 accessLog 日志
-	 * @param request   HTTP 请求对象
-	 * @param response	HTTP 响应对象
-	 * @return 日志信息
-	 */
-	private static String genAccessLog(HttpRequest request, HttpResponse response){
-		StringBuilder content = new StringBuilder();
-		content.append("["+ TDateTime.now()+"]");
-		content.append(" "+TString.rightPad(request.getRemoteAddres(),15,' '));
-		content.append(" "+TString.rightPad(request.getRemotePort()+"",5,' '));
-		content.append(" "+request.protocol().getProtocol()+"/"+request.protocol().getVersion()+" "+TString.rightPad(request.protocol().getMethod(),6,' '));
-		content.append(" "+response.protocol().getStatus());
-		content.append(" "+response.body().size());
-		content.append("\t "+request.protocol().getPath());
-		content.append("\t "+TObject.nullDefault(request.header().get("User-Agent"),""));
-		content.append("\t "+TObject.nullDefault(request.header().get("Referer"),""));
-		content.append("\r\n");
-		return content.toString();
-	}
-
 	/**
 	 * 写入access.log
 	 * @param webServerConfig WebServer 配置对象
@@ -420,8 +397,29 @@ public class WebContext {
 		//配置文件控制是否写入 access.log
 		//监控程序的不写出 access.log
 		if(webServerConfig.isAccessLog() && !request.protocol().getPath().contains("/VoovanMonitor/")) {
-			SingleLogger.writeLog(ACCESS_LOG_FILE_NAME, genAccessLog(request, response));
+			getAccessLogWriter(webServerConfig).write(request, response);
+		}
+	}
+
+	/**
+	 * 获取 access.log 写入器, 第一次写入时按配置创建
+	 * @param webServerConfig WebServer 配置对象
+	 * @return access.log 写入器
+	 */
+	public static AccessLogWriter getAccessLogWriter(WebServerConfig webServerConfig){
+		AccessLogWriter writer = accessLogWriter;
+		if(writer == null) {
+			synchronized (WebContext.class) {
+				writer = accessLogWriter;
+				if(writer == null) {
+					writer = new AccessLogWriter(ACCESS_LOG_FILE_NAME, webServerConfig.getAccessLogFormat(),
+							webServerConfig.getAccessLogMaxFileSize() * 1024L * 1024L,
+							webServerConfig.getAccessLogRotateInterval() * 3600L * 1000L);
+					accessLogWriter = writer;
+				}
+			}
 		}
+		return writer;
 	}
 
 	/**
@@ -4,13 +4,14 @@ import org.voovan.Global;
 import org.voovan.http.server.module.annontationRouter.AnnotationModule;
 import org.voovan.tools.TObject;
 import org.voovan.tools.TString;
-import org.voovan.tools.collection.CacheMap;
+import org.voovan.tools.collection.ShardedCacheMap;
 import org.voovan.tools.collection.Chain;
 import org.voovan.tools.log.Logger;
 import org.voovan.tools.reflect.TReflect;
 import org.voovan.tools.weave.WeaveConfig;
 
 import java.lang.reflect.Field;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -36,13 +37,18 @@ public class WebServerConfig {
     private boolean MatchRouteIgnoreCase    = false;
     private String characterSet             = "UTF-8";
     private String responseCharacterSet     = "";
-    private String sessionContainer         = TReflect.getClassName(CacheMap.class);
+    private String sessionContainer         = TReflect.getClassName(ShardedCacheMap.class);
     private int sessionTimeout              = 30;
+    private int sessionTouchInterval        = 1;
     private int keepAliveTimeout            = 60;
     private boolean accessLog               = false;
+    private String accessLogFormat          = "text";
+    private int accessLogMaxFileSize        = 1024;          //1G
+    private int accessLogRotateInterval     = 24;            //24小时
     private boolean gzip                    = true;
     private int gzipMinSize                 = 2048;
     private List<String> gzipMimeType       = TObject.asList("text/html","text/xml","text/javascript","application/javascript","text/css","text/plain","text/json","application/json");
+    private Map<String, Integer> gzipLevel  = new HashMap<String, Integer>();
     private HttpsConfig https;
     private String indexFiles               = "index.htm,index.html,default.htm,default.htm";
     private int hotSwapInterval             = 0;
@@ -51,8 +57,17 @@ public class WebServerConfig {
     private WeaveConfig weaveConfig         = null;
     private int maxRequestSize              = 65536;         //64k
     private boolean cache                   = false;
+    private int staticFileCacheSize         = 32768;         //32M
+    private int staticFileCacheMaxFileSize  = 1024;          //1M
     private boolean enablePathVariables     = true;
     private boolean enableWebSocket         = true;
+    private boolean enableHttp2             = false;
+    private boolean webSocketDeflate        = false;
+    private int webSocketDeflateMinSize     = 256;
+    private String webSocketSlowConsumerPolicy = "drop";
+    private int webSocketMaxPendingBytes = 1024 * 1024;
+    private int loadShedTarget              = 0;             //0: 不启用
+    private Map<String, Integer> loadShedPriority = new HashMap<String, Integer>();
 
     private Chain<HttpFilterConfig> filterConfigs = new Chain<HttpFilterConfig>();
     private List<HttpRouterConfig> routerConfigs = new Vector<HttpRouterConfig>();
@@ -116,6 +131,10 @@ public class WebServerConfig {
         this.sessionTimeout = sessionTimeout;
     }
 
+    public void setSessionTouchInterval(int sessionTouchInterval) {
+        this.sessionTouchInterval = sessionTouchInterval;
+    }
+
     public void setKeepAliveTimeout(int keepAliveTimeout) {
         this.keepAliveTimeout = keepAliveTimeout;
     }
@@ -152,6 +171,10 @@ public class WebServerConfig {
         return sessionTimeout;
     }
 
+    public int getSessionTouchInterval() {
+        return sessionTouchInterval;
+    }
+
     public int getKeepAliveTimeout() {
         return keepAliveTimeout;
     }
@@ -176,6 +199,32 @@ public class WebServerConfig {
         return gzipMimeType;
     }
 
+    public Map<String, Integer> getGzipLevel() {
+        return gzipLevel;
+    }
+
+    public void setGzipLevel(Map<String, Integer> gzipLevel) {
+        this.gzipLevel = gzipLevel;
+    }
+
+    /**
+     * 获取 MimeType 对应的压缩级别
+     * @param mimeType MimeType
+     * @return 压缩级别, 未配置时返回 -1 (默认级别)
+     */
+    public int getGzipLevel(String mimeType) {
+        if(gzipLevel != null && mimeType != null) {
+            for (Entry<String, Integer> entry : gzipLevel.entrySet()) {
+                if (mimeType.contains(entry.getKey())) {
+                    //JSON 反序列化的数值类型不一定是 Integer
+                    Object level = entry.getValue();
+                    return ((Number) level).intValue();
+                }
+            }
+        }
+        return -1;
+    }
+
     public boolean isAccessLog() {
         return accessLog;
     }
@@ -184,6 +233,42 @@ public class WebServerConfig {
         this.accessLog = accessLog;
     }
 
+    /**
+     * 获取 access.log 的格式
+     * @return 格式: text, json, binary
+     */
+    public String getAccessLogFormat() {
+        return accessLogFormat;
+    }
+
+    public void setAccessLogFormat(String accessLogFormat) {
+        this.accessLogFormat = accessLogFormat;
+    }
+
+    /**
+     * 获取单个 access.log 文件的最大大小
+     * @return 文件大小(单位:MB), 小于等于 0 时不按大小切分
+     */
+    public int getAccessLogMaxFileSize() {
+        return accessLogMaxFileSize;
+    }
+
+    public void setAccessLogMaxFileSize(int accessLogMaxFileSize) {
+        this.accessLogMaxFileSize = accessLogMaxFileSize;
+    }
+
+    /**
+     * 获取 access.log 按时间切分的间隔
+     * @return 间隔(单位:小时), 小于等于 0 时不按时间切分
+     */
+    public int getAccessLogRotateInterval() {
+        return accessLogRotateInterval;
+    }
+
+    public void setAccessLogRotateInterval(int accessLogRotateInterval) {
+        this.accessLogRotateInterval = accessLogRotateInterval;
+    }
+
     public HttpsConfig getHttps() {
         return https;
     }
@@ -236,6 +321,22 @@ public class WebServerConfig {
         this.cache = cache;
     }
 
+    public int getStaticFileCacheSize() {
+        return staticFileCacheSize;
+    }
+
+    public void setStaticFileCacheSize(int staticFileCacheSize) {
+        this.staticFileCacheSize = staticFileCacheSize;
+    }
+
+    public int getStaticFileCacheMaxFileSize() {
+        return staticFileCacheMaxFileSize;
+    }
+
+    public void setStaticFileCacheMaxFileSize(int staticFileCacheMaxFileSize) {
+        this.staticFileCacheMaxFileSize = staticFileCacheMaxFileSize;
+    }
+
     public boolean isEnablePathVariables() {
         return enablePathVariables;
     }
@@ -252,6 +353,83 @@ public class WebServerConfig {
         this.enableWebSocket = enableWebSocket;
     }
 
+    /**
+     * 是否启用 HTTP/2 明文协议(h2c)
+     *      支持 Upgrade: h2c 升级和客户端直接发送连接前言(prior knowledge)两种方式
+     * @return true: 启用, false: 不启用
+     */
+    public boolean isEnableHttp2() {
+        return enableHttp2;
+    }
+
+    public void setEnableHttp2(boolean enableHttp2) {
+        this.enableHttp2 = enableHttp2;
+    }
+
+    /**
+     * 是否启用 WebSocket 的 permessage-deflate 压缩扩展(RFC 7692)
+     * @return true: 启用, false: 不启用
+     */
+    public boolean isWebSocketDeflate() {
+        return webSocketDeflate;
+    }
+
+    public void setWebSocketDeflate(boolean webSocketDeflate) {
+        this.webSocketDeflate = webSocketDeflate;
+    }
+
+    /**
+     * WebSocket 消息压缩的最小字节数, 小于这个值的消息不压缩
+     * @return 压缩的最小字节数
+     */
+    public int getWebSocketDeflateMinSize() {
+        return webSocketDeflateMinSize;
+    }
+
+    public void setWebSocketDeflateMinSize(int webSocketDeflateMinSize) {
+        this.webSocketDeflateMinSize = webSocketDeflateMinSize;
+    }
+
+    /**
+     * WebSocket 广播消息在接收者发送队列积压时的处理策略: drop, coalesce, disconnect
+     * @return 处理策略
+     */
+    public String getWebSocketSlowConsumerPolicy() {
+        return webSocketSlowConsumerPolicy;
+    }
+
+    public void setWebSocketSlowConsumerPolicy(String webSocketSlowConsumerPolicy) {
+        this.webSocketSlowConsumerPolicy = webSocketSlowConsumerPolicy;
+    }
+
+    /**
+     * WebSocket 每个连接未发送数据的最大字节数, 超过时按 WebSocketSlowConsumerPolicy 处理广播消息
+     * @return 最大字节数
+     */
+    public int getWebSocketMaxPendingBytes() {
+        return webSocketMaxPendingBytes;
+    }
+
+    public void setWebSocketMaxPendingBytes(int webSocketMaxPendingBytes) {
+        this.webSocketMaxPendingBytes = webSocketMaxPendingBytes;
+    }
+
+    public int getLoadShedTarget() {
+        return loadShedTarget;
+    }
+
+    public void setLoadShedTarget(int loadShedTarget) {
+        this.loadShedTarget = loadShedTarget;
+    }
+
+    public Map<String, Integer> getLoadShedPriority() {
+        return loadShedPriority;
+    }
+
+    public void setLoadShedPriority(Map<String, Integer> loadShedPriority) {
+        this.loadShedPriority = loadShedPriority;
+    }
+
     public Chain<HttpFilterConfig> getFilterConfigs() {
         return filterConfigs;
     }
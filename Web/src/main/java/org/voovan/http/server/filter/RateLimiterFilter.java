@@ -3,152 +3,153 @@ package org.voovan.http.server.filter;
 import org.voovan.http.server.HttpFilter;
 import org.voovan.http.server.HttpRequest;
 import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.HttpSession;
 import org.voovan.http.server.context.HttpFilterConfig;
-import org.voovan.tools.collection.MultiMap;
-import org.voovan.tools.bucket.Bucket;
-import org.voovan.tools.collection.CacheMap;
-import org.voovan.tools.bucket.LeakBucket;
-import org.voovan.tools.bucket.TokenBucket;
+import org.voovan.tools.bucket.GCRATable;
+import org.voovan.tools.bucket.SketchWindow;
 import org.voovan.tools.log.Logger;
 import org.voovan.tools.reflect.TReflect;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.BiFunction;
-
 
+/**
+ * 限流过滤器
+ *      限流规则在第一次请求时编译: URL 和 IP 规则按精确值, 前缀("/api/*")和通配("*")分组, 每次请求只做一次哈希查找和前缀比较.
+ *      每个规则对每个匹配到的值(URL, IP, 请求头的值, 会话属性的值)单独限流,
+ *      限流状态按 GCRA 算法保存在 GCRATable 中, 每个值只占用两个 long, 没有定时任务.
+ *      bucketType 为 TOKEN 时允许 limitSize 个请求的突发, 为 LEAK 时请求按 interval / limitSize 的间隔平滑通过.
+ *      approximate 为 true 时使用 Count-Min Sketch 的滑动窗口近似计数, 内存固定, 适用于 IP 等没有数量上限的值.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
 public class RateLimiterFilter implements HttpFilter {
 
-    private static MultiMap<String, Limiter> LIMITER_DEFINE_MAP = new MultiMap<String, Limiter>();
-
-    private static BiFunction<String, Limiter, Long> bucketRelease = (key, limiter) -> {
-        limiter.getBucket().release();
-        return -1l;
-    };
-
-    private static CacheMap<String, Limiter> URL_LIMITER_MAP = new CacheMap<String,Limiter>(10000).autoRemove(true).interval(1).destory(bucketRelease).create();
-    private static CacheMap<String, Limiter> IP_LIMITER_MAP = new CacheMap<String,Limiter>(10000).autoRemove(true).interval(1).destory(bucketRelease).create();
-    private static CacheMap<String, Limiter> HEADER_LIMITER_MAP = new CacheMap<String,Limiter>(10000).autoRemove(true).interval(1).destory(bucketRelease).create();
-    private static CacheMap<String, Limiter> SESSION_LIMITER_MAP = new CacheMap<String,Limiter>(10000).autoRemove(true).interval(1).destory(bucketRelease).create();
-
-    private AtomicBoolean isInit = new AtomicBoolean(false);
+    private GCRATable gcraTable = new GCRATable();
+
+    private volatile Rules rules;
+
+    /**
+     * 编译限流规则
+     * @param httpFilterConfig 过滤器配置对象
+     * @return 编译后的限流规则
+     */
+    private Rules getRules(HttpFilterConfig httpFilterConfig) {
+        Rules rules = this.rules;
+        if(rules == null) {
+            synchronized (this) {
+                rules = this.rules;
+                if(rules == null) {
+                    rules = new Rules();
+                    List<Map> limiterMapList = (List<Map>) httpFilterConfig.getParameter("limiter");
+                    if(limiterMapList != null) {
+                        try {
+                            for (Map limiterMap : limiterMapList) {
+                                Limiter limiter = ((Limiter) TReflect.getObjectFromMap(Limiter.class, limiterMap, true));
+                                rules.add(new Rule(rules.size, limiter));
+                            }
+                        } catch (Exception e) {
+                            Logger.error("RateLimiterFilter error: ", e);
+                        }
+                    }
+                    this.rules = rules;
+                }
+            }
+        }
+        return rules;
+    }
 
     @Override
     public Object onRequest(HttpFilterConfig httpFilterConfig, HttpRequest httpRequest, HttpResponse httpResponse, Object o) {
-        List<Map> limiterMapList = (List<Map>) httpFilterConfig.getParameter("limiter");
-
-        if(isInit.compareAndSet(false, true)) {
-            try {
-                for (Map limiterMap : limiterMapList) {
-                    Limiter limiter = ((Limiter) TReflect.getObjectFromMap(Limiter.class, limiterMap, true));
-                    LIMITER_DEFINE_MAP.putValue(limiter.type.toUpperCase(), limiter);
-                }
-            } catch (Exception e) {
-                Logger.error("TokenBucketFilter error: ", e);
-            }
+        Rules rules = getRules(httpFilterConfig);
+        if(rules.size == 0) {
+            return true;
         }
 
         //-------------------url---------------------
-        String requestPath = httpRequest.protocol().getPath();
-        Limiter urlLimiter = URL_LIMITER_MAP.get(requestPath);
-        if(urlLimiter == null) {
-            List urlLimiterList = LIMITER_DEFINE_MAP.getValues("URL");
-            if(urlLimiterList!=null) {
-                for (Limiter limiterDefine : LIMITER_DEFINE_MAP.getValues("URL")) {
-                    if (limiterDefine.getValue().equals(requestPath)) {
-                        urlLimiter = limiterDefine.newInstance();
-                        URL_LIMITER_MAP.put(urlLimiter.getValue(), urlLimiter);
-                    }
-                }
-            }
-        }
-        if(dealLimiter(urlLimiter, httpResponse)){
+        if(dealLimiter(rules.url, httpRequest.protocol().getPath(), httpResponse)) {
             return null;
         }
 
         //-------------------ip---------------------
-        String ipAddress = httpRequest.getRemoteAddres();
-        Limiter ipLimiter = IP_LIMITER_MAP.get(ipAddress);
-        if(ipLimiter == null) {
-            List ipLimiterList = LIMITER_DEFINE_MAP.getValues("IP");
-            if(ipLimiterList!=null) {
-                for (Limiter limiterDefine : LIMITER_DEFINE_MAP.getValues("IP")) {
-                    if (limiterDefine.getValue().equals(ipAddress)) {
-                        ipLimiter = limiterDefine.newInstance();
-                        IP_LIMITER_MAP.put(ipLimiter.getValue(), ipLimiter);
-                    }
-                }
+        if(!rules.ip.isEmpty()) {
+            String ipAddress = httpRequest.getRemoteAddres();
+            if(ipAddress != null && dealLimiter(rules.ip, ipAddress, httpResponse)) {
+                return null;
             }
         }
-        if(dealLimiter(ipLimiter, httpResponse)){
-            return null;
-        }
 
         //-------------------header---------------------
-
-        Limiter headerLimiter = null;
-        List headerLimiterList = LIMITER_DEFINE_MAP.getValues("HEADER");
-        if(headerLimiterList!=null) {
-            for (Limiter limiterDefine : LIMITER_DEFINE_MAP.getValues("HEADER")) {
-                String headerValue = httpRequest.header().get(limiterDefine.getValue());
-
-                if(headerValue == null){
-                    continue;
-                }
-
-                headerLimiter = HEADER_LIMITER_MAP.get(headerValue);
-                if (headerLimiter != null) {
-                    if(dealLimiter(headerLimiter, httpResponse)){
-                        return null;
-                    }
-                } else {
-                    headerLimiter = limiterDefine.newInstance();
-                    HEADER_LIMITER_MAP.put(headerValue, headerLimiter);
-                }
+        for(Rule rule : rules.header) {
+            String headerValue = httpRequest.header().get(rule.value);
+            if(headerValue != null && dealLimiter(rule, headerValue, httpResponse)) {
+                return null;
             }
         }
 
-
-
         //-------------------session---------------------
+        //只查找已经存在的 Session, 不为没有 Session 或 Session 已经失效的请求创建新的 Session
+        HttpSession session = rules.session.length > 0 ? httpRequest.getSession(false) : null;
+        if(session != null) {
+            for(Rule rule : rules.session) {
+                Object sessionValue = session.getAttribute(rule.value);
+                if(sessionValue != null && dealLimiter(rule, sessionValue.toString(), httpResponse)) {
+                    return null;
+                }
+            }
+        }
 
-        Limiter sessionLimiter = null;
-        List sessionLimiterList = LIMITER_DEFINE_MAP.getValues("SESSION");
-        if(sessionLimiterList!=null) {
-            for (Limiter limiterDefine : LIMITER_DEFINE_MAP.getValues("SESSION")) {
-                String sessionValue = httpRequest.getSession().getAttribute(limiterDefine.getValue()).toString();
+        return true;
+    }
 
-                if(sessionValue == null){
-                    continue;
+    private boolean dealLimiter(Matcher matcher, String value, HttpResponse httpResponse) {
+        Rule[] exactRules = matcher.exact.get(value);
+        if(exactRules != null) {
+            for(Rule rule : exactRules) {
+                if(dealLimiter(rule, value, httpResponse)) {
+                    return true;
                 }
+            }
+        }
 
-                sessionLimiter = SESSION_LIMITER_MAP.get(sessionValue);
-                if(sessionLimiter!=null) {
-                    if(dealLimiter(sessionLimiter, httpResponse)){
-                        return null;
-                    }
-                } else {
-                    sessionLimiter = limiterDefine.newInstance();
-                    SESSION_LIMITER_MAP.put(sessionValue, sessionLimiter);
-                }
+        for(Rule rule : matcher.prefix) {
+            if(value.startsWith(rule.prefix) && dealLimiter(rule, value, httpResponse)) {
+                return true;
             }
         }
 
+        for(Rule rule : matcher.any) {
+            if(dealLimiter(rule, value, httpResponse)) {
+                return true;
+            }
+        }
 
-        return true;
+        return false;
     }
 
-    public boolean dealLimiter(Limiter limiter, HttpResponse httpResponse){
-        if (limiter != null) {
-            if (limiter.getBucket().acquire()) {
-                return false;
-            } else {
-                httpResponse.write(limiter.getResponse());
-                return true;
-            }
-        } else {
+    /**
+     * 按规则限流
+     * @param rule 限流规则
+     * @param value 限流的值
+     * @param httpResponse 响应对象
+     * @return true: 被限流, false: 允许通过
+     */
+    public boolean dealLimiter(Rule rule, String value, HttpResponse httpResponse){
+        long hash = GCRATable.hash(rule.index, value);
+        boolean acquired = rule.sketchWindow != null ?
+                rule.sketchWindow.acquire(hash, rule.limitSize) :
+                gcraTable.acquire(hash, rule.emissionInterval, rule.tolerance);
+
+        if (acquired) {
             return false;
+        } else {
+            httpResponse.write(rule.response);
+            return true;
         }
     }
 
@@ -157,6 +158,100 @@ public class RateLimiterFilter implements HttpFilter {
         return true;
     }
 
+    /**
+     * 编译后的限流规则
+     */
+    private static class Rules {
+        private int size = 0;
+        private Matcher url = new Matcher();
+        private Matcher ip = new Matcher();
+        private Rule[] header = new Rule[0];
+        private Rule[] session = new Rule[0];
+
+        private void add(Rule rule) {
+            String type = rule.type.toUpperCase();
+            if("URL".equals(type)) {
+                url.add(rule);
+            } else if("IP".equals(type)) {
+                ip.add(rule);
+            } else if("HEADER".equals(type)) {
+                header = append(header, rule);
+            } else if("SESSION".equals(type)) {
+                session = append(session, rule);
+            } else {
+                Logger.warnf("RateLimiterFilter unknown limiter type: {}", rule.type);
+                return;
+            }
+            size++;
+        }
+    }
+
+    /**
+     * URL 和 IP 规则的匹配器
+     *      值以 "*" 结尾时按前缀匹配, 值为 "*" 时匹配所有, 其他按精确值匹配
+     */
+    private static class Matcher {
+        private Map<String, Rule[]> exact = new HashMap<String, Rule[]>();
+        private Rule[] prefix = new Rule[0];
+        private Rule[] any = new Rule[0];
+
+        private void add(Rule rule) {
+            if("*".equals(rule.value)) {
+                any = append(any, rule);
+            } else if(rule.prefix != null) {
+                prefix = append(prefix, rule);
+            } else {
+                exact.put(rule.value, append(exact.getOrDefault(rule.value, new Rule[0]), rule));
+            }
+        }
+
+        private boolean isEmpty() {
+            return exact.isEmpty() && prefix.length == 0 && any.length == 0;
+        }
+    }
+
+    private static Rule[] append(Rule[] rules, Rule rule) {
+        List<Rule> ruleList = new ArrayList<Rule>(rules.length + 1);
+        for(Rule item : rules) {
+            ruleList.add(item);
+        }
+        ruleList.add(rule);
+        return ruleList.toArray(new Rule[0]);
+    }
+
+    /**
+     * 编译后的单个限流规则
+     */
+    public static class Rule {
+        private int index;
+        private String type;
+        private String value;
+        private String prefix;
+        private String response;
+        private int limitSize;
+        private long emissionInterval;
+        private long tolerance;
+        private SketchWindow sketchWindow;
+
+        private Rule(int index, Limiter limiter) {
+            this.index = index;
+            this.type = limiter.getType();
+            this.value = limiter.getValue();
+            this.prefix = value != null && value.length() > 1 && value.endsWith("*") ? value.substring(0, value.length() - 1) : null;
+            this.response = limiter.getResponse();
+            this.limitSize = Math.max(1, limiter.getLimitSize());
+
+            long intervalNanos = Math.max(1, limiter.getInterval()) * 1000000L;
+            this.emissionInterval = Math.max(1, intervalNanos / limitSize);
+            //令牌桶允许 limitSize 个请求的突发, 漏桶不允许突发
+            this.tolerance = "LEAK".equalsIgnoreCase(limiter.getBucketType()) ? 0 : emissionInterval * (limitSize - 1);
+
+            if(limiter.isApproximate()) {
+                this.sketchWindow = new SketchWindow(Math.max(1, limiter.getInterval()));
+            }
+        }
+    }
+
     public class Limiter {
         private String value;
         private String type;
@@ -164,22 +259,12 @@ public class RateLimiterFilter implements HttpFilter {
         private int limitSize;
         private int interval;
         private String bucketType;
-
-        private Bucket bucket;
+        private boolean approximate;
 
         private Limiter() {
 
         }
 
-        public Limiter init(){
-            if ("LEAK".equalsIgnoreCase(bucketType)){
-                bucket = new LeakBucket(limitSize, interval);
-            } else {
-                bucket = new TokenBucket(limitSize, interval);
-            }
-            return this;
-        }
-
         public String getValue() {
             return value;
         }
@@ -220,14 +305,6 @@ public class RateLimiterFilter implements HttpFilter {
             this.interval = interval;
         }
 
-        public Bucket getBucket() {
-            return bucket;
-        }
-
-        public void setBucket(Bucket bucket) {
-            this.bucket = bucket;
-        }
-
         public String getBucketType() {
             return bucketType;
         }
@@ -236,16 +313,12 @@ public class RateLimiterFilter implements HttpFilter {
             this.bucketType = bucketType;
         }
 
-        public Limiter newInstance(){
-            Limiter limiter = new Limiter();
-            limiter.setLimitSize(this.getLimitSize());
-            limiter.setInterval(this.interval);
-            limiter.setResponse(this.response);
-            limiter.setType(this.type);
-            limiter.setValue(this.value);
-            limiter.setBucketType(bucketType);
+        public boolean isApproximate() {
+            return approximate;
+        }
 
-            return limiter.init();
+        public void setApproximate(boolean approximate) {
+            this.approximate = approximate;
         }
     }
 
@@ -0,0 +1,466 @@
+package org.voovan.http.server.filter;
+
+import org.voovan.http.message.HttpStatic;
+import org.voovan.http.message.Response;
+import org.voovan.http.server.DeferredRoute;
+import org.voovan.http.server.HttpFilter;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.PreparedResponse;
+import org.voovan.http.server.context.HttpFilterConfig;
+import org.voovan.http.server.context.WebContext;
+import org.voovan.http.server.context.WebServerConfig;
+import org.voovan.network.IoSession;
+import org.voovan.tools.TZip;
+import org.voovan.tools.collection.CacheMap;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.hashwheeltimer.HashWheelTimer;
+import org.voovan.tools.log.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 响应缓存过滤器
+ *      缓存 GET 请求的完整响应, 以预编码的报文保存在内存中, 命中时不再执行路由.
+ *      同一个 key 同时未命中时只有第一个请求执行路由, 其他请求不占用 IO 线程, 挂起等待第一个请求的响应,
+ *      第一个请求的响应不可缓存或超时未完成时, 挂起的请求各自执行路由.
+ *      使用 Session、携带 Authorization 或条件请求头的请求不经过缓存.
+ * 过滤器参数
+ *      maxSize: 最大缓存数量, 默认: 1000
+ *      maxBodySize: 可以缓存的最大 body 字节数, 默认: 1048576
+ *      ttl: 响应没有 Cache-Control 时的缓存时间(秒), 默认: 0 不缓存
+ *      maxTtl: 最大缓存时间(秒), 默认: 3600
+ *      paths: 缓存的路径前缀列表, 默认: 所有路径
+ *      vary: 作为缓存 key 的请求头列表, 默认: 无
+ *      gzip: 对接受 gzip 的请求单独缓存压缩后的响应, 默认: false
+ *      lockTimeout: 等待同一个 key 的响应的最长时间(毫秒), 超时后挂起的请求各自执行路由, 默认: 1000
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ResponseCacheFilter implements HttpFilter {
+    private static final String CACHE_KEY_ATTRIBUTE = "ResponseCacheFilter.Key";
+    private static final String CACHE_LOADER_ATTRIBUTE = "ResponseCacheFilter.Loader";
+    //检查加载超时的时间轮步长, 单位: 毫秒
+    private static final int TIMEOUT_TICK = 100;
+
+    private static volatile HashWheelTimer TIMEOUT_WHEEL_TIMER;
+
+    private static HashWheelTimer getTimeoutWheelTimer() {
+        if(TIMEOUT_WHEEL_TIMER == null) {
+            synchronized (ResponseCacheFilter.class) {
+                if(TIMEOUT_WHEEL_TIMER == null) {
+                    TIMEOUT_WHEEL_TIMER = new HashWheelTimer("ResponseCache", 10, TIMEOUT_TICK);
+                    TIMEOUT_WHEEL_TIMER.rotate();
+                }
+            }
+        }
+
+        return TIMEOUT_WHEEL_TIMER;
+    }
+
+    private int maxBodySize = 1024 * 1024;
+    private long ttl = 0;
+    private long maxTtl = 3600;
+    private List<String> paths;
+    private List<String> vary = new ArrayList<String>();
+    private boolean gzip = false;
+    private long lockTimeout = 1000;
+
+    private volatile CacheMap<String, CacheEntry> cacheMap;
+    private ConcurrentHashMap<String, Loader> loaders = new ConcurrentHashMap<String, Loader>();
+
+    private void init(HttpFilterConfig filterConfig) {
+        if(cacheMap != null) {
+            return;
+        }
+
+        synchronized (this) {
+            if(cacheMap != null) {
+                return;
+            }
+
+            int maxSize = 1000;
+            try {
+                maxSize = getInt(filterConfig, "maxSize", maxSize);
+                maxBodySize = getInt(filterConfig, "maxBodySize", maxBodySize);
+                ttl = getInt(filterConfig, "ttl", (int) ttl);
+                maxTtl = getInt(filterConfig, "maxTtl", (int) maxTtl);
+                lockTimeout = getInt(filterConfig, "lockTimeout", (int) lockTimeout);
+                paths = (List<String>) filterConfig.getParameter("paths");
+                if (filterConfig.getParameter("vary") != null) {
+                    vary = (List<String>) filterConfig.getParameter("vary");
+                }
+                gzip = Boolean.TRUE.equals(filterConfig.getParameter("gzip"));
+            } catch (Exception e) {
+                Logger.error("ResponseCacheFilter init error: ", e);
+            }
+
+            cacheMap = new CacheMap<String, CacheEntry>(maxSize).autoRemove(true).interval(1).create();
+
+            //超时未完成的加载不再保留, 挂起的请求各自执行路由
+            getTimeoutWheelTimer().addTask(new HashWheelTask() {
+                @Override
+                public void run() {
+                    expireLoaders();
+                }
+            }, 1);
+        }
+    }
+
+    private static int getInt(HttpFilterConfig filterConfig, String name, int defaultValue) {
+        Object value = filterConfig.getParameter(name);
+        return value == null ? defaultValue : ((Number) value).intValue();
+    }
+
+    @Override
+    public Object onRequest(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult) {
+        init(filterConfig);
+
+        if(!isCacheable(request)) {
+            return true;
+        }
+
+        String key = cacheKey(request);
+
+        CacheEntry cacheEntry = getEntry(key);
+        if(cacheEntry == null) {
+            Loader loader = new Loader();
+            Loader currentLoader = loaders.putIfAbsent(key, loader);
+
+            //超时未完成的加载不再保留, 由当前请求重新加载
+            if(currentLoader != null && currentLoader.isTimeout(lockTimeout)) {
+                if(loaders.replace(key, currentLoader, loader)) {
+                    currentLoader.complete(null);
+                    currentLoader = null;
+                } else {
+                    currentLoader = loaders.putIfAbsent(key, loader);
+                }
+            }
+
+            if(currentLoader == null) {
+                request.setAttributes(CACHE_KEY_ATTRIBUTE, key);
+                request.setAttributes(CACHE_LOADER_ATTRIBUTE, loader);
+                return true;
+            }
+
+            //同一个 key 正在加载时挂起等待加载的结果, 阻塞等待会使同一个 IO 线程上的其他连接停顿
+            return currentLoader;
+        }
+
+        response.setPreparedResponse(cacheEntry.getResponse());
+        return null;
+    }
+
+    @Override
+    public Object onResponse(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult) {
+        Loader loader = (Loader) request.getAttributes(CACHE_LOADER_ATTRIBUTE);
+        if(loader == null) {
+            return true;
+        }
+
+        String key = (String) request.getAttributes(CACHE_KEY_ATTRIBUTE);
+        PreparedResponse preparedResponse = null;
+        try {
+            long maxAge = getMaxAge(request, response);
+            if (maxAge > 0) {
+                preparedResponse = prepare(request, response, key);
+                CacheEntry cacheEntry = new CacheEntry(preparedResponse, System.currentTimeMillis() + maxAge * 1000);
+
+                cacheMap.remove(key);
+                cacheMap.put(key, cacheEntry, maxAge);
+            }
+        } catch (Exception e) {
+            preparedResponse = null;
+            Logger.error("ResponseCacheFilter cache response error: ", e);
+        } finally {
+            loaders.remove(key, loader);
+            loader.complete(preparedResponse);
+        }
+
+        return true;
+    }
+
+    /**
+     * 结束超时未完成的加载, 挂起的请求各自执行路由
+     */
+    private void expireLoaders() {
+        for(Map.Entry<String, Loader> entry : loaders.entrySet()) {
+            Loader loader = entry.getValue();
+            if(loader.isTimeout(lockTimeout) && loaders.remove(entry.getKey(), loader)) {
+                loader.complete(null);
+            }
+        }
+    }
+
+    private CacheEntry getEntry(String key) {
+        CacheEntry cacheEntry = cacheMap.get(key);
+        if(cacheEntry != null && cacheEntry.isExpire()) {
+            cacheMap.remove(key);
+            return null;
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * 判断请求是否可以使用缓存
+     * @param request 请求对象
+     * @return true: 可以使用缓存, false: 不能使用缓存
+     */
+    private boolean isCacheable(HttpRequest request) {
+        if(!HttpStatic.GET_STRING.equals(request.protocol().getMethod())) {
+            return false;
+        }
+
+        if(paths != null) {
+            boolean matched = false;
+            String path = request.protocol().getPath();
+            for (String prefix : paths) {
+                if (path.startsWith(prefix)) {
+                    matched = true;
+                    break;
+                }
+            }
+
+            if(!matched) {
+                return false;
+            }
+        }
+
+        if(request.header().contain(HttpStatic.AUTHORIZATION_STRING) ||
+                request.header().contain(HttpStatic.RANGE_STRING) ||
+                request.header().contain(HttpStatic.IF_NONE_MATCH_STRING) ||
+                request.header().contain(HttpStatic.IF_MODIFIED_SINCE_STRING)) {
+            return false;
+        }
+
+        String cacheControl = request.header().get(HttpStatic.CACHE_CONTROL_STRING);
+        if(cacheControl != null && (cacheControl.contains("no-cache") || cacheControl.contains("no-store"))) {
+            return false;
+        }
+
+        String pragma = request.header().get(HttpStatic.PRAGMA_STRING);
+        if(pragma != null && pragma.contains("no-cache")) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 生成缓存的 key: 方法、Host、路径、查询字符串以及 vary 中定义的请求头
+     * @param request 请求对象
+     * @return 缓存的 key
+     */
+    private String cacheKey(HttpRequest request) {
+        StringBuilder key = new StringBuilder(64);
+        key.append(request.protocol().getMethod()).append(' ')
+                .append(request.header().get(HttpStatic.HOST_STRING))
+                .append(request.protocol().getPath());
+
+        String queryString = request.protocol().getQueryString();
+        if(queryString != null && !queryString.isEmpty()) {
+            key.append('?').append(queryString);
+        }
+
+        for(String headerName : vary) {
+            key.append('\n').append(headerName).append(':').append(request.header().get(headerName));
+        }
+
+        if(gzip && acceptGzip(request)) {
+            key.append('\n').append(HttpStatic.GZIP_STRING);
+        }
+
+        return key.toString();
+    }
+
+    private static boolean acceptGzip(HttpRequest request) {
+        String acceptEncoding = request.header().get(HttpStatic.ACCEPT_ENCODING_STRING);
+        return acceptEncoding != null && acceptEncoding.contains(HttpStatic.GZIP_STRING);
+    }
+
+    /**
+     * 获取响应可以缓存的时间
+     * @param request 请求对象
+     * @param response 响应对象
+     * @return 缓存时间(秒), 小于等于 0 时不缓存
+     */
+    private long getMaxAge(HttpRequest request, HttpResponse response) {
+        if(response.protocol().getStatus() != 200 || response.isAsync() ||
+                !response.cookies().isEmpty() || request.sessionExists() ||
+                response.body().size() > maxBodySize) {
+            return 0;
+        }
+
+        //响应依赖的请求头必须包含在缓存的 key 中
+        String responseVary = response.header().get(HttpStatic.VARY_STRING);
+        if(responseVary != null) {
+            for(String headerName : responseVary.split(",")) {
+                headerName = headerName.trim();
+                if(headerName.equals("*")) {
+                    return 0;
+                }
+
+                if(!headerName.isEmpty() && !headerName.equalsIgnoreCase(HttpStatic.ACCEPT_ENCODING_STRING) && !containsIgnoreCase(vary, headerName)) {
+                    return 0;
+                }
+            }
+        }
+
+        long maxAge = ttl;
+        String cacheControl = response.header().get(HttpStatic.CACHE_CONTROL_STRING);
+        if(cacheControl != null) {
+            long sharedMaxAge = -1;
+            for (String directive : cacheControl.toLowerCase().split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")) {
+                    return 0;
+                } else if (directive.startsWith("s-maxage=")) {
+                    sharedMaxAge = parseSeconds(directive.substring(9));
+                } else if (directive.startsWith("max-age=")) {
+                    maxAge = parseSeconds(directive.substring(8));
+                }
+            }
+
+            if(sharedMaxAge >= 0) {
+                maxAge = sharedMaxAge;
+            }
+        }
+
+        return Math.min(maxAge, maxTtl);
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean containsIgnoreCase(List<String> list, String value) {
+        for(String item : list) {
+            if(item.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将响应编码为预编码的响应, key 需要 gzip 时压缩 body
+     * @param request 请求对象
+     * @param response 响应对象
+     * @param key 缓存的 key
+     * @return 预编码的响应
+     * @throws IOException IO 异常
+     */
+    private PreparedResponse prepare(HttpRequest request, HttpResponse response, String key) throws IOException {
+        if(!key.endsWith("\n" + HttpStatic.GZIP_STRING) || response.header().contain(HttpStatic.CONTENT_ENCODING_STRING) ||
+                !isGzipMimeType(response.header().get(HttpStatic.CONTENT_TYPE_STRING))) {
+            return HttpResponse.prepare(response);
+        }
+
+        Response gzipResponse = new Response();
+        try {
+            gzipResponse.protocol().setStatus(response.protocol().getStatus());
+            gzipResponse.protocol().setStatusCode(response.protocol().getStatusCode());
+            gzipResponse.header().copyFrom(response.header());
+            gzipResponse.header().put(HttpStatic.CONTENT_ENCODING_STRING, HttpStatic.GZIP_STRING);
+            gzipResponse.body().write(TZip.encodeGZip(response.body().getBodyBytes()));
+            return HttpResponse.prepare(gzipResponse);
+        } finally {
+            gzipResponse.release();
+        }
+    }
+
+    private static boolean isGzipMimeType(String contentType) {
+        WebServerConfig webConfig = WebContext.getWebServerConfig();
+        if(contentType == null) {
+            contentType = HttpStatic.TEXT_HTML_STRING;
+        }
+
+        for(String gzipMimeType : webConfig.getGzipMimeType()) {
+            if(contentType.contains(gzipMimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        if(cacheMap != null) {
+            cacheMap.clear();
+        }
+    }
+
+    /**
+     * 缓存的响应
+     */
+    private static class CacheEntry {
+        private PreparedResponse response;
+        private long expireTime;
+
+        public CacheEntry(PreparedResponse response, long expireTime) {
+            this.response = response;
+            this.expireTime = expireTime;
+        }
+
+        public PreparedResponse getResponse() {
+            return response;
+        }
+
+        public boolean isExpire() {
+            return System.currentTimeMillis() >= expireTime;
+        }
+    }
+
+    /**
+     * 正在执行路由并写入缓存的请求, 同一个 key 同时只有一个
+     *      同一个 key 的其他请求挂起在这里, 加载完成时使用缓存的响应, 没有可用的响应时各自执行路由
+     */
+    private static class Loader implements DeferredRoute {
+        private long createTime = System.currentTimeMillis();
+        private CompletableFuture<PreparedResponse> future = new CompletableFuture<PreparedResponse>();
+
+        public boolean isTimeout(long timeout) {
+            return System.currentTimeMillis() - createTime > timeout;
+        }
+
+        /**
+         * 加载完成
+         * @param preparedResponse 缓存的响应, 为 null 时挂起的请求各自执行路由
+         */
+        public void complete(PreparedResponse preparedResponse) {
+            future.complete(preparedResponse);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> await(HttpRequest request, HttpResponse response) {
+            //在请求所在连接的 IO 线程中恢复挂起的请求, 不占用完成加载的线程
+            IoSession socketSession = request.getSocketSession();
+            Executor executor = socketSession == null ? Runnable::run : runnable -> socketSession.getSocketSelector().addEvent(5, runnable);
+
+            return future.thenApplyAsync(preparedResponse -> {
+                if(preparedResponse == null) {
+                    return true;
+                }
+
+                response.setPreparedResponse(preparedResponse);
+                return false;
+            }, executor);
+        }
+    }
+}
@@ -9,7 +9,6 @@ import org.voovan.http.server.module.annontationRouter.annotation.*;
 import org.voovan.http.websocket.WebSocketRouter;
 import org.voovan.tools.TEnv;
 import org.voovan.tools.TFile;
-import org.voovan.tools.TObject;
 import org.voovan.tools.TString;
 import org.voovan.tools.json.JSON;
 import org.voovan.tools.log.Logger;
@@ -44,6 +43,8 @@ public class AnnotationRouter implements HttpRouter {
     private Router classRouter;
     private Router methodRoute;
     private AnnotationModule annotationModule;
+    private RouterMethodBinder routerMethodBinder;
+    private String contentType;
 
     /**
      * 构造函数
@@ -65,6 +66,8 @@ public class AnnotationRouter implements HttpRouter {
         this.urlPath = urlPath;
         this.paramPath = paramPath;
         this.path = urlPath + paramPath;
+        this.routerMethodBinder = RouterMethodBinder.get(method);
+        this.contentType = HttpContentType.getHttpContentType(methodRoute.contentType());
 
         annotationModule.METHOD_URL_MAP.put(method, urlPath);
         annotationModule.URL_METHOD_MAP.put(urlPath, method);
@@ -343,268 +346,9 @@ public class AnnotationRouter implements HttpRouter {
             annotationObj = clazz.newInstance();
         }
 
-        Class[] parameterTypes = method.getParameterTypes();
-        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-
-        String bodyString = "";
-        Map bodyMap = null;
-        if(request.body().size() > 0) {
-            bodyString = request.body().getBodyString();
-            if(JSON.isJSONMap(bodyString)) {
-                bodyMap = (Map) JSON.parse(bodyString);
-            }
-        }
-
-        //准备参数
-        Object[] params = new Object[parameterTypes.length];
-        for(int i=0; i < parameterAnnotations.length; i++){
-
-            //请求对象
-            if(parameterTypes[i] == HttpRequest.class){
-                params[i] = request;
-                continue;
-            }
-
-            //响应对象
-            if(parameterTypes[i] == HttpResponse.class){
-                params[i] = response;
-                continue;
-            }
-
-            //会话对象
-            if(parameterTypes[i] == HttpSession.class){
-                params[i] = request.getSession();
-                continue;
-            }
-
-            for(Annotation annotation : parameterAnnotations[i]) {
-
-                //请求的参数
-                if (annotation instanceof Param) {
-                    String paramName = ((Param) annotation).value();
-                    try {
-                        Object param = request.getParameter(paramName);
-                        if (param == null) {
-                            String defaultVal = ((Param) annotation).defaultVal();
-                            if("".equals(defaultVal)) {
-                                if(((Param) annotation).isRequire()) {
-                                    throw new AnnotationRouterException("Router annotation @Param [" + paramName + " = null] error, data: " + request.getParameters());
-                                }
-                                continue;
-                            } else {
-                                param = defaultVal;
-                            }
-                        }
-
-                        params[i] = TString.toObject(param.toString(), parameterTypes[i], true);
-                        continue;
-                    } catch (AnnotationRouterException e) {
-                      throw e;
-                    } catch (Exception e) {
-                        throw new AnnotationRouterException("Router annotation error, when feed @Param [" + paramName + "] data: " + request.getParameters(), e);
-                    }
-                }
-
-                //请求的参数
-                if (annotation instanceof BodyParam) {
-                    String paramName = ((BodyParam) annotation).value();
-                    try {
-                        if(bodyMap != null && bodyMap instanceof Map) {
-                            Object bodyParam = bodyMap.get(paramName);
-                            if(bodyParam == null) {
-                                String defaultVal = ((BodyParam) annotation).defaultVal();
-                                if("".equals(defaultVal)) {
-                                    if(((BodyParam) annotation).isRequire()) {
-                                        throw new AnnotationRouterException("Router annotation @BodyParam [" + paramName + " = null] error, data: " + bodyMap);
-                                    }
-                                    continue;
-                                } else {
-                                    bodyParam = defaultVal;
-                                }
-                            }
-
-                            if(TReflect.isBasicType(bodyParam.getClass())) {
-                                params[i] = TString.toObject(bodyParam.toString(), parameterTypes[i], true);
-                            } else if(bodyParam instanceof Map){
-                                params[i] = TReflect.getObjectFromMap(parameterTypes[i], (Map)bodyParam, true);
-                            } else {
-                                params[i] = bodyParam;
-                            }
-                        }
-                        continue;
-                    } catch (AnnotationRouterException e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new AnnotationRouterException("Router annotation error, when feed @BodyParam [" + paramName + "] , data: " + bodyMap, e);
-                    }
-                }
-
-                //请求的 Body
-                if (annotation instanceof Body) {
-                    try {
-                        if("".equals(bodyString)) {
-                            String defaultVal = ((Body) annotation).defaultVal();
-                            if("".equals(defaultVal)) {
-                                if(((Body) annotation).isRequire()) {
-//                                    throw new AnnotationRouterException("Router annotation @Body = null] error, data: " + bodyString);
-                                    params[i] = TObject.asMap();
-                                }
-                                continue;
-                            } else {
-                                bodyMap = (Map) JSON.parse(defaultVal);
-                            }
-                        }
-
-                        params[i] =  bodyMap == null ?
-                                TString.toObject(bodyString, parameterTypes[i], true) :
-                                TReflect.getObjectFromMap(parameterTypes[i], bodyMap, true);
-                        continue;
-                    }
-//                    catch (AnnotationRouterException e) {
-//                        throw e;
-//                    }
-                    catch (Exception e) {
-                        if(((Body) annotation).isRequire()) {
-                            throw new AnnotationRouterException("Router annotation @Body error.\r\n data: " + bodyString, e);
-                        }
-                    }
-                }
-
-                //请求的头
-                if (annotation instanceof Header) {
-                    String headName = ((Header) annotation).value();
-                    try {
-                        Object headParam = request.header().get(headName);
-                        if (headParam == null) {
-                            String defaultVal = ((Header) annotation).defaultVal();
-                            if("".equals(defaultVal)) {
-                                if(((Header) annotation).isRequire()) {
-                                    throw new AnnotationRouterException("Router annotation @Header [" + headName + " = null] error, data: " + request.header());
-                                }
-                                continue;
-                            } else {
-                                headParam = defaultVal;
-                            }
-                        }
-
-                        params[i] = TString.toObject(headParam.toString(), parameterTypes[i], true);
-                        continue;
-                    } catch (AnnotationRouterException e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new AnnotationRouterException("Router annotation error, when feed @Header [" + headName + "] , data: " + request.header(), e);
-                    }
-                }
-
-                //请求的 Cookie
-                if (annotation instanceof Cookie) {
-                    String cookieParam = null;
-                    String cookieName = ((Cookie) annotation).value();
-                    try {
-                        org.voovan.http.message.packet.Cookie cookie = request.getCookie(cookieName);
-                        if (cookie != null) {
-                            cookieParam = cookie.getValue();
-                        }
-
-                        if (cookieParam == null) {
-                            String defaultVal = ((Cookie) annotation).defaultVal();
-                            if("".equals(defaultVal)) {
-                                if(((Cookie) annotation).isRequire()) {
-                                    throw new AnnotationRouterException("Router annotation @Cookie [" + cookieName + " = null] error, data: " + request.cookies());
-                                }
-                                continue;
-                            } else {
-                                cookieParam = defaultVal;
-                            }
-                        }
-
-                        params[i] = TString.toObject(cookieParam.toString(), parameterTypes[i], true);
-                        continue;
-                    } catch (AnnotationRouterException e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new AnnotationRouterException("Router annotation error, when feed @Cookie [" + cookieParam + "] , data: " + request.cookies(), e);
-                    }
-                }
-
-                //请求的头
-                if (annotation instanceof Attribute) {
-                    String attrName = ((Attribute) annotation).value();
-                    try {
-                        Object attrParam = request.getAttributes().get(attrName);
-                        if(attrParam == null) {
-                            String defaultVal = ((Attribute) annotation).defaultVal();
-                            if("".equals(defaultVal)) {
-                                if (((Attribute) annotation).isRequire()) {
-                                    throw new AnnotationRouterException("Router annotation @Attribute [" + attrParam + " = null] error, data: " + request.getAttributes());
-                                }
-                                continue;
-                            } else {
-                                attrParam = defaultVal;
-                            }
-                        }
-
-                        params[i] = TString.toObject(attrParam.toString(), parameterTypes[i], true);
-                        continue;
-                    } catch (AnnotationRouterException e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new AnnotationRouterException("Router annotation error, when feed @Attribute [" + attrName + "] , data: " + request.getAttributes(), e);
-                    }
-                }
-
-                //请求的头
-                if (annotation instanceof Session) {
-                    String sessionName = ((Session) annotation).value();
-                    HttpSession httpSession = request.getSession();
-
-                    try {
-                        Object sessionParam = httpSession.getAttribute(sessionName);
-                        if(sessionParam == null) {
-                            String defaultVal = ((Session) annotation).defaultVal();
-                            if("".equals(defaultVal)) {
-                                if (((Session) annotation).isRequire()) {
-                                    throw new AnnotationRouterException("Router annotation @Session [" + sessionParam + " = null] error, data: " + httpSession.attributes());
-                                }
-                                continue;
-                            } else {
-                                sessionParam = TString.toObject(defaultVal, parameterTypes[i]);
-                            }
-                        }
-
-                        if (sessionParam == parameterTypes[i]) {
-                            params[i] = httpSession.getAttribute(sessionName);
-                        }
-                        continue;
-                    } catch (AnnotationRouterException e) {
-                        throw e;
-                    } catch (Exception e) {
-                        throw new AnnotationRouterException("Router annotation error, when feed @Session [" + sessionName + "] , data: " + httpSession.attributes(), e);
-                    }
-                }
-
-            }
-
-            //没有注解的参数,按顺序处理
-            if(params[i]==null) {
-                try {
-                    String value = request.getParameter("param" + String.valueOf(i + 1));
-                    params[i] = TString.toObject(value, parameterTypes[i], true);
-                    continue;
-                } catch (Exception e) {
-                    throw new AnnotationRouterException("Router sequential injection param " + request.getParameters().toString() + " error", e);
-                }
-            }
-
-        }
-
-        try {
-            //调用方法
-            return TReflect.invokeMethod(annotationObj, method, params);
-        } catch (IllegalArgumentException e) {
-            throw new AnnotationRouterException("Router method [" + method + "] has some null parameter, " +
-                    "if you want accpect null parameter, you should change the parameter's class to it's Object type, like int -> Integer.", e);
-        }
+        //参数绑定和方法调用在注册路由时已经生成
+        RouterMethodBinder binder = method == this.method ? routerMethodBinder : RouterMethodBinder.get(method);
+        return binder.invoke(annotationObj, request, response);
     }
 
     @Override
@@ -616,7 +360,7 @@ public class AnnotationRouter implements HttpRouter {
 
         try {
             //根据 Router 注解的标记设置响应的Content-Type
-            response.header().put(HttpStatic.CONTENT_TYPE_STRING, HttpContentType.getHttpContentType(methodRoute.contentType()));
+            response.header().put(HttpStatic.CONTENT_TYPE_STRING, contentType);
 
             //过滤器前置处理
             if(annotationRouterFilter!=null) {
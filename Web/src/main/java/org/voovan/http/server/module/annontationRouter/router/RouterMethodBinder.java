@@ -0,0 +1,564 @@
+package org.voovan.http.server.module.annontationRouter.router;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.HttpSession;
+import org.voovan.http.server.exception.AnnotationRouterException;
+import org.voovan.http.server.module.annontationRouter.annotation.*;
+import org.voovan.tools.TObject;
+import org.voovan.tools.TString;
+import org.voovan.tools.json.JSON;
+import org.voovan.tools.log.Logger;
+import org.voovan.tools.reflect.TReflect;
+import org.voovan.tools.weave.WeaveUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 注解路由方法的参数绑定器
+ * 		注册路由时解析方法的参数和注解, 为每个参数选定取值方式和类型转换器, 只在方法需要时解析请求的 body,
+ * 		并使用 javassist 生成直接调用路由方法的类, 生成失败时使用反射调用.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class RouterMethodBinder {
+	private static final Map<Method, RouterMethodBinder> BINDERS = new ConcurrentHashMap<Method, RouterMethodBinder>();
+	private static final Map<Class, Function<String, Object>> CONVERTERS = new ConcurrentHashMap<Class, Function<String, Object>>();
+	private static final Map<Class, Boolean> CLASS_PATHS = new ConcurrentHashMap<Class, Boolean>();
+	private static final Map<ClassLoader, InvokerClassLoader> CLASS_LOADERS = new ConcurrentHashMap<ClassLoader, InvokerClassLoader>();
+	private static final AtomicInteger INVOKER_INDEX = new AtomicInteger(0);
+
+	private static final int REQUEST 	= 0;
+	private static final int RESPONSE 	= 1;
+	private static final int SESSION 	= 2;
+	private static final int PARAM 		= 3;
+	private static final int BODY_PARAM = 4;
+	private static final int BODY 		= 5;
+	private static final int HEADER 	= 6;
+	private static final int COOKIE 	= 7;
+	private static final int ATTRIBUTE 	= 8;
+	private static final int SESSION_ATTRIBUTE = 9;
+	private static final int SEQUENCE 	= 10;
+
+	/**
+	 * 生成的路由方法调用类的接口
+	 */
+	public interface Invoker {
+		/**
+		 * 调用路由方法
+		 * @param obj 路由对象, 静态方法时忽略
+		 * @param params 方法参数
+		 * @return 方法的返回值
+		 * @throws Exception 方法抛出的异常
+		 */
+		public Object invoke(Object obj, Object[] params) throws Exception;
+	}
+
+	/**
+	 * 加载生成的调用类, 以路由类的 ClassLoader 作为父 ClassLoader
+	 */
+	private static class InvokerClassLoader extends ClassLoader {
+		private InvokerClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		private synchronized Class define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * 单个参数的绑定信息
+	 */
+	private static class Binding {
+		private int kind;
+		private String name;
+		private String defaultVal;
+		private boolean require;
+		private Class type;
+		private Function<String, Object> converter;
+		//没有注解时按顺序注入的参数名: param1, param2 ...
+		private String sequenceName;
+	}
+
+	private final Method method;
+	private final Binding[] bindings;
+	private final boolean needBodyString;
+	private final boolean needBodyMap;
+	private final boolean hasPrimitive;
+	//生成的调用类无法访问路由方法时置为 null, 之后使用反射调用
+	private volatile Invoker invoker;
+
+	private RouterMethodBinder(Method method) {
+		this.method = method;
+
+		Class[] parameterTypes = method.getParameterTypes();
+		Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+
+		boolean bodyString = false;
+		boolean bodyMap = false;
+		boolean primitive = false;
+		bindings = new Binding[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			Binding binding = bind(parameterTypes[i], parameterAnnotations[i]);
+			binding.sequenceName = "param" + (i + 1);
+			bindings[i] = binding;
+
+			bodyString = bodyString || binding.kind == BODY;
+			bodyMap = bodyMap || binding.kind == BODY || binding.kind == BODY_PARAM;
+			primitive = primitive || parameterTypes[i].isPrimitive();
+		}
+
+		needBodyString = bodyString;
+		needBodyMap = bodyMap;
+		hasPrimitive = primitive;
+		invoker = genInvoker(method);
+	}
+
+	/**
+	 * 获取方法的参数绑定器, 每个方法只生成一次
+	 * @param method 路由方法
+	 * @return 参数绑定器
+	 */
+	public static RouterMethodBinder get(Method method) {
+		return BINDERS.computeIfAbsent(method, RouterMethodBinder::new);
+	}
+
+	private static Binding bind(Class type, Annotation[] annotations) {
+		Binding binding = new Binding();
+		binding.type = type;
+		binding.converter = getConverter(type);
+		binding.kind = SEQUENCE;
+
+		if (type == HttpRequest.class) {
+			binding.kind = REQUEST;
+			return binding;
+		} else if (type == HttpResponse.class) {
+			binding.kind = RESPONSE;
+			return binding;
+		} else if (type == HttpSession.class) {
+			binding.kind = SESSION;
+			return binding;
+		}
+
+		for (Annotation annotation : annotations) {
+			if (annotation instanceof Param) {
+				Param param = (Param) annotation;
+				return fill(binding, PARAM, param.value(), param.defaultVal(), param.isRequire());
+			} else if (annotation instanceof BodyParam) {
+				BodyParam bodyParam = (BodyParam) annotation;
+				return fill(binding, BODY_PARAM, bodyParam.value(), bodyParam.defaultVal(), bodyParam.isRequire());
+			} else if (annotation instanceof Body) {
+				Body body = (Body) annotation;
+				return fill(binding, BODY, null, body.defaultVal(), body.isRequire());
+			} else if (annotation instanceof Header) {
+				Header header = (Header) annotation;
+				return fill(binding, HEADER, header.value(), header.defaultVal(), header.isRequire());
+			} else if (annotation instanceof Cookie) {
+				Cookie cookie = (Cookie) annotation;
+				return fill(binding, COOKIE, cookie.value(), cookie.defaultVal(), cookie.isRequire());
+			} else if (annotation instanceof Attribute) {
+				Attribute attribute = (Attribute) annotation;
+				return fill(binding, ATTRIBUTE, attribute.value(), attribute.defaultVal(), attribute.isRequire());
+			} else if (annotation instanceof Session) {
+				Session session = (Session) annotation;
+				return fill(binding, SESSION_ATTRIBUTE, session.value(), session.defaultVal(), session.isRequire());
+			}
+		}
+
+		return binding;
+	}
+
+	private static Binding fill(Binding binding, int kind, String name, String defaultVal, boolean require) {
+		binding.kind = kind;
+		binding.name = name;
+		binding.defaultVal = defaultVal;
+		binding.require = require;
+		return binding;
+	}
+
+	/**
+	 * 获取字符串到指定类型的转换器
+	 * 		常用的类型直接转换, 其他类型使用 TString.toObject
+	 * @param type 目标类型
+	 * @return 转换器
+	 */
+	private static Function<String, Object> getConverter(Class type) {
+		return CONVERTERS.computeIfAbsent(type, clazz -> {
+			boolean primitive = clazz.isPrimitive();
+			//和 TString.toObject 一致, 包装类型的 "null" 作为 0 处理
+			if (clazz == String.class) {
+				return value -> "null".equals(value) ? null :
+						value.length() > 1 && value.startsWith("\"") && value.endsWith("\"") ? value.substring(1, value.length() - 1) : value;
+			} else if (clazz == int.class || clazz == Integer.class) {
+				return value -> Integer.valueOf(!primitive && "null".equals(value) ? "0" : value);
+			} else if (clazz == long.class || clazz == Long.class) {
+				return value -> Long.valueOf(!primitive && "null".equals(value) ? "0" : value);
+			} else if (clazz == boolean.class || clazz == Boolean.class) {
+				return value -> Boolean.valueOf(!primitive && "null".equals(value) ? "false" : value);
+			} else if (clazz == double.class || clazz == Double.class) {
+				return value -> Double.valueOf(!primitive && "null".equals(value) ? "0" : value);
+			} else if (clazz == float.class || clazz == Float.class) {
+				return value -> Float.valueOf(!primitive && "null".equals(value) ? "0" : value);
+			} else {
+				return value -> TString.toObject(value, clazz, true);
+			}
+		});
+	}
+
+	/**
+	 * 生成直接调用路由方法的类
+	 * @param method 路由方法
+	 * @return 调用类的实例, 生成失败时返回 null
+	 */
+	private static Invoker genInvoker(Method method) {
+		Class clazz = method.getDeclaringClass();
+		Class[] parameterTypes = method.getParameterTypes();
+
+		//调用类在独立的 ClassLoader 中, 只能访问 public 的类
+		if (!Modifier.isPublic(clazz.getModifiers())) {
+			return null;
+		}
+		for (Class parameterType : parameterTypes) {
+			Class componentType = parameterType;
+			while (componentType.isArray()) {
+				componentType = componentType.getComponentType();
+			}
+			if (!Modifier.isPublic(componentType.getModifiers())) {
+				return null;
+			}
+		}
+
+		StringBuilder code = new StringBuilder("public Object invoke(Object obj, Object[] params) throws Exception {");
+		String call = (Modifier.isStatic(method.getModifiers()) ? clazz.getName() : "((" + clazz.getName() + ")obj)") +
+				"." + method.getName() + "(";
+
+		StringBuilder args = new StringBuilder();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0) {
+				args.append(", ");
+			}
+
+			Class type = parameterTypes[i];
+			if (type.isPrimitive()) {
+				Class wrapType = TReflect.getPackageClass(type);
+				args.append("((").append(wrapType.getName()).append(")params[").append(i).append("]).")
+						.append(type.getName()).append("Value()");
+			} else {
+				args.append("(").append(typeName(type)).append(")params[").append(i).append("]");
+			}
+		}
+
+		call = call + args + ")";
+		if (method.getReturnType() == void.class) {
+			code.append(call).append("; return null;}");
+		} else {
+			code.append("return ($w)").append(call).append(";}");
+		}
+
+		try {
+			ClassPool classPool = WeaveUtils.CLASSPOOL;
+			if (CLASS_PATHS.putIfAbsent(clazz, true) == null) {
+				classPool.insertClassPath(new ClassClassPath(clazz));
+			}
+
+			CtClass ctClass = classPool.makeClass(clazz.getName() + "$RouterInvoker" + INVOKER_INDEX.incrementAndGet());
+			ctClass.addInterface(classPool.get(Invoker.class.getName()));
+			ctClass.addMethod(CtNewMethod.make(code.toString(), ctClass));
+			byte[] bytes = ctClass.toBytecode();
+			ctClass.detach();
+
+			ClassLoader parent = clazz.getClassLoader() == null ? RouterMethodBinder.class.getClassLoader() : clazz.getClassLoader();
+			Class invokerClass = CLASS_LOADERS.computeIfAbsent(parent, InvokerClassLoader::new).define(ctClass.getName(), bytes);
+			return (Invoker) invokerClass.newInstance();
+		} catch (Throwable e) {
+			Logger.warn("Generate invoker for router method [" + method + "] failed, use reflection: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static String typeName(Class type) {
+		return type.isArray() ? typeName(type.getComponentType()) + "[]" : type.getName();
+	}
+
+	/**
+	 * 调用路由方法
+	 * @param obj 路由对象
+	 * @param request http 请求对象
+	 * @param response http 响应对象
+	 * @return 方法的返回值
+	 * @throws Exception 参数绑定或方法调用的异常
+	 */
+	public Object invoke(Object obj, HttpRequest request, HttpResponse response) throws Exception {
+		Object[] params = bindParams(request, response);
+
+		if (hasPrimitive) {
+			for (int i = 0; i < params.length; i++) {
+				if (params[i] == null && bindings[i].type.isPrimitive()) {
+					throw new AnnotationRouterException("Router method [" + method + "] has some null parameter, " +
+							"if you want accpect null parameter, you should change the parameter's class to it's Object type, like int -> Integer.");
+				}
+			}
+		}
+
+		Invoker currentInvoker = invoker;
+		if (currentInvoker != null) {
+			try {
+				return currentInvoker.invoke(obj, params);
+			} catch (LinkageError e) {
+				//只处理调用类自身链接路由方法时的错误, 此时路由方法还没有执行, 路由方法抛出的错误直接抛出
+				StackTraceElement[] stackTrace = e.getStackTrace();
+				if (stackTrace.length == 0 || !stackTrace[0].getClassName().equals(currentInvoker.getClass().getName())) {
+					throw e;
+				}
+
+				Logger.warn("Invoker for router method [" + method + "] is not accessible, use reflection: " + e);
+				method.setAccessible(true);
+				invoker = null;
+			}
+		}
+
+		try {
+			return TReflect.invokeMethod(obj, method, params);
+		} catch (InvocationTargetException e) {
+			//和生成的调用类一致, 直接抛出路由方法的异常
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		} catch (IllegalArgumentException e) {
+			throw new AnnotationRouterException("Router method [" + method + "] has some null parameter, " +
+					"if you want accpect null parameter, you should change the parameter's class to it's Object type, like int -> Integer.", e);
+		}
+	}
+
+	/**
+	 * 按绑定信息准备方法参数
+	 * @param request http 请求对象
+	 * @param response http 响应对象
+	 * @return 方法参数
+	 * @throws AnnotationRouterException 参数绑定异常
+	 */
+	private Object[] bindParams(HttpRequest request, HttpResponse response) throws AnnotationRouterException {
+		String bodyString = "";
+		Map bodyMap = null;
+		if ((needBodyString || needBodyMap) && request.body().size() > 0) {
+			bodyString = request.body().getBodyString();
+			if (needBodyMap && JSON.isJSONMap(bodyString)) {
+				bodyMap = (Map) JSON.parse(bodyString);
+			}
+		}
+
+		Object[] params = new Object[bindings.length];
+		for (int i = 0; i < bindings.length; i++) {
+			Binding binding = bindings[i];
+			switch (binding.kind) {
+				case REQUEST:
+					params[i] = request;
+					continue;
+				case RESPONSE:
+					params[i] = response;
+					continue;
+				case SESSION:
+					params[i] = request.getSession();
+					continue;
+				case PARAM:
+					params[i] = bindParam(binding, request);
+					break;
+				case BODY_PARAM:
+					params[i] = bindBodyParam(binding, bodyMap);
+					break;
+				case BODY:
+					params[i] = bindBody(binding, bodyString, bodyMap);
+					break;
+				case HEADER:
+					params[i] = bindHeader(binding, request);
+					break;
+				case COOKIE:
+					params[i] = bindCookie(binding, request);
+					break;
+				case ATTRIBUTE:
+					params[i] = bindAttribute(binding, request);
+					break;
+				case SESSION_ATTRIBUTE:
+					params[i] = bindSessionAttribute(binding, request);
+					break;
+				default:
+					break;
+			}
+
+			//没有注解或者没有取到值的参数,按顺序处理
+			if (params[i] == null) {
+				try {
+					String value = request.getParameter(binding.sequenceName);
+					params[i] = value == null ? null : binding.converter.apply(value);
+				} catch (Exception e) {
+					throw new AnnotationRouterException("Router sequential injection param " + request.getParameters().toString() + " error", e);
+				}
+			}
+		}
+
+		return params;
+	}
+
+	/**
+	 * 处理没有取到值的参数
+	 * @param binding 绑定信息
+	 * @param message 参数为必须时的异常信息
+	 * @return 默认值, 没有默认值时返回 null
+	 * @throws AnnotationRouterException 参数为必须且没有默认值
+	 */
+	private static String defaultValue(Binding binding, String message) throws AnnotationRouterException {
+		if ("".equals(binding.defaultVal)) {
+			if (binding.require) {
+				throw new AnnotationRouterException(message);
+			}
+			return null;
+		}
+		return binding.defaultVal;
+	}
+
+	private static Object bindParam(Binding binding, HttpRequest request) throws AnnotationRouterException {
+		try {
+			String param = request.getParameter(binding.name);
+			if (param == null) {
+				param = defaultValue(binding, "Router annotation @Param [" + binding.name + " = null] error, data: " + request.getParameters());
+			}
+			return param == null ? null : binding.converter.apply(param);
+		} catch (AnnotationRouterException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AnnotationRouterException("Router annotation error, when feed @Param [" + binding.name + "] data: " + request.getParameters(), e);
+		}
+	}
+
+	private static Object bindBodyParam(Binding binding, Map bodyMap) throws AnnotationRouterException {
+		if (bodyMap == null) {
+			return null;
+		}
+
+		try {
+			Object bodyParam = bodyMap.get(binding.name);
+			if (bodyParam == null) {
+				bodyParam = defaultValue(binding, "Router annotation @BodyParam [" + binding.name + " = null] error, data: " + bodyMap);
+				if (bodyParam == null) {
+					return null;
+				}
+			}
+
+			if (TReflect.isBasicType(bodyParam.getClass())) {
+				return binding.converter.apply(bodyParam.toString());
+			} else if (bodyParam instanceof Map) {
+				return TReflect.getObjectFromMap(binding.type, (Map) bodyParam, true);
+			} else {
+				return bodyParam;
+			}
+		} catch (AnnotationRouterException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AnnotationRouterException("Router annotation error, when feed @BodyParam [" + binding.name + "] , data: " + bodyMap, e);
+		}
+	}
+
+	private static Object bindBody(Binding binding, String bodyString, Map bodyMap) throws AnnotationRouterException {
+		try {
+			if ("".equals(bodyString)) {
+				if ("".equals(binding.defaultVal)) {
+					return binding.require ? TObject.asMap() : null;
+				}
+				bodyMap = (Map) JSON.parse(binding.defaultVal);
+			}
+
+			return bodyMap == null ?
+					binding.converter.apply(bodyString) :
+					TReflect.getObjectFromMap(binding.type, bodyMap, true);
+		} catch (Exception e) {
+			if (binding.require) {
+				throw new AnnotationRouterException("Router annotation @Body error.\r\n data: " + bodyString, e);
+			}
+			return null;
+		}
+	}
+
+	private static Object bindHeader(Binding binding, HttpRequest request) throws AnnotationRouterException {
+		try {
+			String headParam = request.header().get(binding.name);
+			if (headParam == null) {
+				headParam = defaultValue(binding, "Router annotation @Header [" + binding.name + " = null] error, data: " + request.header());
+			}
+			return headParam == null ? null : binding.converter.apply(headParam);
+		} catch (AnnotationRouterException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AnnotationRouterException("Router annotation error, when feed @Header [" + binding.name + "] , data: " + request.header(), e);
+		}
+	}
+
+	private static Object bindCookie(Binding binding, HttpRequest request) throws AnnotationRouterException {
+		String cookieParam = null;
+		try {
+			org.voovan.http.message.packet.Cookie cookie = request.getCookie(binding.name);
+			if (cookie != null) {
+				cookieParam = cookie.getValue();
+			}
+
+			if (cookieParam == null) {
+				cookieParam = defaultValue(binding, "Router annotation @Cookie [" + binding.name + " = null] error, data: " + request.cookies());
+			}
+			return cookieParam == null ? null : binding.converter.apply(cookieParam);
+		} catch (AnnotationRouterException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AnnotationRouterException("Router annotation error, when feed @Cookie [" + cookieParam + "] , data: " + request.cookies(), e);
+		}
+	}
+
+	private static Object bindAttribute(Binding binding, HttpRequest request) throws AnnotationRouterException {
+		try {
+			Object attrParam = request.getAttributes().get(binding.name);
+			if (attrParam == null) {
+				attrParam = defaultValue(binding, "Router annotation @Attribute [" + binding.name + " = null] error, data: " + request.getAttributes());
+			}
+			return attrParam == null ? null : binding.converter.apply(attrParam.toString());
+		} catch (AnnotationRouterException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AnnotationRouterException("Router annotation error, when feed @Attribute [" + binding.name + "] , data: " + request.getAttributes(), e);
+		}
+	}
+
+	private static Object bindSessionAttribute(Binding binding, HttpRequest request) throws AnnotationRouterException {
+		HttpSession httpSession = request.getSession();
+		try {
+			Object sessionParam = httpSession.getAttribute(binding.name);
+			if (sessionParam == null) {
+				String defaultVal = defaultValue(binding, "Router annotation @Session [" + binding.name + " = null] error, data: " + httpSession.attributes());
+				return defaultVal == null ? null : binding.converter.apply(defaultVal);
+			}
+
+			return TReflect.getPackageClass(binding.type).isInstance(sessionParam) ? sessionParam : null;
+		} catch (AnnotationRouterException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new AnnotationRouterException("Router annotation error, when feed @Session [" + binding.name + "] , data: " + httpSession.attributes(), e);
+		}
+	}
+}
@@ -1,80 +1,86 @@
 package org.voovan.http.server.module.monitor;
 
+import org.voovan.http.message.HttpStatic;
 import org.voovan.http.server.HttpFilter;
 import org.voovan.http.server.HttpRequest;
 import org.voovan.http.server.HttpResponse;
 import org.voovan.http.server.context.HttpFilterConfig;
-import org.voovan.tools.FastThreadLocal;
 
 
 /**
  * 监控用过滤器
+ * 		请求开始时间保存在请求的属性中, 异步路由在其他线程完成时也能计算请求时间
  */
 public class HttpMonitorFilter implements HttpFilter {
-	private final static FastThreadLocal<Long> REQUEST_START_TIME = new FastThreadLocal<Long>();
+	private final static String REQUEST_START_TIME = "HttpMonitorFilter.StartTime";
 
 	@Override
 	public Object onRequest(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult ) {
-		REQUEST_START_TIME.set(System.currentTimeMillis());
+		request.setAttributes(REQUEST_START_TIME, System.nanoTime());
 		return "";
 	}
 
 	@Override
 	public Object onResponse(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult ) {
+		String routePath = request.getRoutePath() == null ? MonitorGlobal.UNMATCHED_PATH : request.getRoutePath();
+
 		//处理请求分析数据
-		requestAnalysis(request);
+		requestAnalysis(routePath, request, response);
 
 		//处理IP数据分析
-		ipAddressAnalysis(request);
+		ipAddressAnalysis(routePath, request);
 
 		return "";
 	}
 
 	/**
 	 * 请求数据的分析
+	 * @param routePath 路由路径
 	 * @param request 请求对象
+	 * @param response 响应对象
 	 */
-	public void requestAnalysis(HttpRequest request){
-		Long startTime = REQUEST_START_TIME.get();
+	public void requestAnalysis(String routePath, HttpRequest request, HttpResponse response){
+		Long startTime = (Long) request.getAttributes(REQUEST_START_TIME);
 
 		if(startTime!=null) {
-			String requestPath = request.protocol().getPath();
-			long dealTime = (System.currentTimeMillis() - startTime);
-
-			RequestAnalysis requestAnalysis = null;
-			if (MonitorGlobal.REQUEST_ANALYSIS.containsKey(requestPath)) {
-				requestAnalysis = MonitorGlobal.REQUEST_ANALYSIS.get(requestPath);
-			} else {
-				requestAnalysis = new RequestAnalysis(requestPath);
-				MonitorGlobal.REQUEST_ANALYSIS.put(requestPath, requestAnalysis);
+			long dealTime = (System.nanoTime() - startTime) / 1000;
+
+			RequestAnalysis requestAnalysis = MonitorGlobal.REQUEST_ANALYSIS.get(routePath);
+			if (requestAnalysis == null) {
+				requestAnalysis = MonitorGlobal.REQUEST_ANALYSIS.computeIfAbsent(routePath, RequestAnalysis::new);
 			}
 
-			requestAnalysis.addRequestTime(Long.valueOf(dealTime).intValue());
+			String contentLength = request.header().get(HttpStatic.CONTENT_LENGTH_STRING);
+			long requestBytes = contentLength == null ? request.body().size() : Long.parseLong(contentLength.trim());
+
+			requestAnalysis.addRequest(dealTime, response.protocol().getStatus(), requestBytes, response.body().size());
 		}
-		REQUEST_START_TIME.set(null);
 	}
 
 
 	/**
 	 * ip 数据的分析
+	 * @param routePath 路由路径
 	 * @param request Http请求对象
 	 */
-	public void ipAddressAnalysis(HttpRequest request){
-		String requestPath = request.protocol().getPath();
+	public void ipAddressAnalysis(String routePath, HttpRequest request){
 		String ipAddress = request.getRemoteAddres();
 
 		if(ipAddress==null){
 			ipAddress = "unknown or disconnect";
 		}
 
-		IPAnalysis ipAnalysis = null;
-		if(MonitorGlobal.IP_ANALYSIS.containsKey(ipAddress)){
-			ipAnalysis = MonitorGlobal.IP_ANALYSIS.get(ipAddress);
-		}else{
+		IPAnalysis ipAnalysis = MonitorGlobal.IP_ANALYSIS.get(ipAddress);
+		if(ipAnalysis == null) {
+			//IP 地址数量超过限制时合并统计, 避免地址变化频繁时无限增长
+			if(MonitorGlobal.IP_ANALYSIS.size() >= MonitorGlobal.MAX_IP_ADDRESS) {
+				ipAddress = MonitorGlobal.OTHER_ADDRESS;
+			}
 			ipAnalysis = new IPAnalysis(ipAddress);
-			MonitorGlobal.IP_ANALYSIS.put(ipAddress, ipAnalysis);
+			IPAnalysis existsAnalysis = MonitorGlobal.IP_ANALYSIS.putIfAbsent(ipAddress, ipAnalysis);
+			ipAnalysis = existsAnalysis == null ? ipAnalysis : existsAnalysis;
 		}
 
-		ipAnalysis.addRequest(requestPath);
+		ipAnalysis.addRequest(routePath);
 	}
 }
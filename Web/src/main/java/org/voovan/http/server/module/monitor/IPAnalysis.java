@@ -1,15 +1,14 @@
 package org.voovan.http.server.module.monitor;
 
-import org.voovan.tools.TDateTime;
-import org.voovan.tools.reflect.annotation.NotSerialization;
-
-import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Some description
+ * IP 请求分析信息
+ *      按路由路径统计请求数量, 路径的数量以路由的数量为上限
  *
  * @author: helyho
  * Project: Framework
@@ -18,19 +17,18 @@ import java.util.concurrent.atomic.AtomicLong;
 public class IPAnalysis {
 
     private String address;
-    private AtomicLong totalCount;
-    private int lastMinuteCount;
-    @NotSerialization
-    private int minute;
-    private Map<String, Integer> data;
+    private LongAdder totalCount;
+    private LongAdder lastMinuteCount;
+    private volatile long minute;
+    private Map<String, LongAdder> data;
 
 
     public IPAnalysis(String address){
         this.address = address;
-        this.totalCount = new AtomicLong(0);
-        this.lastMinuteCount = 0;
-        this.minute = TDateTime.getDateElement(null, Calendar.MINUTE);
-        this.data = new ConcurrentHashMap<String, Integer>();
+        this.totalCount = new LongAdder();
+        this.lastMinuteCount = new LongAdder();
+        this.minute = System.currentTimeMillis() / 60000;
+        this.data = new ConcurrentHashMap<String, LongAdder>();
     }
 
     public String getAddress() {
@@ -39,35 +37,56 @@ public class IPAnalysis {
 
 
     public long getTotalCount() {
-        return totalCount.get();
+        return totalCount.sum();
     }
 
-    public int getLastMinuteCount() {
-        return lastMinuteCount;
+    public long getLastMinuteCount() {
+        return System.currentTimeMillis() / 60000 == minute ? lastMinuteCount.sum() : 0;
     }
 
-    public Map<String, Integer> getData() {
-        return data;
+    public Map<String, Long> getData() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for(Map.Entry<String, LongAdder> entry : data.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result;
     }
 
-    public void addRequest(String requestPath){
-        if(data.containsKey(requestPath)){
-            synchronized (data) {
-                data.put(requestPath, data.get(requestPath) + 1);
-            }
-        }else{
-            data.put(requestPath, 1);
+    /**
+     * 增加请求
+     * @param routePath 路由路径
+     */
+    public void addRequest(String routePath){
+        LongAdder pathCount = data.get(routePath);
+        if(pathCount == null) {
+            pathCount = data.computeIfAbsent(routePath, key -> new LongAdder());
         }
+        pathCount.increment();
 
-        int currentMinute = TDateTime.getDateElement(null, Calendar.MINUTE);
-        if(currentMinute == minute){
-            lastMinuteCount ++;
-        }else{
-            minute = currentMinute;
-            lastMinuteCount = 1;
+        long currentMinute = System.currentTimeMillis() / 60000;
+        if(currentMinute != minute) {
+            synchronized (this) {
+                if(currentMinute != minute) {
+                    lastMinuteCount.reset();
+                    minute = currentMinute;
+                }
+            }
         }
+        lastMinuteCount.increment();
 
-        totalCount.addAndGet(1);
+        totalCount.increment();
+    }
 
+    /**
+     * 转换成用于输出的 Map
+     * @return 分析信息
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("address", address);
+        result.put("totalCount", getTotalCount());
+        result.put("lastMinuteCount", getLastMinuteCount());
+        result.put("data", getData());
+        return result;
     }
 }
@@ -0,0 +1,215 @@
+package org.voovan.http.server.module.monitor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 延迟直方图
+ *      按 HDR 的方式分桶: 每个 2 的幂区间分为 16 个子桶, 相对误差不超过 1/16, 记录的最大值为 2^32 微秒.
+ *      每个线程写入自己的计数数组, 不加锁, 读取时合并所有线程的数据.
+ *      通过 rotate 按固定周期切分数据, 最近 WINDOW_SLOTS 个周期的数据构成滑动窗口.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 31;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    public static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    //计数数组最后一位保存数值的总和
+    private static final int SUM_INDEX = BUCKET_COUNT;
+    private static final int ARRAY_SIZE = BUCKET_COUNT + 1;
+
+    public static final int WINDOW_SLOTS = 6;
+
+    private Map<Thread, long[]> recorders;
+    //已经结束的线程的数据
+    private long[] retired;
+
+    private long[][] slots;
+    private int slotIndex;
+    //上一次 rotate 时的累计数据
+    private long[] rotated;
+
+    public LatencyHistogram() {
+        recorders = new ConcurrentHashMap<Thread, long[]>();
+        retired = new long[ARRAY_SIZE];
+        slots = new long[WINDOW_SLOTS][ARRAY_SIZE];
+        slotIndex = 0;
+        rotated = new long[ARRAY_SIZE];
+    }
+
+    /**
+     * 计算数值所在的桶
+     * @param value 数值
+     * @return 桶的索引
+     */
+    public static int bucketIndex(long value) {
+        if(value < SUB_BUCKET_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+
+        value = Math.min(value, MAX_VALUE);
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * 获取桶中数值的上限
+     * @param index 桶的索引
+     * @return 桶中的最大数值
+     */
+    public static long bucketUpperBound(int index) {
+        if(index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lower = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * 记录一个数值
+     *      只写入当前线程的计数数组
+     * @param value 数值, 单位: 微秒
+     */
+    public void record(long value) {
+        Thread thread = Thread.currentThread();
+        long[] counts = recorders.get(thread);
+        if(counts == null) {
+            counts = recorders.computeIfAbsent(thread, key -> new long[ARRAY_SIZE]);
+        }
+
+        counts[bucketIndex(value)]++;
+        counts[SUM_INDEX] += value;
+    }
+
+    /**
+     * 合并所有线程的累计数据
+     * @return 累计数据
+     */
+    private synchronized long[] merge() {
+        long[] result = retired.clone();
+        for(Map.Entry<Thread, long[]> entry : recorders.entrySet()) {
+            long[] counts = entry.getValue();
+            if(!entry.getKey().isAlive()) {
+                //线程已经结束, 不会再写入, 合并后移除
+                recorders.remove(entry.getKey());
+                add(retired, counts);
+            }
+            add(result, counts);
+        }
+        return result;
+    }
+
+    private static void add(long[] target, long[] source) {
+        for(int i = 0; i < ARRAY_SIZE; i++) {
+            target[i] += source[i];
+        }
+    }
+
+    /**
+     * 结束当前周期, 将周期内的数据放入滑动窗口
+     */
+    public synchronized void rotate() {
+        long[] current = merge();
+        slotIndex = (slotIndex + 1) % WINDOW_SLOTS;
+        long[] slot = slots[slotIndex];
+        for(int i = 0; i < ARRAY_SIZE; i++) {
+            slot[i] = current[i] - rotated[i];
+        }
+        rotated = current;
+    }
+
+    /**
+     * 获取自创建以来的累计数据
+     * @return 数据快照
+     */
+    public Snapshot getTotal() {
+        return new Snapshot(merge());
+    }
+
+    /**
+     * 获取滑动窗口中的数据
+     *      包含最近 WINDOW_SLOTS 个完整周期和当前未结束的周期
+     * @return 数据快照
+     */
+    public synchronized Snapshot getWindow() {
+        long[] current = merge();
+        for(int i = 0; i < ARRAY_SIZE; i++) {
+            current[i] -= rotated[i];
+        }
+        for(long[] slot : slots) {
+            add(current, slot);
+        }
+        return new Snapshot(current);
+    }
+
+    /**
+     * 直方图数据快照
+     */
+    public static class Snapshot {
+        private long[] counts;
+        private long count;
+
+        private Snapshot(long[] counts) {
+            this.counts = counts;
+            for(int i = 0; i < BUCKET_COUNT; i++) {
+                count += counts[i];
+            }
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return counts[SUM_INDEX];
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) counts[SUM_INDEX] / count;
+        }
+
+        /**
+         * 获取最大值
+         * @return 最大值所在桶的上限
+         */
+        public long getMax() {
+            for(int i = BUCKET_COUNT - 1; i >= 0; i--) {
+                if(counts[i] > 0) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * 获取百分位数
+         * @param percentile 百分位, 0 到 1 之间, 例如 0.99
+         * @return 百分位数所在桶的上限
+         */
+        public long getPercentile(double percentile) {
+            if(count == 0) {
+                return 0;
+            }
+
+            long target = Math.max(1, (long) Math.ceil(percentile * count));
+            long accumulated = 0;
+            for(int i = 0; i < BUCKET_COUNT; i++) {
+                accumulated += counts[i];
+                if(accumulated >= target) {
+                    return bucketUpperBound(i);
+                }
+            }
+            return getMax();
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package org.voovan.http.server.module.monitor;
 
+import org.voovan.Global;
+import org.voovan.tools.collection.ShardedCacheMap;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -14,7 +18,27 @@ import java.util.concurrent.ConcurrentHashMap;
 public class MonitorGlobal {
     public static List<String> ALLOW_IP_ADDRESS = null;
 
+    //未匹配到路由的请求使用的路径
+    public static final String UNMATCHED_PATH = "<unmatched>";
+    //超过数量限制的 IP 地址使用的地址
+    public static final String OTHER_ADDRESS = "<other>";
+    public static final int MAX_IP_ADDRESS = 10000;
+    //IP 地址在超过这个时间没有请求后移除, 单位: 秒
+    public static final int IP_ADDRESS_EXPIRE = 600;
+    //滑动窗口每个周期的长度, 单位: 秒
+    public static final int WINDOW_INTERVAL = 10;
+
     public static Map<String,RequestAnalysis> REQUEST_ANALYSIS= new ConcurrentHashMap<String,RequestAnalysis>();
-    public static Map<String,IPAnalysis> IP_ANALYSIS = new ConcurrentHashMap<String,IPAnalysis>();
+    public static Map<String,IPAnalysis> IP_ANALYSIS = new ShardedCacheMap<String,IPAnalysis>().expire(IP_ADDRESS_EXPIRE).create();
 
+    static {
+        Global.getHashWheelTimer().addTask(new HashWheelTask() {
+            @Override
+            public void run() {
+                for(RequestAnalysis requestAnalysis : REQUEST_ANALYSIS.values()) {
+                    requestAnalysis.getLatency().rotate();
+                }
+            }
+        }, WINDOW_INTERVAL);
+    }
 }
@@ -29,6 +29,8 @@ public class MonitorModule extends HttpModule {
         this.otherMethod("MONITOR", "/:Type",new MonitorRouter());
         this.otherMethod("MONITOR", "/:Type/:Param1/:Param2",new MonitorRouter());
         this.options("/*", new OptionsRouter("MONITOR", "*", "auth-token"));
+        //Prometheus 指标
+        this.get("/metrics", new PrometheusRouter());
         //注册过滤器,用于抓取分析数据
         filterChain().add(HttpFilterConfig.newInstance("MonitorFilter",HttpMonitorFilter.class,null));
     }
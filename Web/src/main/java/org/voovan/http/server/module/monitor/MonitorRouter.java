@@ -10,6 +10,7 @@ import org.voovan.tools.json.JSON;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,16 +51,24 @@ public class MonitorRouter implements HttpRouter {
      * 返回请求分析信息
      * @return 请求分析信息集合
      */
-    public static List<RequestAnalysis> requestInfo() {
-        return (List<RequestAnalysis>) TObject.mapValueToList(MonitorGlobal.REQUEST_ANALYSIS);
+    public static List<Map<String, Object>> requestInfo() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for(RequestAnalysis requestAnalysis : MonitorGlobal.REQUEST_ANALYSIS.values()) {
+            result.add(requestAnalysis.toMap());
+        }
+        return result;
     }
 
     /**
      * 返回请求IP分析信息
      * @return 请求分析信息集合
      */
-    public static List<IPAnalysis> ipAddressInfo() {
-        return (List<IPAnalysis>) TObject.mapValueToList(MonitorGlobal.IP_ANALYSIS);
+    public static List<Map<String, Object>> ipAddressInfo() {
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        for(IPAnalysis ipAnalysis : MonitorGlobal.IP_ANALYSIS.values()) {
+            result.add(ipAnalysis.toMap());
+        }
+        return result;
     }
 
     @Override
@@ -100,6 +109,10 @@ public class MonitorRouter implements HttpRouter {
                 responseStr = JSON.toJSON(requestInfo());
             } else if ("IPAddressAnalysis".equals(type)) {
                 responseStr = JSON.toJSON(ipAddressInfo());
+            } else if ("Prometheus".equals(type)) {
+                response.header().put(HttpStatic.CONTENT_TYPE_STRING, PrometheusRouter.CONTENT_TYPE);
+                response.write(PrometheusRouter.metrics());
+                return;
             } else if ("Log".equals(type)) {
                 String logType = request.getParameter("Param1");
                 logType = logType == null? "SYSOUT" : logType;
@@ -0,0 +1,103 @@
+package org.voovan.http.server.module.monitor;
+
+import org.voovan.http.message.HttpStatic;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.HttpRouter;
+import org.voovan.tools.TPerformance;
+
+import java.util.Map;
+
+/**
+ * Prometheus 指标输出
+ *      以 Prometheus 文本格式输出按路由统计的请求数据, 请求时间以 summary 输出,
+ *      百分位数按滑动窗口计算, _sum 和 _count 为累计值.
+ *      只允许监控模块配置的 IP 地址访问.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class PrometheusRouter implements HttpRouter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String[] QUANTILES = new String[]{"0.5", "0.9", "0.99", "0.999"};
+
+    @Override
+    public void process(HttpRequest request, HttpResponse response) throws Exception {
+        if(MonitorGlobal.ALLOW_IP_ADDRESS.contains(request.getRemoteAddres())) {
+            response.header().put(HttpStatic.CONTENT_TYPE_STRING, CONTENT_TYPE);
+            response.write(metrics());
+        } else {
+            request.getSession().close();
+        }
+    }
+
+    /**
+     * 生成 Prometheus 文本格式的指标
+     * @return 指标文本
+     */
+    public static String metrics() {
+        StringBuilder requests = new StringBuilder();
+        StringBuilder duration = new StringBuilder();
+        StringBuilder bytesIn = new StringBuilder();
+        StringBuilder bytesOut = new StringBuilder();
+
+        requests.append("# HELP voovan_http_requests_total Total HTTP requests by route and status.\n");
+        requests.append("# TYPE voovan_http_requests_total counter\n");
+        duration.append("# HELP voovan_http_request_duration_seconds HTTP request duration by route, quantiles over a sliding window.\n");
+        duration.append("# TYPE voovan_http_request_duration_seconds summary\n");
+        bytesIn.append("# HELP voovan_http_request_bytes_total Total HTTP request body bytes by route.\n");
+        bytesIn.append("# TYPE voovan_http_request_bytes_total counter\n");
+        bytesOut.append("# HELP voovan_http_response_bytes_total Total HTTP response body bytes by route.\n");
+        bytesOut.append("# TYPE voovan_http_response_bytes_total counter\n");
+
+        for(RequestAnalysis requestAnalysis : MonitorGlobal.REQUEST_ANALYSIS.values()) {
+            String route = escape(requestAnalysis.getPath());
+
+            for(Map.Entry<Integer, Long> entry : requestAnalysis.getStatusCount().entrySet()) {
+                requests.append("voovan_http_requests_total{route=\"").append(route)
+                        .append("\",status=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+            }
+
+            LatencyHistogram.Snapshot window = requestAnalysis.getLatency().getWindow();
+            for(int i = 0; i < QUANTILES.length; i++) {
+                duration.append("voovan_http_request_duration_seconds{route=\"").append(route)
+                        .append("\",quantile=\"").append(QUANTILES[i]).append("\"} ")
+                        .append(window.getPercentile(RequestAnalysis.PERCENTILES[i]) / 1000000d).append('\n');
+            }
+            LatencyHistogram.Snapshot total = requestAnalysis.getLatency().getTotal();
+            duration.append("voovan_http_request_duration_seconds_sum{route=\"").append(route).append("\"} ")
+                    .append(total.getSum() / 1000000d).append('\n');
+            duration.append("voovan_http_request_duration_seconds_count{route=\"").append(route).append("\"} ")
+                    .append(total.getCount()).append('\n');
+
+            bytesIn.append("voovan_http_request_bytes_total{route=\"").append(route).append("\"} ").append(requestAnalysis.getBytesIn()).append('\n');
+            bytesOut.append("voovan_http_response_bytes_total{route=\"").append(route).append("\"} ").append(requestAnalysis.getBytesOut()).append('\n');
+        }
+
+        StringBuilder result = new StringBuilder();
+        result.append(requests).append(duration).append(bytesIn).append(bytesOut);
+
+        result.append("# HELP voovan_jvm_memory_bytes JVM heap and non-heap memory.\n");
+        result.append("# TYPE voovan_jvm_memory_bytes gauge\n");
+        for(TPerformance.MEMTYPE memType : TPerformance.MEMTYPE.values()) {
+            result.append("voovan_jvm_memory_bytes{type=\"").append(memType.name().toLowerCase()).append("\"} ")
+                    .append(TPerformance.getJVMMemoryInfo(memType)).append('\n');
+        }
+
+        result.append("# HELP voovan_monitor_ip_addresses Tracked client IP addresses.\n");
+        result.append("# TYPE voovan_monitor_ip_addresses gauge\n");
+        result.append("voovan_monitor_ip_addresses ").append(MonitorGlobal.IP_ANALYSIS.size()).append('\n');
+
+        return result.toString();
+    }
+
+    private static String escape(String value) {
+        if(value.indexOf('\\') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -1,9 +1,15 @@
 package org.voovan.http.server.module.monitor;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 请求分析信息对象
+ *      按路由统计请求数量, 响应状态码, 收发字节数和请求时间的分布, 所有计数都不加锁
  *
  * @author helyho
  *
@@ -12,18 +18,27 @@ import java.util.concurrent.atomic.AtomicLong;
  * Licence: Apache v2 License
  */
 public class RequestAnalysis {
-    private String path;    //请求路径
-    private AtomicLong count;     //请求数量
-    private int avgTime;   //平均请求时间
-    private int maxTime;   //最大请求时间
-    private int minTime;   //最小请求时间
+    public static final double[] PERCENTILES = new double[]{0.5, 0.9, 0.99, 0.999};
+    public static final String[] PERCENTILE_NAMES = new String[]{"p50", "p90", "p99", "p999"};
+
+    private String path;                            //路由路径
+    private LongAdder count;                        //请求数量
+    private LongAccumulator maxTime;                //最大请求时间, 单位: 微秒
+    private LongAccumulator minTime;                //最小请求时间, 单位: 微秒
+    private LatencyHistogram latency;               //请求时间分布, 单位: 微秒
+    private Map<Integer, LongAdder> statusCount;    //响应状态码数量
+    private LongAdder bytesIn;                      //请求报文字节数
+    private LongAdder bytesOut;                     //响应报文字节数
 
     public RequestAnalysis(String path){
         this.path = path;
-        count = new AtomicLong(0);
-        avgTime = 0;
-        maxTime = 0;
-        minTime = 0;
+        this.count = new LongAdder();
+        this.maxTime = new LongAccumulator(Math::max, 0);
+        this.minTime = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        this.latency = new LatencyHistogram();
+        this.statusCount = new ConcurrentHashMap<Integer, LongAdder>();
+        this.bytesIn = new LongAdder();
+        this.bytesOut = new LongAdder();
     }
 
     public String getPath() {
@@ -35,47 +50,113 @@ public class RequestAnalysis {
     }
 
     public long getCount() {
-        return count.get();
+        return count.sum();
     }
 
+    /**
+     * 平均请求时间
+     * @return 平均请求时间, 单位: 毫秒
+     */
     public int getAvgTime() {
-        return avgTime;
+        return (int) (latency.getTotal().getMean() / 1000);
     }
 
+    /**
+     * 最大请求时间
+     * @return 最大请求时间, 单位: 毫秒
+     */
     public int getMaxTime() {
-        return maxTime;
+        return (int) (maxTime.get() / 1000);
     }
 
+    /**
+     * 最小请求时间
+     * @return 最小请求时间, 单位: 毫秒
+     */
     public int getMinTime() {
-        return minTime;
+        long min = minTime.get();
+        return min == Long.MAX_VALUE ? 0 : (int) (min / 1000);
     }
 
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
 
     /**
-     * 增加请求时间
-     * @param time 增加的时间参数
+     * 各个响应状态码的数量
+     * @return 状态码和数量
      */
-    public void addRequestTime(int time){
-        count.addAndGet(1);
-
-        if (avgTime == 0 ){
-            avgTime = time;
+    public Map<Integer, Long> getStatusCount() {
+        Map<Integer, Long> result = new TreeMap<Integer, Long>();
+        for(Map.Entry<Integer, LongAdder> entry : statusCount.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
         }
+        return result;
+    }
 
-        avgTime = (avgTime+time)/2;
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
 
-        if(maxTime==0){
-            maxTime = time;
-        }
-        if(minTime==0){
-            minTime = time;
-        }
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
 
-        if(maxTime<time){
-            maxTime = time;
+    /**
+     * 增加请求信息
+     * @param time 请求时间, 单位: 微秒
+     * @param status 响应状态码
+     * @param requestBytes 请求报文字节数
+     * @param responseBytes 响应报文字节数
+     */
+    public void addRequest(long time, int status, long requestBytes, long responseBytes){
+        count.increment();
+        maxTime.accumulate(time);
+        minTime.accumulate(time);
+        latency.record(time);
+
+        LongAdder statusAdder = statusCount.get(status);
+        if(statusAdder == null) {
+            statusAdder = statusCount.computeIfAbsent(status, key -> new LongAdder());
         }
-        if(minTime>time){
-            minTime = time;
+        statusAdder.increment();
+
+        bytesIn.add(requestBytes);
+        bytesOut.add(responseBytes);
+    }
+
+    /**
+     * 增加请求时间
+     * @param time 增加的时间参数, 单位: 毫秒
+     */
+    public void addRequestTime(int time){
+        addRequest(time * 1000L, 200, 0, 0);
+    }
+
+    /**
+     * 转换成用于输出的 Map
+     *      百分位数按滑动窗口计算, 单位: 毫秒
+     * @return 分析信息
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("path", path);
+        result.put("count", getCount());
+        result.put("avgTime", getAvgTime());
+        result.put("maxTime", getMaxTime());
+        result.put("minTime", getMinTime());
+
+        LatencyHistogram.Snapshot window = latency.getWindow();
+        Map<String, Object> percentiles = new LinkedHashMap<String, Object>();
+        percentiles.put("count", window.getCount());
+        for(int i = 0; i < PERCENTILES.length; i++) {
+            percentiles.put(PERCENTILE_NAMES[i], window.getPercentile(PERCENTILES[i]) / 1000d);
         }
+        result.put("window", percentiles);
+
+        result.put("status", getStatusCount());
+        result.put("bytesIn", getBytesIn());
+        result.put("bytesOut", getBytesOut());
+        return result;
     }
 }
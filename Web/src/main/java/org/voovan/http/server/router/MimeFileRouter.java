@@ -5,7 +5,8 @@ import org.voovan.http.server.HttpRequest;
 import org.voovan.http.server.HttpResponse;
 import org.voovan.http.server.HttpRouter;
 import org.voovan.http.server.MimeTools;
-import org.voovan.http.server.context.HttpsConfig;
+import org.voovan.http.server.context.WebContext;
+import org.voovan.http.server.context.WebServerConfig;
 import org.voovan.http.server.exception.ResourceNotFound;
 import org.voovan.tools.TDateTime;
 import org.voovan.tools.TFile;
@@ -30,13 +31,32 @@ import java.util.Date;
 public class MimeFileRouter implements HttpRouter {
 
 	private String	rootPath;
+	private StaticFileCache staticFileCache;
 
 	/**
 	 * 构造函数
 	 * @param rootPath 根路径
 	 */
 	public MimeFileRouter(String rootPath) {
+		this(rootPath, null);
+	}
+
+	/**
+	 * 构造函数
+	 * @param rootPath 根路径
+	 * @param staticFileCache 静态文件缓存, 为 null 时不缓存
+	 */
+	public MimeFileRouter(String rootPath, StaticFileCache staticFileCache) {
 		this.rootPath = rootPath;
+		this.staticFileCache = staticFileCache;
+	}
+
+	/**
+	 * 获取静态文件缓存
+	 * @return 静态文件缓存
+	 */
+	public StaticFileCache getStaticFileCache() {
+		return staticFileCache;
 	}
 
 	/**
@@ -59,9 +79,21 @@ public class MimeFileRouter implements HttpRouter {
 		String urlPath = request.protocol().getPath();
 		File responseFile = getStaticFile(request);
 
+		// 获取扩展名
+		String fileExtension = urlPath.substring(urlPath.lastIndexOf(".") + 1, urlPath.length());
+
+		//Range 请求直接从文件读取
+		if(staticFileCache != null && request.header().get("Range") == null) {
+			StaticFileCache.Entry entry = staticFileCache.get(responseFile);
+			if(entry != null) {
+				String mimeType = MimeTools.getMimeByFileExtension(fileExtension);
+				response.header().put(HttpStatic.CONTENT_TYPE_STRING, mimeType);
+				fillCachedFile(entry, mimeType, request, response);
+				return;
+			}
+		}
+
 		if (responseFile.exists()) {
-			// 获取扩展名
-			String fileExtension = urlPath.substring(urlPath.lastIndexOf(".") + 1, urlPath.length());
 			response.header().put(HttpStatic.CONTENT_TYPE_STRING, MimeTools.getMimeByFileExtension(fileExtension));
 
 			if(isNotModify(responseFile,request,response)){
@@ -74,6 +106,62 @@ public class MimeFileRouter implements HttpRouter {
 		}
 	}
 
+	/**
+	 * 使用缓存的文件填充 response
+	 * 		ETag 和 Last-Modified 来自缓存, 满足条件请求时直接返回 304,
+	 * 		客户端支持 gzip 时使用预压缩的内容
+	 * @param entry 缓存条目
+	 * @param mimeType 文件的 mime 类型
+	 * @param request   HTTP 请求对象
+	 * @param response  HTTP 响应对象
+	 * @throws IOException IO操作异常
+	 */
+	public void fillCachedFile(StaticFileCache.Entry entry, String mimeType, HttpRequest request, HttpResponse response) throws IOException {
+		response.header().put(HttpStatic.ETAG_STRING, entry.getETag());
+		response.header().put(HttpStatic.LAST_MODIFIED_STRING, entry.getLastModified());
+		response.header().put(HttpStatic.CACHE_CONTROL_STRING, "max-age=86400");
+		response.header().put(HttpStatic.EXPIRES_STRING,TDateTime.formatToGMT(new Date(System.currentTimeMillis()+86400*1000)));
+
+		if(entry.getETag().equals(request.header().get(HttpStatic.IF_NONE_MATCH_STRING)) ||
+				entry.getLastModified().equals(request.header().get(HttpStatic.IF_MODIFIED_SINCE_STRING))) {
+			setNotModifyResponse(response);
+			return;
+		}
+
+		if(isGzipAccepted(entry, mimeType, request)) {
+			response.header().put(HttpStatic.CONTENT_ENCODING_STRING, HttpStatic.GZIP_STRING);
+			response.header().put(HttpStatic.VARY_STRING, HttpStatic.ACCEPT_ENCODING_STRING);
+			response.body().write(staticFileCache.getGzipBytes(entry));
+		} else {
+			response.body().write(entry.getBytes());
+		}
+	}
+
+	/**
+	 * 判断是否使用预压缩的内容响应
+	 * @param entry 缓存条目
+	 * @param mimeType 文件的 mime 类型
+	 * @param request   HTTP 请求对象
+	 * @return true: 使用 gzip 内容, false: 使用原始内容
+	 */
+	private boolean isGzipAccepted(StaticFileCache.Entry entry, String mimeType, HttpRequest request) {
+		WebServerConfig webConfig = WebContext.getWebServerConfig();
+		String acceptEncoding = request.header().get(HttpStatic.ACCEPT_ENCODING_STRING);
+
+		if(!webConfig.isGzip() || acceptEncoding == null || !acceptEncoding.contains(HttpStatic.GZIP_STRING) ||
+				entry.getBytes().length <= webConfig.getGzipMinSize() || mimeType == null) {
+			return false;
+		}
+
+		for(String gzipMimeType : webConfig.getGzipMimeType()){
+			if(mimeType.contains(gzipMimeType)){
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * 判断是否是304 not modify
 	 * @param responseFile   响应文件
@@ -0,0 +1,300 @@
+package org.voovan.http.server.router;
+
+import org.voovan.tools.TDateTime;
+import org.voovan.tools.TFile;
+import org.voovan.tools.TString;
+import org.voovan.tools.TZip;
+import org.voovan.tools.log.Logger;
+import org.voovan.tools.security.THash;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 静态文件缓存
+ *      按字节数限制容量, 缓存文件的原始内容和 gzip 压缩后的内容,
+ *      ETag 和 Last-Modified 只在加载时计算一次, 通过 WatchService 监听文件变化并失效缓存.
+ *      超过容量时按 CLOCK 算法淘汰: 命中时只设置访问标记, 不加锁; 淘汰时从最早加入的条目开始,
+ *      有访问标记的条目清除标记后移到队尾, 没有访问标记的条目被淘汰.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class StaticFileCache {
+
+	private Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	//CLOCK 队列, 按加入的顺序排列, 缓存的修改都在它的锁中进行
+	private LinkedHashMap<String, Entry> clock = new LinkedHashMap<String, Entry>();
+	//失效的次数, 加载期间发生过失效时不缓存加载的内容
+	private long invalidations = 0;
+	private Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+	private AtomicLong totalSize = new AtomicLong(0);
+	private long maxSize;
+	private long maxFileSize;
+	private WatchService watchService;
+
+	/**
+	 * 缓存条目
+	 */
+	public static class Entry {
+		private String path;
+		private byte[] bytes;
+		private volatile byte[] gzipBytes;
+		private String eTag;
+		private String lastModified;
+		private long modifyTime;
+		private volatile boolean referenced;
+
+		private Entry(File file, long modifyTime, byte[] bytes) {
+			Date fileModifyDate = new Date(modifyTime);
+
+			this.path = file.getAbsolutePath();
+			this.bytes = bytes;
+			this.eTag = TString.assembly("\"", THash.encryptMD5(Integer.toString(file.hashCode()+fileModifyDate.hashCode())).toUpperCase(), "\"");
+			this.lastModified = TDateTime.formatToGMT(fileModifyDate);
+			this.modifyTime = modifyTime;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		private long size() {
+			byte[] gzip = gzipBytes;
+			return bytes.length + (gzip == null ? 0 : gzip.length);
+		}
+	}
+
+	/**
+	 * 构造函数
+	 * @param maxSize 缓存的最大字节数
+	 * @param maxFileSize 可缓存的单个文件的最大字节数
+	 */
+	public StaticFileCache(long maxSize, long maxFileSize) {
+		this.maxSize = maxSize;
+		this.maxFileSize = maxFileSize;
+
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			Thread watchThread = new Thread(this::watch, "StaticFileCacheWatcher");
+			watchThread.setDaemon(true);
+			watchThread.start();
+		} catch (IOException e) {
+			watchService = null;
+			Logger.warn("StaticFileCache create WatchService failed, file changes will be checked by modify time", e);
+		}
+	}
+
+	/**
+	 * 获取缓存的文件
+	 * @param file 文件对象
+	 * @return 缓存条目, 文件不存在或者超过可缓存的大小返回 null
+	 */
+	public Entry get(File file) {
+		String path = file.getAbsolutePath();
+		Entry entry = entries.get(path);
+
+		//没有 WatchService 时通过修改时间检查文件是否变化
+		if(entry != null && watchService == null && entry.modifyTime != file.lastModified()) {
+			invalidate(path);
+			entry = null;
+		}
+
+		if(entry == null) {
+			return load(file);
+		}
+
+		if(!entry.referenced) {
+			entry.referenced = true;
+		}
+
+		return entry;
+	}
+
+	/**
+	 * 获取 gzip 压缩后的内容, 首次获取时压缩
+	 * @param entry 缓存条目
+	 * @return gzip 压缩后的内容
+	 * @throws IOException IO 异常
+	 */
+	public byte[] getGzipBytes(Entry entry) throws IOException {
+		byte[] gzipBytes = entry.gzipBytes;
+		if(gzipBytes == null) {
+			synchronized (entry) {
+				gzipBytes = entry.gzipBytes;
+				if(gzipBytes == null) {
+					gzipBytes = TZip.encodeGZip(entry.bytes);
+					synchronized (clock) {
+						entry.gzipBytes = gzipBytes;
+						//条目仍在缓存中才计入容量
+						if(entries.get(entry.path) == entry) {
+							totalSize.addAndGet(gzipBytes.length);
+							evict(null);
+						}
+					}
+				}
+			}
+		}
+		return gzipBytes;
+	}
+
+	/**
+	 * 使缓存失效
+	 * @param path 文件路径
+	 */
+	public void invalidate(String path) {
+		synchronized (clock) {
+			invalidations++;
+			Entry entry = entries.remove(path);
+			if(entry != null) {
+				clock.remove(path);
+				totalSize.addAndGet(-entry.size());
+			}
+		}
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public void clear() {
+		for(String path : entries.keySet()) {
+			invalidate(path);
+		}
+	}
+
+	/**
+	 * 获取缓存的总字节数
+	 * @return 缓存的总字节数
+	 */
+	public long size() {
+		return totalSize.get();
+	}
+
+	/**
+	 * 加载文件并加入缓存
+	 *      加载前后文件的修改时间或大小不一致时不缓存, 加载期间发生过失效时只返回内容不缓存,
+	 *      避免把修改前的内容放入已经失效过的缓存
+	 * @param file 文件对象
+	 * @return 缓存条目, 文件不存在, 超过可缓存的大小或者加载期间被修改返回 null
+	 */
+	private Entry load(File file) {
+		long modifyTime = file.lastModified();
+		long length = file.length();
+		if(!file.isFile() || length > maxFileSize) {
+			return null;
+		}
+
+		watchDir(file);
+
+		long version;
+		synchronized (clock) {
+			version = invalidations;
+		}
+
+		byte[] bytes = TFile.loadFile(file);
+		if(bytes == null || bytes.length != length || file.lastModified() != modifyTime) {
+			return null;
+		}
+
+		Entry entry = new Entry(file, modifyTime, bytes);
+		synchronized (clock) {
+			if(invalidations != version) {
+				return entry;
+			}
+
+			Entry oldEntry = entries.put(entry.path, entry);
+			if(oldEntry != null) {
+				clock.remove(entry.path);
+				totalSize.addAndGet(-oldEntry.size());
+			}
+			clock.put(entry.path, entry);
+			totalSize.addAndGet(entry.size());
+			evict(entry);
+		}
+
+		return entry;
+	}
+
+	/**
+	 * 超过容量时按 CLOCK 算法淘汰条目, 需要在 clock 的锁中调用
+	 * @param added 刚加入的条目, 还有其他条目时不淘汰
+	 */
+	private void evict(Entry added) {
+		while(totalSize.get() > maxSize && !clock.isEmpty()) {
+			Entry entry = clock.values().iterator().next();
+			clock.remove(entry.path);
+
+			if(entry.referenced || (entry == added && !clock.isEmpty())) {
+				//访问过的条目获得第二次机会
+				entry.referenced = false;
+				clock.put(entry.path, entry);
+			} else {
+				entries.remove(entry.path, entry);
+				totalSize.addAndGet(-entry.size());
+			}
+		}
+	}
+
+	private void watchDir(File file) {
+		if(watchService == null) {
+			return;
+		}
+
+		Path dir = file.getAbsoluteFile().getParentFile().toPath();
+		if(watchedDirs.add(dir)) {
+			try {
+				dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			} catch (IOException e) {
+				watchedDirs.remove(dir);
+				Logger.error("StaticFileCache watch dir " + dir + " failed", e);
+			}
+		}
+	}
+
+	/**
+	 * 监听文件变化, 文件被修改或删除时失效对应的缓存
+	 */
+	private void watch() {
+		while(true) {
+			WatchKey watchKey;
+			try {
+				watchKey = watchService.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			Path dir = (Path) watchKey.watchable();
+			for(WatchEvent<?> event : watchKey.pollEvents()) {
+				if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					clear();
+					continue;
+				}
+
+				invalidate(dir.resolve((Path) event.context()).toString());
+			}
+
+			if(!watchKey.reset()) {
+				watchedDirs.remove(dir);
+			}
+		}
+	}
+}
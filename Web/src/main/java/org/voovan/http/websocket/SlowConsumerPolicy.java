@@ -0,0 +1,33 @@
+package org.voovan.http.websocket;
+
+/**
+ * WebSocket 广播消息积压时的处理策略
+ *      DROP: 丢弃新的消息
+ *      COALESCE: 丢弃最旧的消息, 只保留最新的消息
+ *      DISCONNECT: 断开连接
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public enum SlowConsumerPolicy {
+    DROP, COALESCE, DISCONNECT;
+
+    /**
+     * 解析处理策略
+     * @param name 策略名称, 不区分大小写
+     * @return 处理策略, 无法解析时返回 DROP
+     */
+    public static SlowConsumerPolicy parse(String name) {
+        if(name != null) {
+            for (SlowConsumerPolicy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name.trim())) {
+                    return policy;
+                }
+            }
+        }
+
+        return DROP;
+    }
+}
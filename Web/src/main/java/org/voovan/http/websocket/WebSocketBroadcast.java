@@ -0,0 +1,59 @@
+package org.voovan.http.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * WebSocket 广播消息
+ *      消息只编码一次, 帧只构造一次, 保存在共享的只读缓冲区中, 每个接收者发送的是它的 duplicate.
+ *      协商了 permessage-deflate 并且服务端不保持压缩上下文的接收者共享一个压缩帧,
+ *      其他接收者使用未压缩的帧, RFC 7692 允许每个消息单独选择是否压缩, 不会影响连接的压缩上下文.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WebSocketBroadcast {
+    private WebSocketFrame.Opcode opcode;
+    private ByteBuffer data;
+    private ByteBuffer frame;
+    private volatile ByteBuffer deflateFrame;
+
+    /**
+     * 构造函数
+     * @param opcode 帧类型, TEXT 或 BINARY
+     * @param data 编码后的消息数据, 广播期间不能修改
+     */
+    public WebSocketBroadcast(WebSocketFrame.Opcode opcode, ByteBuffer data) {
+        this.opcode = opcode;
+        this.data = data;
+        this.frame = WebSocketFrame.newInstance(true, opcode, false, data).toByteBuffer().asReadOnlyBuffer();
+    }
+
+    public WebSocketFrame.Opcode getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * 获取发送给接收者的帧
+     * @param webSocketDeflate 接收者的压缩上下文, 没有协商压缩时为 null
+     * @return 帧数据, 每次调用返回一个新的 duplicate
+     */
+    public ByteBuffer getFrame(WebSocketDeflate webSocketDeflate) {
+        if(webSocketDeflate == null || !webSocketDeflate.isSharedDeflate() || data.remaining() < webSocketDeflate.getMinSize()) {
+            return frame.duplicate();
+        }
+
+        if(deflateFrame == null) {
+            synchronized (this) {
+                if(deflateFrame == null) {
+                    WebSocketFrame webSocketFrame = WebSocketFrame.newInstance(true, opcode, false, WebSocketDeflate.deflateMessage(data));
+                    webSocketFrame.setCompressed(true);
+                    deflateFrame = webSocketFrame.toByteBuffer().asReadOnlyBuffer();
+                }
+            }
+        }
+
+        return deflateFrame.duplicate();
+    }
+}
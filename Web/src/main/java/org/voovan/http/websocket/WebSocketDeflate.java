@@ -0,0 +1,397 @@
+package org.voovan.http.websocket;
+
+import org.voovan.network.IoSession;
+import org.voovan.tools.buffer.ByteBufferChannel;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * WebSocket permessage-deflate 扩展 (RFC 7692)
+ * 		每个连接持有独立的 Deflater/Inflater 上下文, 在协商允许的情况下跨消息复用压缩字典(context takeover).
+ * 		java.util.zip 只支持 15 位的压缩窗口, 所以拒绝要求本端压缩窗口小于 15 位的协商, 解压时 15 位的窗口兼容对端任意大小的窗口.
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WebSocketDeflate {
+	public static final String EXTENSION_NAME = "permessage-deflate";
+	public static final int DEFAULT_MIN_SIZE = 256;
+
+	private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+	private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+	private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+	private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+	private static final int MAX_WINDOW_BITS = 15;
+
+	//压缩数据块以 SYNC_FLUSH 产生的 00 00 FF FF 结尾, 发送时去掉, 接收时补上
+	private static final byte[] DEFLATE_TAIL = new byte[]{0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+	private boolean server;
+	private boolean serverNoContextTakeover = false;
+	private boolean clientNoContextTakeover = false;
+	private int serverMaxWindowBits = -1;
+	private int minSize;
+	private int maxMessageSize;
+
+	private Deflater deflater;
+	private Inflater inflater;
+	//发送和接收在不同的线程中进行, 各自使用独立的缓冲区
+	private byte[] deflateInput = new byte[1024];
+	private byte[] deflateOutput = new byte[1024];
+	private byte[] inflateInput = new byte[1024];
+	private byte[] inflateOutput = new byte[8192];
+
+	//正在接收的分片消息是否是压缩的
+	private boolean messageCompressed = false;
+	private long messageSize = 0;
+
+	private WebSocketDeflate(boolean server, int minSize, int maxMessageSize) {
+		this.server = server;
+		this.minSize = minSize;
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * 服务端处理客户端的扩展协商请求
+	 * 		选择第一个可以接受的 permessage-deflate 请求
+	 * @param extensions 请求头 Sec-WebSocket-Extensions 的值
+	 * @param minSize 压缩的最小字节数, 小于这个值的消息不压缩
+	 * @param maxMessageSize 解压后消息的最大字节数, 小于等于 0 不限制
+	 * @return 协商成功返回压缩上下文, 否则返回 null
+	 */
+	public static WebSocketDeflate accept(String extensions, int minSize, int maxMessageSize) {
+		if(extensions == null) {
+			return null;
+		}
+
+		for(String offer : extensions.split(",")) {
+			WebSocketDeflate webSocketDeflate = new WebSocketDeflate(true, minSize, maxMessageSize);
+			if(webSocketDeflate.parse(offer, true)) {
+				return webSocketDeflate;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * 客户端的扩展协商请求
+	 * 		不携带 client_max_window_bits, 服务端因此不能限制客户端的压缩窗口
+	 * @return 请求头 Sec-WebSocket-Extensions 的值
+	 */
+	public static String offer() {
+		return EXTENSION_NAME;
+	}
+
+	/**
+	 * 客户端处理服务端的扩展协商响应
+	 * @param extensions 响应头 Sec-WebSocket-Extensions 的值
+	 * @param minSize 压缩的最小字节数, 小于这个值的消息不压缩
+	 * @param maxMessageSize 解压后消息的最大字节数, 小于等于 0 不限制
+	 * @return 协商成功返回压缩上下文, 服务端没有接受扩展或响应无效时返回 null
+	 */
+	public static WebSocketDeflate negotiate(String extensions, int minSize, int maxMessageSize) {
+		if(extensions == null) {
+			return null;
+		}
+
+		WebSocketDeflate webSocketDeflate = new WebSocketDeflate(false, minSize, maxMessageSize);
+		return webSocketDeflate.parse(extensions, false) ? webSocketDeflate : null;
+	}
+
+	/**
+	 * 解析一个扩展协商参数
+	 * @param extension 扩展的描述, 例如: permessage-deflate; client_max_window_bits
+	 * @param offer true: 客户端的请求, false: 服务端的响应
+	 * @return true: 可以接受, false: 不能接受
+	 */
+	private boolean parse(String extension, boolean offer) {
+		String[] params = extension.split(";");
+		if(!EXTENSION_NAME.equalsIgnoreCase(params[0].trim())) {
+			return false;
+		}
+
+		boolean clientMaxWindowBits = false;
+		for(int i = 1; i < params.length; i++) {
+			String param = params[i].trim();
+			String value = null;
+			int index = param.indexOf('=');
+			if(index > 0) {
+				value = param.substring(index + 1).trim();
+				if(value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+					value = value.substring(1, value.length() - 1);
+				}
+				param = param.substring(0, index).trim();
+			}
+
+			if(SERVER_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(param) && value == null && !serverNoContextTakeover) {
+				serverNoContextTakeover = true;
+			} else if(CLIENT_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(param) && value == null && !clientNoContextTakeover) {
+				clientNoContextTakeover = true;
+			} else if(SERVER_MAX_WINDOW_BITS.equalsIgnoreCase(param) && serverMaxWindowBits < 0) {
+				serverMaxWindowBits = parseWindowBits(value);
+				//服务端压缩窗口只能是 15 位, 响应中可以是任意有效值, 解压时兼容
+				if(serverMaxWindowBits < 0 || (offer && serverMaxWindowBits < MAX_WINDOW_BITS)) {
+					return false;
+				}
+			} else if(CLIENT_MAX_WINDOW_BITS.equalsIgnoreCase(param) && !clientMaxWindowBits) {
+				//客户端的请求中可以不带值, 响应中包含这个参数时客户端需要使用更小的压缩窗口, 无法满足
+				if(!offer || (value != null && parseWindowBits(value) < 0)) {
+					return false;
+				}
+				clientMaxWindowBits = true;
+			} else {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static int parseWindowBits(String value) {
+		if(value == null || value.isEmpty() || value.length() > 2) {
+			return -1;
+		}
+
+		for(int i = 0; i < value.length(); i++) {
+			if(!Character.isDigit(value.charAt(i))) {
+				return -1;
+			}
+		}
+
+		int windowBits = Integer.parseInt(value);
+		return windowBits >= 8 && windowBits <= MAX_WINDOW_BITS ? windowBits : -1;
+	}
+
+	/**
+	 * 服务端接受协商时的响应
+	 * @return 响应头 Sec-WebSocket-Extensions 的值
+	 */
+	public String response() {
+		StringBuilder stringBuilder = new StringBuilder(EXTENSION_NAME);
+		if(serverNoContextTakeover) {
+			stringBuilder.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+		}
+
+		if(clientNoContextTakeover) {
+			stringBuilder.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+		}
+
+		if(serverMaxWindowBits > 0) {
+			stringBuilder.append("; ").append(SERVER_MAX_WINDOW_BITS).append('=').append(serverMaxWindowBits);
+		}
+
+		return stringBuilder.toString();
+	}
+
+	private boolean isLocalNoContextTakeover() {
+		return server ? serverNoContextTakeover : clientNoContextTakeover;
+	}
+
+	private boolean isRemoteNoContextTakeover() {
+		return server ? clientNoContextTakeover : serverNoContextTakeover;
+	}
+
+	private static byte[] toBytes(ByteBuffer data, byte[] bytes) {
+		int length = data.remaining();
+		if(bytes.length < length) {
+			bytes = new byte[length];
+		}
+
+		data.duplicate().get(bytes, 0, length);
+		return bytes;
+	}
+
+	/**
+	 * 发送 WebSocket 帧
+	 * 		达到压缩大小的文本和二进制消息压缩后发送, 压缩和写入发送缓冲区在同一个锁内完成, 保证压缩上下文和发送顺序一致
+	 * @param session socket 会话对象
+	 * @param webSocketFrame WebSocket 帧
+	 */
+	public synchronized void send(IoSession session, WebSocketFrame webSocketFrame) {
+		ByteBuffer data = webSocketFrame.getFrameData();
+		WebSocketFrame.Opcode opcode = webSocketFrame.getOpcode();
+
+		if(!webSocketFrame.isFin() || data == null || data.remaining() == 0 || data.remaining() < minSize ||
+				(opcode != WebSocketFrame.Opcode.TEXT && opcode != WebSocketFrame.Opcode.BINARY)) {
+			webSocketFrame.send(session);
+			return;
+		}
+
+		WebSocketFrame deflateFrame = WebSocketFrame.newInstance(true, opcode, webSocketFrame.isTransfereMask(), deflate(data));
+		deflateFrame.setCompressed(true);
+		deflateFrame.send(session);
+	}
+
+	/**
+	 * 压缩一个完整的消息
+	 * @param data 消息数据, position 不会改变
+	 * @return 压缩后的数据, 在下一次压缩前有效
+	 */
+	private ByteBuffer deflate(ByteBuffer data) {
+		if(deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		}
+
+		int length = data.remaining();
+		deflateInput = toBytes(data, deflateInput);
+		deflater.setInput(deflateInput, 0, length);
+
+		ByteBuffer result = deflate(deflater, deflateOutput);
+		deflateOutput = result.array();
+
+		if(isLocalNoContextTakeover()) {
+			deflater.reset();
+		}
+
+		return result;
+	}
+
+	private static ByteBuffer deflate(Deflater deflater, byte[] output) {
+		int outputLength = 0;
+		while(true) {
+			if(output.length - outputLength < 16) {
+				byte[] newOutput = new byte[output.length * 2];
+				System.arraycopy(output, 0, newOutput, 0, outputLength);
+				output = newOutput;
+			}
+
+			int deflateSize = deflater.deflate(output, outputLength, output.length - outputLength, Deflater.SYNC_FLUSH);
+			outputLength = outputLength + deflateSize;
+
+			//输出缓冲区没有填满说明已经刷出全部数据
+			if(outputLength < output.length) {
+				break;
+			}
+		}
+
+		if(outputLength >= 4 && output[outputLength - 4] == 0x00 && output[outputLength - 3] == 0x00 &&
+				output[outputLength - 2] == (byte) 0xFF && output[outputLength - 1] == (byte) 0xFF) {
+			outputLength = outputLength - 4;
+		}
+
+		return ByteBuffer.wrap(output, 0, outputLength);
+	}
+
+	/**
+	 * 使用独立的压缩上下文压缩一个完整的消息
+	 * 		本端不保持压缩上下文的连接, 每个消息的压缩结果只和消息本身有关, 同一个消息的压缩结果可以在这些连接间共享
+	 * @param data 消息数据, position 不会改变
+	 * @return 压缩后的数据
+	 */
+	public static ByteBuffer deflateMessage(ByteBuffer data) {
+		Deflater messageDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			int length = data.remaining();
+			messageDeflater.setInput(toBytes(data, new byte[length]), 0, length);
+			return deflate(messageDeflater, new byte[Math.max(64, length / 2)]);
+		} finally {
+			messageDeflater.end();
+		}
+	}
+
+	/**
+	 * 是否可以发送共享的压缩帧
+	 * @return true: 本端不保持压缩上下文, 可以发送 deflateMessage 压缩的帧
+	 */
+	public boolean isSharedDeflate() {
+		return isLocalNoContextTakeover();
+	}
+
+	/**
+	 * 压缩的最小字节数
+	 * @return 压缩的最小字节数
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * 开始接收一个消息
+	 * @param compressed 消息的第一个帧是否设置了 RSV1
+	 */
+	public void beginMessage(boolean compressed) {
+		messageCompressed = compressed;
+		messageSize = 0;
+	}
+
+	/**
+	 * 正在接收的消息是否是压缩的
+	 * @return true: 压缩的, false: 未压缩的
+	 */
+	public boolean isMessageCompressed() {
+		return messageCompressed;
+	}
+
+	/**
+	 * 解压消息的一个分片, 解压后的数据追加到消息缓冲区
+	 * @param data 分片的数据
+	 * @param fin 是否是消息的最后一个分片
+	 * @param byteBufferChannel 消息缓冲区
+	 * @return true: 成功, false: 消息超过最大字节数
+	 * @throws DataFormatException 压缩数据格式错误
+	 */
+	public boolean inflate(ByteBuffer data, boolean fin, ByteBufferChannel byteBufferChannel) throws DataFormatException {
+		if(inflater == null) {
+			inflater = new Inflater(true);
+		}
+
+		int length = data.remaining();
+		if(length > 0) {
+			inflateInput = toBytes(data, inflateInput);
+			if(!inflate(inflateInput, length, byteBufferChannel)) {
+				return false;
+			}
+		}
+
+		if(fin) {
+			if(!inflate(DEFLATE_TAIL, DEFLATE_TAIL.length, byteBufferChannel)) {
+				return false;
+			}
+
+			messageCompressed = false;
+			if(isRemoteNoContextTakeover()) {
+				inflater.reset();
+			}
+		}
+
+		return true;
+	}
+
+	private boolean inflate(byte[] input, int length, ByteBufferChannel byteBufferChannel) throws DataFormatException {
+		inflater.setInput(input, 0, length);
+		while(true) {
+			int inflateSize = inflater.inflate(inflateOutput);
+			if(inflateSize > 0) {
+				messageSize = messageSize + inflateSize;
+				if(maxMessageSize > 0 && messageSize > maxMessageSize) {
+					return false;
+				}
+				byteBufferChannel.writeEnd(inflateOutput, 0, inflateSize);
+			} else if(inflater.needsInput() || inflater.finished() || inflater.needsDictionary()) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 释放压缩上下文
+	 */
+	public synchronized void release() {
+		if(deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+
+		if(inflater != null) {
+			inflater.end();
+			inflater = null;
+		}
+	}
+}
@@ -1,11 +1,13 @@
 package org.voovan.http.websocket;
 
+import org.voovan.network.IoSession;
+import org.voovan.tools.buffer.ByteBufferChannel;
 import org.voovan.tools.buffer.TByteBuffer;
 import org.voovan.tools.log.Logger;
 
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
-import java.util.Random;
+import java.nio.ByteOrder;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * WebSocket帧解析类
@@ -20,6 +22,7 @@ public class WebSocketFrame {
 	private boolean		fin;
 	private Opcode		opcode;
 	private boolean		transfereMask;
+	private boolean		compressed;
 	private ByteBuffer	frameData;
 	private int errorCode = 0;
 
@@ -55,6 +58,18 @@ public class WebSocketFrame {
 		this.transfereMask = transfereMask;
 	}
 
+	/**
+	 * 是否是 permessage-deflate 压缩的消息(RSV1)
+	 * @return true: 压缩的, false: 未压缩的
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
 	public ByteBuffer getFrameData() {
 		return frameData;
 	}
@@ -99,8 +114,51 @@ public class WebSocketFrame {
 		return webSocketFrame;
 	}
 
+	/**
+	 * 计算缓冲区中第一个 WebSocket 帧的长度
+	 *      只读取帧头, 不改变缓冲区的 position
+	 *
+	 * @param byteBuffer 字节缓冲对象
+	 * @return 帧的长度(帧头 + 掩码 + 负载), -1: 帧头不完整, -2: 负载长度超出 int 范围
+	 */
+	public static long frameLength(ByteBuffer byteBuffer) {
+		int position = byteBuffer.position();
+		int remaining = byteBuffer.remaining();
+		if (remaining < 2) {
+			return -1;
+		}
+
+		byte maskByte = byteBuffer.get(position + 1);
+		int headerLength = 2 + ((maskByte & 0x80) != 0 ? 4 : 0);
+		long payloadLength = maskByte & 0x7F;
+
+		//“负载数据”的长度,以字节为单位:如果 0-125,这是负载长度。
+		//如果 126, 之后的两字节解释为一个 16 位的无符号整数是负载长度。
+		//如果 127,之后的 8￼字节解释为一个 64 位的无符号整数(最高有效位必须是 0)是负载长度。
+		if (payloadLength == 126) {
+			headerLength += 2;
+			if (remaining < 4) {
+				return -1;
+			}
+			payloadLength = byteBuffer.getShort(position + 2) & 0xFFFF;
+		} else if (payloadLength == 127) {
+			headerLength += 8;
+			if (remaining < 10) {
+				return -1;
+			}
+			payloadLength = byteBuffer.getLong(position + 2);
+			if (payloadLength < 0 || payloadLength > Integer.MAX_VALUE - headerLength) {
+				return -2;
+			}
+		}
+
+		return headerLength + payloadLength;
+	}
+
 	/**
 	 * 解析WebSocket报文
+	 *      带掩码的负载在缓冲区中原地解码, 帧数据是 byteBuffer 的切片, 不复制负载.
+	 *      帧数据只在当前帧的处理过程中有效, 需要保留时应自行复制.
 	 *
 	 * @param byteBuffer  字节缓冲对象
 	 * @return  WebSocket 帧对象
@@ -112,77 +170,93 @@ public class WebSocketFrame {
 			return null;
 		}
 
-		int errorCode = 0;
-		// 接受数据的大小
-		int maxpacketsize = byteBuffer.remaining();
-		// 期望数据包的实际大小
-		int expectPackagesize = 2;
-		if (maxpacketsize < expectPackagesize) {
-			Logger.error("Expect package size error!");
-			errorCode = 1002;
+		int position = byteBuffer.position();
+		long frameLength = frameLength(byteBuffer);
+
+		// 如果实际接受的数据小于数据包的大小则报错
+		if (frameLength < 0 || byteBuffer.remaining() < frameLength) {
+			Logger.error("Parse package size error!");
+			byteBuffer.position(byteBuffer.limit());
+			return WebSocketFrame.newInstance(false, null, false, TByteBuffer.EMPTY_BYTE_BUFFER, 1002);
 		}
-		byte finByte = byteBuffer.get();
-		boolean fin = finByte >> 8 != 0;
-		byte rsv = (byte) ((finByte & ~(byte) 128) >> 4);
-		if (rsv != 0) {
+
+		int errorCode = 0;
+		byte finByte = byteBuffer.get(position);
+		boolean fin = (finByte & 0x80) != 0;
+		//RSV1 用于 permessage-deflate, 是否协商了扩展由连接处理
+		boolean compressed = (finByte & 0x40) != 0;
+		if ((finByte & 0x30) != 0) {
 			Logger.error("RSV data error!");
 			errorCode = 1002;
 		}
-		byte maskByte = byteBuffer.get();
-		boolean mask = (maskByte & -128) != 0;
-		int payloadlength = (byte) (maskByte & ~(byte) 128);
-		Opcode opcode = toOpcode((byte) (finByte & 15));
 
+		Opcode opcode = toOpcode((byte) (finByte & 15));
 		if(opcode == null){
 			Logger.error("Opcode data error!");
 			errorCode = 1002;
 		}
-		//“负载数据”的长度,以字节为单位:如果 0-125,这是负载长度。
-		//如果 126, 之后的两字节解释为一个 16 位的无符号整数是负载长度。
-		//如果 127,之后的 8￼字节解释为一个 64 位的无符号整数(最高有效位必须是 0)是负载长度。
-		if (payloadlength == 126) {
-			expectPackagesize += 2;
-			byte[] sizebytes = new byte[3];
-			sizebytes[1] = byteBuffer.get();
-			sizebytes[2] = byteBuffer.get();
-			payloadlength = new BigInteger(sizebytes).intValue();
-		} else if(payloadlength==127) {
-			expectPackagesize += 8;
-			byte[] bytes = new byte[8];
-			for (int i = 0; i < 8; i++) {
-				bytes[i] = byteBuffer.get();
-			}
-			long length = new BigInteger(bytes).longValue();
-			if (length <= Integer.MAX_VALUE) {
-				payloadlength = (int) length;
-			}
-		}
-
 
-		expectPackagesize += (mask ? 4 : 0);
-		expectPackagesize += payloadlength;
-
-		// 如果实际接受的数据小于数据包的大小则报错
-		if (maxpacketsize < expectPackagesize) {
-			Logger.error("Parse package size error!");
+		byte maskByte = byteBuffer.get(position + 1);
+		boolean mask = (maskByte & 0x80) != 0;
+		int payloadLength = maskByte & 0x7F;
+		int payloadPosition = position + 2;
+		if (payloadLength == 126) {
+			payloadPosition += 2;
+		} else if (payloadLength == 127) {
+			payloadPosition += 8;
 		}
 
-		// 读取实际接受数据
-		ByteBuffer payload = ByteBuffer.allocateDirect(payloadlength);
+		int frameEnd = position + (int) frameLength;
 		if (mask) {
-			byte[] maskskey = new byte[4];
-			byteBuffer.get(maskskey);
-			for (int i = 0; i < payloadlength; i++) {
-				payload.put((byte) ((byte) byteBuffer.get() ^ (byte) maskskey[i % 4]));
-			}
-		} else {
-			payload.put(byteBuffer);
+			int maskKey = byteBuffer.getInt(payloadPosition);
+			payloadPosition += 4;
+			mask(byteBuffer, payloadPosition, frameEnd - payloadPosition, maskKey);
 		}
-		payload.flip();
+
+		// 负载为接收缓冲区的切片
+		int oldLimit = byteBuffer.limit();
+		byteBuffer.position(payloadPosition);
+		byteBuffer.limit(frameEnd);
+		ByteBuffer payload = byteBuffer.slice();
+		byteBuffer.limit(oldLimit);
+		byteBuffer.position(frameEnd);
+
 		WebSocketFrame webSocketFrame = WebSocketFrame.newInstance(fin, opcode, mask, payload, errorCode);
+		webSocketFrame.setCompressed(compressed);
 		return webSocketFrame;
 	}
 
+	/**
+	 * 对缓冲区中的数据原地进行掩码运算(掩码和解码是相同的异或运算)
+	 *      按 8 字节一组进行异或, 剩余不足 8 字节的部分逐字节处理
+	 *
+	 * @param byteBuffer 字节缓冲对象
+	 * @param offset 数据在缓冲区中的起始位置
+	 * @param length 数据长度
+	 * @param maskKey 掩码, 按网络字节序读取的 4 字节
+	 */
+	public static void mask(ByteBuffer byteBuffer, int offset, int length, int maskKey) {
+		if(length <= 0) {
+			return;
+		}
+
+		long longMask = ((long) maskKey << 32) | (maskKey & 0xFFFFFFFFL);
+		if (byteBuffer.order() != ByteOrder.BIG_ENDIAN) {
+			longMask = Long.reverseBytes(longMask);
+		}
+
+		int end = offset + length;
+		int index = offset;
+		for (; index + 8 <= end; index += 8) {
+			byteBuffer.putLong(index, byteBuffer.getLong(index) ^ longMask);
+		}
+
+		for (; index < end; index++) {
+			int shift = 24 - ((index - offset) & 3) * 8;
+			byteBuffer.put(index, (byte) (byteBuffer.get(index) ^ (maskKey >>> shift)));
+		}
+	}
+
 	/**
 	 * 类型枚举
 	 *
@@ -248,24 +322,47 @@ public class WebSocketFrame {
 	}
 
 	/**
-	 * 转换 long 为 byte
-	 *
-	 * @param value     long 值
-	 * @param bytecount 字节位数
-	 * @return 转换 long 后的 byte
+	 * 帧头的长度
+	 * @param payloadLength 负载长度
+	 * @param mask 是否使用掩码
+	 * @return 帧头的长度
+	 */
+	private static int headerLength(int payloadLength, boolean mask) {
+		int headerLength = payloadLength <= 125 ? 2 : payloadLength <= 65535 ? 4 : 10;
+		return headerLength + (mask ? 4 : 0);
+	}
+
+	/**
+	 * 将帧头写入缓冲区
+	 * @param buf 目标缓冲区
+	 * @param payloadLength 负载长度
+	 * @param maskKey 掩码, 不使用掩码时忽略
 	 */
-	private static byte[] toByteArray(long value, int bytecount) {
-		byte[] buffer = new byte[bytecount];
-		int highest = 8 * bytecount - 8;
-		for (int i = 0; i < bytecount; i++) {
-			buffer[i] = (byte) (value >>> (highest - 8 * i));
+	private void writeHeader(ByteBuffer buf, int payloadLength, int maskKey) {
+		byte one = (byte) (this.isFin() ? -128 : 0);
+		one |= compressed ? 0x40 : 0;
+		one |= fromOpcode(this.getOpcode());
+		buf.put(one);
+
+		byte maskBit = transfereMask ? (byte) -128 : 0;
+		if (payloadLength <= 125) {
+			buf.put((byte) (payloadLength | maskBit));
+		} else if (payloadLength <= 65535) {
+			buf.put((byte) (126 | maskBit));
+			buf.putShort((short) payloadLength);
+		} else {
+			buf.put((byte) (127 | maskBit));
+			buf.putLong(payloadLength);
+		}
+
+		if (transfereMask) {
+			buf.putInt(maskKey);
 		}
-		return buffer;
 	}
 
 	/**
 	 * 将 WebSocketFrame 转换成 Bytebuffer 供 socket 通信用
-	 *
+	 *      帧数据的 position 不会改变
 	 *
 	 * @return WebSocketFrame 转换后的 Bytebuffer
 	 */
@@ -274,39 +371,16 @@ public class WebSocketFrame {
 		if(data == null){
 			data = TByteBuffer.EMPTY_BYTE_BUFFER;
 		}
-		boolean mask = this.isTransfereMask();
-		int sizebytes = data.remaining() <= 125 ? 1 : data.remaining() <= 65535 ? 2 : 8;
-		ByteBuffer buf = ByteBuffer.allocateDirect(1 + (sizebytes > 1 ? sizebytes + 1 : sizebytes) + (mask ? 4 : 0) + data.remaining());
-		byte optcode = fromOpcode(this.getOpcode());
-		byte one = (byte) (this.isFin() ? -128 : 0);
-		one |= optcode;
-		buf.put(one);
-		byte[] payloadlengthbytes = toByteArray(data.remaining(), sizebytes);
-
-		if (sizebytes == 1) {
-			buf.put((byte) ((byte) payloadlengthbytes[0] | (mask ? (byte) -128 : 0)));
-		} else if (sizebytes == 2) {
-			buf.put((byte) ((byte) 126 | (mask ? (byte) -128 : 0)));
-			buf.put(payloadlengthbytes);
-		} else if (sizebytes == 8) {
-			buf.put((byte) ((byte) 127 | (mask ? (byte) -128 : 0)));
-			buf.put(payloadlengthbytes);
-		} else {
-			Logger.error("Size representation not supported/specified");
-		}
 
-		if (mask) {
-			ByteBuffer maskkey = TByteBuffer.allocateDirect(4);
-			Random reuseableRandom = new Random();
-			maskkey.putInt(reuseableRandom.nextInt());
-			maskkey.flip();
-			buf.put(maskkey);
-			for (int i = 0; data.hasRemaining(); i++) {
-				buf.put((byte) (data.get() ^ maskkey.get(i % 4)));
-			}
-			TByteBuffer.release(maskkey);
-		} else{
-			buf.put(data);
+		int payloadLength = data.remaining();
+		ByteBuffer buf = ByteBuffer.allocateDirect(headerLength(payloadLength, transfereMask) + payloadLength);
+		int maskKey = transfereMask ? ThreadLocalRandom.current().nextInt() : 0;
+		writeHeader(buf, payloadLength, maskKey);
+
+		int payloadPosition = buf.position();
+		buf.put(data.duplicate());
+		if (transfereMask) {
+			mask(buf, payloadPosition, payloadLength, maskKey);
 		}
 
 		buf.flip();
@@ -314,9 +388,66 @@ public class WebSocketFrame {
 		return buf;
 	}
 
+	/**
+	 * 将 WebSocketFrame 直接写入连接的发送缓冲区
+	 *      帧头和负载直接写入发送缓冲区, 不分配中间缓冲区, 掩码在发送缓冲区中原地计算.
+	 *      帧数据的 position 不会改变.
+	 *      SSL 连接需要经过 SSL 加密, 使用独立的帧缓冲区发送.
+	 *
+	 * @param session socket 会话对象
+	 */
+	public void send(IoSession session) {
+		if(session.isSSLMode()) {
+			session.send(toByteBuffer());
+			return;
+		}
+
+		ByteBuffer data = this.getFrameData();
+		if(data == null){
+			data = TByteBuffer.EMPTY_BYTE_BUFFER;
+		}
+
+		int payloadLength = data.remaining();
+		int frameLength = headerLength(payloadLength, transfereMask) + payloadLength;
+		ByteBufferChannel byteBufferChannel = session.getSendByteBufferChannel();
+
+		//空间不足时先发送缓冲区中的数据, 仍然不足则扩容
+		if (byteBufferChannel.available() < frameLength) {
+			session.flush();
+			if (byteBufferChannel.available() < frameLength) {
+				byteBufferChannel.reallocate(byteBufferChannel.size() + frameLength);
+			}
+		}
+
+		ByteBuffer buf = byteBufferChannel.getByteBuffer();
+		//Socket 已断开
+		if (buf == null) {
+			return;
+		}
+
+		try {
+			//从历史数据尾部开始写入
+			buf.position(buf.limit());
+			buf.limit(buf.capacity());
+
+			int maskKey = transfereMask ? ThreadLocalRandom.current().nextInt() : 0;
+			writeHeader(buf, payloadLength, maskKey);
+
+			int payloadPosition = buf.position();
+			buf.put(data.duplicate());
+			if (transfereMask) {
+				mask(buf, payloadPosition, payloadLength, maskKey);
+			}
+
+			buf.flip();
+		} finally {
+			byteBufferChannel.compact();
+		}
+	}
+
 	@Override
 	public String toString() {
-		return "Framedata={FIN: " + this.isFin() + " , Mask: " + this.isTransfereMask() + " , OpCode: " + getOpcode() + " , Data: "
+		return "Framedata={FIN: " + this.isFin() + " , Mask: " + this.isTransfereMask() + " , Compressed: " + this.isCompressed() + " , OpCode: " + getOpcode() + " , Data: "
 				+ TByteBuffer.toString(getFrameData())+ "}";
 	}
 }
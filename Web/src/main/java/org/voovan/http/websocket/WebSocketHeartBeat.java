@@ -0,0 +1,216 @@
+package org.voovan.http.websocket;
+
+import org.voovan.http.server.HttpSessionState;
+import org.voovan.http.server.WebServerHandler;
+import org.voovan.http.server.WebSocketDispatcher;
+import org.voovan.network.ConnectModel;
+import org.voovan.network.IoSession;
+import org.voovan.network.SocketSelector;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.log.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket 心跳服务
+ *      每个 SocketSelector(即每个 EventRunner) 一个实例, 每秒检查一次该选择器上的所有 WebSocket 连接,
+ *      最后活动时间和最后发送 ping 的时间按秒计数保存在数组中, 不为每个连接创建定时任务.
+ *      检查在选择器的事件线程中批量进行: 空闲超过 readTimeout/3 的连接发送 ping, 空闲超过 readTimeout 的连接关闭.
+ *      ping 使用非阻塞的发送, 发送缓冲区已满时跳过, 慢的连接不会阻塞同一个选择器上的其他连接.
+ *      收到任何帧都视为连接活跃, 活跃的连接不发送 ping.
+ *
+ * @author: helyho
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WebSocketHeartBeat {
+    private static Map<SocketSelector, WebSocketHeartBeat> HEART_BEATS = new ConcurrentHashMap<SocketSelector, WebSocketHeartBeat>();
+
+    //服务端的 ping 帧不需要掩码, 所有连接共享
+    private static ByteBuffer SERVER_PING = WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.PING, false, null).toByteBuffer().asReadOnlyBuffer();
+
+    private SocketSelector socketSelector;
+    private HashWheelTask checkTask;
+    private volatile int count = 0;
+
+    //以下数据只在选择器的事件线程中修改
+    private int tick = 0;
+    private IoSession[] sessions = new IoSession[64];
+    private int[] lastActiveTicks = new int[64];
+    private int[] lastPingTicks = new int[64];
+    private int[] freeSlots = new int[64];
+    private int freeCount = 0;
+    private int limit = 0;
+
+    private WebSocketHeartBeat(SocketSelector socketSelector) {
+        this.socketSelector = socketSelector;
+
+        checkTask = new HashWheelTask() {
+            @Override
+            public void run() {
+                if(!socketSelector.isOpen()) {
+                    HEART_BEATS.remove(socketSelector);
+                    this.cancel();
+                } else if(count > 0) {
+                    socketSelector.addEvent(5, WebSocketHeartBeat.this::check);
+                }
+            }
+        };
+        WebSocketDispatcher.getHeartBeatWheelTimer().addTask(checkTask, 1);
+    }
+
+    /**
+     * 注册 WebSocket 连接
+     *      在连接升级为 WebSocket 后调用
+     * @param session socket 会话对象
+     */
+    public static void register(IoSession session) {
+        SocketSelector socketSelector = session.getSocketSelector();
+        if(socketSelector == null) {
+            return;
+        }
+
+        WebSocketHeartBeat webSocketHeartBeat = HEART_BEATS.computeIfAbsent(socketSelector, WebSocketHeartBeat::new);
+        if(socketSelector.inEventRunner()) {
+            webSocketHeartBeat.add(session);
+        } else {
+            socketSelector.addEvent(5, () -> webSocketHeartBeat.add(session));
+        }
+    }
+
+    /**
+     * 注销 WebSocket 连接
+     * @param session socket 会话对象
+     */
+    public static void unregister(IoSession session) {
+        HttpSessionState httpSessionState = WebServerHandler.getAttachment(session);
+        WebSocketHeartBeat webSocketHeartBeat = httpSessionState.getWebSocketHeartBeat();
+        if(webSocketHeartBeat == null) {
+            return;
+        }
+
+        if(webSocketHeartBeat.socketSelector.inEventRunner()) {
+            webSocketHeartBeat.remove(httpSessionState);
+        } else {
+            webSocketHeartBeat.socketSelector.addEvent(5, () -> webSocketHeartBeat.remove(httpSessionState));
+        }
+    }
+
+    /**
+     * 记录连接的活动
+     *      收到帧时调用
+     * @param session socket 会话对象
+     */
+    public static void touch(IoSession session) {
+        HttpSessionState httpSessionState = WebServerHandler.getAttachment(session);
+        WebSocketHeartBeat webSocketHeartBeat = httpSessionState.getWebSocketHeartBeat();
+        int slot = httpSessionState.getWebSocketHeartBeatSlot();
+        if(webSocketHeartBeat != null && slot >= 0) {
+            webSocketHeartBeat.lastActiveTicks[slot] = webSocketHeartBeat.tick;
+        }
+    }
+
+    private void add(IoSession session) {
+        HttpSessionState httpSessionState = WebServerHandler.getAttachment(session);
+        if(httpSessionState.getWebSocketHeartBeat() != null || !session.isConnected()) {
+            return;
+        }
+
+        int slot;
+        if(freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if(limit == sessions.length) {
+                int newLength = sessions.length * 2;
+                sessions = Arrays.copyOf(sessions, newLength);
+                lastActiveTicks = Arrays.copyOf(lastActiveTicks, newLength);
+                lastPingTicks = Arrays.copyOf(lastPingTicks, newLength);
+                freeSlots = Arrays.copyOf(freeSlots, newLength);
+            }
+            slot = limit++;
+        }
+
+        sessions[slot] = session;
+        lastActiveTicks[slot] = tick;
+        lastPingTicks[slot] = tick;
+        httpSessionState.setWebSocketHeartBeat(this);
+        httpSessionState.setWebSocketHeartBeatSlot(slot);
+        count++;
+    }
+
+    private void remove(HttpSessionState httpSessionState) {
+        int slot = httpSessionState.getWebSocketHeartBeatSlot();
+        if(httpSessionState.getWebSocketHeartBeat() == this && slot >= 0) {
+            free(slot);
+        }
+    }
+
+    private void free(int slot) {
+        HttpSessionState httpSessionState = WebServerHandler.getAttachment(sessions[slot]);
+        httpSessionState.setWebSocketHeartBeat(null);
+        httpSessionState.setWebSocketHeartBeatSlot(-1);
+        sessions[slot] = null;
+        freeSlots[freeCount++] = slot;
+        count--;
+    }
+
+    /**
+     * 发送 ping 帧, 不等待
+     *      发送缓冲区已满时不发送, 视为没有收到 pong, 空闲时间继续累计直到超时关闭,
+     *      阻塞等待会使同一个选择器上的所有连接停顿
+     * @param slot 连接所在的位置
+     * @param session socket 会话对象
+     */
+    private void ping(int slot, IoSession session) {
+        ByteBuffer ping;
+        if(session.socketContext().getConnectModel() == ConnectModel.CLIENT) {
+            ping = WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.PING, true, null).toByteBuffer();
+        } else {
+            ping = SERVER_PING.duplicate();
+        }
+
+        if(session.trySend(ping) < 0) {
+            return;
+        }
+
+        if(session.tryFlush() < 0) {
+            free(slot);
+            Logger.warn("WebSocket send ping frame failed, session closed");
+        }
+    }
+
+    /**
+     * 检查所有连接, 在选择器的事件线程中执行
+     */
+    private void check() {
+        tick++;
+
+        for(int slot = 0; slot < limit; slot++) {
+            IoSession session = sessions[slot];
+            if(session == null) {
+                continue;
+            }
+
+            if(!session.isConnected()) {
+                free(slot);
+                continue;
+            }
+
+            int readTimeout = Math.max(1, session.socketContext().getReadTimeout() / 1000);
+            int pingInterval = Math.max(1, readTimeout / 3);
+            int idle = tick - lastActiveTicks[slot];
+
+            if(idle >= readTimeout) {
+                free(slot);
+                session.close();
+            } else if(idle >= pingInterval && tick - lastPingTicks[slot] >= pingInterval) {
+                lastPingTicks[slot] = tick;
+                ping(slot, session);
+            }
+        }
+    }
+}
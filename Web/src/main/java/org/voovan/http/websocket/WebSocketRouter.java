@@ -49,6 +49,7 @@ public abstract class WebSocketRouter implements Cloneable{
 
 	/**
 	 * websocket 收到消息
+	 * 		未经过滤器转换的 ByteBuffer 是接收缓冲区的切片, 只在本方法执行期间有效
 	 * @param session WebSocket 会话
 	 * @param obj 收到的缓冲数据
 	 * @return 收到的缓冲数据
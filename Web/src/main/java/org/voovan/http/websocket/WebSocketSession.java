@@ -4,10 +4,14 @@ import org.voovan.http.server.*;
 import org.voovan.http.websocket.exception.WebSocketFilterException;
 import org.voovan.network.IoSession;
 import org.voovan.network.exception.SendMessageException;
+import org.voovan.tools.buffer.ByteBufferChannel;
 import org.voovan.tools.collection.Attributes;
 import org.voovan.tools.log.Logger;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * WebSocket 会话对象
@@ -25,6 +29,14 @@ public class WebSocketSession extends Attributes {
     private WebSocketType webSocketType;
     private boolean masked;
 
+    private WebSocketDispatcher webSocketDispatcher;
+    private Set<String> topics = ConcurrentHashMap.newKeySet();
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP;
+    private int maxPendingBytes = 1024 * 1024;
+    //等待在连接自己的事件线程中写入发送缓冲区的广播消息, 每个元素是一个消息的所有帧
+    private ArrayDeque<ByteBuffer[]> broadcastQueue = new ArrayDeque<ByteBuffer[]>();
+    private long queuedBytes = 0;
+    private boolean broadcastScheduled = false;
 
     /**
      * 构造函数
@@ -145,6 +157,229 @@ public class WebSocketSession extends Attributes {
         this.socketSession.syncSend(webSocketFrame);
     }
 
+    /**
+     * 获取广播消息积压时的处理策略
+     * @return 处理策略
+     */
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    /**
+     * 设置广播消息积压时的处理策略
+     * @param slowConsumerPolicy 处理策略
+     */
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    /**
+     * 获取未发送数据的最大字节数
+     * @return 最大字节数
+     */
+    public int getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * 设置未发送数据的最大字节数
+     *      超过发送缓冲区的最大容量时按发送缓冲区的最大容量限制
+     * @param maxPendingBytes 最大字节数
+     */
+    public void setMaxPendingBytes(int maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * 获取未发送数据的字节数
+     *      包括发送缓冲区中还没有写出的数据和等待写入发送缓冲区的广播消息
+     * @return 未发送数据的字节数
+     */
+    public long getPendingBytes() {
+        synchronized (broadcastQueue) {
+            return socketSession.getSendByteBufferChannel().size() + queuedBytes;
+        }
+    }
+
+    public WebSocketDispatcher getWebSocketDispatcher() {
+        return webSocketDispatcher;
+    }
+
+    public void setWebSocketDispatcher(WebSocketDispatcher webSocketDispatcher) {
+        this.webSocketDispatcher = webSocketDispatcher;
+    }
+
+    /**
+     * 订阅主题
+     *      只有服务端的 WebSocket 会话可以订阅主题
+     * @param topic 主题名称
+     */
+    public void subscribe(String topic) {
+        if(webSocketDispatcher == null) {
+            throw new UnsupportedOperationException("Only the server side WebSocketSession can subscribe topic");
+        }
+        webSocketDispatcher.subscribe(topic, this);
+    }
+
+    /**
+     * 取消订阅主题
+     * @param topic 主题名称
+     */
+    public void unsubscribe(String topic) {
+        if(webSocketDispatcher != null) {
+            webSocketDispatcher.unsubscribe(topic, this);
+        }
+    }
+
+    /**
+     * 获取订阅的主题
+     *      由 WebSocketDispatcher 维护, 订阅和取消订阅请使用 subscribe 和 unsubscribe 方法
+     * @return 主题名称集合
+     */
+    public Set<String> getTopics() {
+        return topics;
+    }
+
+    private static int size(ByteBuffer[] frames) {
+        int size = 0;
+        for(ByteBuffer frame : frames) {
+            size += frame.remaining();
+        }
+        return size;
+    }
+
+    /**
+     * 投递广播消息
+     *      帧进入连接的广播队列, 在连接自己的事件线程中批量写入发送缓冲区并以非阻塞的方式写出, 不阻塞广播线程和事件线程.
+     *      未发送数据的字节数(发送缓冲区中还没写出的数据和队列中的消息)超过 maxPendingBytes 时按 slowConsumerPolicy 处理
+     * @param webSocketBroadcasts 广播消息, 多个帧作为一个整体投递或丢弃, 保证连续发送
+     * @return true: 消息进入队列, false: 消息被丢弃或连接被断开
+     */
+    public boolean deliver(WebSocketBroadcast ... webSocketBroadcasts) {
+        if(!socketSession.isConnected()) {
+            return false;
+        }
+
+        WebSocketDeflate webSocketDeflate = WebServerHandler.getAttachment(socketSession).getWebSocketDeflate();
+        ByteBuffer[] frames = new ByteBuffer[webSocketBroadcasts.length];
+        for(int i = 0; i < webSocketBroadcasts.length; i++) {
+            frames[i] = webSocketBroadcasts[i].getFrame(webSocketDeflate);
+        }
+        int size = size(frames);
+        long maxBytes = Math.min(maxPendingBytes, socketSession.getSendByteBufferChannel().getMaxSize());
+
+        boolean schedule;
+        synchronized (broadcastQueue) {
+            long unsentBytes = socketSession.getSendByteBufferChannel().size() + queuedBytes;
+            if(unsentBytes + size > maxBytes) {
+                if(slowConsumerPolicy == SlowConsumerPolicy.DROP) {
+                    return false;
+                } else if(slowConsumerPolicy == SlowConsumerPolicy.COALESCE) {
+                    //丢弃还没写入发送缓冲区的旧消息, 已经写入的数据无法丢弃
+                    while(unsentBytes + size > maxBytes && !broadcastQueue.isEmpty()) {
+                        int oldSize = size(broadcastQueue.pollFirst());
+                        queuedBytes -= oldSize;
+                        unsentBytes -= oldSize;
+                    }
+
+                    if(unsentBytes + size > maxBytes) {
+                        return false;
+                    }
+                } else {
+                    broadcastQueue.clear();
+                    queuedBytes = 0;
+                    Logger.warnf("WebSocket {}:{} has {} bytes unsent, the connection will be closed", remoteAddres, remotePort, unsentBytes);
+                    socketSession.close();
+                    return false;
+                }
+            }
+
+            broadcastQueue.addLast(frames);
+            queuedBytes += size;
+            schedule = !broadcastScheduled;
+            broadcastScheduled = true;
+        }
+
+        if(schedule) {
+            socketSession.getSocketSelector().addEvent(5, this::flushBroadcast);
+        }
+
+        return true;
+    }
+
+    /**
+     * 在连接的事件线程中将积压的广播帧写入发送缓冲区并写出
+     *      不等待 socket 可写, 写不完的数据留在发送缓冲区中, 在 socket 可写时由事件线程继续写出.
+     *      投递后发送缓冲区中的数据增加导致消息放不下时, 按 slowConsumerPolicy 处理:
+     *      DROP 写入能放下的最旧的消息, 丢弃之后的新消息; COALESCE 只写入能放下的最新的消息; DISCONNECT 断开连接
+     */
+    private void flushBroadcast() {
+        ByteBuffer[][] messages;
+        synchronized (broadcastQueue) {
+            messages = broadcastQueue.toArray(new ByteBuffer[0][]);
+            broadcastQueue.clear();
+            queuedBytes = 0;
+            broadcastScheduled = false;
+        }
+
+        if(!socketSession.isConnected()) {
+            return;
+        }
+
+        ByteBufferChannel sendByteBufferChannel = socketSession.getSendByteBufferChannel();
+        long available = sendByteBufferChannel.getMaxSize() - sendByteBufferChannel.size();
+
+        int[] sizes = new int[messages.length];
+        long totalSize = 0;
+        for(int i = 0; i < messages.length; i++) {
+            sizes[i] = size(messages[i]);
+            totalSize += sizes[i];
+        }
+
+        //一个消息的帧全部写入或全部丢弃, 写入的消息保持连续
+        int start = 0;
+        int end = messages.length;
+        if(totalSize > available) {
+            if(slowConsumerPolicy == SlowConsumerPolicy.DROP) {
+                end = 0;
+                while(end < messages.length && sizes[end] <= available) {
+                    available -= sizes[end++];
+                }
+            } else if(slowConsumerPolicy == SlowConsumerPolicy.COALESCE) {
+                start = messages.length;
+                while(start > 0 && sizes[start - 1] <= available) {
+                    available -= sizes[--start];
+                }
+            } else {
+                Logger.warnf("WebSocket {}:{} has {} bytes unsent, the connection will be closed", remoteAddres, remotePort,
+                        sendByteBufferChannel.size() + totalSize);
+                socketSession.close();
+                return;
+            }
+        }
+
+        for(int i = start; i < end; i++) {
+            for (ByteBuffer frame : messages[i]) {
+                socketSession.trySend(frame);
+            }
+        }
+        socketSession.tryFlush();
+    }
+
+    /**
+     * 清理会话订阅的主题和积压的广播消息
+     */
+    public void release() {
+        if(webSocketDispatcher != null) {
+            webSocketDispatcher.unsubscribe(this);
+        }
+
+        synchronized (broadcastQueue) {
+            broadcastQueue.clear();
+            queuedBytes = 0;
+        }
+    }
+
     /**
      * 判断连接状态
      * @return true: 连接状态, false: 断开状态
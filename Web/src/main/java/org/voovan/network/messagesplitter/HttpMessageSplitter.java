@@ -1,18 +1,22 @@
 package org.voovan.network.messagesplitter;
 
 import org.voovan.http.HttpRequestType;
+import org.voovan.http.http2.Http2Frame;
+import org.voovan.http.http2.Http2Session;
 import org.voovan.http.message.HttpStatic;
 import org.voovan.http.server.HttpSessionState;
 import org.voovan.http.server.WebServerHandler;
+import org.voovan.http.server.context.WebContext;
+import org.voovan.http.websocket.WebSocketFrame;
 import org.voovan.network.IoSession;
 import org.voovan.network.MessageSplitter;
-import org.voovan.tools.buffer.TByteBuffer;
 
-import java.math.BigInteger;
 import java.nio.ByteBuffer;
 
 /**
  * Http 消息分割类
+ *      HTTP 报文在缓冲区中完整后才交给 HttpParser 解析, 解析过程中不会再等待数据.
+ *      判断的进度保存在 HttpSessionState 中, 数据不完整时立即返回, 下一次读取事件到来时从上次的位置继续判断.
  *
  * @author helyho
  *
@@ -37,93 +41,506 @@ public class HttpMessageSplitter implements MessageSplitter {
             result = isWebSocketFrame(byteBuffer);
         } else {
 			if (httpSessionState.getType() == null) {
-                httpSessionState.setType(HttpRequestType.HTTP);
+				//HTTP/2 prior knowledge: 连接以 HTTP/2 的连接前言开始
+				if(WebContext.getWebServerConfig().isEnableHttp2() && byteBuffer.get(0) == 'P') {
+					int prefaceLength = Math.min(byteBuffer.remaining(), Http2Session.PREFACE.length);
+					for(int i = 0; i < prefaceLength; i++) {
+						if(byteBuffer.get(i) != Http2Session.PREFACE[i]) {
+							prefaceLength = -1;
+							break;
+						}
+					}
+
+					if(prefaceLength == Http2Session.PREFACE.length) {
+						httpSessionState.setType(HttpRequestType.HTTP2);
+						httpSessionState.setHttp2Session(new Http2Session(session, WebContext.getWebServerConfig().getMaxRequestSize() * 1024L));
+						httpSessionState.setKeepAlive(true);
+					} else if(prefaceLength > 0) {
+						return -1;
+					}
+				}
+
+				if (httpSessionState.getType() == null) {
+					httpSessionState.setType(HttpRequestType.HTTP);
+				}
+			}
+
+			if(httpSessionState.isHttp2()) {
+				return isHttp2Frame(httpSessionState.getHttp2Session(), byteBuffer);
 			}
 
+			if(httpSessionState.isHttp()) {
+				//前一个请求的响应未完成时, 后续的管道化请求留在缓冲区中等待
+				if(!httpSessionState.isPipelineReady()) {
+					return -1;
+				}
+
+			    return httpSessionState.getMessageState().scan(byteBuffer, session.getReadByteBufferChannel().getMaxSize()) ? 0 : -1;
+            }
+
             return 0;
         }
 
         return result;
     }
 
+    @Override
+    public boolean isResumable() {
+        return true;
+    }
+
+    /**
+     * 判断缓冲区中的数据是否是一个完整的 HTTP/2 帧
+     * @param http2Session HTTP/2 连接会话
+     * @param buffer 缓冲区对象
+     * @return 连接前言或帧的长度, -1 数据不完整
+     */
+    public static int isHttp2Frame(Http2Session http2Session, ByteBuffer buffer) {
+        if(!http2Session.isPrefaceReceived()) {
+            return buffer.remaining() >= Http2Session.PREFACE.length ? Http2Session.PREFACE.length : -1;
+        }
+
+        int frameLength = Http2Frame.frameLength(buffer);
+        if(frameLength < 0) {
+            return -1;
+        }
+
+        //超长的帧只截取帧头, 解码时报告 FRAME_SIZE_ERROR
+        if(frameLength > Http2Frame.FRAME_HEADER_LENGTH + http2Session.getMaxFrameSize()) {
+            return Http2Frame.FRAME_HEADER_LENGTH;
+        }
+
+        return buffer.remaining() >= frameLength ? frameLength : -1;
+    }
+
     /**
      * 判断缓冲区中的数据是否是一个 WebSocket 帧
      * @param buffer 缓冲区对象
      * @return WebSocket 帧报文长度,-1不是WebSocket 帧, 大于0 返回的 WebSocket 的长度
      */
     public static int isWebSocketFrame(ByteBuffer buffer) {
-        buffer.mark();
-
         // 接受数据的大小
-        int maxpacketsize = buffer.remaining();
-        // 期望数据包的实际大小
-        int expectPackagesize = 2;
-        if (maxpacketsize < expectPackagesize) {
+        if (buffer.remaining() < 2) {
+            return -2;
+        }
+
+        int position = buffer.position();
+        byte finByte = buffer.get(position);
+        boolean fin = (finByte & 0x80) != 0;
+        //RSV1 用于 permessage-deflate
+        if ((finByte & 0x30) != 0) {
             return -2;
         }
-        byte finByte = buffer.get();
-        boolean fin = finByte >> 8 != 0;
-        byte rsv = (byte) ((finByte & ~(byte) 128) >> 4);
-        if (rsv != 0) {
+
+        int optcode = finByte & 15;
+        int payloadlength = buffer.get(position + 1) & 0x7F;
+
+        //控制帧不能分片, 负载不能超过 125 字节
+        if (optcode >= 8 && (!fin || payloadlength > 125)) {
             return -2;
         }
-        byte maskByte = buffer.get();
-        boolean mask = (maskByte & -128) != 0;
-        int payloadlength = (byte) (maskByte & ~(byte) 128);
-        int optcode = (byte) (finByte & 15);
 
-        if(optcode < 0 && optcode > 10){
+        long frameLength = WebSocketFrame.frameLength(buffer);
+
+        // 如果实际接受的数据小于数据包的大小则报错
+        if (frameLength < 0 || buffer.remaining() < frameLength) {
             return -2;
+        } else {
+            return (int) frameLength;
         }
+    }
+
+    /**
+     * HTTP 报文完整性的判断状态
+     *      按字节增量扫描, 每次只扫描新到达的数据:
+     *      1. 报文头: 逐行扫描, 记录 Content-Length, Transfer-Encoding, Content-Type 直到空行
+     *      2. 报文体: 按 Content-Length, chunked 分段或者 multipart 的结束 boundary 判断
+     *      判断规则和 HttpParser 读取报文体的规则一致.
+     */
+    public static class MessageState {
+        private final static int STATE_HEADER       = 0;
+        private final static int STATE_LENGTH       = 1;
+        private final static int STATE_CHUNK_SIZE   = 2;
+        private final static int STATE_CHUNK_DATA   = 3;
+        private final static int STATE_CHUNK_END    = 4;
+        private final static int STATE_BOUNDARY     = 5;
+
+        private final static byte[] CONTENT_LENGTH      = HttpStatic.CONTENT_LENGTH_STRING.toLowerCase().getBytes();
+        private final static byte[] CONTENT_TYPE        = HttpStatic.CONTENT_TYPE_STRING.toLowerCase().getBytes();
+        private final static byte[] TRANSFER_ENCODING   = HttpStatic.TRANSFER_ENCODING_STRING.toLowerCase().getBytes();
+
+        private int state = STATE_HEADER;
+        //下一个需要扫描的位置
+        private int position = -1;
+        //当前行的起始位置
+        private int lineStart = -1;
+        private boolean isFirstLine = true;
+
+        private boolean isResponse;
+        private boolean isGet;
+        private int status;
+        private boolean hasContentType;
+        private boolean isMultipart;
+        private boolean isChunked;
+        private long contentLength = -1;
+        private byte[] boundaryEnd;
 
-        if (!fin) {
-            if (optcode == 9 || optcode == 10 || optcode == 8) {
-                return -2;
+        //报文体结束位置或者当前 chunk 数据的结束位置
+        private long bodyEnd;
+
+        /**
+         * 扫描缓冲区, 从上次扫描的位置继续
+         *      缓冲区已满但报文仍不完整时(例如大文件上传)也返回 true, 由 HttpParser 边读取边解析
+         * @param byteBuffer 缓冲区, 报文从 position 位置开始, 两次扫描之间缓冲区的起始位置不能变化
+         * @param maxBufferSize 缓冲区的最大容量
+         * @return true: 报文完整, false: 报文不完整
+         */
+        public boolean scan(ByteBuffer byteBuffer, int maxBufferSize) {
+            if(!scan(byteBuffer)) {
+                //SocketSelector 每次扩容 4k, 无法再扩容时视为缓冲区已满
+                if(maxBufferSize - byteBuffer.limit() < 4 * 1024) {
+                    return complete();
+                }
+                return false;
             }
+            return true;
         }
 
-        if (payloadlength >= 0 && payloadlength <= 125) {
-        } else {
-            if (optcode == 9 || optcode == 10 || optcode == 8) {
-                return -2;
+        /**
+         * 扫描缓冲区, 从上次扫描的位置继续
+         * @param byteBuffer 缓冲区, 报文从 position 位置开始, 两次扫描之间缓冲区的起始位置不能变化
+         * @return true: 报文完整, false: 报文不完整
+         */
+        public boolean scan(ByteBuffer byteBuffer) {
+            int limit = byteBuffer.limit();
+
+            //缓冲区已被清理, 重新判断
+            if(position > limit) {
+                reset();
+            }
+
+            if(position < 0) {
+                //跳过报文之间多余的换行, 和 HttpParser 的处理一致
+                position = byteBuffer.position();
+                while (position < limit && (byteBuffer.get(position) == '\r' || byteBuffer.get(position) == '\n')) {
+                    position++;
+                }
+
+                if(position == limit) {
+                    position = -1;
+                    return false;
+                }
+
+                lineStart = position;
+            }
+
+            while (true) {
+                switch (state) {
+                    case STATE_HEADER: {
+                        int lf = indexOf(byteBuffer, (byte) '\n', position, limit);
+                        if (lf < 0) {
+                            position = limit;
+                            return false;
+                        }
+
+                        position = lf + 1;
+                        int lineEnd = lf > lineStart && byteBuffer.get(lf - 1) == '\r' ? lf - 1 : lf;
+
+                        if (lineEnd == lineStart) {
+                            if (!onHeaderEnd(position)) {
+                                return complete();
+                            }
+                        } else {
+                            onLine(byteBuffer, lineStart, lineEnd);
+                            //超过限制的请求由 HttpParser 处理
+                            if (!isResponse && contentLength > maxRequestSize()) {
+                                return complete();
+                            }
+                        }
+
+                        lineStart = position;
+                        break;
+                    }
+                    case STATE_LENGTH: {
+                        if (limit < bodyEnd) {
+                            return false;
+                        }
+                        return complete();
+                    }
+                    case STATE_CHUNK_SIZE: {
+                        int lf = indexOf(byteBuffer, (byte) '\n', position, limit);
+                        if (lf < 0) {
+                            position = limit;
+                            return false;
+                        }
+
+                        long chunkSize = parseHex(byteBuffer, lineStart, lf);
+                        position = lf + 1;
+                        lineStart = position;
+
+                        if (chunkSize < 0) {
+                            //空行或者非法的长度行, HttpParser 会跳过空行
+                            break;
+                        } else if (chunkSize == 0) {
+                            state = STATE_CHUNK_END;
+                        } else {
+                            bodyEnd = position + chunkSize;
+                            state = STATE_CHUNK_DATA;
+                        }
+                        break;
+                    }
+                    case STATE_CHUNK_DATA: {
+                        if (limit < bodyEnd) {
+                            position = limit;
+                            return false;
+                        }
+
+                        position = (int) bodyEnd;
+                        lineStart = position;
+                        state = STATE_CHUNK_SIZE;
+                        break;
+                    }
+                    case STATE_CHUNK_END: {
+                        //chunked 结束的空行
+                        int lf = indexOf(byteBuffer, (byte) '\n', position, limit);
+                        if (lf < 0) {
+                            position = limit;
+                            return false;
+                        }
+                        return complete();
+                    }
+                    case STATE_BOUNDARY: {
+                        int index = indexOf(byteBuffer, boundaryEnd, position, limit);
+                        if (index < 0) {
+                            //保留 boundary 长度的回溯, 防止 boundary 被分隔在两次读取中
+                            position = Math.max(position, limit - boundaryEnd.length + 1);
+                            return false;
+                        }
+                        return complete();
+                    }
+                    default:
+                        return complete();
+                }
             }
-            if (payloadlength == 126) {
-                expectPackagesize += 2;
-                if(maxpacketsize < expectPackagesize) {
-                    return -2;
+        }
+
+        /**
+         * 处理报文头中的一行
+         * @param byteBuffer 缓冲区
+         * @param start 行起始位置
+         * @param end 行结束位置, 不包含换行符
+         */
+        private void onLine(ByteBuffer byteBuffer, int start, int end) {
+            if (isFirstLine) {
+                isFirstLine = false;
+                isResponse = startsWith(byteBuffer, start, end, "HTTP/");
+                isGet = startsWith(byteBuffer, start, end, "GET ");
+
+                if (isResponse) {
+                    int statusStart = indexOf(byteBuffer, (byte) ' ', start, end) + 1;
+                    for (int i = statusStart; statusStart > 0 && i < end; i++) {
+                        byte b = byteBuffer.get(i);
+                        if (b < '0' || b > '9') {
+                            break;
+                        }
+                        status = status * 10 + (b - '0');
+                    }
                 }
+                return;
+            }
 
-                byte[] sizebytes = new byte[3];
-                sizebytes[1] = buffer.get();
-                sizebytes[2] = buffer.get();
-                payloadlength = new BigInteger(sizebytes).intValue();
-            } else {
-                expectPackagesize += 8;
-                if(maxpacketsize < expectPackagesize) {
-                    return -2;
+            int colon = indexOf(byteBuffer, (byte) ':', start, end);
+            if (colon < 0) {
+                return;
+            }
+
+            if (equalsIgnoreCase(byteBuffer, start, colon, CONTENT_LENGTH)) {
+                contentLength = 0;
+                for (int i = colon + 1; i < end; i++) {
+                    byte b = byteBuffer.get(i);
+                    if (b >= '0' && b <= '9') {
+                        contentLength = contentLength * 10 + (b - '0');
+                    }
                 }
+            } else if (equalsIgnoreCase(byteBuffer, start, colon, TRANSFER_ENCODING)) {
+                isChunked = contains(byteBuffer, colon + 1, end, HttpStatic.CHUNKED_STRING);
+            } else if (equalsIgnoreCase(byteBuffer, start, colon, CONTENT_TYPE)) {
+                hasContentType = true;
+                isMultipart = contains(byteBuffer, colon + 1, end, HttpStatic.MULTIPART_FORM_DATA_STRING);
 
-                byte[] bytes = new byte[8];
-                for (int i = 0; i < 8; i++) {
-                    bytes[i] = buffer.get();
+                if (isMultipart) {
+                    String value = getString(byteBuffer, colon + 1, end);
+                    int boundaryIndex = value.indexOf(HttpStatic.BOUNDARY_STRING + "=");
+                    if (boundaryIndex >= 0) {
+                        String boundary = value.substring(boundaryIndex + HttpStatic.BOUNDARY_STRING.length() + 1);
+                        int semicolon = boundary.indexOf(';');
+                        boundary = semicolon >= 0 ? boundary.substring(0, semicolon) : boundary;
+                        boundary = boundary.trim();
+                        if (boundary.length() > 1 && boundary.charAt(0) == '"' && boundary.charAt(boundary.length() - 1) == '"') {
+                            boundary = boundary.substring(1, boundary.length() - 1);
+                        }
+                        boundaryEnd = ("--" + boundary + "--").getBytes();
+                    }
                 }
-                long length = new BigInteger(bytes).longValue();
-                if (length <= Integer.MAX_VALUE) {
-                    payloadlength = (int) length;
+            }
+        }
+
+        /**
+         * 报文头结束时确定报文体的判断方式
+         * @param headerEnd 报文头结束位置
+         * @return true: 需要继续判断报文体, false: 报文已完整
+         */
+        private boolean onHeaderEnd(int headerEnd) {
+            //和 HttpParser 一致: GET 请求和没有 Content-Type 的报文没有报文体
+            if ((!isResponse && isGet) || !hasContentType) {
+                return false;
+            }
+
+            //无报文体的响应状态
+            if (isResponse && ((status >= 100 && status < 200) || status == 204 || status == 304)) {
+                return false;
+            }
+
+            if (isMultipart) {
+                if (contentLength >= 0) {
+                    bodyEnd = headerEnd + contentLength;
+                    state = STATE_LENGTH;
+                    return true;
+                } else if (boundaryEnd != null) {
+                    state = STATE_BOUNDARY;
+                    return true;
                 }
+                return false;
+            } else if (isChunked) {
+                lineStart = headerEnd;
+                state = STATE_CHUNK_SIZE;
+                return true;
+            } else if (contentLength >= 0) {
+                bodyEnd = headerEnd + contentLength;
+                state = STATE_LENGTH;
+                return true;
             }
+
+            return false;
         }
 
-        expectPackagesize += (mask ? 4 : 0);
-        expectPackagesize += payloadlength;
+        /**
+         * 报文完整, 重置状态用于判断下一个报文
+         * @return 永远返回 true
+         */
+        private boolean complete() {
+            reset();
+            return true;
+        }
 
-        // 如果实际接受的数据小于数据包的大小则报错
-        if (maxpacketsize < expectPackagesize) {
-            buffer.reset();
-            return -2;
-        } else {
-            buffer.reset();
-            return expectPackagesize;
+        /**
+         * 重置状态
+         */
+        public void reset() {
+            state = STATE_HEADER;
+            position = -1;
+            lineStart = -1;
+            isFirstLine = true;
+            isResponse = false;
+            isGet = false;
+            status = 0;
+            hasContentType = false;
+            isMultipart = false;
+            isChunked = false;
+            contentLength = -1;
+            boundaryEnd = null;
+            bodyEnd = 0;
+        }
+
+        private static long maxRequestSize() {
+            long maxRequestSize = WebContext.getWebServerConfig().getMaxRequestSize();
+            return maxRequestSize < 0 ? Long.MAX_VALUE : maxRequestSize * 1024;
+        }
+
+        private static long parseHex(ByteBuffer byteBuffer, int start, int end) {
+            long value = 0;
+            int digits = 0;
+            for (int i = start; i < end; i++) {
+                byte b = byteBuffer.get(i);
+                int digit;
+                if (b >= '0' && b <= '9') {
+                    digit = b - '0';
+                } else if (b >= 'a' && b <= 'f') {
+                    digit = b - 'a' + 10;
+                } else if (b >= 'A' && b <= 'F') {
+                    digit = b - 'A' + 10;
+                } else if (b == ' ' || b == '\r' || b == '\t') {
+                    continue;
+                } else {
+                    //chunk 扩展
+                    break;
+                }
+                value = (value << 4) + digit;
+                digits++;
+            }
+            return digits == 0 ? -1 : value;
+        }
+
+        private static int indexOf(ByteBuffer byteBuffer, byte mark, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (byteBuffer.get(i) == mark) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indexOf(ByteBuffer byteBuffer, byte[] mark, int start, int end) {
+            for (int i = start; i <= end - mark.length; i++) {
+                int j = 0;
+                while (j < mark.length && byteBuffer.get(i + j) == mark[j]) {
+                    j++;
+                }
+                if (j == mark.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean startsWith(ByteBuffer byteBuffer, int start, int end, String prefix) {
+            if (end - start < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (byteBuffer.get(start + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean equalsIgnoreCase(ByteBuffer byteBuffer, int start, int end, byte[] lowerCaseName) {
+            if (end - start != lowerCaseName.length) {
+                return false;
+            }
+            for (int i = 0; i < lowerCaseName.length; i++) {
+                byte b = byteBuffer.get(start + i);
+                if (b >= 'A' && b <= 'Z') {
+                    b = (byte) (b + 32);
+                }
+                if (b != lowerCaseName[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean contains(ByteBuffer byteBuffer, int start, int end, String value) {
+            return getString(byteBuffer, start, end).toLowerCase().contains(value);
+        }
+
+        private static String getString(ByteBuffer byteBuffer, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = byteBuffer.get(start + i);
+            }
+            return new String(bytes);
         }
     }
 }
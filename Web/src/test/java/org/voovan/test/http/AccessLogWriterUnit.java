@@ -0,0 +1,230 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.context.AccessLogWriter;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.TFile;
+import org.voovan.tools.reflect.TReflect;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * access.log 写入器测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class AccessLogWriterUnit extends TestCase {
+	private File logDir;
+
+	@Override
+	protected void setUp() {
+		logDir = new File(System.getProperty("java.io.tmpdir"), "AccessLogWriterUnit-" + System.nanoTime());
+		logDir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() {
+		deleteAll(logDir);
+	}
+
+	private static void deleteAll(File file) {
+		File[] files = file.listFiles();
+		if(files != null) {
+			for(File child : files) {
+				deleteAll(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static HttpRequest newRequest(String path, String userAgent) {
+		HttpRequest request = new HttpRequest("UTF-8", null) {
+			@Override
+			public String getRemoteAddres() {
+				return "10.0.0.1";
+			}
+
+			@Override
+			public int getRemotePort() {
+				return 54321;
+			}
+		};
+		request.protocol().setMethod("GET");
+		request.protocol().setPath(path);
+		if(userAgent != null) {
+			request.header().put("User-Agent", userAgent);
+		}
+		return request;
+	}
+
+	private static HttpResponse newResponse(int status, String body) {
+		HttpResponse response = new HttpResponse("UTF-8", null){};
+		response.protocol().setStatus(status);
+		response.write(body);
+		return response;
+	}
+
+	private String logFile() {
+		return new File(logDir, "access.log").getPath();
+	}
+
+	private static String read(String fileName) throws IOException {
+		return new String(Files.readAllBytes(new File(fileName).toPath()), StandardCharsets.UTF_8);
+	}
+
+	public void testText() throws IOException {
+		AccessLogWriter writer = new AccessLogWriter(logFile(), "TEXT", 0, 0);
+		assertEquals(AccessLogWriter.FORMAT_TEXT, writer.getFormat());
+		assertTrue(writer.write(newRequest("/text", "agent"), newResponse(200, "hello")));
+		assertTrue(writer.write(newRequest("/text2", null), newResponse(404, "")));
+		writer.stop();
+
+		String[] lines = read(logFile()).split("\r\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].startsWith("["));
+		assertTrue(lines[0].contains("] 10.0.0.1        54321 HTTP/1.1 GET    200 5\t /text\t agent\t "));
+		assertTrue(lines[1].contains(" 404 0\t /text2\t \t "));
+	}
+
+	public void testJson() throws IOException {
+		AccessLogWriter writer = new AccessLogWriter(logFile(), AccessLogWriter.FORMAT_JSON, 0, 0);
+		writer.write(newRequest("/json\"\\", "a\tb"), newResponse(500, "error"));
+		writer.stop();
+
+		String content = read(logFile());
+		assertTrue(content.startsWith("{\"time\":\""));
+		assertTrue(content.endsWith("}\n"));
+		assertTrue(content.contains(",\"remoteAddress\":\"10.0.0.1\",\"remotePort\":54321,\"protocol\":\"HTTP/1.1\",\"method\":\"GET\""));
+		assertTrue(content.contains(",\"status\":500,\"bodySize\":5"));
+		//特殊字符转义
+		assertTrue(content.contains(",\"path\":\"/json\\\"\\\\\""));
+		assertTrue(content.contains(",\"userAgent\":\"a\\u0009b\""));
+		assertTrue(content.contains(",\"referer\":null}"));
+	}
+
+	private static List<String> readBinaryFields(ByteBuffer byteBuffer, long[] numbers) {
+		int start = byteBuffer.position();
+		int length = byteBuffer.getInt();
+		numbers[0] = byteBuffer.getLong();
+		numbers[1] = byteBuffer.getInt();
+		numbers[2] = byteBuffer.getLong();
+		numbers[3] = byteBuffer.getInt();
+
+		List<String> fields = new ArrayList<String>();
+		for(int i=0;i<6;i++) {
+			byte[] bytes = new byte[byteBuffer.getShort()];
+			byteBuffer.get(bytes);
+			fields.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+		assertEquals(length, byteBuffer.position() - start);
+		return fields;
+	}
+
+	public void testBinary() throws IOException {
+		StringBuilder longUserAgent = new StringBuilder();
+		for(int i=0;i<5000;i++) {
+			longUserAgent.append('中');
+		}
+
+		AccessLogWriter writer = new AccessLogWriter(logFile(), AccessLogWriter.FORMAT_BINARY, 0, 0);
+		writer.write(newRequest("/binary", "agent"), newResponse(201, "abc"));
+		//字段超长的记录截断后写入, 不影响后续的记录
+		for(int i=0;i<20;i++) {
+			writer.write(newRequest("/long", longUserAgent.toString()), newResponse(200, ""));
+		}
+		writer.write(newRequest("/last", null), newResponse(200, ""));
+		writer.stop();
+
+		ByteBuffer byteBuffer = ByteBuffer.wrap(Files.readAllBytes(new File(logFile()).toPath()));
+		long[] numbers = new long[4];
+
+		List<String> fields = readBinaryFields(byteBuffer, numbers);
+		assertTrue(numbers[0] > 0);
+		assertEquals(201, numbers[1]);
+		assertEquals(3, numbers[2]);
+		assertEquals(54321, numbers[3]);
+		assertEquals("10.0.0.1", fields.get(0));
+		assertEquals("HTTP/1.1", fields.get(1));
+		assertEquals("GET", fields.get(2));
+		assertEquals("/binary", fields.get(3));
+		assertEquals("agent", fields.get(4));
+		assertEquals("", fields.get(5));
+
+		for(int i=0;i<20;i++) {
+			fields = readBinaryFields(byteBuffer, numbers);
+			assertEquals("/long", fields.get(3));
+			//在字符边界截断到 4096 字节以内
+			assertEquals(4095, fields.get(4).getBytes(StandardCharsets.UTF_8).length);
+			assertTrue(longUserAgent.toString().startsWith(fields.get(4)));
+		}
+
+		fields = readBinaryFields(byteBuffer, numbers);
+		assertEquals("/last", fields.get(3));
+		assertFalse(byteBuffer.hasRemaining());
+	}
+
+	public void testRotateBySize() throws IOException {
+		AccessLogWriter writer = new AccessLogWriter(logFile(), AccessLogWriter.FORMAT_TEXT, 10, 0);
+		for(int i=0;i<3;i++) {
+			writer.write(newRequest("/rotate" + i, null), newResponse(200, ""));
+			//等待写入文件, 每个批次单独写出
+			int index = i;
+			TEnv.wait(2000, () -> !new File(logFile()).exists() || !content(logFile()).contains("/rotate" + index));
+		}
+		writer.stop();
+
+		//超过大小后当前文件重命名为 access.yyyyMMdd.HHmmss[.序号].log
+		File[] files = logDir.listFiles();
+		assertEquals(3, files.length);
+		StringBuilder all = new StringBuilder();
+		for(File file : files) {
+			assertTrue(file.getName().startsWith("access."));
+			assertTrue(file.getName().endsWith(".log"));
+			all.append(read(file.getPath()));
+		}
+		for(int i=0;i<3;i++) {
+			assertTrue(all.toString().contains("/rotate" + i));
+		}
+		assertTrue(read(logFile()).contains("/rotate2"));
+	}
+
+	public void testRecoverFromError() throws Exception {
+		//日志目录被同名文件占用, 打开文件失败
+		File blocker = new File(logDir, "blocked");
+		assertTrue(blocker.createNewFile());
+		String fileName = new File(blocker, "access.log").getPath();
+
+		AccessLogWriter writer = new AccessLogWriter(fileName, AccessLogWriter.FORMAT_TEXT, 0, 0);
+		writer.write(newRequest("/recover", null), newResponse(200, ""));
+		TEnv.sleep(200);
+
+		//写入线程没有退出, 文件可用后写出队列中的记录
+		assertTrue(((Thread) TReflect.getFieldValue(writer, "thread")).isAlive());
+		assertTrue(blocker.delete());
+		TFile.mkdir(fileName);
+		TEnv.wait(3000, () -> !new File(fileName).exists() || !content(fileName).contains("/recover"));
+		writer.stop();
+
+		assertTrue(read(fileName).contains("/recover"));
+	}
+
+	private static String content(String fileName) {
+		try {
+			return read(fileName);
+		} catch (IOException e) {
+			return "";
+		}
+	}
+}
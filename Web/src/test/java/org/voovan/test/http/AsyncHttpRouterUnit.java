@@ -0,0 +1,265 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.AsyncHttpRouter;
+import org.voovan.http.server.DeferredRoute;
+import org.voovan.http.server.HttpFilter;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.WebServer;
+import org.voovan.http.server.context.HttpFilterConfig;
+import org.voovan.http.server.context.WebServerConfig;
+import org.voovan.tools.TEnv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * 异步路由测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class AsyncHttpRouterUnit extends TestCase {
+	private static int port = -1;
+
+	/**
+	 * 反向过滤器记录执行时响应 body 的大小, /deferred 路径延迟决定是否执行路由
+	 */
+	public static class AsyncFilter implements HttpFilter {
+		@Override
+		public Object onRequest(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult) {
+			if(request.protocol().getPath().equals("/deferred")) {
+				DeferredRoute deferredRoute = (deferredRequest, deferredResponse) -> delay(100, () -> {
+					if("1".equals(deferredRequest.getParameter("allow"))) {
+						return true;
+					}
+
+					deferredResponse.write("denied");
+					return false;
+				});
+				return deferredRoute;
+			}
+			return true;
+		}
+
+		@Override
+		public Object onResponse(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult) {
+			response.header().put("X-Filter-Body", String.valueOf(response.body().size()));
+			return true;
+		}
+	}
+
+	/**
+	 * 在其他线程中延迟完成
+	 */
+	private static <T> CompletionStage<T> delay(int millis, Supplier<T> supplier) {
+		return CompletableFuture.supplyAsync(() -> {
+			TEnv.sleep(millis);
+			return supplier.get();
+		});
+	}
+
+	/**
+	 * 所有测试共用一个服务
+	 */
+	private static synchronized int serve() throws IOException {
+		if(port > 0) {
+			return port;
+		}
+
+		try(ServerSocket serverSocket = new ServerSocket(0)) {
+			port = serverSocket.getLocalPort();
+		}
+
+		WebServerConfig webConfig = new WebServerConfig();
+		webConfig.setHost("127.0.0.1");
+		webConfig.setPort(port);
+		webConfig.setGzip(false);
+		webConfig.setAccessLog(false);
+		webConfig.getFilterConfigs().add(new HttpFilterConfig("AsyncFilter", AsyncFilter.class.getName(), null));
+
+		Map<String, Object> json = new HashMap<String, Object>();
+		json.put("async", true);
+
+		WebServer.newInstance(webConfig)
+				.get("/string", (AsyncHttpRouter) (request, response) -> delay(100, () -> "string" + request.getParameter("i")))
+				.get("/bytes", (AsyncHttpRouter) (request, response) -> CompletableFuture.completedFuture("bytes".getBytes()))
+				.get("/json", (AsyncHttpRouter) (request, response) -> delay(50, () -> json))
+				.get("/written", (AsyncHttpRouter) (request, response) -> {
+					response.write("written");
+					return delay(50, () -> "ignored");
+				})
+				.get("/null", (AsyncHttpRouter) (request, response) -> {
+					response.write("null");
+					return null;
+				})
+				.get("/error", (AsyncHttpRouter) (request, response) -> {
+					response.write("partial");
+					return delay(50, () -> {
+						throw new IllegalStateException("async error");
+					});
+				})
+				.get("/throw", (AsyncHttpRouter) (request, response) -> {
+					throw new IllegalStateException("sync error");
+				})
+				.get("/session", (AsyncHttpRouter) (request, response) -> delay(50, () -> {
+					request.getSession().setAttribute("async", "1");
+					return "session";
+				}))
+				.get("/deferred", (request, response) -> response.write("allowed"))
+				.syncServe();
+		return port;
+	}
+
+	private static String request(String path) {
+		return "GET " + path + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n";
+	}
+
+	/**
+	 * 在一次写入中发送所有请求, 按顺序读取响应
+	 * @param paths 请求路径
+	 * @return 每个响应的完整报文
+	 */
+	private static List<String> pipeline(String... paths) throws IOException {
+		try(Socket socket = new Socket("127.0.0.1", serve())) {
+			socket.setSoTimeout(5000);
+			OutputStream outputStream = socket.getOutputStream();
+			StringBuilder all = new StringBuilder();
+			for(String path : paths) {
+				all.append(request(path));
+			}
+			outputStream.write(all.toString().getBytes(StandardCharsets.US_ASCII));
+			outputStream.flush();
+
+			InputStream inputStream = socket.getInputStream();
+			List<String> responses = new ArrayList<String>();
+			for(int i=0;i<paths.length;i++) {
+				responses.add(readResponse(inputStream));
+			}
+			return responses;
+		}
+	}
+
+	/**
+	 * 读取一个使用 Content-Length 的响应
+	 * @return 响应的完整报文
+	 */
+	private static String readResponse(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		while(true) {
+			int value = inputStream.read();
+			assertTrue(value >= 0);
+			message.write(value);
+			byte[] bytes = message.toByteArray();
+			int length = bytes.length;
+			if(length >= 4 && bytes[length - 4] == '\r' && bytes[length - 3] == '\n' && bytes[length - 2] == '\r' && bytes[length - 1] == '\n') {
+				break;
+			}
+		}
+
+		int contentLength = -1;
+		for(String line : message.toString("US-ASCII").split("\r\n")) {
+			if(line.toLowerCase().startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		assertTrue(contentLength >= 0);
+
+		for(int i=0;i<contentLength;i++) {
+			int value = inputStream.read();
+			assertTrue(value >= 0);
+			message.write(value);
+		}
+		return message.toString("UTF-8");
+	}
+
+	private static String body(String response) {
+		return response.substring(response.indexOf("\r\n\r\n") + 4);
+	}
+
+	public void testResult() throws IOException {
+		List<String> responses = pipeline("/string?i=1", "/bytes", "/json", "/written", "/null");
+
+		//String, byte[] 直接写入, 其他对象转换为 JSON
+		assertTrue(responses.get(0).startsWith("HTTP/1.1 200 OK\r\n"));
+		assertEquals("string1", body(responses.get(0)));
+		assertEquals("bytes", body(responses.get(1)));
+		assertEquals("{\"async\":true}", body(responses.get(2)));
+
+		//路由已经写入 body 时不写入结果
+		assertEquals("written", body(responses.get(3)));
+
+		//返回 null 时视为已完成
+		assertEquals("null", body(responses.get(4)));
+
+		//反向过滤器在结果写入之后执行
+		assertTrue(responses.get(0).contains("X-Filter-Body: 7\r\n"));
+		assertTrue(responses.get(3).contains("X-Filter-Body: 7\r\n"));
+	}
+
+	public void testError() throws IOException {
+		List<String> responses = pipeline("/error", "/throw", "/string?i=2");
+
+		//异常完成和直接抛出异常都输出错误响应, 已写入的 body 被丢弃
+		for(int i=0;i<2;i++) {
+			String response = responses.get(i);
+			assertTrue(response, response.startsWith("HTTP/1.1 500 "));
+			assertFalse(response, body(response).startsWith("partial"));
+			assertTrue(response, response.contains("X-Filter-Body: "));
+		}
+		assertTrue(responses.get(0), responses.get(0).contains("async error"));
+		assertTrue(responses.get(1), responses.get(1).contains("sync error"));
+
+		//出错后连接上的后续请求正常处理
+		assertEquals("string2", body(responses.get(2)));
+	}
+
+	public void testPipelineOrder() throws IOException {
+		//异步路由完成前后续的请求不处理, 响应按请求的顺序
+		List<String> responses = pipeline("/string?i=0", "/bytes", "/string?i=1", "/json", "/string?i=2");
+		assertEquals("string0", body(responses.get(0)));
+		assertEquals("bytes", body(responses.get(1)));
+		assertEquals("string1", body(responses.get(2)));
+		assertEquals("{\"async\":true}", body(responses.get(3)));
+		assertEquals("string2", body(responses.get(4)));
+	}
+
+	public void testSession() throws IOException {
+		//异步路由中创建的 Session 在发送前放置 Cookie
+		String response = pipeline("/session").get(0);
+		assertEquals("session", body(response));
+		assertTrue(response, response.contains("Set-Cookie: "));
+	}
+
+	public void testDeferredRoute() throws IOException {
+		List<String> responses = pipeline("/deferred?allow=1", "/deferred?allow=0", "/bytes");
+		assertEquals("allowed", body(responses.get(0)));
+		assertEquals("denied", body(responses.get(1)));
+		assertEquals("bytes", body(responses.get(2)));
+		assertTrue(responses.get(0).contains("X-Filter-Body: 7\r\n"));
+	}
+
+	public void testProcess() throws Exception {
+		//不经过 HttpDispatcher 调用时同步等待结果
+		AsyncHttpRouter asyncHttpRouter = (request, response) -> delay(50, () -> "sync");
+		HttpResponse response = new HttpResponse("UTF-8", null){};
+		asyncHttpRouter.process(new HttpRequest("UTF-8", null), response);
+		assertEquals("sync", response.body().getBodyString());
+	}
+}
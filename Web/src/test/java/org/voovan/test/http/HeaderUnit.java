@@ -0,0 +1,122 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.message.HttpParser;
+import org.voovan.http.message.HttpStatic;
+import org.voovan.http.message.packet.Header;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * HTTP Header 表测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HeaderUnit extends TestCase {
+
+	private static Header parse(String headerContent) {
+		Header header = new Header();
+		ByteBuffer byteBuffer = ByteBuffer.wrap(headerContent.getBytes(StandardCharsets.UTF_8));
+		HttpParser.parseHeader(header, byteBuffer, () -> {}, 1000);
+		return header;
+	}
+
+	private static String encode(Header header) {
+		ByteBuffer byteBuffer = ByteBuffer.allocate(header.encodedSize());
+		header.writeTo(byteBuffer);
+		assertFalse(byteBuffer.hasRemaining());
+		return new String(byteBuffer.array(), StandardCharsets.UTF_8);
+	}
+
+	public void testCaseInsensitive() {
+		Header header = new Header();
+		header.put("Content-Type", "text/html");
+		header.put("X-Custom", "1");
+
+		//查找忽略大小写
+		assertEquals("text/html", header.get("content-type"));
+		assertEquals("text/html", header.get("CONTENT-TYPE"));
+		assertEquals("1", header.get("x-custom"));
+		assertTrue(header.contain("x-CUSTOM"));
+		assertNull(header.get("X-Custom2"));
+
+		//不同大小写的名称写入同一个位置, 保留第一次写入的名称
+		header.put("x-custom", "2");
+		assertEquals(2, header.size());
+		assertEquals("2", header.get("X-Custom"));
+		assertTrue(encode(header).contains("X-Custom: 2\r\n"));
+
+		Map<String, String> headers = header.getHeaders();
+		assertEquals("text/html", headers.get("content-TYPE"));
+
+		assertEquals("2", header.remove("X-CUSTOM"));
+		assertEquals(1, header.size());
+		assertFalse(header.contain("X-Custom"));
+
+		//值为 null 时移除
+		header.put("Content-Type", null);
+		assertEquals(0, header.size());
+	}
+
+	public void testParse() {
+		Header header = parse("host: 127.0.0.1\r\nX-Custom: a\r\nContent-Length: 10\r\n\r\n");
+		assertEquals(3, header.size());
+
+		//常用名称复用 HttpStatic 中的字符串
+		assertEquals("127.0.0.1", header.get(HttpStatic.HOST_STRING));
+		assertSame(HttpStatic.HOST_STRING, parse("host: 127.0.0.1\r\n\r\n").getHeaders().keySet().iterator().next());
+		assertEquals("a", header.get("x-custom"));
+		assertEquals("10", header.get("content-length"));
+
+		//未转换的值直接从原始字节编码
+		String encoded = encode(parse("X-Custom: a\r\n\r\n"));
+		assertEquals("X-Custom: a\r\n", encoded);
+	}
+
+	public void testDuplicate() {
+		//重复的 header 以最后一个为准, 名称大小写不同也视为重复
+		Header header = parse("Host: a\r\nAccept: */*\r\nhost: b\r\nX-Id: 1\r\nx-id: 2\r\n\r\n");
+		assertEquals(3, header.size());
+		assertEquals("b", header.get("Host"));
+		assertEquals("2", header.get("X-Id"));
+		assertEquals("*/*", header.get("accept"));
+
+		String encoded = encode(header);
+		assertTrue(encoded.contains("Host: b\r\n"));
+		assertFalse(encoded.contains("Host: a\r\n"));
+		assertTrue(encoded.contains("X-Id: 2\r\n"));
+
+		//复制后的 Header 与原 Header 一致
+		Header copy = header.copy();
+		assertEquals(3, copy.size());
+		assertEquals("b", copy.get("host"));
+		assertEquals("2", copy.get("x-id"));
+	}
+
+	public void testResizeAndRemove() {
+		Header header = new Header();
+		for(int i=0;i<100;i++) {
+			header.put("X-Header-" + i, String.valueOf(i));
+		}
+		assertEquals(100, header.size());
+
+		//删除后线性探测路径上的其他元素仍然能被找到
+		for(int i=0;i<100;i+=2) {
+			assertEquals(String.valueOf(i), header.remove("x-header-" + i));
+		}
+		assertEquals(50, header.size());
+		for(int i=0;i<100;i++) {
+			assertEquals(i % 2 == 0 ? null : String.valueOf(i), header.get("X-HEADER-" + i));
+		}
+
+		header.clear();
+		assertEquals(0, header.size());
+		assertNull(header.get("X-Header-1"));
+	}
+}
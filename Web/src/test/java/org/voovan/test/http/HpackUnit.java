@@ -0,0 +1,67 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.http2.HpackDecoder;
+import org.voovan.http.http2.HpackEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HPACK 编解码测试, 使用 RFC 7541 附录 C 的示例
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HpackUnit extends TestCase {
+
+	private static ByteBuffer hex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for(int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return ByteBuffer.wrap(bytes);
+	}
+
+	private static List<String> decode(HpackDecoder decoder, ByteBuffer block) {
+		List<String> result = new ArrayList<String>();
+		decoder.decode(block, (name, value) -> result.add(name + ": " + value));
+		return result;
+	}
+
+	public void testHuffmanRequests() {
+		HpackDecoder decoder = new HpackDecoder(4096, 4096);
+
+		List<String> first = decode(decoder, hex("828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+		assertEquals("[:method: GET, :scheme: http, :path: /, :authority: www.example.com]", first.toString());
+
+		//第二个请求引用动态表中的 :authority
+		List<String> second = decode(decoder, hex("828684be5886a8eb10649cbf"));
+		assertEquals("[:method: GET, :scheme: http, :path: /, :authority: www.example.com, cache-control: no-cache]", second.toString());
+	}
+
+	public void testEncodeDecode() {
+		HpackEncoder encoder = new HpackEncoder();
+		HpackDecoder decoder = new HpackDecoder(4096, 4096);
+
+		for(int i = 0; i < 3; i++) {
+			encoder.begin();
+			encoder.encode(":status", "200");
+			encoder.encode("content-type", "text/html");
+			encoder.encode("content-length", String.valueOf(i));
+			encoder.encode("x-custom", "value");
+
+			List<String> headers = decode(decoder, ByteBuffer.wrap(encoder.getBuffer(), 0, encoder.length()));
+			assertEquals("[:status: 200, content-type: text/html, content-length: " + i + ", x-custom: value]", headers.toString());
+		}
+
+		//重复的头使用动态表索引, 只占一个字节
+		encoder.begin();
+		encoder.encode("x-custom", "value");
+		assertEquals(1, encoder.length());
+	}
+}
@@ -0,0 +1,117 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.HttpDispatcher;
+import org.voovan.http.server.HttpFilter;
+import org.voovan.http.server.HttpFilterPipeline;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.context.HttpFilterConfig;
+import org.voovan.http.server.context.WebServerConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 过滤器管道测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpFilterPipelineUnit extends TestCase {
+
+	public static List<String> calls = new ArrayList<String>();
+
+	public static class RecordFilter implements HttpFilter {
+		@Override
+		public Object onRequest(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult) {
+			calls.add(filterConfig.getName() + ":" + prevFilterResult);
+			return filterConfig.getName();
+		}
+
+		@Override
+		public Object onResponse(HttpFilterConfig filterConfig, HttpRequest request, HttpResponse response, Object prevFilterResult) {
+			return prevFilterResult;
+		}
+	}
+
+	@Override
+	protected void setUp() {
+		calls.clear();
+	}
+
+	private HttpFilterConfig newFilterConfig(String name, String ... paths) {
+		Map<String, Object> configMap = new HashMap<String, Object>();
+		configMap.put("Name", name);
+		configMap.put("ClassName", RecordFilter.class.getName());
+		configMap.put("FilterPaths", Arrays.asList(paths));
+		return new HttpFilterConfig(configMap);
+	}
+
+	private HttpRequest newRequest(String method, String path) {
+		HttpRequest request = new HttpRequest();
+		request.protocol().setMethod(method);
+		request.protocol().setPath(path);
+		return request;
+	}
+
+	public void testFilterPaths() {
+		Map<String, Object> configMap = new HashMap<String, Object>();
+		configMap.put("Name", "cache");
+		configMap.put("ClassName", RecordFilter.class.getName());
+		configMap.put("FilterPaths", Arrays.asList("/api/*"));
+		configMap.put("paths", Arrays.asList("/api"));
+		HttpFilterConfig filterConfig = new HttpFilterConfig(configMap);
+
+		assertEquals("/api/*", filterConfig.getPaths()[0]);
+		//过滤器自己的参数不会被当作绑定的路径
+		assertEquals(Arrays.asList("/api"), filterConfig.getParameter("paths"));
+		assertTrue(filterConfig.matchPath("/api/user", false));
+		assertFalse(filterConfig.matchPath("/static/a.css", false));
+	}
+
+	public void testAllFiltersSkipped() {
+		HttpFilterConfig[] filterConfigs = new HttpFilterConfig[]{newFilterConfig("f1", "/api/*"), newFilterConfig("f2", "/user/:id")};
+		HttpFilterPipeline pipeline = HttpFilterPipeline.compile(filterConfigs, null, false);
+		assertEquals(2, pipeline.size());
+
+		//所有过滤器都被跳过时不阻止路由的执行
+		assertNotNull(pipeline.onRequest(newRequest("GET", "/static/a.css"), null));
+		assertTrue(calls.isEmpty());
+
+		//第一个执行的过滤器收到的前一个结果为 null
+		assertEquals("f2", pipeline.onRequest(newRequest("GET", "/user/1"), null));
+		assertEquals(Arrays.asList("f2:null"), calls);
+	}
+
+	public void testRoutePipeline() {
+		HttpFilterConfig[] filterConfigs = new HttpFilterConfig[]{newFilterConfig("f1", "/api/*"), newFilterConfig("f2", "/user/:id")};
+		HttpFilterPipeline pipeline = HttpFilterPipeline.compile(filterConfigs, "/api/list", false);
+		assertEquals(1, pipeline.size());
+		assertEquals("f1", pipeline.onRequest(newRequest("GET", "/api/list"), null));
+		assertEquals(Arrays.asList("f1:null"), calls);
+
+		pipeline = HttpFilterPipeline.compile(filterConfigs, "/other", false);
+		assertEquals(0, pipeline.size());
+	}
+
+	public void testRouteRunsWhenFiltersSkipped() {
+		WebServerConfig webConfig = new WebServerConfig();
+		webConfig.getFilterConfigs().add(newFilterConfig("f1", "/api/*"));
+		HttpDispatcher dispatcher = new HttpDispatcher(webConfig, null);
+
+		HttpRequest request = newRequest("GET", "/notfound");
+		HttpResponse response = new HttpResponse("UTF-8", null){};
+		dispatcher.process(request, response);
+
+		//过滤器被跳过, 仍然执行了路由处理, 未找到路由返回 404
+		assertTrue(calls.isEmpty());
+		assertEquals(404, response.protocol().getStatus());
+	}
+}
@@ -0,0 +1,68 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.network.messagesplitter.HttpMessageSplitter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HttpMessageSplitter 报文完整性判断测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpMessageSplitterUnit extends TestCase {
+
+	/**
+	 * 逐字节喂入数据, 返回报文完整时的数据长度
+	 */
+	private int feedByteByByte(String message) {
+		byte[] bytes = message.getBytes();
+		ByteBuffer byteBuffer = ByteBuffer.allocate(bytes.length);
+		HttpMessageSplitter.MessageState messageState = new HttpMessageSplitter.MessageState();
+
+		for(int i=0; i<bytes.length; i++) {
+			byteBuffer.limit(i+1);
+			byteBuffer.put(i, bytes[i]);
+			if(messageState.scan(byteBuffer)) {
+				return i+1;
+			}
+		}
+		return -1;
+	}
+
+	public void testGet() {
+		String message = "GET /test?a=1 HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n";
+		assertEquals(message.length(), feedByteByByte(message));
+	}
+
+	public void testContentLength() {
+		String message = "POST /test HTTP/1.1\r\nContent-Type: text/plain\r\ncontent-length: 5\r\n\r\nhello";
+		assertEquals(message.length(), feedByteByByte(message));
+	}
+
+	public void testNoContentType() {
+		String message = "POST /test HTTP/1.1\r\nContent-Length: 5\r\n\r\n";
+		assertEquals(message.length(), feedByteByByte(message));
+	}
+
+	public void testChunked() {
+		String message = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nTransfer-Encoding: chunked\r\n\r\n" +
+				"3\r\nabc\r\na\r\n0123456789\r\n0\r\n\r\n";
+		assertEquals(message.length(), feedByteByByte(message));
+	}
+
+	public void testNotModified() {
+		String message = "HTTP/1.1 304 Not Modified\r\nContent-Type: text/plain\r\nContent-Length: 100\r\n\r\n";
+		assertEquals(message.length(), feedByteByByte(message));
+	}
+
+	public void testMultipart() {
+		String message = "POST /test HTTP/1.1\r\nContent-Type: multipart/form-data; boundary=\"XYZ\"\r\n\r\n" +
+				"--XYZ\r\nContent-Disposition: form-data; name=\"x\"\r\n\r\nval\r\n--XYZ--";
+		assertEquals(message.length(), feedByteByByte(message));
+	}
+}
@@ -0,0 +1,114 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.message.HttpParser;
+import org.voovan.http.message.packet.Cookie;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.tools.reflect.TReflect;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 请求参数和 Cookie 解析测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpParameterUnit extends TestCase {
+
+	private static Map<String, String> parseUrlEncoded(String str) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		HttpParser.parseUrlEncoded(parameters, str, StandardCharsets.UTF_8);
+		return parameters;
+	}
+
+	public void testUrlEncoded() {
+		Map<String, String> parameters = parseUrlEncoded("name=helyho&age=30");
+		assertEquals(2, parameters.size());
+		assertEquals("helyho", parameters.get("name"));
+		assertEquals("30", parameters.get("age"));
+
+		//"+" 解码为空格, 编码后的 "%2B" 解码为 "+"
+		parameters = parseUrlEncoded("q=a+b&plus=1%2B1&name%2Bx=%E4%B8%AD%E6%96%87");
+		assertEquals("a b", parameters.get("q"));
+		assertEquals("1+1", parameters.get("plus"));
+		assertEquals("中文", parameters.get("name+x"));
+
+		//编码后的 "&" 和 "=" 不分割参数
+		parameters = parseUrlEncoded("a=1%262%3D3");
+		assertEquals(1, parameters.size());
+		assertEquals("1&2=3", parameters.get("a"));
+
+		//不合法的转义保留原样
+		parameters = parseUrlEncoded("a=100%&b=%zz&c=%4");
+		assertEquals("100%", parameters.get("a"));
+		assertEquals("%zz", parameters.get("b"));
+		assertEquals("%4", parameters.get("c"));
+	}
+
+	public void testUrlEncodedEmpty() {
+		//空值为空字符串, 没有等号的参数值为 null, 空的参数对被忽略
+		Map<String, String> parameters = parseUrlEncoded("a=&b&&c=3&");
+		assertEquals(3, parameters.size());
+		assertEquals("", parameters.get("a"));
+		assertTrue(parameters.containsKey("b"));
+		assertNull(parameters.get("b"));
+		assertEquals("3", parameters.get("c"));
+
+		//值中的等号作为值的一部分
+		parameters = parseUrlEncoded("a==1");
+		assertEquals("=1", parameters.get("a"));
+
+		assertTrue(parseUrlEncoded("").isEmpty());
+		assertTrue(parseUrlEncoded(null).isEmpty());
+		assertTrue(parseUrlEncoded("&&").isEmpty());
+
+		//按偏移量和长度解析字节数组
+		Map<String, String> byteParameters = new HashMap<String, String>();
+		byte[] bytes = "xxa=1+2&b=yy".getBytes(StandardCharsets.UTF_8);
+		HttpParser.parseUrlEncoded(byteParameters, bytes, 2, 8, StandardCharsets.UTF_8);
+		assertEquals(2, byteParameters.size());
+		assertEquals("1 2", byteParameters.get("a"));
+		assertEquals("", byteParameters.get("b"));
+	}
+
+	public void testRequestParameters() throws ReflectiveOperationException {
+		HttpRequest request = new HttpRequest("UTF-8", null);
+		request.protocol().setMethod("GET");
+		request.protocol().setPath("/user/1");
+		request.protocol().setQueryString("id=2&name=a+b&empty=");
+
+		//路径变量优先于同名的请求参数
+		Map<String, String> pathVariables = TReflect.invokeMethod(request, "getPathVariables");
+		pathVariables.put("id", "1");
+
+		assertEquals("1", request.getParameter("id"));
+		assertEquals("a b", request.getParameter("name"));
+		assertEquals("", request.getParameter("empty"));
+		assertEquals(3, request.getParameters().size());
+	}
+
+	public void testCookie() {
+		List<Cookie> cookies = new ArrayList<Cookie>();
+		HttpParser.parseCookie(cookies, 0, "a=1; b=\"x y\"; c=k=v; d=");
+
+		//请求的 Cookie 一行多个, 去掉值两端的引号, 空值的 Cookie 被忽略
+		assertEquals(3, cookies.size());
+		assertEquals("a", cookies.get(0).getName());
+		assertEquals("1", cookies.get(0).getValue());
+		assertEquals("x y", cookies.get(1).getValue());
+		assertEquals("c", cookies.get(2).getName());
+		assertEquals("k=v", cookies.get(2).getValue());
+
+		cookies.clear();
+		HttpParser.parseCookie(cookies, 0, null);
+		assertTrue(cookies.isEmpty());
+	}
+}
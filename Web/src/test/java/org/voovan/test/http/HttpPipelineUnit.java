@@ -0,0 +1,191 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.WebServer;
+import org.voovan.tools.TEnv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * HTTP/1.1 管道化请求测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class HttpPipelineUnit extends TestCase {
+	private static final int BIG_SIZE = 20 * 1024;
+	private static int port = -1;
+
+	/**
+	 * 所有测试共用一个服务
+	 */
+	private static synchronized int serve() throws IOException {
+		if(port > 0) {
+			return port;
+		}
+
+		try(ServerSocket serverSocket = new ServerSocket(0)) {
+			port = serverSocket.getLocalPort();
+		}
+
+		char[] big = new char[BIG_SIZE];
+		Arrays.fill(big, 'x');
+
+		WebServer.newInstance("{\"Host\": \"127.0.0.1\", \"Port\": " + port + ", \"Gzip\": false, \"AccessLog\": false}")
+				.get("/echo", (request, response) -> response.write(request.getParameter("i")))
+				.get("/big", (request, response) -> response.write(request.getParameter("i") + new String(big)))
+				.get("/slow", (request, response) -> {
+					//响应在其他线程中延迟发送
+					HttpResponse asyncResponse = response.getAsyncResponse();
+					String index = request.getParameter("i");
+					new Thread(() -> {
+						TEnv.sleep(300);
+						asyncResponse.write("slow" + index);
+						try {
+							asyncResponse.send();
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					}).start();
+				})
+				.syncServe();
+		return port;
+	}
+
+	private static String request(String path, String... headers) {
+		StringBuilder request = new StringBuilder("GET " + path + " HTTP/1.1\r\nHost: 127.0.0.1\r\n");
+		for(String header : headers) {
+			request.append(header).append("\r\n");
+		}
+		return request.append("\r\n").toString();
+	}
+
+	/**
+	 * 在一次写入中发送所有请求, 读取到连接关闭或者读取到指定数量的响应
+	 * @param count 响应数量
+	 * @param requests 请求报文
+	 * @return 响应的 body
+	 */
+	private static List<String> pipeline(int count, String... requests) throws IOException {
+		try(Socket socket = new Socket("127.0.0.1", serve())) {
+			socket.setSoTimeout(5000);
+			OutputStream outputStream = socket.getOutputStream();
+			StringBuilder all = new StringBuilder();
+			for(String request : requests) {
+				all.append(request);
+			}
+			outputStream.write(all.toString().getBytes(StandardCharsets.US_ASCII));
+			outputStream.flush();
+
+			InputStream inputStream = socket.getInputStream();
+			List<String> bodies = new ArrayList<String>();
+			while(bodies.size() < count) {
+				String body = readResponse(inputStream);
+				if(body == null) {
+					break;
+				}
+				bodies.add(body);
+			}
+			return bodies;
+		}
+	}
+
+	/**
+	 * 读取一个使用 Content-Length 的响应
+	 * @return 响应的 body, 连接关闭时返回 null
+	 */
+	private static String readResponse(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream head = new ByteArrayOutputStream();
+		while(true) {
+			int value = inputStream.read();
+			if(value < 0) {
+				assertEquals(0, head.size());
+				return null;
+			}
+			head.write(value);
+			byte[] bytes = head.toByteArray();
+			int length = bytes.length;
+			if(length >= 4 && bytes[length - 4] == '\r' && bytes[length - 3] == '\n' && bytes[length - 2] == '\r' && bytes[length - 1] == '\n') {
+				break;
+			}
+		}
+
+		String headString = head.toString("US-ASCII");
+		assertTrue(headString, headString.startsWith("HTTP/1.1 200 OK\r\n"));
+		int contentLength = -1;
+		for(String line : headString.split("\r\n")) {
+			if(line.toLowerCase().startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		assertTrue(headString, contentLength >= 0);
+
+		byte[] body = new byte[contentLength];
+		int offset = 0;
+		while(offset < contentLength) {
+			int readSize = inputStream.read(body, offset, contentLength - offset);
+			assertTrue(readSize > 0);
+			offset = offset + readSize;
+		}
+		return new String(body, StandardCharsets.UTF_8);
+	}
+
+	public void testBatch() throws IOException {
+		//同一次读取到的请求全部处理, 按请求的顺序响应
+		String[] requests = new String[20];
+		List<String> expected = new ArrayList<String>();
+		for(int i=0;i<requests.length;i++) {
+			requests[i] = request("/echo?i=" + i);
+			expected.add(String.valueOf(i));
+		}
+		assertEquals(expected, pipeline(requests.length, requests));
+	}
+
+	public void testSendBufferFull() throws IOException {
+		//响应超过发送缓冲区时先发送之前的响应, 不丢弃响应
+		String[] requests = new String[6];
+		for(int i=0;i<requests.length;i++) {
+			requests[i] = request(i % 2 == 0 ? "/big?i=" + i : "/echo?i=" + i);
+		}
+
+		List<String> bodies = pipeline(requests.length, requests);
+		assertEquals(requests.length, bodies.size());
+		for(int i=0;i<requests.length;i++) {
+			if(i % 2 == 0) {
+				assertEquals(BIG_SIZE + 1, bodies.get(i).length());
+				assertTrue(bodies.get(i).startsWith(String.valueOf(i) + "x"));
+			} else {
+				assertEquals(String.valueOf(i), bodies.get(i));
+			}
+		}
+	}
+
+	public void testAsyncOrder() throws IOException {
+		//异步响应发送前, 后续的请求不处理, 响应仍然按请求的顺序
+		List<String> bodies = pipeline(4, request("/echo?i=0"), request("/slow?i=1"), request("/echo?i=2"), request("/slow?i=3"));
+		assertEquals(Arrays.asList("0", "slow1", "2", "slow3"), bodies);
+	}
+
+	public void testConnectionClose() throws IOException {
+		//要求关闭连接的请求之后的请求不再处理
+		List<String> bodies = pipeline(10, request("/echo?i=0"), request("/echo?i=1", "Connection: close"), request("/echo?i=2"));
+		assertEquals(Arrays.asList("0", "1"), bodies);
+
+		//异步响应后关闭连接
+		bodies = pipeline(10, request("/slow?i=0", "Connection: close"), request("/echo?i=1"));
+		assertEquals(Arrays.asList("slow0"), bodies);
+	}
+}
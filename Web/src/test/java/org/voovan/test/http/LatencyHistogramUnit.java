@@ -0,0 +1,160 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.module.monitor.LatencyHistogram;
+import org.voovan.tools.reflect.TReflect;
+
+import java.util.Map;
+
+/**
+ * 延迟直方图测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LatencyHistogramUnit extends TestCase {
+
+	public void testBucketEdges() {
+		//小于 16 的数值每个数值一个桶
+		for(int i=0;i<16;i++) {
+			assertEquals(i, LatencyHistogram.bucketIndex(i));
+			assertEquals(i, LatencyHistogram.bucketUpperBound(i));
+		}
+		assertEquals(0, LatencyHistogram.bucketIndex(-5));
+
+		//2 的幂区间的边界
+		assertEquals(16, LatencyHistogram.bucketIndex(16));
+		assertEquals(16, LatencyHistogram.bucketUpperBound(16));
+		assertEquals(31, LatencyHistogram.bucketIndex(31));
+		assertEquals(32, LatencyHistogram.bucketIndex(32));
+		assertEquals(32, LatencyHistogram.bucketIndex(33));
+		assertEquals(33, LatencyHistogram.bucketUpperBound(32));
+		assertEquals(33, LatencyHistogram.bucketIndex(34));
+		assertEquals(47, LatencyHistogram.bucketIndex(63));
+		assertEquals(48, LatencyHistogram.bucketIndex(64));
+		assertEquals(67, LatencyHistogram.bucketUpperBound(48));
+
+		//每个桶的上限落在桶内, 上限加 1 落在下一个桶
+		for(int i=1;i<LatencyHistogram.BUCKET_COUNT;i++) {
+			long upperBound = LatencyHistogram.bucketUpperBound(i);
+			assertEquals(i, LatencyHistogram.bucketIndex(upperBound));
+			assertEquals(i - 1, LatencyHistogram.bucketIndex(LatencyHistogram.bucketUpperBound(i - 1)));
+			assertTrue(upperBound > LatencyHistogram.bucketUpperBound(i - 1));
+			if(i < LatencyHistogram.BUCKET_COUNT - 1) {
+				assertEquals(i + 1, LatencyHistogram.bucketIndex(upperBound + 1));
+			}
+		}
+
+		//超过最大值的数值记录在最后一个桶
+		int last = LatencyHistogram.BUCKET_COUNT - 1;
+		assertEquals((1L << 32) - 1, LatencyHistogram.bucketUpperBound(last));
+		assertEquals(last, LatencyHistogram.bucketIndex((1L << 32) - 1));
+		assertEquals(last, LatencyHistogram.bucketIndex(1L << 40));
+		assertEquals(last, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+	}
+
+	public void testRelativeError() {
+		//桶的上限和数值的误差不超过 1/16
+		for(long value = 1; value < (1L << 32); value = value * 3 + 7) {
+			long upperBound = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+			assertTrue(upperBound >= value);
+			assertTrue(upperBound - value <= value / 16);
+		}
+	}
+
+	public void testPercentile() {
+		LatencyHistogram latencyHistogram = new LatencyHistogram();
+		LatencyHistogram.Snapshot empty = latencyHistogram.getTotal();
+		assertEquals(0, empty.getCount());
+		assertEquals(0, empty.getPercentile(0.99));
+		assertEquals(0, empty.getMax());
+		assertEquals(0.0, empty.getMean());
+
+		for(int i=1;i<=10000;i++) {
+			latencyHistogram.record(i);
+		}
+
+		LatencyHistogram.Snapshot snapshot = latencyHistogram.getTotal();
+		assertEquals(10000, snapshot.getCount());
+		assertEquals(50005000, snapshot.getSum());
+		assertEquals(5000.5, snapshot.getMean());
+
+		double[] percentiles = new double[]{0.5, 0.9, 0.99, 0.999, 1};
+		for(double percentile : percentiles) {
+			long expected = (long) (percentile * 10000);
+			long value = snapshot.getPercentile(percentile);
+			assertTrue(value >= expected);
+			assertTrue(value - expected <= expected / 16);
+		}
+		assertEquals(snapshot.getPercentile(1), snapshot.getMax());
+
+		//小于 16 的数值是精确的
+		latencyHistogram = new LatencyHistogram();
+		for(int i=0;i<10;i++) {
+			latencyHistogram.record(i < 9 ? 3 : 12);
+		}
+		snapshot = latencyHistogram.getTotal();
+		assertEquals(3, snapshot.getPercentile(0.5));
+		assertEquals(3, snapshot.getPercentile(0.9));
+		assertEquals(12, snapshot.getPercentile(0.91));
+		assertEquals(12, snapshot.getMax());
+	}
+
+	public void testWindow() {
+		LatencyHistogram latencyHistogram = new LatencyHistogram();
+		latencyHistogram.record(100);
+		latencyHistogram.rotate();
+		latencyHistogram.record(200);
+
+		//窗口包含已经结束的周期和当前周期
+		assertEquals(2, latencyHistogram.getWindow().getCount());
+		assertEquals(300, latencyHistogram.getWindow().getSum());
+
+		//第一个周期在 WINDOW_SLOTS 次 rotate 后移出窗口
+		for(int i=1;i<LatencyHistogram.WINDOW_SLOTS;i++) {
+			latencyHistogram.rotate();
+			assertEquals(2, latencyHistogram.getWindow().getCount());
+		}
+		latencyHistogram.rotate();
+		assertEquals(1, latencyHistogram.getWindow().getCount());
+		assertEquals(200, latencyHistogram.getWindow().getSum());
+
+		for(int i=0;i<LatencyHistogram.WINDOW_SLOTS;i++) {
+			latencyHistogram.rotate();
+		}
+		assertEquals(0, latencyHistogram.getWindow().getCount());
+		assertEquals(0, latencyHistogram.getWindow().getPercentile(0.99));
+
+		//累计数据不受窗口影响
+		assertEquals(2, latencyHistogram.getTotal().getCount());
+		assertEquals(300, latencyHistogram.getTotal().getSum());
+	}
+
+	public void testThreads() throws Exception {
+		LatencyHistogram latencyHistogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for(int i=0;i<threads.length;i++) {
+			threads[i] = new Thread(() -> {
+				for(int j=0;j<1000;j++) {
+					latencyHistogram.record(j);
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+
+		//已经结束的线程的数据合并后移除
+		assertEquals(4000, latencyHistogram.getTotal().getCount());
+		assertEquals(4 * 499500, latencyHistogram.getTotal().getSum());
+		assertTrue(((Map) TReflect.getFieldValue(latencyHistogram, "recorders")).isEmpty());
+
+		latencyHistogram.record(1);
+		assertEquals(4001, latencyHistogram.getTotal().getCount());
+		assertEquals(4001, latencyHistogram.getWindow().getCount());
+	}
+}
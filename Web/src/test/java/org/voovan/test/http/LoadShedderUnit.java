@@ -0,0 +1,80 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.LoadShedder;
+import org.voovan.http.server.context.WebServerConfig;
+import org.voovan.tools.reflect.TReflect;
+
+/**
+ * 过载保护测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class LoadShedderUnit extends TestCase {
+
+	private LoadShedder newLoadShedder() {
+		WebServerConfig webConfig = new WebServerConfig();
+		webConfig.setLoadShedTarget(10);
+		webConfig.getLoadShedPriority().clear();
+		webConfig.getLoadShedPriority().put("/api/user/:id", 8);
+		webConfig.getLoadShedPriority().put("/api/*", 3);
+		webConfig.getLoadShedPriority().put("/api/order/*", 5);
+		webConfig.getLoadShedPriority().put("/monitor/*", 10);
+		return new LoadShedder(webConfig);
+	}
+
+	private HttpRequest newRequest(String path, String routePath) throws ReflectiveOperationException {
+		HttpRequest request = new HttpRequest();
+		request.protocol().setMethod("GET");
+		request.protocol().setPath(path);
+		TReflect.invokeMethod(request, "setRoutePath", routePath);
+		return request;
+	}
+
+	public void testEnabled() {
+		assertTrue(newLoadShedder().isEnabled());
+		assertFalse(new LoadShedder(new WebServerConfig()).isEnabled());
+	}
+
+	public void testPriority() throws ReflectiveOperationException {
+		LoadShedder loadShedder = newLoadShedder();
+
+		//路由路径优先
+		assertEquals(8, loadShedder.getPriority(newRequest("/api/user/1", "/api/user/:id")));
+		//长的前缀优先匹配
+		assertEquals(5, loadShedder.getPriority(newRequest("/api/order/1", "/api/order/:id")));
+		assertEquals(3, loadShedder.getPriority(newRequest("/api/goods", "/api/goods")));
+		assertEquals(10, loadShedder.getPriority(newRequest("/monitor/status", null)));
+		//未配置的为 0
+		assertEquals(0, loadShedder.getPriority(newRequest("/index.html", null)));
+	}
+
+	public void testShed() throws ReflectiveOperationException {
+		LoadShedder loadShedder = newLoadShedder();
+
+		//没有事件执行器时不过载
+		HttpRequest request = newRequest("/index.html", null);
+		assertEquals(0, loadShedder.getLevel(request));
+		assertFalse(loadShedder.shed(request, new HttpResponse("UTF-8", null){}));
+
+		//排队延迟为目标延迟的 n 倍时拒绝优先级小于 n 的请求
+		HttpResponse response = new HttpResponse("UTF-8", null){};
+		assertTrue(loadShedder.shed(newRequest("/api/goods", "/api/goods"), response, 4));
+		assertEquals(503, response.protocol().getStatus());
+		assertEquals("1", response.header().get("Retry-After"));
+
+		assertFalse(loadShedder.shed(newRequest("/api/order/1", "/api/order/:id"), new HttpResponse("UTF-8", null){}, 4));
+		assertFalse(loadShedder.shed(newRequest("/api/goods", "/api/goods"), new HttpResponse("UTF-8", null){}, 3));
+		assertFalse(loadShedder.shed(newRequest("/index.html", null), new HttpResponse("UTF-8", null){}, 0));
+
+		//优先级 10 的请求不会被拒绝
+		assertTrue(loadShedder.shed(newRequest("/api/user/1", "/api/user/:id"), new HttpResponse("UTF-8", null){}, 10));
+		assertFalse(loadShedder.shed(newRequest("/monitor/status", null), new HttpResponse("UTF-8", null){}, 10));
+	}
+}
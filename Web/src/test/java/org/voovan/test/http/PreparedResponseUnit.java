@@ -0,0 +1,250 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.message.HttpClock;
+import org.voovan.http.message.Response;
+import org.voovan.http.message.packet.Cookie;
+import org.voovan.http.message.packet.ResponseProtocol;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.PreparedResponse;
+import org.voovan.http.server.WebServer;
+import org.voovan.http.server.context.WebContext;
+import org.voovan.tools.TEnv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * 预编码响应头和 Date 头缓存测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class PreparedResponseUnit extends TestCase {
+	private static final PreparedResponse PREPARED = HttpResponse.prepare("text/plain", "pong".getBytes());
+	private static int port = -1;
+
+	/**
+	 * 所有测试共用一个服务
+	 */
+	private static synchronized int serve() throws IOException {
+		if(port > 0) {
+			return port;
+		}
+
+		try(ServerSocket serverSocket = new ServerSocket(0)) {
+			port = serverSocket.getLocalPort();
+		}
+
+		WebServer.newInstance("{\"Host\": \"127.0.0.1\", \"Port\": " + port + ", \"Gzip\": false, \"AccessLog\": false}")
+				.get("/prepared", (request, response) -> response.setPreparedResponse(PREPARED))
+				.get("/merged", (request, response) -> {
+					response.setPreparedResponse(PREPARED);
+					response.header().put("X-Merged", "1");
+					response.header().put("Content-Type", "text/html");
+					response.write("!");
+				})
+				.syncServe();
+		return port;
+	}
+
+	/**
+	 * 在同一个连接上依次发送请求
+	 * @param paths 请求路径
+	 * @return 每个响应的完整报文
+	 */
+	private static String[] request(String... paths) throws IOException {
+		try(Socket socket = new Socket("127.0.0.1", serve())) {
+			socket.setSoTimeout(5000);
+			OutputStream outputStream = socket.getOutputStream();
+			InputStream inputStream = socket.getInputStream();
+
+			String[] responses = new String[paths.length];
+			for(int i=0;i<paths.length;i++) {
+				outputStream.write(("GET " + paths[i] + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+				outputStream.flush();
+				responses[i] = readResponse(inputStream);
+			}
+			return responses;
+		}
+	}
+
+	/**
+	 * 读取一个使用 Content-Length 的响应
+	 * @return 响应的完整报文
+	 */
+	private static String readResponse(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		while(true) {
+			int value = inputStream.read();
+			assertTrue(value >= 0);
+			message.write(value);
+			byte[] bytes = message.toByteArray();
+			int length = bytes.length;
+			if(length >= 4 && bytes[length - 4] == '\r' && bytes[length - 3] == '\n' && bytes[length - 2] == '\r' && bytes[length - 1] == '\n') {
+				break;
+			}
+		}
+
+		int contentLength = -1;
+		for(String line : message.toString("US-ASCII").split("\r\n")) {
+			if(line.toLowerCase().startsWith("content-length:")) {
+				contentLength = Integer.parseInt(line.substring(15).trim());
+			}
+		}
+		assertTrue(contentLength >= 0);
+
+		for(int i=0;i<contentLength;i++) {
+			int value = inputStream.read();
+			assertTrue(value >= 0);
+			message.write(value);
+		}
+		return message.toString("US-ASCII");
+	}
+
+	/**
+	 * 等待 Date 头更新
+	 * @param dateHeader 当前的 Date 头
+	 */
+	private static void waitDateChange(byte[] dateHeader) {
+		for(int i=0;i<40 && HttpClock.getDateHeader() == dateHeader;i++) {
+			TEnv.sleep(100);
+		}
+		assertNotSame(dateHeader, HttpClock.getDateHeader());
+	}
+
+	public void testHttpClock() throws Exception {
+		byte[] dateHeader = HttpClock.getDateHeader();
+		String date = HttpClock.getDate();
+		assertEquals("Date: " + date + "\r\n", new String(dateHeader, StandardCharsets.US_ASCII));
+
+		//GMT 格式, 和当前时间的误差在刷新周期内
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		assertTrue(date.endsWith(" GMT"));
+		long now = System.currentTimeMillis();
+		assertTrue(Math.abs(now - format.parse(date).getTime()) < 3000);
+		assertTrue(Math.abs(now - HttpClock.currentTimeMillis()) < 3000);
+
+		//日期不变时返回同一个数组, 日期变化后返回新的数组
+		if(date.equals(HttpClock.getDate())) {
+			assertSame(dateHeader, HttpClock.getDateHeader());
+		}
+		waitDateChange(dateHeader);
+		assertFalse(date.equals(HttpClock.getDate()));
+		assertEquals("Date: " + HttpClock.getDate() + "\r\n", new String(HttpClock.getDateHeader(), StandardCharsets.US_ASCII));
+	}
+
+	public void testStatusLine() {
+		ResponseProtocol protocol = new ResponseProtocol();
+		protocol.setStatus(404);
+		protocol.setStatusCode("Not Found");
+		byte[] statusLine = protocol.toBytes();
+		assertEquals("HTTP/1.1 404 Not Found\r\n", new String(statusLine, StandardCharsets.US_ASCII));
+
+		//同一个状态码和状态说明使用缓存
+		ResponseProtocol other = new ResponseProtocol();
+		other.setStatus(404);
+		other.setStatusCode("Not Found");
+		assertSame(statusLine, other.toBytes());
+
+		//状态说明不同时重新生成
+		other.setStatusCode("Missing");
+		assertEquals("HTTP/1.1 404 Missing\r\n", new String(other.toBytes(), StandardCharsets.US_ASCII));
+
+		//HTTP/1.1 以外的版本不缓存
+		other.setVersion("1.0");
+		assertEquals("HTTP/1.0 404 Missing\r\n", new String(other.toBytes(), StandardCharsets.US_ASCII));
+		assertNotSame(other.toBytes(), other.toBytes());
+	}
+
+	public void testEncodeHead() {
+		Response response = new Response();
+		response.header().put("Content-Type", "text/html");
+		response.header().put("X-Custom", "value");
+		response.cookies().add(Cookie.newInstance("name", "value"));
+		response.cookies().add(Cookie.newInstance("other", "1"));
+		response.body().write("hello");
+		response.prepareHeader();
+
+		//计算的大小和写入的字节数一致, 内容和按字符串拼装的报头一致
+		ByteBuffer byteBuffer = ByteBuffer.allocate(response.headSize() + 10);
+		response.encodeHead(byteBuffer);
+		assertEquals(response.headSize(), byteBuffer.position());
+
+		String head = new String(byteBuffer.array(), 0, byteBuffer.position(), StandardCharsets.US_ASCII);
+		assertEquals(response.toString(), head);
+		assertTrue(head.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(head.contains("Content-Type: text/html\r\n"));
+		assertTrue(head.contains("X-Custom: value\r\n"));
+		assertTrue(head.contains("Content-Length: 5\r\n"));
+		assertTrue(head.endsWith("Set-Cookie: " + response.cookies().get(0) + "\r\nSet-Cookie: " + response.cookies().get(1) + "\r\n"));
+		response.release();
+	}
+
+	public void testPreparedBytes() {
+		Response response = new Response();
+		response.protocol().setStatus(503);
+		response.protocol().setStatusCode("Service Unavailable");
+		response.header().put("Retry-After", "1");
+		response.body().write("busy");
+		PreparedResponse preparedResponse = HttpResponse.prepare(response);
+
+		//构造后对响应对象的修改不影响预编码的响应
+		response.header().put("X-Changed", "1");
+		response.release();
+
+		byte[] bytes = preparedResponse.getBytes();
+		byte[] dateHeader = HttpClock.getDateHeader();
+		String message = new String(bytes, StandardCharsets.US_ASCII);
+		assertTrue(message.startsWith("HTTP/1.1 503 Service Unavailable\r\n"));
+		assertTrue(message.contains("Retry-After: 1\r\n"));
+		assertTrue(message.contains("Content-Length: 4\r\n"));
+		assertFalse(message.contains("X-Changed"));
+		assertTrue(message.endsWith(new String(WebContext.RESPONSE_SERVER_HEADER, StandardCharsets.US_ASCII) + "busy"));
+
+		//日期不变时复用拼接好的报文, 日期变化后重新拼接
+		if(dateHeader == HttpClock.getDateHeader()) {
+			assertTrue(message.contains(new String(dateHeader, StandardCharsets.US_ASCII)));
+			assertSame(bytes, preparedResponse.getBytes());
+		}
+		waitDateChange(dateHeader);
+		byte[] newBytes = preparedResponse.getBytes();
+		assertNotSame(bytes, newBytes);
+		assertEquals(bytes.length, newBytes.length);
+		assertTrue(new String(newBytes, StandardCharsets.US_ASCII).contains("Date: " + HttpClock.getDate() + "\r\n"));
+	}
+
+	public void testSendPrepared() throws IOException {
+		//没有其他内容时按原样发送预编码的报文
+		String[] responses = request("/prepared", "/prepared");
+		for(String response : responses) {
+			assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+			assertTrue(response, response.contains("Content-Type: text/plain\r\n"));
+			assertTrue(response, response.contains("Content-Length: 4\r\n"));
+			assertTrue(response, response.endsWith("\r\n\r\npong"));
+		}
+
+		//和其他内容合并时按普通响应发送
+		responses = request("/merged", "/prepared");
+		assertTrue(responses[0], responses[0].contains("X-Merged: 1\r\n"));
+		assertTrue(responses[0], responses[0].contains("Content-Type: text/html\r\n"));
+		assertFalse(responses[0], responses[0].contains("text/plain"));
+		assertTrue(responses[0], responses[0].contains("Content-Length: 5\r\n"));
+		assertTrue(responses[0], responses[0].endsWith("\r\n\r\npong!"));
+		assertFalse(responses[1], responses[1].contains("X-Merged"));
+		assertTrue(responses[1], responses[1].endsWith("\r\n\r\npong"));
+	}
+}
@@ -0,0 +1,115 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.module.monitor.IPAnalysis;
+import org.voovan.http.server.module.monitor.MonitorGlobal;
+import org.voovan.http.server.module.monitor.PrometheusRouter;
+import org.voovan.http.server.module.monitor.RequestAnalysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Prometheus 指标输出测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class PrometheusRouterUnit extends TestCase {
+	//指标名{标签="值",...} 数值
+	private static final Pattern SAMPLE = Pattern.compile("[a-z_]+(\\{([a-z]+=\"([^\"\\\\\\n]|\\\\[\\\\\"n])*\",?)+\\})? [0-9.E-]+");
+
+	@Override
+	protected void setUp() {
+		MonitorGlobal.REQUEST_ANALYSIS.clear();
+		MonitorGlobal.IP_ANALYSIS.clear();
+
+		RequestAnalysis requestAnalysis = new RequestAnalysis("/api/:id");
+		requestAnalysis.addRequest(1000, 200, 10, 100);
+		requestAnalysis.addRequest(3000, 200, 20, 200);
+		requestAnalysis.addRequest(500, 500, 0, 30);
+		MonitorGlobal.REQUEST_ANALYSIS.put(requestAnalysis.getPath(), requestAnalysis);
+
+		MonitorGlobal.REQUEST_ANALYSIS.put("/a\"b\\c", new RequestAnalysis("/a\"b\\c"));
+		MonitorGlobal.IP_ANALYSIS.put("10.0.0.1", new IPAnalysis("10.0.0.1"));
+	}
+
+	@Override
+	protected void tearDown() {
+		MonitorGlobal.REQUEST_ANALYSIS.clear();
+		MonitorGlobal.IP_ANALYSIS.clear();
+		MonitorGlobal.ALLOW_IP_ADDRESS = null;
+	}
+
+	public void testFormat() {
+		String metrics = PrometheusRouter.metrics();
+		assertTrue(metrics.endsWith("\n"));
+
+		//每一行是注释或者样本, 每个指标的 HELP 和 TYPE 在样本之前
+		List<String> types = new ArrayList<String>();
+		String currentType = null;
+		for(String line : metrics.split("\n")) {
+			if(line.startsWith("# HELP ")) {
+				continue;
+			} else if(line.startsWith("# TYPE ")) {
+				String[] parts = line.split(" ");
+				assertEquals(4, parts.length);
+				assertTrue(Arrays.asList("counter", "gauge", "summary").contains(parts[3]));
+				currentType = parts[2];
+				assertFalse(types.contains(currentType));
+				types.add(currentType);
+			} else {
+				assertTrue(line, SAMPLE.matcher(line).matches());
+				assertNotNull(currentType);
+				assertTrue(line, line.startsWith(currentType));
+			}
+		}
+		assertEquals(Arrays.asList("voovan_http_requests_total", "voovan_http_request_duration_seconds",
+				"voovan_http_request_bytes_total", "voovan_http_response_bytes_total",
+				"voovan_jvm_memory_bytes", "voovan_monitor_ip_addresses"), types);
+	}
+
+	public void testValues() {
+		String metrics = PrometheusRouter.metrics();
+
+		assertTrue(metrics.contains("voovan_http_requests_total{route=\"/api/:id\",status=\"200\"} 2\n"));
+		assertTrue(metrics.contains("voovan_http_requests_total{route=\"/api/:id\",status=\"500\"} 1\n"));
+
+		//请求时间以秒输出, _sum 和 _count 为累计值
+		assertTrue(metrics.contains("voovan_http_request_duration_seconds{route=\"/api/:id\",quantile=\"0.5\"} 0.001023\n"));
+		assertTrue(metrics.contains("voovan_http_request_duration_seconds{route=\"/api/:id\",quantile=\"0.999\"} 0.003071\n"));
+		assertTrue(metrics.contains("voovan_http_request_duration_seconds_sum{route=\"/api/:id\"} 0.0045\n"));
+		assertTrue(metrics.contains("voovan_http_request_duration_seconds_count{route=\"/api/:id\"} 3\n"));
+
+		assertTrue(metrics.contains("voovan_http_request_bytes_total{route=\"/api/:id\"} 30\n"));
+		assertTrue(metrics.contains("voovan_http_response_bytes_total{route=\"/api/:id\"} 330\n"));
+		assertTrue(metrics.contains("voovan_monitor_ip_addresses 1\n"));
+
+		//标签值转义
+		assertTrue(metrics.contains("voovan_http_request_duration_seconds_count{route=\"/a\\\"b\\\\c\"} 0\n"));
+		//没有请求的路由不输出状态码计数
+		assertFalse(metrics.contains("voovan_http_requests_total{route=\"/a\\\"b\\\\c\""));
+	}
+
+	public void testProcess() throws Exception {
+		MonitorGlobal.ALLOW_IP_ADDRESS = Arrays.asList("10.0.0.1");
+		HttpRequest request = new HttpRequest("UTF-8", null) {
+			@Override
+			public String getRemoteAddres() {
+				return "10.0.0.1";
+			}
+		};
+		HttpResponse response = new HttpResponse("UTF-8", null){};
+
+		new PrometheusRouter().process(request, response);
+		assertEquals(PrometheusRouter.CONTENT_TYPE, response.header().get("Content-Type"));
+		assertTrue(response.body().getBodyString().startsWith("# HELP voovan_http_requests_total "));
+	}
+}
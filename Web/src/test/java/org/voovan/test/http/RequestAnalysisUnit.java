@@ -0,0 +1,114 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.module.monitor.IPAnalysis;
+import org.voovan.http.server.module.monitor.LatencyHistogram;
+import org.voovan.http.server.module.monitor.RequestAnalysis;
+import org.voovan.tools.reflect.TReflect;
+
+import java.util.Map;
+
+/**
+ * 监控模块请求分析测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class RequestAnalysisUnit extends TestCase {
+
+	/**
+	 * 百分位数返回数值所在桶的上限
+	 * @param time 请求时间, 单位: 微秒
+	 * @return 输出的百分位数, 单位: 毫秒
+	 */
+	private static double upperBound(long time) {
+		return LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(time)) / 1000d;
+	}
+
+	public void testRequestAnalysis() {
+		RequestAnalysis requestAnalysis = new RequestAnalysis("/test");
+		assertEquals(0, requestAnalysis.getMinTime());
+
+		requestAnalysis.addRequest(2000, 200, 10, 100);
+		requestAnalysis.addRequest(6000, 200, 20, 200);
+		requestAnalysis.addRequest(1000, 404, 0, 50);
+
+		assertEquals(3, requestAnalysis.getCount());
+		assertEquals(3, requestAnalysis.getAvgTime());
+		assertEquals(6, requestAnalysis.getMaxTime());
+		assertEquals(1, requestAnalysis.getMinTime());
+		assertEquals(30, requestAnalysis.getBytesIn());
+		assertEquals(350, requestAnalysis.getBytesOut());
+
+		Map<Integer, Long> statusCount = requestAnalysis.getStatusCount();
+		assertEquals(2, statusCount.size());
+		assertEquals(2L, (long) statusCount.get(200));
+		assertEquals(1L, (long) statusCount.get(404));
+
+		//兼容按毫秒增加请求时间
+		requestAnalysis.addRequestTime(10);
+		assertEquals(10, requestAnalysis.getMaxTime());
+		assertEquals(3L, (long) requestAnalysis.getStatusCount().get(200));
+	}
+
+	public void testWindowRollover() {
+		RequestAnalysis requestAnalysis = new RequestAnalysis("/window");
+		for(int i=0;i<99;i++) {
+			requestAnalysis.addRequest(1000, 200, 0, 0);
+		}
+		requestAnalysis.addRequest(100000, 200, 0, 0);
+
+		Map<String, Object> window = (Map<String, Object>) requestAnalysis.toMap().get("window");
+		assertEquals(100L, window.get("count"));
+		assertEquals(upperBound(1000), window.get("p50"));
+		assertEquals(upperBound(1000), window.get("p99"));
+		assertEquals(upperBound(100000), window.get("p999"));
+		assertTrue(upperBound(100000) <= 100 * 17 / 16d);
+
+		//旧的周期移出窗口后, 百分位数只按新的请求计算
+		requestAnalysis.getLatency().rotate();
+		requestAnalysis.addRequest(3000, 200, 0, 0);
+		for(int i=0;i<LatencyHistogram.WINDOW_SLOTS;i++) {
+			requestAnalysis.getLatency().rotate();
+		}
+		window = (Map<String, Object>) requestAnalysis.toMap().get("window");
+		assertEquals(1L, window.get("count"));
+		assertEquals(upperBound(3000), window.get("p50"));
+		assertEquals(upperBound(3000), window.get("p999"));
+
+		//累计数据不受窗口影响
+		Map<String, Object> result = requestAnalysis.toMap();
+		assertEquals(101L, result.get("count"));
+		assertEquals(100, result.get("maxTime"));
+		assertEquals(1, result.get("minTime"));
+	}
+
+	public void testIPAnalysis() throws Exception {
+		IPAnalysis ipAnalysis = new IPAnalysis("10.0.0.1");
+		ipAnalysis.addRequest("/a");
+		ipAnalysis.addRequest("/a");
+		ipAnalysis.addRequest("/b");
+
+		assertEquals(3, ipAnalysis.getTotalCount());
+		assertEquals(3, ipAnalysis.getLastMinuteCount());
+		assertEquals(2L, (long) ipAnalysis.getData().get("/a"));
+		assertEquals(1L, (long) ipAnalysis.getData().get("/b"));
+
+		//进入下一分钟后, 上一分钟的计数不再返回, 新请求重新计数
+		long minute = (Long) TReflect.getFieldValue(ipAnalysis, "minute");
+		TReflect.setFieldValue(ipAnalysis, "minute", minute - 1);
+		assertEquals(0, ipAnalysis.getLastMinuteCount());
+		ipAnalysis.addRequest("/a");
+		assertEquals(1, ipAnalysis.getLastMinuteCount());
+		assertEquals(4, ipAnalysis.getTotalCount());
+
+		Map<String, Object> result = ipAnalysis.toMap();
+		assertEquals("10.0.0.1", result.get("address"));
+		assertEquals(4L, result.get("totalCount"));
+		assertEquals(1L, result.get("lastMinuteCount"));
+		assertEquals(3L, (long) ((Map<String, Long>) result.get("data")).get("/a"));
+	}
+}
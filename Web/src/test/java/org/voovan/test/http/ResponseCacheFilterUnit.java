@@ -0,0 +1,132 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.client.HttpClient;
+import org.voovan.http.message.Response;
+import org.voovan.http.server.WebServer;
+import org.voovan.http.server.context.HttpFilterConfig;
+import org.voovan.http.server.context.WebServerConfig;
+import org.voovan.tools.TEnv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 响应缓存过滤器测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ResponseCacheFilterUnit extends TestCase {
+	private static final int PORT = 28091;
+	private static final int CONCURRENT = 8;
+
+	private static WebServer webServer;
+	private static AtomicInteger cachedCount = new AtomicInteger(0);
+	private static AtomicInteger noStoreCount = new AtomicInteger(0);
+	private static AtomicInteger slowCount = new AtomicInteger(0);
+
+	@Override
+	protected void setUp() {
+		if(webServer != null) {
+			return;
+		}
+
+		WebServerConfig webConfig = new WebServerConfig();
+		webConfig.setPort(PORT);
+
+		Map<String, Object> filterMap = new HashMap<String, Object>();
+		filterMap.put("Name", "ResponseCacheFilter");
+		filterMap.put("ClassName", "org.voovan.http.server.filter.ResponseCacheFilter");
+		filterMap.put("ttl", 60);
+		filterMap.put("lockTimeout", 300);
+		webConfig.getFilterConfigs().add(new HttpFilterConfig(filterMap));
+
+		webServer = WebServer.newInstance(webConfig);
+		webServer.get("/cached", (request, response) -> {
+			cachedCount.incrementAndGet();
+			TEnv.sleep(200);
+			response.write("cached");
+		}).get("/noStore", (request, response) -> {
+			noStoreCount.incrementAndGet();
+			TEnv.sleep(200);
+			response.header().put("Cache-Control", "no-store");
+			response.write("noStore");
+		}).get("/slow", (request, response) -> {
+			slowCount.incrementAndGet();
+			TEnv.sleep(1000);
+			response.write("slow");
+		}).syncServe();
+
+		TEnv.wait(5000, () -> !webServer.isServing());
+	}
+
+	/**
+	 * 并发请求同一个路径
+	 * @param path 请求路径
+	 * @return 所有请求的响应 body
+	 */
+	private List<String> concurrentGet(String path) throws InterruptedException {
+		List<String> bodies = new ArrayList<String>();
+		CountDownLatch countDownLatch = new CountDownLatch(CONCURRENT);
+		for(int i=0;i<CONCURRENT;i++) {
+			new Thread(() -> {
+				HttpClient httpClient = new HttpClient("http://127.0.0.1:" + PORT, 5);
+				try {
+					Response response = httpClient.send(path);
+					synchronized (bodies) {
+						bodies.add(response.protocol().getStatus() + ":" + response.body().getBodyString());
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				} finally {
+					httpClient.close();
+					countDownLatch.countDown();
+				}
+			}).start();
+		}
+		countDownLatch.await();
+		return bodies;
+	}
+
+	public void testConcurrentMiss() throws InterruptedException {
+		//同时未命中的请求只执行一次路由, 其他请求使用同一个响应
+		List<String> bodies = concurrentGet("/cached");
+		assertEquals(CONCURRENT, bodies.size());
+		for(String body : bodies) {
+			assertEquals("200:cached", body);
+		}
+		assertEquals(1, cachedCount.get());
+
+		//之后的请求命中缓存
+		assertEquals(CONCURRENT, concurrentGet("/cached").size());
+		assertEquals(1, cachedCount.get());
+	}
+
+	public void testNotCacheable() throws InterruptedException {
+		//第一个请求的响应不可缓存时, 挂起的请求各自执行路由
+		List<String> bodies = concurrentGet("/noStore");
+		assertEquals(CONCURRENT, bodies.size());
+		for(String body : bodies) {
+			assertEquals("200:noStore", body);
+		}
+		assertEquals(CONCURRENT, noStoreCount.get());
+	}
+
+	public void testLockTimeout() throws InterruptedException {
+		//第一个请求超过 lockTimeout 未完成时, 挂起的请求各自执行路由
+		List<String> bodies = concurrentGet("/slow");
+		assertEquals(CONCURRENT, bodies.size());
+		for(String body : bodies) {
+			assertEquals("200:slow", body);
+		}
+		assertTrue(slowCount.get() > 1);
+	}
+}
@@ -0,0 +1,274 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.message.Response;
+import org.voovan.http.message.packet.Body;
+import org.voovan.network.IoSession;
+import org.voovan.network.MessageSplitter;
+import org.voovan.network.tcp.TcpSocket;
+import org.voovan.tools.buffer.ByteBufferChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP 响应发送测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class ResponseUnit extends TestCase {
+
+	/**
+	 * 写出时把发送缓冲区中的数据保存下来
+	 */
+	private static class MockSession extends IoSession<TcpSocket> {
+		private ByteArrayOutputStream output = new ByteArrayOutputStream();
+		private int flushCount = 0;
+
+		public MockSession(TcpSocket tcpSocket) {
+			super(tcpSocket);
+		}
+
+		@Override
+		public void flush() {
+			ByteBufferChannel byteBufferChannel = getSendByteBufferChannel();
+			if(byteBufferChannel.size() > 0) {
+				flushCount++;
+				output.write(byteBufferChannel.array(), 0, byteBufferChannel.size());
+				byteBufferChannel.clear();
+			}
+		}
+
+		@Override
+		public String localAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int loaclPort() {
+			return 0;
+		}
+
+		@Override
+		public String remoteAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int remotePort() {
+			return 0;
+		}
+
+		@Override
+		protected MessageSplitter getMessageSplitter() {
+			return null;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public boolean close() {
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "MockSession";
+		}
+	}
+
+	/**
+	 * 写出的报文, 报头和解码 chunked 后的报文主体
+	 */
+	private static class Message {
+		private String head;
+		private byte[] body;
+		private int maxChunkSize = 0;
+
+		private Message(byte[] bytes) {
+			int headEnd = indexOf(bytes, "\r\n\r\n".getBytes(), 0);
+			assertTrue(headEnd > 0);
+			head = new String(bytes, 0, headEnd + 2, StandardCharsets.US_ASCII);
+
+			int position = headEnd + 4;
+			if(!head.contains("Transfer-Encoding: chunked")) {
+				body = Arrays.copyOfRange(bytes, position, bytes.length);
+				return;
+			}
+
+			ByteArrayOutputStream bodyStream = new ByteArrayOutputStream();
+			while(true) {
+				int lineEnd = indexOf(bytes, "\r\n".getBytes(), position);
+				int chunkSize = Integer.parseInt(new String(bytes, position, lineEnd - position, StandardCharsets.US_ASCII), 16);
+				position = lineEnd + 2;
+				if(chunkSize == 0) {
+					//报文结束符之后没有多余的数据
+					assertEquals(position + 2, bytes.length);
+					break;
+				}
+
+				maxChunkSize = Math.max(maxChunkSize, chunkSize);
+				bodyStream.write(bytes, position, chunkSize);
+				position = position + chunkSize;
+				assertEquals('\r', bytes[position]);
+				assertEquals('\n', bytes[position + 1]);
+				position = position + 2;
+			}
+			body = bodyStream.toByteArray();
+		}
+
+		private static int indexOf(byte[] bytes, byte[] mark, int from) {
+			for(int i = from; i <= bytes.length - mark.length; i++) {
+				if(Arrays.equals(Arrays.copyOfRange(bytes, i, i + mark.length), mark)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	private static byte[] content(int size) {
+		//一半是随机数据, 一半是重复的文本, 压缩后仍然有多个缓冲区的数据
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		byte[] text = "Voovan gzip chunked response ".getBytes();
+		for(int i = size / 2; i < size; i++) {
+			bytes[i] = text[i % text.length];
+		}
+		return bytes;
+	}
+
+	private static byte[] gunzip(byte[] gzip) throws IOException {
+		try(GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int readSize;
+			while((readSize = gzipInputStream.read(buffer)) > 0) {
+				output.write(buffer, 0, readSize);
+			}
+			return output.toByteArray();
+		}
+	}
+
+	private static MockSession newSession() throws IOException {
+		return new MockSession(new TcpSocket("127.0.0.1", 1, 6000));
+	}
+
+	private static Message send(Response response) throws IOException {
+		MockSession session = newSession();
+		response.send(session);
+		session.flush();
+		return new Message(session.output.toByteArray());
+	}
+
+	public void testWriteGzip() throws IOException {
+		int[] sizes = new int[]{0, 1, 8 * 1024, 100 * 1024 + 7};
+		for(int size : sizes) {
+			for(int level : new int[]{-1, 0, 1, 9}) {
+				byte[] bytes = content(size);
+				Body body = new Body(bytes);
+
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				int[] writeCount = new int[1];
+				Response.writeGzip(body, level, (data, length) -> {
+					writeCount[0]++;
+					output.write(data, 0, length);
+				});
+
+				//gzip 头, 压缩数据, CRC32 和原始长度
+				byte[] gzip = output.toByteArray();
+				assertEquals((byte) 0x1f, gzip[0]);
+				assertEquals((byte) 0x8b, gzip[1]);
+				assertTrue(Arrays.equals(bytes, gunzip(gzip)));
+				if(gzip.length > 8 * 1024) {
+					assertTrue(writeCount[0] > 1);
+				}
+			}
+		}
+	}
+
+	public void testSendGzip() throws IOException {
+		byte[] bytes = content(100 * 1024);
+		Response response = new Response();
+		response.body().write(bytes);
+		response.setCompress(true);
+		response.setCompressLevel(1);
+
+		MockSession session = newSession();
+		response.send(session);
+		//超过发送缓冲区的数据先写出
+		assertTrue(session.flushCount > 0);
+		session.flush();
+
+		Message message = new Message(session.output.toByteArray());
+		assertTrue(message.head.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(message.head.contains("Transfer-Encoding: chunked\r\n"));
+		assertTrue(message.head.contains("Content-Encoding: gzip\r\n"));
+		assertFalse(message.head.contains("Content-Length"));
+		assertTrue(Arrays.equals(bytes, gunzip(message.body)));
+		assertTrue(message.maxChunkSize <= 8 * 1024);
+
+		//发送后清理响应, 包括压缩级别
+		assertFalse(response.isCompress());
+		assertEquals(-1, response.getCompressLevel());
+	}
+
+	public void testSendGzipFile() throws IOException {
+		//临时目录中的文件在发送后会被删除, 使用模块的 target 目录
+		File file = new File("target", "ResponseUnit-" + System.nanoTime() + ".txt");
+		file.getParentFile().mkdirs();
+		try {
+			byte[] bytes = content(50 * 1024);
+			Files.write(file.toPath(), bytes);
+
+			Response response = new Response();
+			response.body().changeToFile(file);
+			response.setCompress(true);
+
+			Message message = send(response);
+			assertTrue(message.head.contains("Content-Encoding: gzip\r\n"));
+			assertTrue(Arrays.equals(bytes, gunzip(message.body)));
+			//源文件不会被替换成压缩文件
+			assertTrue(Arrays.equals(bytes, Files.readAllBytes(file.toPath())));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testSendPlain() throws IOException {
+		Response response = new Response();
+		response.body().write("hello");
+
+		Message message = send(response);
+		assertTrue(message.head.contains("Content-Length: 5\r\n"));
+		assertFalse(message.head.contains("Transfer-Encoding"));
+		assertEquals("hello", new String(message.body));
+
+		//空的报文主体不压缩
+		response = new Response();
+		response.setCompress(true);
+		message = send(response);
+		assertTrue(message.head.contains("Content-Length: 0\r\n"));
+		assertFalse(message.head.contains("Content-Encoding"));
+		assertEquals(0, message.body.length);
+	}
+}
@@ -0,0 +1,188 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpResponse;
+import org.voovan.http.server.exception.AnnotationRouterException;
+import org.voovan.http.server.module.annontationRouter.annotation.BodyParam;
+import org.voovan.http.server.module.annontationRouter.annotation.Header;
+import org.voovan.http.server.module.annontationRouter.annotation.Param;
+import org.voovan.http.server.module.annontationRouter.router.RouterMethodBinder;
+import org.voovan.tools.reflect.TReflect;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+/**
+ * 注解路由方法参数绑定测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class RouterMethodBinderUnit extends TestCase {
+
+	public static class Routes {
+		public String params(@Param("name") String name, @Param("age") int age,
+							 @Param(value = "flag", defaultVal = "true") boolean flag,
+							 @Param(value = "score", isRequire = false) Double score) {
+			return name + ":" + age + ":" + flag + ":" + score;
+		}
+
+		public String others(HttpRequest request, @Header("X-Id") long id, @BodyParam("count") Integer count, String tail) {
+			return request.protocol().getPath() + ":" + id + ":" + count + ":" + tail;
+		}
+
+		public static int primitive(@Param(value = "value", isRequire = false) int value) {
+			return value;
+		}
+
+		public void fail() throws IOException {
+			throw new IOException("route failed");
+		}
+
+		public void error() {
+			throw new StackOverflowError("route error");
+		}
+
+		//调用类在独立的 ClassLoader 中, 不能访问包内可见的方法
+		String hidden(@Param("name") String name) {
+			return "hidden:" + name;
+		}
+
+		void hiddenFail() throws IOException {
+			throw new IOException("hidden failed");
+		}
+	}
+
+	//非 public 的类不生成调用类
+	static class ReflectRoutes {
+		public String echo(@Param("name") String name) {
+			return "reflect:" + name;
+		}
+
+		public void fail() throws IOException {
+			throw new IOException("reflect failed");
+		}
+	}
+
+	private static HttpRequest newRequest(String queryString) {
+		HttpRequest request = new HttpRequest("UTF-8", null);
+		request.protocol().setMethod("GET");
+		request.protocol().setPath("/binder");
+		request.protocol().setQueryString(queryString);
+		return request;
+	}
+
+	private static Method method(Class clazz, String name) {
+		for(Method method : clazz.getDeclaredMethods()) {
+			if(method.getName().equals(name)) {
+				return method;
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	private static Object invoke(Object obj, String name, HttpRequest request) throws Exception {
+		return RouterMethodBinder.get(method(obj.getClass(), name)).invoke(obj, request, new HttpResponse("UTF-8", null){});
+	}
+
+	public void testBinding() throws Exception {
+		Routes routes = new Routes();
+		assertNotNull(TReflect.getFieldValue(RouterMethodBinder.get(method(Routes.class, "params")), "invoker"));
+
+		//类型转换和默认值
+		assertEquals("a b:18:true:null", invoke(routes, "params", newRequest("name=a+b&age=18")));
+		assertEquals("x:1:false:2.5", invoke(routes, "params", newRequest("name=x&age=1&flag=false&score=2.5")));
+		assertEquals("\"q\":1:true:null", invoke(routes, "params", newRequest("name=%22%22q%22%22&age=1")));
+
+		//请求对象, Header, Body 参数和没有注解时按顺序注入的参数
+		HttpRequest request = newRequest("param4=end");
+		request.header().put("X-Id", "42");
+		request.body().write("{\"count\": 3}");
+		assertEquals("/binder:42:3:end", invoke(routes, "others", request));
+
+		//静态方法
+		assertEquals(7, invoke(routes, "primitive", newRequest("value=7")));
+	}
+
+	public void testBindingError() throws Exception {
+		Routes routes = new Routes();
+
+		//必须的参数没有值
+		try {
+			invoke(routes, "params", newRequest("age=1"));
+			fail();
+		} catch (AnnotationRouterException e) {
+			assertTrue(e.getMessage().contains("@Param [name = null]"));
+		}
+
+		//转换失败
+		try {
+			invoke(routes, "params", newRequest("name=a&age=x"));
+			fail();
+		} catch (AnnotationRouterException e) {
+			assertTrue(e.getMessage().contains("NumberFormatException"));
+		}
+
+		//基本类型的参数不能为 null
+		try {
+			invoke(routes, "primitive", newRequest(""));
+			fail();
+		} catch (AnnotationRouterException e) {
+			assertTrue(e.getMessage().contains("null parameter"));
+		}
+	}
+
+	public void testExceptionPropagation() throws Exception {
+		Routes routes = new Routes();
+
+		//生成的调用类直接抛出路由方法的异常
+		try {
+			invoke(routes, "fail", newRequest(""));
+			fail();
+		} catch (IOException e) {
+			assertEquals("route failed", e.getMessage());
+		}
+
+		try {
+			invoke(routes, "error", newRequest(""));
+			fail();
+		} catch (StackOverflowError e) {
+			assertEquals("route error", e.getMessage());
+		}
+
+		//反射调用时同样抛出路由方法的异常, 而不是 InvocationTargetException
+		Method method = method(ReflectRoutes.class, "fail");
+		method.setAccessible(true);
+		assertNull(TReflect.getFieldValue(RouterMethodBinder.get(method), "invoker"));
+		try {
+			RouterMethodBinder.get(method).invoke(new ReflectRoutes(), newRequest(""), new HttpResponse("UTF-8", null){});
+			fail();
+		} catch (IOException e) {
+			assertEquals("reflect failed", e.getMessage());
+		}
+
+		method = method(ReflectRoutes.class, "echo");
+		method.setAccessible(true);
+		assertEquals("reflect:a", RouterMethodBinder.get(method).invoke(new ReflectRoutes(), newRequest("name=a"), new HttpResponse("UTF-8", null){}));
+	}
+
+	public void testInvokerFallback() throws Exception {
+		Routes routes = new Routes();
+
+		//调用类访问路由方法失败时改用反射调用
+		assertEquals("hidden:a", invoke(routes, "hidden", newRequest("name=a")));
+		assertNull(TReflect.getFieldValue(RouterMethodBinder.get(method(Routes.class, "hidden")), "invoker"));
+		assertEquals("hidden:b", invoke(routes, "hidden", newRequest("name=b")));
+
+		try {
+			invoke(routes, "hiddenFail", newRequest(""));
+			fail();
+		} catch (IOException e) {
+			assertEquals("hidden failed", e.getMessage());
+		}
+	}
+}
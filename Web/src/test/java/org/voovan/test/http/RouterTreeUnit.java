@@ -0,0 +1,127 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.HttpDispatcher;
+import org.voovan.http.server.HttpRequest;
+import org.voovan.http.server.HttpRouter;
+import org.voovan.http.server.context.WebServerConfig;
+import org.voovan.tools.reflect.TReflect;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 路由前缀树测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class RouterTreeUnit extends TestCase {
+	private HttpDispatcher dispatcher;
+
+	@Override
+	protected void setUp() {
+		dispatcher = new HttpDispatcher(new WebServerConfig(), null);
+		HttpRouter router = (request, response) -> {};
+		dispatcher.addRouter("GET", "/user/list", router);
+		dispatcher.addRouter("GET", "/user/:id", router);
+		dispatcher.addRouter("GET", "/user/:id/profile", router);
+		dispatcher.addRouter("GET", "/user/*", router);
+		dispatcher.addRouter("GET", "/file-:id", router);
+		dispatcher.addRouter("POST", "/user/:name", router);
+	}
+
+	private String find(String method, String path, Map<String, String> pathVariables) throws ReflectiveOperationException {
+		HttpRequest request = new HttpRequest();
+		request.protocol().setMethod(method);
+		request.protocol().setPath(path);
+		Object routerWrap = dispatcher.findRouter(request, pathVariables);
+		return routerWrap == null ? null : (String) TReflect.getFieldValue(routerWrap, "routePath");
+	}
+
+	public void testPriority() throws ReflectiveOperationException {
+		Map<String, String> pathVariables = new HashMap<String, String>();
+
+		//静态段优先于参数段
+		assertEquals("/user/list", find("GET", "/user/list", pathVariables));
+		assertTrue(pathVariables.isEmpty());
+
+		//参数段优先于通配段
+		assertEquals("/user/:id", find("GET", "/user/123", pathVariables));
+		assertEquals("123", pathVariables.get("id"));
+
+		//没有更具体的路由时匹配通配段
+		pathVariables.clear();
+		assertEquals("/user/*", find("GET", "/user/123/orders/1", pathVariables));
+		assertEquals("/user/*", find("GET", "/user/", pathVariables));
+
+		//和原有的正则规则一致, 通配段至少需要一个 "/"
+		assertNull(find("GET", "/user", pathVariables));
+
+		//静态段的子树没有匹配时回退到参数段
+		pathVariables.clear();
+		assertEquals("/user/:id/profile", find("GET", "/user/list/profile", pathVariables));
+		assertEquals("list", pathVariables.get("id"));
+
+		assertNull(find("GET", "/order/1", null));
+	}
+
+	public void testPathVariables() throws ReflectiveOperationException {
+		Map<String, String> pathVariables = new HashMap<String, String>();
+
+		//路径变量按 URL 编码解码
+		assertEquals("/user/:id", find("GET", "/user/a%20b", pathVariables));
+		assertEquals("a b", pathVariables.get("id"));
+
+		//连续的 "/" 被忽略
+		pathVariables.clear();
+		assertEquals("/user/:id/profile", find("GET", "//user//7/profile", pathVariables));
+		assertEquals("7", pathVariables.get("id"));
+
+		//不同的请求方法使用不同的路由树
+		pathVariables.clear();
+		assertEquals("/user/:name", find("POST", "/user/123", pathVariables));
+		assertEquals("123", pathVariables.get("name"));
+		assertNull(find("PUT", "/user/123", null));
+	}
+
+	public void testRegexFallback() throws ReflectiveOperationException {
+		Map<String, String> pathVariables = new HashMap<String, String>();
+
+		//无法拆分为段的路由使用正则匹配
+		assertEquals("/file-:id", find("GET", "/file-12", pathVariables));
+		assertEquals("12", pathVariables.get("id"));
+	}
+
+	public void testWildcardOrder() throws ReflectiveOperationException {
+		HttpRouter router = (request, response) -> {};
+		dispatcher.addRouter("GET", "/*", router);
+		dispatcher.addRouter("GET", "/a/*", router);
+		dispatcher.addRouter("GET", "/a/b", router);
+		Map<String, String> pathVariables = new HashMap<String, String>();
+
+		//和原有的规则一致, 长的路由优先: /* 不会覆盖更长的正则路由
+		assertEquals("/file-:id", find("GET", "/file-12", pathVariables));
+		assertEquals("12", pathVariables.get("id"));
+		assertEquals("/user/:id", find("GET", "/user/1", null));
+		assertEquals("/user/*", find("GET", "/user/1/orders", null));
+
+		//前缀树的路由比通配路由长时优先
+		assertEquals("/a/b", find("GET", "/a/b", null));
+		assertEquals("/a/*", find("GET", "/a/c", null));
+
+		//"/a" 不匹配 "/a/*", 由更短的 "/*" 匹配
+		assertEquals("/*", find("GET", "/a", null));
+		assertEquals("/*", find("GET", "/order/1", null));
+
+		//前缀树匹配到的路由较短时, 匹配到的正则路由的路径变量不受影响
+		dispatcher.addRouter("GET", "/user/:id/profile-*", router);
+		pathVariables.clear();
+		assertEquals("/user/:id/profile-*", find("GET", "/user/7/profile-1", pathVariables));
+		assertEquals("7", pathVariables.get("id"));
+		assertEquals(1, pathVariables.size());
+	}
+}
@@ -0,0 +1,157 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.extend.SocketIOParserException;
+import org.voovan.http.extend.engineio.EIOPacket;
+import org.voovan.http.extend.socketio.SIOPacket;
+import org.voovan.http.extend.socketio.SIOParser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * socket.io 报文解析测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class SIOParserUnit extends TestCase {
+
+	private static String toString(ByteBuffer byteBuffer) {
+		byte[] bytes = new byte[byteBuffer.remaining()];
+		byteBuffer.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] toBytes(ByteBuffer byteBuffer) {
+		byte[] bytes = new byte[byteBuffer.remaining()];
+		byteBuffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	public void testDecode() throws SocketIOParserException {
+		SIOPacket packet = SIOParser.decode("2/socketio,12[\"show\",\"kkkk\"]");
+		assertEquals(SIOPacket.EVENT, packet.getSocketType());
+		assertEquals("/socketio", packet.getNsp());
+		assertEquals(12, packet.getSeq());
+		assertEquals("[\"show\",\"kkkk\"]", packet.getData());
+		assertEquals("2/socketio,12[\"show\",\"kkkk\"]", SIOParser.encode(packet));
+
+		packet = SIOParser.decode("0/socketio,");
+		assertEquals(SIOPacket.CONNECT, packet.getSocketType());
+		assertEquals("/socketio", packet.getNsp());
+		assertNull(packet.getData());
+
+		packet = SIOParser.decode("2[\"show\"]");
+		assertEquals(-1, packet.getSeq());
+		assertEquals("2[\"show\"]", SIOParser.encode(packet));
+
+		//ByteBuffer 解析不改变 position
+		ByteBuffer byteBuffer = ByteBuffer.wrap("2[\"show\"]".getBytes());
+		SIOParser.decode(byteBuffer);
+		assertEquals(0, byteBuffer.position());
+
+		try {
+			SIOParser.decode("9[]");
+			fail();
+		} catch (SocketIOParserException e) {
+		}
+	}
+
+	public void testDecodeBinary() throws SocketIOParserException {
+		SIOPacket packet = SIOParser.decode("52-/socketio,3[\"show\",{\"_placeholder\":true,\"num\":0},{\"file\":{\"_placeholder\":true,\"num\":1}}]");
+		assertEquals(SIOPacket.BINARY_EVENT, packet.getSocketType());
+		assertEquals(2, packet.getAttachments());
+		assertEquals("/socketio", packet.getNsp());
+		assertEquals(3, packet.getSeq());
+
+		//附件数量后必须有分隔符
+		try {
+			SIOParser.decode("52/socketio,[]");
+			fail();
+		} catch (SocketIOParserException e) {
+		}
+
+		//占位符按 num 替换为随后收到的二进制附件
+		packet.getBinaries().add(new byte[]{1, 2, 3});
+		packet.getBinaries().add(new byte[]{4, 5});
+		List<Object> args = SIOParser.getArgs(packet);
+		assertEquals(3, args.size());
+		assertEquals("show", args.get(0));
+		assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) args.get(1)));
+		assertTrue(Arrays.equals(new byte[]{4, 5}, (byte[]) ((Map) args.get(2)).get("file")));
+	}
+
+	public void testAttachmentsLimit() throws SocketIOParserException {
+		//附件数量由客户端声明, 超过限制时拒绝报文
+		try {
+			SIOParser.decode("5999999999-[\"show\"]");
+			fail();
+		} catch (SocketIOParserException e) {
+		}
+
+		try {
+			SIOParser.decode(ByteBuffer.wrap("53-[\"show\"]".getBytes()), 2);
+			fail();
+		} catch (SocketIOParserException e) {
+		}
+
+		SIOPacket packet = SIOParser.decode(ByteBuffer.wrap("52-[\"show\"]".getBytes()), 2);
+		assertEquals(2, packet.getAttachments());
+		assertEquals(SIOParser.MAX_ATTACHMENTS, SIOParser.decode("5" + SIOParser.MAX_ATTACHMENTS + "-[]").getAttachments());
+
+		//收到的附件累计总字节数
+		packet.addBinary(new byte[10]);
+		packet.addBinary(new byte[5]);
+		assertEquals(2, packet.getBinaries().size());
+		assertEquals(15, packet.getBinarySize());
+	}
+
+	public void testEncodeBinary() throws SocketIOParserException {
+		Map<String, Object> file = new HashMap<String, Object>();
+		file.put("content", ByteBuffer.wrap(new byte[]{4, 5}));
+
+		List<Object> args = new ArrayList<Object>();
+		args.add("upload");
+		args.add(new byte[]{1, 2, 3});
+		args.add(file);
+
+		//二进制参数替换为占位符, 报文类型变为 BINARY_EVENT, 附件紧随报文之后
+		ByteBuffer[] byteBuffers = SIOParser.encode(SIOPacket.EVENT, "/chat", 7, args);
+		assertEquals(3, byteBuffers.length);
+		assertTrue(Arrays.equals(new byte[]{1, 2, 3}, toBytes(byteBuffers[1])));
+		assertTrue(Arrays.equals(new byte[]{4, 5}, toBytes(byteBuffers[2])));
+
+		String message = toString(byteBuffers[0]);
+		assertEquals('0' + EIOPacket.MESSAGE, message.charAt(0));
+		assertTrue(message.startsWith("452-/chat,7["));
+
+		//解析并用附件还原后与原参数一致
+		SIOPacket packet = SIOParser.decode(message.substring(1));
+		assertEquals(SIOPacket.BINARY_EVENT, packet.getSocketType());
+		assertEquals(2, packet.getAttachments());
+		packet.getBinaries().add(toBytes(byteBuffers[1]));
+		packet.getBinaries().add(toBytes(byteBuffers[2]));
+
+		List<Object> decodeArgs = SIOParser.getArgs(packet);
+		assertEquals("upload", decodeArgs.get(0));
+		assertTrue(Arrays.equals(new byte[]{1, 2, 3}, (byte[]) decodeArgs.get(1)));
+		assertTrue(Arrays.equals(new byte[]{4, 5}, (byte[]) ((Map) decodeArgs.get(2)).get("content")));
+
+		//没有二进制参数时为普通的 EVENT, ACK 对应 BINARY_ACK
+		byteBuffers = SIOParser.encode(SIOPacket.EVENT, "/", -1, Arrays.asList((Object) "hello"));
+		assertEquals(1, byteBuffers.length);
+		assertEquals("42[\"hello\"]", toString(byteBuffers[0]));
+
+		byteBuffers = SIOParser.encode(SIOPacket.ACK, "/", 1, Arrays.asList((Object) new byte[]{1}));
+		assertTrue(toString(byteBuffers[0]).startsWith("461-1["));
+	}
+}
@@ -0,0 +1,151 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.server.router.StaticFileCache;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.TZip;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * 静态文件缓存测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class StaticFileCacheUnit extends TestCase {
+	private File dir;
+
+	@Override
+	protected void setUp() {
+		dir = new File(System.getProperty("java.io.tmpdir"), "StaticFileCacheUnit-" + System.nanoTime());
+		dir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] files = dir.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private File write(String name, String content) throws IOException {
+		File file = new File(dir, name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	private static String content(StaticFileCache.Entry entry) {
+		return new String(entry.getBytes(), StandardCharsets.UTF_8);
+	}
+
+	public void testHit() throws IOException {
+		StaticFileCache staticFileCache = new StaticFileCache(1024, 1024);
+		File file = write("a.txt", "hello");
+
+		StaticFileCache.Entry entry = staticFileCache.get(file);
+		assertEquals("hello", content(entry));
+		assertNotNull(entry.getETag());
+		assertNotNull(entry.getLastModified());
+		assertEquals(5, staticFileCache.size());
+
+		//命中时返回同一个条目
+		assertSame(entry, staticFileCache.get(file));
+		assertSame(entry, staticFileCache.get(new File(file.getAbsolutePath())));
+
+		//gzip 内容首次获取时压缩并计入容量
+		byte[] gzipBytes = staticFileCache.getGzipBytes(entry);
+		assertEquals("hello", new String(TZip.decodeGZip(gzipBytes), StandardCharsets.UTF_8));
+		assertSame(gzipBytes, staticFileCache.getGzipBytes(entry));
+		assertEquals(5 + gzipBytes.length, staticFileCache.size());
+
+		//不存在的文件不缓存
+		assertNull(staticFileCache.get(new File(dir, "none.txt")));
+	}
+
+	public void testInvalidation() throws Exception {
+		StaticFileCache staticFileCache = new StaticFileCache(1024, 1024);
+		File file = write("a.txt", "v1");
+		StaticFileCache.Entry entry = staticFileCache.get(file);
+		assertEquals("v1", content(entry));
+
+		//主动失效
+		staticFileCache.invalidate(file.getAbsolutePath());
+		assertEquals(0, staticFileCache.size());
+		StaticFileCache.Entry reloaded = staticFileCache.get(file);
+		assertNotSame(entry, reloaded);
+		assertEquals("v1", content(reloaded));
+
+		//文件修改后由 WatchService 失效
+		write("a.txt", "version2");
+		file.setLastModified(file.lastModified() + 2000);
+		TEnv.wait(10000, () -> "v1".equals(content(staticFileCache.get(file))));
+		StaticFileCache.Entry modified = staticFileCache.get(file);
+		assertEquals("version2", content(modified));
+		assertEquals(8, staticFileCache.size());
+
+		//文件删除后不再命中
+		assertTrue(file.delete());
+		TEnv.wait(10000, () -> staticFileCache.get(file) != null);
+		assertNull(staticFileCache.get(file));
+		assertEquals(0, staticFileCache.size());
+
+		staticFileCache.clear();
+		assertEquals(0, staticFileCache.size());
+	}
+
+	public void testSizeLimit() throws IOException {
+		StaticFileCache staticFileCache = new StaticFileCache(250, 1024);
+		File a = write("a.txt", repeat('a', 100));
+		File b = write("b.txt", repeat('b', 100));
+		File c = write("c.txt", repeat('c', 100));
+
+		StaticFileCache.Entry entryA = staticFileCache.get(a);
+		StaticFileCache.Entry entryB = staticFileCache.get(b);
+		assertEquals(200, staticFileCache.size());
+
+		//a 被访问过, 加入 c 超过容量时淘汰没有被访问过的 b
+		assertSame(entryA, staticFileCache.get(a));
+		StaticFileCache.Entry entryC = staticFileCache.get(c);
+		assertEquals(200, staticFileCache.size());
+		assertSame(entryA, staticFileCache.get(a));
+		assertSame(entryC, staticFileCache.get(c));
+
+		//a 和 c 都被访问过时, 重新加载的 b 不会被立即淘汰, 淘汰 a 和 c 中较早加入的 c
+		StaticFileCache.Entry newEntryB = staticFileCache.get(b);
+		assertNotSame(entryB, newEntryB);
+		assertEquals(200, staticFileCache.size());
+		assertSame(newEntryB, staticFileCache.get(b));
+		assertSame(entryA, staticFileCache.get(a));
+	}
+
+	public void testLargeFile() throws IOException {
+		StaticFileCache staticFileCache = new StaticFileCache(1024, 50);
+		File large = write("large.txt", repeat('l', 100));
+		File small = write("small.txt", repeat('s', 50));
+
+		//超过可缓存的单个文件大小时不缓存
+		assertNull(staticFileCache.get(large));
+		assertEquals(0, staticFileCache.size());
+
+		assertNotNull(staticFileCache.get(small));
+		assertEquals(50, staticFileCache.size());
+	}
+}
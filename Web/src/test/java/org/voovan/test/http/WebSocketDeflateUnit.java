@@ -0,0 +1,148 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.websocket.WebSocketDeflate;
+import org.voovan.tools.buffer.ByteBufferChannel;
+import org.voovan.tools.reflect.TReflect;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+
+/**
+ * WebSocket permessage-deflate 测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WebSocketDeflateUnit extends TestCase {
+	private static final String MESSAGE = "{\"type\":\"quote\",\"symbol\":\"VOOVAN\",\"price\":123.45,\"volume\":1000,\"exchange\":\"SSE\"}";
+
+	/**
+	 * 压缩一个消息, 返回的数据在下一次压缩前有效, 所以复制一份
+	 */
+	private static ByteBuffer deflate(WebSocketDeflate webSocketDeflate, String message) throws Exception {
+		ByteBuffer data = ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8));
+		ByteBuffer result = TReflect.invokeMethod(webSocketDeflate, "deflate", data);
+		assertEquals(0, data.position());
+
+		ByteBuffer copy = ByteBuffer.allocate(result.remaining());
+		copy.put(result.duplicate()).flip();
+		return copy;
+	}
+
+	private static String inflate(WebSocketDeflate webSocketDeflate, ByteBuffer... frames) throws DataFormatException {
+		ByteBufferChannel byteBufferChannel = new ByteBufferChannel(1024);
+		webSocketDeflate.beginMessage(true);
+		for(int i=0;i<frames.length;i++) {
+			assertTrue(webSocketDeflate.inflate(frames[i], i == frames.length - 1, byteBufferChannel));
+		}
+		assertFalse(webSocketDeflate.isMessageCompressed());
+		return new String(byteBufferChannel.array(), 0, byteBufferChannel.size(), StandardCharsets.UTF_8);
+	}
+
+	public void testNegotiate() {
+		//不带参数的请求
+		WebSocketDeflate server = WebSocketDeflate.accept(WebSocketDeflate.offer(), 0, -1);
+		assertEquals("permessage-deflate", server.response());
+		assertFalse(server.isSharedDeflate());
+
+		//选择第一个可以接受的请求, 服务端压缩窗口小于 15 位的请求不能接受
+		server = WebSocketDeflate.accept("permessage-deflate; server_max_window_bits=10, " +
+				"permessage-deflate; server_no_context_takeover; client_max_window_bits", 0, -1);
+		assertEquals("permessage-deflate; server_no_context_takeover", server.response());
+		assertTrue(server.isSharedDeflate());
+
+		assertNull(WebSocketDeflate.accept("x-webkit-deflate-frame", 0, -1));
+		assertNull(WebSocketDeflate.accept("permessage-deflate; unknown", 0, -1));
+		assertNull(WebSocketDeflate.accept(null, 0, -1));
+
+		//客户端接受服务端的响应
+		WebSocketDeflate client = WebSocketDeflate.negotiate("permessage-deflate; client_no_context_takeover; server_max_window_bits=12", 0, -1);
+		assertNotNull(client);
+		assertTrue(client.isSharedDeflate());
+		assertFalse(WebSocketDeflate.negotiate("permessage-deflate; server_no_context_takeover", 0, -1).isSharedDeflate());
+		//服务端要求客户端使用更小的压缩窗口时无法满足
+		assertNull(WebSocketDeflate.negotiate("permessage-deflate; client_max_window_bits=10", 0, -1));
+	}
+
+	public void testContextTakeover() throws Exception {
+		WebSocketDeflate server = WebSocketDeflate.accept(WebSocketDeflate.offer(), 0, -1);
+		WebSocketDeflate client = WebSocketDeflate.negotiate(server.response(), 0, -1);
+
+		ByteBuffer first = deflate(client, MESSAGE);
+		ByteBuffer second = deflate(client, MESSAGE);
+		//保持压缩上下文时, 重复的消息引用前一个消息的字典
+		assertTrue(second.remaining() < first.remaining() / 2);
+
+		assertEquals(MESSAGE, inflate(server, first));
+		assertEquals(MESSAGE, inflate(server, second));
+
+		//反方向
+		assertEquals(MESSAGE, inflate(client, deflate(server, MESSAGE)));
+		assertEquals(MESSAGE, inflate(client, deflate(server, MESSAGE)));
+
+		server.release();
+		client.release();
+	}
+
+	public void testNoContextTakeover() throws Exception {
+		WebSocketDeflate server = WebSocketDeflate.accept("permessage-deflate; server_no_context_takeover; client_no_context_takeover", 0, -1);
+		WebSocketDeflate client = WebSocketDeflate.negotiate(server.response(), 0, -1);
+
+		//不保持压缩上下文时, 每个消息的压缩结果相同
+		ByteBuffer first = deflate(client, MESSAGE);
+		ByteBuffer second = deflate(client, MESSAGE);
+		assertEquals(first, second);
+		assertEquals(MESSAGE, inflate(server, first));
+		assertEquals(MESSAGE, inflate(server, second));
+
+		//共享的压缩结果和连接自己压缩的结果都可以解压
+		ByteBuffer shared = WebSocketDeflate.deflateMessage(ByteBuffer.wrap(MESSAGE.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(MESSAGE, inflate(client, shared));
+		assertEquals(MESSAGE, inflate(client, deflate(server, MESSAGE)));
+
+		server.release();
+		client.release();
+	}
+
+	public void testFragmented() throws Exception {
+		WebSocketDeflate server = WebSocketDeflate.accept(WebSocketDeflate.offer(), 0, -1);
+		WebSocketDeflate client = WebSocketDeflate.negotiate(server.response(), 0, -1);
+
+		StringBuilder message = new StringBuilder();
+		for(int i=0;i<500;i++) {
+			message.append(i).append(MESSAGE);
+		}
+
+		//压缩数据拆分成多个分片
+		ByteBuffer data = deflate(client, message.toString());
+		int length = data.remaining();
+		ByteBuffer[] frames = new ByteBuffer[3];
+		for(int i=0;i<3;i++) {
+			ByteBuffer frame = data.duplicate();
+			frame.position(length * i / 3);
+			frame.limit(length * (i + 1) / 3);
+			frames[i] = frame;
+		}
+		assertEquals(message.toString(), inflate(server, frames));
+		assertEquals(MESSAGE, inflate(server, deflate(client, MESSAGE)));
+	}
+
+	public void testMaxMessageSize() throws Exception {
+		WebSocketDeflate server = WebSocketDeflate.accept(WebSocketDeflate.offer(), 0, MESSAGE.length());
+		WebSocketDeflate client = WebSocketDeflate.negotiate(server.response(), 0, MESSAGE.length() - 1);
+
+		//刚好等于最大字节数
+		assertEquals(MESSAGE, inflate(server, deflate(client, MESSAGE)));
+
+		//解压后超过最大字节数
+		ByteBufferChannel byteBufferChannel = new ByteBufferChannel(1024);
+		client.beginMessage(true);
+		assertFalse(client.inflate(deflate(server, MESSAGE), true, byteBufferChannel));
+		assertTrue(byteBufferChannel.size() < MESSAGE.length());
+	}
+}
@@ -0,0 +1,160 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.websocket.WebSocketFrame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * WebSocket 帧编解码测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WebSocketFrameUnit extends TestCase {
+
+	private static byte[] payload(int length) {
+		byte[] bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] bytes(ByteBuffer byteBuffer) {
+		byte[] bytes = new byte[byteBuffer.remaining()];
+		byteBuffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * 编码后再解析, 检查帧头长度和负载
+	 * @param length 负载长度
+	 * @param mask 是否使用掩码
+	 * @param headerLength 预期的帧头长度(不含掩码)
+	 */
+	private static void roundTrip(int length, boolean mask, int headerLength) {
+		byte[] payload = payload(length);
+		ByteBuffer data = ByteBuffer.wrap(payload);
+		WebSocketFrame webSocketFrame = WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.BINARY, mask, data);
+		ByteBuffer frameBuffer = webSocketFrame.toByteBuffer();
+
+		//编码不改变帧数据的 position
+		assertEquals(0, data.position());
+		int frameLength = headerLength + (mask ? 4 : 0) + length;
+		assertEquals(frameLength, frameBuffer.remaining());
+		assertEquals(frameLength, WebSocketFrame.frameLength(frameBuffer));
+
+		//负载长度编码: 0-125 直接记录, 126 之后 16 位, 127 之后 64 位
+		int lengthByte = frameBuffer.get(1) & 0x7F;
+		if(headerLength == 2) {
+			assertEquals(length, lengthByte);
+		} else if(headerLength == 4) {
+			assertEquals(126, lengthByte);
+			assertEquals(length, frameBuffer.getShort(2) & 0xFFFF);
+		} else {
+			assertEquals(127, lengthByte);
+			assertEquals(length, frameBuffer.getLong(2));
+		}
+		assertEquals(mask, (frameBuffer.get(1) & 0x80) != 0);
+
+		WebSocketFrame parsed = WebSocketFrame.parse(frameBuffer);
+		assertEquals(0, parsed.getErrorCode());
+		assertTrue(parsed.isFin());
+		assertFalse(parsed.isCompressed());
+		assertEquals(mask, parsed.isTransfereMask());
+		assertEquals(WebSocketFrame.Opcode.BINARY, parsed.getOpcode());
+		assertTrue(Arrays.equals(payload, bytes(parsed.getFrameData())));
+		assertFalse(frameBuffer.hasRemaining());
+	}
+
+	public void testLength7() {
+		roundTrip(0, false, 2);
+		roundTrip(1, true, 2);
+		roundTrip(125, false, 2);
+		roundTrip(125, true, 2);
+	}
+
+	public void testLength16() {
+		roundTrip(126, false, 4);
+		roundTrip(126, true, 4);
+		roundTrip(1000, true, 4);
+		roundTrip(65535, false, 4);
+		roundTrip(65535, true, 4);
+	}
+
+	public void testLength64() {
+		roundTrip(65536, false, 10);
+		roundTrip(65536, true, 10);
+		roundTrip(100003, true, 10);
+	}
+
+	public void testMask() {
+		//掩码后的数据和原始数据不同, 使用相同的掩码再次运算后还原
+		byte[] payload = payload(37);
+		ByteBuffer byteBuffer = ByteBuffer.allocate(50);
+		byteBuffer.position(3);
+		byteBuffer.put(payload);
+
+		int maskKey = 0x12345678;
+		WebSocketFrame.mask(byteBuffer, 3, payload.length, maskKey);
+		byte[] keys = new byte[]{0x12, 0x34, 0x56, 0x78};
+		for(int i=0;i<payload.length;i++) {
+			assertEquals((byte) (payload[i] ^ keys[i % 4]), byteBuffer.get(3 + i));
+		}
+		//范围之外的数据不变
+		assertEquals(0, byteBuffer.get(2));
+		assertEquals(0, byteBuffer.get(3 + payload.length));
+
+		WebSocketFrame.mask(byteBuffer, 3, payload.length, maskKey);
+		for(int i=0;i<payload.length;i++) {
+			assertEquals(payload[i], byteBuffer.get(3 + i));
+		}
+	}
+
+	public void testMultiFrame() {
+		//同一个缓冲区中连续的多个帧依次解析, 帧数据是缓冲区的切片
+		ByteBuffer first = WebSocketFrame.newInstance(false, WebSocketFrame.Opcode.TEXT, true, ByteBuffer.wrap("hello ".getBytes())).toByteBuffer();
+		WebSocketFrame lastFrame = WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.CONTINUOUS, false, ByteBuffer.wrap("world".getBytes()));
+		lastFrame.setCompressed(true);
+		ByteBuffer last = lastFrame.toByteBuffer();
+
+		ByteBuffer byteBuffer = ByteBuffer.allocate(first.remaining() + last.remaining());
+		byteBuffer.put(first).put(last).flip();
+
+		WebSocketFrame parsed = WebSocketFrame.parse(byteBuffer);
+		assertFalse(parsed.isFin());
+		assertEquals(WebSocketFrame.Opcode.TEXT, parsed.getOpcode());
+		assertEquals("hello ", new String(bytes(parsed.getFrameData())));
+
+		parsed = WebSocketFrame.parse(byteBuffer);
+		assertTrue(parsed.isFin());
+		assertTrue(parsed.isCompressed());
+		assertEquals(WebSocketFrame.Opcode.CONTINUOUS, parsed.getOpcode());
+		assertEquals("world", new String(bytes(parsed.getFrameData())));
+		assertNull(WebSocketFrame.parse(byteBuffer));
+	}
+
+	public void testIncomplete() {
+		ByteBuffer frameBuffer = WebSocketFrame.newInstance(true, WebSocketFrame.Opcode.TEXT, true, ByteBuffer.wrap(payload(300))).toByteBuffer();
+
+		//帧头不完整
+		ByteBuffer header = frameBuffer.duplicate();
+		header.limit(3);
+		assertEquals(-1, WebSocketFrame.frameLength(header));
+
+		//负载不完整
+		ByteBuffer partial = frameBuffer.duplicate();
+		partial.limit(100);
+		assertEquals(300 + 8, WebSocketFrame.frameLength(partial));
+		assertEquals(1002, WebSocketFrame.parse(partial).getErrorCode());
+
+		//64 位长度超出 int 范围
+		ByteBuffer huge = ByteBuffer.allocate(10);
+		huge.put((byte) 0x82).put((byte) 127).putLong(Long.MAX_VALUE).flip();
+		assertEquals(-2, WebSocketFrame.frameLength(huge));
+	}
+}
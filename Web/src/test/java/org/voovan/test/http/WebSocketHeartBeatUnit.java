@@ -0,0 +1,192 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.websocket.WebSocketHeartBeat;
+import org.voovan.network.IoSession;
+import org.voovan.network.MessageSplitter;
+import org.voovan.network.SocketContext;
+import org.voovan.network.SocketSelector;
+import org.voovan.network.tcp.TcpSocket;
+import org.voovan.tools.event.EventRunnerGroup;
+import org.voovan.tools.hashwheeltimer.HashWheelTask;
+import org.voovan.tools.reflect.TReflect;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+
+/**
+ * WebSocket 心跳测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WebSocketHeartBeatUnit extends TestCase {
+	private static EventRunnerGroup eventRunnerGroup = SocketContext.createEventRunnerGroup("HeartBeatUnit", 1, false);
+
+	/**
+	 * 只记录发送和关闭的会话
+	 */
+	private static class MockSession extends IoSession<TcpSocket> {
+		private boolean connected = true;
+		private int flushCount = 0;
+		private int closeCount = 0;
+
+		public MockSession(TcpSocket tcpSocket) {
+			super(tcpSocket);
+			setAttachment(new Object[3]);
+		}
+
+		@Override
+		public int tryFlush() {
+			flushCount++;
+			getSendByteBufferChannel().clear();
+			return 0;
+		}
+
+		@Override
+		public String localAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int loaclPort() {
+			return 0;
+		}
+
+		@Override
+		public String remoteAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int remotePort() {
+			return 0;
+		}
+
+		@Override
+		protected MessageSplitter getMessageSplitter() {
+			return null;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return connected;
+		}
+
+		@Override
+		public boolean close() {
+			connected = false;
+			closeCount++;
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "MockSession";
+		}
+	}
+
+	private static MockSession newSession(int maxBufferSize) throws IOException {
+		//读超时 6 秒: 空闲 2 秒发送 ping, 空闲 6 秒关闭
+		TcpSocket tcpSocket = new TcpSocket("127.0.0.1", 1, 6000);
+		tcpSocket.setMaxBufferSize(maxBufferSize);
+		return new MockSession(tcpSocket);
+	}
+
+	private static Object newHeartBeat() throws Exception {
+		SocketSelector socketSelector = (SocketSelector) eventRunnerGroup.choseEventRunner().attachment();
+		Constructor constructor = WebSocketHeartBeat.class.getDeclaredConstructor(SocketSelector.class);
+		constructor.setAccessible(true);
+		Object heartBeat = constructor.newInstance(socketSelector);
+
+		//由测试驱动检查, 不使用定时任务
+		((HashWheelTask) TReflect.getFieldValue(heartBeat, "checkTask")).cancel();
+		return heartBeat;
+	}
+
+	private static void check(Object heartBeat) throws Exception {
+		TReflect.invokeMethod(heartBeat, "check");
+	}
+
+	public void testIdle() throws Exception {
+		Object heartBeat = newHeartBeat();
+		MockSession session = newSession(-1);
+		TReflect.invokeMethod(heartBeat, "add", session);
+
+		//空闲 2 秒发送第一个 ping
+		check(heartBeat);
+		assertEquals(0, session.flushCount);
+		check(heartBeat);
+		assertEquals(1, session.flushCount);
+
+		//距离上一次 ping 不足间隔时不再发送
+		check(heartBeat);
+		assertEquals(1, session.flushCount);
+		check(heartBeat);
+		assertEquals(2, session.flushCount);
+
+		//一直没有收到任何帧, 空闲 6 秒关闭连接
+		check(heartBeat);
+		assertEquals(0, session.closeCount);
+		check(heartBeat);
+		assertEquals(1, session.closeCount);
+		assertEquals(0, (int) TReflect.getFieldValue(heartBeat, "count"));
+
+		//关闭后不再处理
+		check(heartBeat);
+		assertEquals(1, session.closeCount);
+		assertEquals(2, session.flushCount);
+	}
+
+	public void testActive() throws Exception {
+		Object heartBeat = newHeartBeat();
+		MockSession session = newSession(-1);
+		TReflect.invokeMethod(heartBeat, "add", session);
+
+		//持续收到帧的连接不发送 ping 也不关闭
+		for(int i=0;i<10;i++) {
+			check(heartBeat);
+			WebSocketHeartBeat.touch(session);
+		}
+		assertEquals(0, session.flushCount);
+		assertEquals(0, session.closeCount);
+
+		//收到 pong 后重新计算空闲时间
+		check(heartBeat);
+		check(heartBeat);
+		assertEquals(1, session.flushCount);
+		WebSocketHeartBeat.touch(session);
+		for(int i=0;i<5;i++) {
+			check(heartBeat);
+		}
+		assertEquals(0, session.closeCount);
+		check(heartBeat);
+		assertEquals(1, session.closeCount);
+	}
+
+	public void testSendBufferFull() throws Exception {
+		Object heartBeat = newHeartBeat();
+		MockSession session = newSession(1);
+		TReflect.invokeMethod(heartBeat, "add", session);
+
+		//发送缓冲区放不下 ping 时不等待, 视为没有收到 pong
+		for(int i=0;i<5;i++) {
+			check(heartBeat);
+		}
+		assertEquals(0, session.flushCount);
+		assertEquals(0, session.getSendByteBufferChannel().size());
+		assertEquals(0, session.closeCount);
+
+		//空闲超时后照常关闭
+		check(heartBeat);
+		assertEquals(1, session.closeCount);
+	}
+}
@@ -0,0 +1,221 @@
+package org.voovan.test.http;
+
+import junit.framework.TestCase;
+import org.voovan.http.websocket.SlowConsumerPolicy;
+import org.voovan.http.websocket.WebSocketBroadcast;
+import org.voovan.http.websocket.WebSocketFrame;
+import org.voovan.http.websocket.WebSocketSession;
+import org.voovan.http.websocket.WebSocketType;
+import org.voovan.network.IoSession;
+import org.voovan.network.MessageSplitter;
+import org.voovan.network.SocketContext;
+import org.voovan.network.SocketSelector;
+import org.voovan.network.tcp.TcpSocket;
+import org.voovan.tools.TEnv;
+import org.voovan.tools.buffer.ByteBufferChannel;
+import org.voovan.tools.event.EventRunnerGroup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * WebSocket 会话广播测试
+ *
+ * @author helyho
+ *
+ * Voovan Framework.
+ * WebSite: https://github.com/helyho/Voovan
+ * Licence: Apache v2 License
+ */
+public class WebSocketSessionUnit extends TestCase {
+	private static final int MAX_BUFFER_SIZE = 1000;
+	private static final int PAYLOAD_SIZE = 100;
+	//payload 小于 126 字节时帧头为 2 字节
+	private static final int FRAME_SIZE = PAYLOAD_SIZE + 2;
+
+	private static EventRunnerGroup eventRunnerGroup = SocketContext.createEventRunnerGroup("WebSocketSessionUnit", 1, false);
+
+	/**
+	 * 只记录写出和关闭的会话, 写出时不清理发送缓冲区
+	 */
+	private static class MockSession extends IoSession<TcpSocket> {
+		private volatile boolean connected = true;
+		private volatile int flushCount = 0;
+
+		public MockSession(TcpSocket tcpSocket) {
+			super(tcpSocket);
+			setAttachment(new Object[3]);
+			setSocketSelector((SocketSelector) eventRunnerGroup.choseEventRunner().attachment());
+		}
+
+		@Override
+		public int tryFlush() {
+			flushCount++;
+			return getSendByteBufferChannel().size();
+		}
+
+		@Override
+		public String localAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int loaclPort() {
+			return 0;
+		}
+
+		@Override
+		public String remoteAddress() {
+			return "127.0.0.1";
+		}
+
+		@Override
+		public int remotePort() {
+			return 0;
+		}
+
+		@Override
+		protected MessageSplitter getMessageSplitter() {
+			return null;
+		}
+
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return connected;
+		}
+
+		@Override
+		public boolean close() {
+			connected = false;
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return "MockSession";
+		}
+	}
+
+	private MockSession socketSession;
+	private WebSocketSession webSocketSession;
+
+	@Override
+	protected void setUp() throws IOException {
+		TcpSocket tcpSocket = new TcpSocket("127.0.0.1", 1, 6000);
+		tcpSocket.setMaxBufferSize(MAX_BUFFER_SIZE);
+		socketSession = new MockSession(tcpSocket);
+		webSocketSession = new WebSocketSession(socketSession, null, WebSocketType.SERVER);
+	}
+
+	private static WebSocketBroadcast message(int index) {
+		byte[] payload = new byte[PAYLOAD_SIZE];
+		Arrays.fill(payload, (byte) ('0' + index));
+		return new WebSocketBroadcast(WebSocketFrame.Opcode.TEXT, ByteBuffer.wrap(payload));
+	}
+
+	/**
+	 * 获取发送缓冲区中偏移位置之后写入的消息序号
+	 * @param offset 偏移位置
+	 * @return 消息序号
+	 */
+	private String sentMessages(int offset) {
+		ByteBufferChannel sendByteBufferChannel = socketSession.getSendByteBufferChannel();
+		ByteBuffer byteBuffer = sendByteBufferChannel.getByteBuffer();
+		try {
+			StringBuilder indexes = new StringBuilder();
+			for(int position = offset; position < byteBuffer.limit(); position += FRAME_SIZE) {
+				indexes.append((char) byteBuffer.get(position + 2));
+			}
+			return indexes.toString();
+		} finally {
+			sendByteBufferChannel.compact();
+		}
+	}
+
+	/**
+	 * 投递 5 个消息, 在事件线程写入发送缓冲区之前向发送缓冲区写入数据, 之后只能放下 2 个消息
+	 */
+	private void deliverAndFill() throws InterruptedException {
+		CountDownLatch blocked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		socketSession.getSocketSelector().addEvent(5, () -> {
+			blocked.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		blocked.await();
+
+		for(int i=0;i<5;i++) {
+			assertTrue(webSocketSession.deliver(message(i)));
+		}
+		assertEquals(5 * FRAME_SIZE, webSocketSession.getPendingBytes());
+
+		socketSession.getSendByteBufferChannel().writeEnd(ByteBuffer.allocate(MAX_BUFFER_SIZE - 2 * FRAME_SIZE - 10));
+		release.countDown();
+		TEnv.wait(2000, () -> socketSession.flushCount == 0 && socketSession.isConnected());
+	}
+
+	public void testFlush() throws InterruptedException {
+		for(int i=0;i<3;i++) {
+			assertTrue(webSocketSession.deliver(message(i)));
+		}
+		TEnv.wait(2000, () -> socketSession.flushCount == 0);
+
+		//事件线程按顺序写入所有消息并写出
+		assertEquals(1, socketSession.flushCount);
+		assertEquals("012", sentMessages(0));
+		assertEquals(3 * FRAME_SIZE, webSocketSession.getPendingBytes());
+	}
+
+	public void testFlushDrop() throws InterruptedException {
+		webSocketSession.setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+		deliverAndFill();
+
+		//写入放得下的旧消息, 丢弃之后的新消息
+		assertTrue(socketSession.isConnected());
+		assertEquals("01", sentMessages(MAX_BUFFER_SIZE - 2 * FRAME_SIZE - 10));
+	}
+
+	public void testFlushCoalesce() throws InterruptedException {
+		webSocketSession.setSlowConsumerPolicy(SlowConsumerPolicy.COALESCE);
+		deliverAndFill();
+
+		//只写入放得下的最新的消息
+		assertTrue(socketSession.isConnected());
+		assertEquals("34", sentMessages(MAX_BUFFER_SIZE - 2 * FRAME_SIZE - 10));
+	}
+
+	public void testFlushDisconnect() throws InterruptedException {
+		webSocketSession.setSlowConsumerPolicy(SlowConsumerPolicy.DISCONNECT);
+		deliverAndFill();
+
+		//断开连接, 不写入任何消息
+		assertFalse(socketSession.isConnected());
+		assertEquals(0, socketSession.flushCount);
+		assertEquals("", sentMessages(MAX_BUFFER_SIZE - 2 * FRAME_SIZE - 10));
+	}
+
+	public void testDeliverLimit() {
+		//投递时未发送的数据超过限制
+		socketSession.getSendByteBufferChannel().writeEnd(ByteBuffer.allocate(MAX_BUFFER_SIZE - FRAME_SIZE + 1));
+
+		webSocketSession.setSlowConsumerPolicy(SlowConsumerPolicy.DROP);
+		assertFalse(webSocketSession.deliver(message(0)));
+		assertTrue(socketSession.isConnected());
+
+		webSocketSession.setSlowConsumerPolicy(SlowConsumerPolicy.DISCONNECT);
+		assertFalse(webSocketSession.deliver(message(0)));
+		assertFalse(socketSession.isConnected());
+		assertFalse(webSocketSession.deliver(message(0)));
+	}
+}